@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds a few meaningfully different alternatives to the shortest path between two nodes of a
+ * CompactGraph with the via-node method. One search runs forward from the source through the
+ * whole graph and one runs backward from the target along the edges entering each node, after
+ * which every node v describes a via path: the shortest path from the source to v followed by
+ * the shortest path from v to the target. Via paths are tried by increasing cost and accepted
+ * when they pass three filters:
+ * <ul>
+ * <li>stretch: the via path costs at most (1 + maxStretch) times the shortest path,</li>
+ * <li>sharing: the cost of the edges it shares with the paths accepted before is at most
+ * maxSharing times the cost of the shortest path, and</li>
+ * <li>local optimality: every stretch of the path around v that costs up to localOptimality times
+ * the shortest path is itself a shortest path, which rules out pointless detours.</li>
+ * </ul>
+ * This costs two complete searches plus a short check per accepted candidate, rather than the
+ * many searches per path of an exact k shortest paths algorithm.
+ */
+public class AlternativeRoutes {
+
+  private final double maxStretch;
+  private final double maxSharing;
+  private final double localOptimality;
+
+  /**
+   * Creates a finder of alternatives.
+   *
+   * @param maxStretch      how much more than the shortest path an alternative may cost, as a
+   *                        fraction of its cost, such as 0.25
+   * @param maxSharing      the largest fraction of the cost of the shortest path that an
+   *                        alternative may share with the paths accepted before it, such as 0.8
+   * @param localOptimality the fraction of the cost of the shortest path around the via node
+   *                        that has to be a shortest path, such as 0.25
+   * @throws IllegalArgumentException if any fraction is negative, or maxSharing or
+   *                                  localOptimality is more than 1
+   */
+  public AlternativeRoutes(double maxStretch, double maxSharing, double localOptimality) {
+    if (!(maxStretch >= 0) || !(maxSharing >= 0 && maxSharing <= 1)
+        || !(localOptimality >= 0 && localOptimality <= 1))
+      throw new IllegalArgumentException("invalid alternative route limits: " + maxStretch + ", "
+          + maxSharing + ", " + localOptimality);
+    this.maxStretch = maxStretch;
+    this.maxSharing = maxSharing;
+    this.localOptimality = localOptimality;
+  }
+
+  /**
+   * Finds the shortest path between two nodes and up to maxPaths - 1 alternatives to it.
+   *
+   * @param graph     the snapshot to search
+   * @param source    the id of the starting node
+   * @param target    the id of the destination node
+   * @param maxPaths  the largest number of paths to return, including the shortest one
+   * @param workspace the workspace for the forward search; its reverse workspace holds the
+   *                  backward search, the reverse workspace of that one the checks of local
+   *                  optimality, and the masks of the first two the marks kept while choosing
+   * @return the node ids along each path, the shortest path first and the alternatives by
+   *         increasing cost, or an empty list when target can't be reached
+   */
+  public List<int[]> find(CompactGraph<?> graph, int source, int target, int maxPaths,
+      SearchWorkspace workspace) {
+    SearchWorkspace forward = workspace;
+    SearchWorkspace backward = workspace.getReverseWorkspace();
+    graph.searchAll(source, false, forward);
+    graph.searchAll(target, true, backward);
+    List<int[]> paths = new ArrayList<>();
+    double shortest = forward.getDistance(target);
+    if (shortest == Double.POSITIVE_INFINITY || maxPaths < 1) return paths;
+    int n = graph.getNodeCount();
+    // the masks are reused rather than allocated per query: the nodes of accepted paths, whose
+    // via paths are accepted already or close to it, and their edges are marked in one, and the
+    // nodes of the via path being built in the other
+    SearchMask used = forward.getMask(n, graph.getEdgeCount());
+    SearchMask seen = backward.getMask(n, graph.getEdgeCount());
+    accept(graph, viaPath(target, forward, backward, seen), used, paths);
+
+    // candidate via nodes within the stretch limit, by the cost of their via path; only nodes
+    // on a plateau, where the edge from their forward predecessor is on both trees, are tried,
+    // since a via path through any other node turns around at it and fails the local optimality
+    // test anyway
+    double limit = (1 + maxStretch) * shortest;
+    List<Integer> candidates = new ArrayList<>();
+    for (int v = 0; v < n; v++) {
+      int previous = forward.getPredecessor(v);
+      if (!used.isNodeBlocked(v) && previous != -1 && backward.getPredecessor(previous) == v
+          && forward.getDistance(v) + backward.getDistance(v) <= limit) {
+        candidates.add(v);
+      }
+    }
+    candidates.sort((a, b) -> Double.compare(forward.getDistance(a) + backward.getDistance(a),
+        forward.getDistance(b) + backward.getDistance(b)));
+    // the checks search in a third workspace, which is kept with the other two between queries
+    SearchWorkspace check = backward.getReverseWorkspace();
+    for (int v : candidates) {
+      if (paths.size() >= maxPaths) break;
+      if (used.isNodeBlocked(v)) continue;
+      int[] path = viaPath(v, forward, backward, seen);
+      if (path == null || sharedCost(graph, path, used) > maxSharing * shortest) continue;
+      if (!locallyOptimal(graph, path, v, shortest, forward, backward, check)) continue;
+      accept(graph, path, used, paths);
+    }
+    return paths;
+  }
+
+  // the shortest path from source to v followed by the shortest path from v to target, or null
+  // when the two halves meet before v, which would make the via path visit a node twice; seen
+  // is cleared and left holding the nodes of the path
+  private static int[] viaPath(int v, SearchWorkspace forward, SearchWorkspace backward,
+      SearchMask seen) {
+    seen.clear();
+    int before = 0;
+    for (int u = v; u != -1; u = forward.getPredecessor(u)) {
+      seen.blockNode(u);
+      before++;
+    }
+    int after = 0;
+    for (int u = backward.getPredecessor(v); u != -1; u = backward.getPredecessor(u)) {
+      if (seen.isNodeBlocked(u)) return null;
+      seen.blockNode(u);
+      after++;
+    }
+    int[] path = new int[before + after];
+    int i = before - 1;
+    for (int u = v; u != -1; u = forward.getPredecessor(u)) path[i--] = u;
+    i = before;
+    for (int u = backward.getPredecessor(v); u != -1; u = backward.getPredecessor(u)) path[i++] = u;
+    return path;
+  }
+
+  // the cost of the edges of path that accepted paths use as well
+  private static double sharedCost(CompactGraph<?> graph, int[] path, SearchMask used) {
+    double shared = 0;
+    for (int i = 0; i + 1 < path.length; i++) {
+      int edge = lightestEdge(graph, path[i], path[i + 1]);
+      if (used.isEdgeBlocked(edge)) shared += graph.getEdgeWeight(edge);
+    }
+    return shared;
+  }
+
+  // checks that the stretch of path that reaches localOptimality * shortest to either side of v
+  // is a shortest path, by searching between its two ends from both sides
+  private boolean locallyOptimal(CompactGraph<?> graph, int[] path, int v, double shortest,
+      SearchWorkspace forward, SearchWorkspace backward, SearchWorkspace check) {
+    double window = localOptimality * shortest;
+    int at = 0;
+    while (path[at] != v) at++;
+    int from = at;
+    while (from > 0 && forward.getDistance(v) - forward.getDistance(path[from]) < window) from--;
+    int to = at;
+    while (to + 1 < path.length
+        && backward.getDistance(v) - backward.getDistance(path[to]) < window) to++;
+    double length = forward.getDistance(v) - forward.getDistance(path[from])
+        + backward.getDistance(v) - backward.getDistance(path[to]);
+    double best = graph.bidirectionalDijkstra(path[from], path[to], check);
+    // the costs above were added up in different orders, so allow for rounding
+    return best >= length - 1e-9 * Math.max(1, length);
+  }
+
+  // marks the nodes and edges of an accepted path as used
+  private static void accept(CompactGraph<?> graph, int[] path, SearchMask used,
+      List<int[]> paths) {
+    for (int i = 0; i < path.length; i++) {
+      used.blockNode(path[i]);
+      if (i + 1 < path.length) used.blockEdge(lightestEdge(graph, path[i], path[i + 1]));
+    }
+    paths.add(path);
+  }
+
+  // the position of the lightest edge from u to w, which is the one shortest paths take
+  private static int lightestEdge(CompactGraph<?> graph, int u, int w) {
+    int lightest = -1;
+    for (int edge = graph.getEdgeStart(u); edge < graph.getEdgeEnd(u); edge++) {
+      if (graph.getEdgeTarget(edge) == w
+          && (lightest == -1 || graph.getEdgeWeight(edge) < graph.getEdgeWeight(lightest))) {
+        lightest = edge;
+      }
+    }
+    return lightest;
+  }
+
+}
@@ -4,7 +4,12 @@ public class App {
   public static void main(String[] args) {
 
     System.out.println("v0.1");
-    Frontend.setBackend(new Backend(new DijkstraGraph<>()));
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    // most queries start at a few popular buildings, so keep their search trees
+    graph.enableTreeCache(32, 64L << 20);
+    // the find button asks for a path and then its travel times, which the
+    // cache answers with a single search
+    Frontend.setBackend(new CachingBackend(new Backend(graph), graph, 1000, 10 * 60 * 1000));
     Application.launch(Frontend.class, args);
   }
 }
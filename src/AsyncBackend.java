@@ -0,0 +1,326 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A BackendInterface that also answers path queries asynchronously, so that a request handler
+ * can hand a query off and go on with other requests instead of blocking a thread until the
+ * search is done. The blocking methods are passed on to the wrapped backend unchanged.
+ * <p>
+ * Queries run on an executor, by default one that starts a virtual thread per query when the
+ * Java runtime has virtual threads and uses a pool of daemon threads otherwise. At most
+ * maxConcurrent queries run at the same time; the others wait in a queue of at most maxQueued
+ * queries, without holding a thread, and are refused with a RejectedExecutionException when the
+ * queue is full.
+ * <p>
+ * Each query may have a deadline. A query that isn't answered by then completes with a
+ * TimeoutException. A query whose future is cancelled, or whose deadline passes, stops searching
+ * within a few microseconds through SearchCancellation, and a queued one never starts, so
+ * abandoned queries don't keep using the threads of the queries after them.
+ */
+public class AsyncBackend extends ForwardingBackend implements AutoCloseable {
+
+  private final Executor executor;
+  // the default executor, which close shuts down, or null when the caller owns the executor
+  private final ExecutorService ownExecutor;
+  private final int maxConcurrent;
+  private final int maxQueued;
+  private final long defaultDeadlineMillis;
+
+  // queries waiting for one of the running ones to finish, oldest first
+  private final ArrayDeque<Query<?>> waiting = new ArrayDeque<>();
+  private int running = 0;
+
+  /**
+   * Answers the queries of a backend on the default executor, running as many queries at once
+   * as there are processors and queueing up to 1000 more, without deadlines.
+   *
+   * @param backend the backend that answers the queries
+   */
+  public AsyncBackend(BackendInterface backend) {
+    this(backend, null, Runtime.getRuntime().availableProcessors(), 1000, 0);
+  }
+
+  /**
+   * Answers the queries of a backend on an executor.
+   *
+   * @param backend               the backend that answers the queries
+   * @param executor              runs the queries, or null for the default executor
+   * @param maxConcurrent         the largest number of queries to run at the same time
+   * @param maxQueued             the largest number of queries waiting to run
+   * @param defaultDeadlineMillis the deadline of queries that don't have one of their own, or 0
+   *                              for none
+   * @throws IllegalArgumentException if maxConcurrent is not positive, or maxQueued or
+   *                                  defaultDeadlineMillis is negative
+   */
+  public AsyncBackend(BackendInterface backend, Executor executor, int maxConcurrent,
+      int maxQueued, long defaultDeadlineMillis) {
+    super(backend);
+    if (maxConcurrent < 1)
+      throw new IllegalArgumentException("concurrency must be positive: " + maxConcurrent);
+    if (maxQueued < 0)
+      throw new IllegalArgumentException("queue size must not be negative: " + maxQueued);
+    if (defaultDeadlineMillis < 0)
+      throw new IllegalArgumentException("deadline must not be negative: " + defaultDeadlineMillis);
+    this.ownExecutor = executor == null ? defaultExecutor() : null;
+    this.executor = executor == null ? ownExecutor : executor;
+    this.maxConcurrent = maxConcurrent;
+    this.maxQueued = maxQueued;
+    this.defaultDeadlineMillis = defaultDeadlineMillis;
+  }
+
+  // a virtual thread per task where the runtime has them (Java 21 and later), and otherwise a
+  // pool of daemon threads, of which at most maxConcurrent are busy at a time
+  private static ExecutorService defaultExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "async-backend");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Finds the shortest path between two locations asynchronously, with the default deadline.
+   *
+   * @param startLocation the start location of the path
+   * @param endLocation   the end location of the path
+   * @return the locations along the path, or an empty list if no such path exists
+   */
+  public CompletableFuture<List<String>> findShortestPathAsync(String startLocation,
+      String endLocation) {
+    return findShortestPathAsync(startLocation, endLocation, defaultDeadlineMillis);
+  }
+
+  /**
+   * Finds the shortest path between two locations asynchronously.
+   *
+   * @param startLocation  the start location of the path
+   * @param endLocation    the end location of the path
+   * @param deadlineMillis how long the query may take, or 0 for no limit
+   * @return the locations along the path, or an empty list if no such path exists
+   */
+  public CompletableFuture<List<String>> findShortestPathAsync(String startLocation,
+      String endLocation, long deadlineMillis) {
+    return supplyAsync(() -> backend.findShortestPath(startLocation, endLocation),
+        deadlineMillis);
+  }
+
+  /**
+   * Finds the walking times along the shortest path between two locations asynchronously, with
+   * the default deadline.
+   *
+   * @param startLocation the start location of the path
+   * @param endLocation   the end location of the path
+   * @return the walking time of each leg of the path, or an empty list if no such path exists
+   */
+  public CompletableFuture<List<Double>> getTravelTimesOnPathAsync(String startLocation,
+      String endLocation) {
+    return getTravelTimesOnPathAsync(startLocation, endLocation, defaultDeadlineMillis);
+  }
+
+  /**
+   * Finds the walking times along the shortest path between two locations asynchronously.
+   *
+   * @param startLocation  the start location of the path
+   * @param endLocation    the end location of the path
+   * @param deadlineMillis how long the query may take, or 0 for no limit
+   * @return the walking time of each leg of the path, or an empty list if no such path exists
+   */
+  public CompletableFuture<List<Double>> getTravelTimesOnPathAsync(String startLocation,
+      String endLocation, long deadlineMillis) {
+    return supplyAsync(() -> backend.getTravelTimesOnPath(startLocation, endLocation),
+        deadlineMillis);
+  }
+
+  /**
+   * Finds the shortest path between two locations through a third one asynchronously, with the
+   * default deadline.
+   *
+   * @param startLocation the start location of the path
+   * @param viaLocation   a location that the path should lead through
+   * @param endLocation   the end location of the path
+   * @return the locations along the path, or an empty list if no such path exists
+   */
+  public CompletableFuture<List<String>> findShortestPathViaAsync(String startLocation,
+      String viaLocation, String endLocation) {
+    return findShortestPathViaAsync(startLocation, viaLocation, endLocation,
+        defaultDeadlineMillis);
+  }
+
+  /**
+   * Finds the shortest path between two locations through a third one asynchronously.
+   *
+   * @param startLocation  the start location of the path
+   * @param viaLocation    a location that the path should lead through
+   * @param endLocation    the end location of the path
+   * @param deadlineMillis how long the query may take, or 0 for no limit
+   * @return the locations along the path, or an empty list if no such path exists
+   */
+  public CompletableFuture<List<String>> findShortestPathViaAsync(String startLocation,
+      String viaLocation, String endLocation, long deadlineMillis) {
+    return supplyAsync(
+        () -> backend.findShortestPathVia(startLocation, viaLocation, endLocation),
+        deadlineMillis);
+  }
+
+  /**
+   * Finds the walking times along the shortest path between two locations through a third one
+   * asynchronously, with the default deadline.
+   *
+   * @param startLocation the start location of the path
+   * @param viaLocation   a location that the path should lead through
+   * @param endLocation   the end location of the path
+   * @return the walking time of each leg of the path, or an empty list if no such path exists
+   */
+  public CompletableFuture<List<Double>> getTravelTimesOnPathViaAsync(String startLocation,
+      String viaLocation, String endLocation) {
+    return getTravelTimesOnPathViaAsync(startLocation, viaLocation, endLocation,
+        defaultDeadlineMillis);
+  }
+
+  /**
+   * Finds the walking times along the shortest path between two locations through a third one
+   * asynchronously.
+   *
+   * @param startLocation  the start location of the path
+   * @param viaLocation    a location that the path should lead through
+   * @param endLocation    the end location of the path
+   * @param deadlineMillis how long the query may take, or 0 for no limit
+   * @return the walking time of each leg of the path, or an empty list if no such path exists
+   */
+  public CompletableFuture<List<Double>> getTravelTimesOnPathViaAsync(String startLocation,
+      String viaLocation, String endLocation, long deadlineMillis) {
+    return supplyAsync(
+        () -> backend.getTravelTimesOnPathVia(startLocation, viaLocation, endLocation),
+        deadlineMillis);
+  }
+
+  /**
+   * Runs any query of the wrapped backend asynchronously, within the same limits as the path
+   * queries. Only the searches of the query's own thread notice when it is cancelled.
+   *
+   * @param query          the query to run
+   * @param deadlineMillis how long the query may take, or 0 for no limit
+   * @param <T>            the type of the answer
+   * @return the answer, completed exceptionally with a TimeoutException when the deadline
+   *         passes, with a RejectedExecutionException when too many queries are waiting, or with
+   *         whatever the query throws
+   * @throws IllegalArgumentException if deadlineMillis is negative
+   */
+  public <T> CompletableFuture<T> supplyAsync(Supplier<T> query, long deadlineMillis) {
+    if (deadlineMillis < 0)
+      throw new IllegalArgumentException("deadline must not be negative: " + deadlineMillis);
+    Query<T> task = new Query<>(query);
+    CompletableFuture<T> future = task.future;
+    if (deadlineMillis > 0) future.orTimeout(deadlineMillis, TimeUnit.MILLISECONDS);
+    synchronized (this) {
+      if (running >= maxConcurrent) {
+        if (waiting.size() >= maxQueued) {
+          future.completeExceptionally(
+              new RejectedExecutionException("too many queries waiting: " + waiting.size()));
+        } else {
+          waiting.add(task);
+        }
+        return future;
+      }
+      running++;
+    }
+    execute(task);
+    return future;
+  }
+
+  // starts the next waiting query in place of one that finished
+  private void finished() {
+    Query<?> next;
+    synchronized (this) {
+      next = waiting.poll();
+      if (next == null) {
+        running--;
+        return;
+      }
+    }
+    execute(next);
+  }
+
+  // runs a query that holds a place among the running queries, failing it and giving the place
+  // up when the executor refuses it
+  private void execute(Query<?> task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.future.completeExceptionally(e);
+      finished();
+    }
+  }
+
+  // a query and the future of its answer
+  private class Query<T> implements Runnable {
+
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    final Supplier<T> query;
+    final SearchCancellation cancellation = new SearchCancellation();
+
+    Query(Supplier<T> query) {
+      this.query = query;
+      // cancelling the future, or its deadline passing, stops the search, and a query that
+      // hasn't started yet gives up its place in the queue
+      future.whenComplete((answer, error) -> {
+        if (error == null) return;
+        cancellation.cancel();
+        synchronized (AsyncBackend.this) {
+          waiting.remove(this);
+        }
+      });
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (!future.isDone()) future.complete(cancellation.call(query));
+      } catch (Throwable e) {
+        future.completeExceptionally(e);
+      } finally {
+        finished();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of queries that are running.
+   *
+   * @return the number of running queries
+   */
+  public synchronized int getRunningCount() {
+    return running;
+  }
+
+  /**
+   * Returns the number of queries waiting to run.
+   *
+   * @return the number of queued queries
+   */
+  public synchronized int getQueuedCount() {
+    return waiting.size();
+  }
+
+  /**
+   * Shuts the default executor down once the queries it is running are done. An executor that
+   * was passed to the constructor is left to its owner.
+   */
+  @Override
+  public void close() {
+    if (ownExecutor != null) ownExecutor.shutdown();
+  }
+
+}
@@ -1,17 +1,44 @@
 import java.io.IOException;
 import java.util.*;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Backend for the Campus Map project.
+ * <p>
+ * Queries may run on many threads at once, also while loadGraphData or
+ * updateGraph change the graph on another thread. The list of locations and
+ * the distance table are never changed in place: a change builds new ones
+ * and publishes them with a single write, so queries read them without
+ * locks. Changes themselves are synchronized and run one at a time, and the
+ * distance table for the graph they leave is built in the background.
  */
 public class Backend implements BackendInterface {
 
   private GraphADT<String, Double> graph;
-  private List<String> locations;
+  // replaced as a whole when the locations change, never changed in place
+  private volatile List<String> locations;
+  // the same locations, to check whether a location exists in constant time
+  private volatile Set<String> locationIndex = new HashSet<>();
+
+  // all-pairs table that answers queries without searching, built when a
+  // loaded graph is small enough, and only used while it matches the graph
+  private volatile DistanceTable<String> table = null;
+  private int tableNodeLimit = 2000;
+  private long tableByteLimit = 64L << 20;
+  private boolean tableOffHeap = false;
+  // the last table build that updateGraph queued, each one starting after the
+  // previous one, and whether one is queued that hasn't started yet
+  private volatile CompletableFuture<Void> tableBuild = CompletableFuture.completedFuture(null);
+  private final AtomicBoolean tableQueued = new AtomicBoolean();
+  // held while a table is built, apart from the lock of changes so that a
+  // change doesn't wait for the build of an earlier one
+  private final Object tableLock = new Object();
+
+  // orders the stops of tours found by findTour
+  private TourPlanner tourPlanner = new TourPlanner(200);
 
   /**
    * Constructor for the Backend class.
@@ -26,37 +53,308 @@ public class Backend implements BackendInterface {
   }
 
   /**
-   * Loads graph data from a dot file.
+   * Loads graph data from a dot file, or from a binary graph file written by
+   * saveGraphData, which is recognized by its first bytes. A dot file is
+   * parsed in parallel by DotReader, while a graph file is memory-mapped and
+   * its arrays copied in bulk. Either way the edges are inserted into the
+   * graph in one batch, and building the nodes and edges of the graph takes
+   * most of the time, so a graph file loads no faster than a dot file; only
+   * a MappedGraph, which searches the file where it is, avoids that.
    *
-   * @param filename the path to a dot file to read graph data from
-   * @throws IOException if there was a problem reading in the specified file
+   * @param filename the path to a dot or graph file to read graph data from
+   * @throws IOException if there was a problem reading in the specified file,
+   *                     one of the edge lines of a dot file is malformed (the
+   *                     message names the line), or a graph file is corrupt
    */
-  public void loadGraphData(String filename) throws IOException {
-    // try to read the file
-    FileReader fr = new FileReader(filename);
-    BufferedReader br = new BufferedReader(fr);
-    // regular expression to match a string, then an arrow, then another string, then a number
-    // assuming the file is formatted correctly
-    Pattern pattern = Pattern.compile("\"([^\"]+)\"\\s*->\\s*\"([^\"]+)\"\\s*\\[seconds=([0-9.]+)\\];");
-    String line = br.readLine();
-    while (line != null) {
-      Matcher matcher = pattern.matcher(line);
-      if (matcher.find()) { // assuming one match per line
-        String from = matcher.group(1);
-        String to = matcher.group(2);
-        double duration = Double.parseDouble(matcher.group(3));
-
-        graph.insertNode(from);
-        graph.insertNode(to);
-        graph.insertEdge(from, to, duration);
-        // also store the from and to locations in the list of locations
-        if (!locations.contains(from)) locations.add(from);
-        if (!locations.contains(to)) locations.add(to);
+  @SuppressWarnings("unchecked")
+  public synchronized void loadGraphData(String filename) throws IOException {
+    if (graph instanceof MappedGraph) {
+      mapGraphData((MappedGraph) graph, filename);
+      return;
+    }
+    List<String> loaded;
+    if (GraphFile.isGraphFile(filename)) {
+      CompactGraph<String> snapshot = GraphFile.read(filename);
+      insertSnapshot(snapshot);
+      // when the graph was empty it now holds exactly the file, so searches
+      // can use the snapshot that was read instead of building another one
+      if (graph instanceof DijkstraGraph && graph.getNodeCount() == snapshot.getNodeCount()
+          && graph.getEdgeCount() == snapshot.getEdgeCount()) {
+        ((DijkstraGraph<String, Double>) graph).adoptSnapshot(snapshot);
       }
-      line = br.readLine();  // read the next line at the end of the loop
+      loaded = new ArrayList<>(snapshot.getNodeCount());
+      for (int v = 0; v < snapshot.getNodeCount(); v++) loaded.add(snapshot.nodeAt(v));
+    } else {
+      DotReader dot = DotReader.read(filename);
+      dot.insertInto(graph);
+      loaded = dot.getLocations();
+    }
+    // also store the new locations in a copy of the list of locations
+    List<String> all = new ArrayList<>(locations);
+    Set<String> index = new HashSet<>(locationIndex);
+    for (String location : loaded) {
+      if (index.add(location)) all.add(location);
     }
+    publishLocations(all, index);
     System.out.println("finished reading file " + filename + " with " + locations.size() + " locations");
-    br.close();
+    prepareTable();
+  }
+
+  // replaces a mapped graph with a graph file, whose locations are then read
+  // from the mapping as well instead of being copied into the heap
+  private void mapGraphData(MappedGraph mapped, String filename) throws IOException {
+    if (!GraphFile.isGraphFile(filename)) {
+      throw new IOException(filename + " is not a graph file, which a MappedGraph needs");
+    }
+    mapped.map(filename);
+    List<String> all = mapped.getLocations();
+    publishLocations(all, new AbstractSet<String>() {
+      @Override
+      public boolean contains(Object location) {
+        return all.contains(location);
+      }
+
+      @Override
+      public Iterator<String> iterator() {
+        return all.iterator();
+      }
+
+      @Override
+      public int size() {
+        return all.size();
+      }
+    });
+    prepareTable();
+  }
+
+  /**
+   * Saves the current graph to a binary graph file, which a MappedGraph can
+   * search without loading it. Loading the file into a DijkstraGraph with
+   * loadGraphData takes about as long as loading a dot file, since the nodes
+   * and edges of the graph are built either way.
+   *
+   * @param filename the path of the file to write
+   * @throws IOException if the file can't be written
+   */
+  public void saveGraphData(String filename) throws IOException {
+    if (graph instanceof DijkstraGraph) {
+      GraphFile.write(snapshot(), filename);
+      return;
+    }
+    // other graphs can't list their edges, so look for one between every
+    // pair of known locations
+    List<String> all = locations;
+    DijkstraGraph<String, Double> copy = new DijkstraGraph<>();
+    for (String location : all) copy.insertNode(location);
+    for (String from : all) {
+      for (String to : all) {
+        if (graph.containsEdge(from, to)) copy.insertEdge(from, to, graph.getEdge(from, to));
+      }
+    }
+    GraphFile.write(copy.getSnapshot(), filename);
+  }
+
+  /**
+   * Changes the graph while queries keep running on other threads, for
+   * example to set a new walking time on a path that got slower. With a
+   * DijkstraGraph all changes are applied as one update: queries answer
+   * from the previous version of the graph until every change is made, and
+   * from the new version afterwards, never from a mix of both. Locations the
+   * changes insert are added to the list of locations and removed ones are
+   * dropped from it. The distance table is rebuilt for the new version in
+   * the background, so this returns without waiting for it; queries search
+   * the graph until it is ready, see awaitDistanceTable.
+   * <p>
+   * Other graphs are changed in place, so queries that run at the same time
+   * may see some of the changes, and locations they insert are not listed.
+   *
+   * @param changes inserts and removes locations and paths of the graph it
+   *                is passed
+   * @throws UnsupportedOperationException if the graph is a MappedGraph
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized void updateGraph(Consumer<? super GraphADT<String, Double>> changes) {
+    List<String> all = new ArrayList<>(locations.size());
+    Set<String> index = new HashSet<>();
+    if (graph instanceof DijkstraGraph) {
+      CompactGraph<String> previous = snapshot();
+      ((DijkstraGraph<String, Double>) graph).update(changes);
+      CompactGraph<String> current = snapshot();
+      if (current.hasSameNodes(previous)) {
+        // only weights changed, so the locations stay the same
+        rebuildTable();
+        return;
+      }
+      for (String location : locations) {
+        if (current.indexOf(location) != -1 && index.add(location)) all.add(location);
+      }
+      for (int v = 0; v < current.getNodeCount(); v++) {
+        if (index.add(current.nodeAt(v))) all.add(current.nodeAt(v));
+      }
+    } else {
+      changes.accept(graph);
+      for (String location : locations) {
+        if (graph.containsNode(location) && index.add(location)) all.add(location);
+      }
+    }
+    publishLocations(all, index);
+    rebuildTable();
+  }
+
+  // replaces the list and the index of locations, list first, so that a
+  // query that finds a location in the index also finds it in the list
+  private void publishLocations(List<String> all, Set<String> index) {
+    locations = Collections.unmodifiableList(all);
+    locationIndex = Collections.unmodifiableSet(index);
+  }
+
+  // inserts every node and edge of a snapshot into the graph with one call
+  private void insertSnapshot(CompactGraph<String> snapshot) {
+    List<String> nodes = new ArrayList<>(snapshot.getNodeCount());
+    for (int v = 0; v < snapshot.getNodeCount(); v++) nodes.add(snapshot.nodeAt(v));
+    int[] preds = new int[snapshot.getEdgeCount()];
+    int[] succs = new int[snapshot.getEdgeCount()];
+    List<Double> weights = new ArrayList<>(snapshot.getEdgeCount());
+    for (int v = 0; v < snapshot.getNodeCount(); v++) {
+      for (int edge = snapshot.getEdgeStart(v); edge < snapshot.getEdgeEnd(v); edge++) {
+        preds[edge] = v;
+        succs[edge] = snapshot.getEdgeTarget(edge);
+        weights.add(snapshot.getEdgeWeight(edge));
+      }
+    }
+    graph.insertEdges(nodes, preds, succs, weights);
+  }
+
+  /**
+   * Sets the largest graph for which loadGraphData precomputes the distance
+   * between every pair of locations. The table is only built when the graph
+   * stays within both limits.
+   *
+   * @param maxNodes the largest number of locations to build a table for
+   * @param maxBytes the most memory the table may take, see
+   *                 DistanceTable.bytesFor
+   */
+  public void setDistanceTableLimits(int maxNodes, long maxBytes) {
+    this.tableNodeLimit = maxNodes;
+    this.tableByteLimit = maxBytes;
+  }
+
+  /**
+   * Selects whether distance tables built later are stored outside the Java
+   * heap.
+   *
+   * @param offHeap true to store tables in direct buffers
+   */
+  public void setDistanceTableOffHeap(boolean offHeap) {
+    this.tableOffHeap = offHeap;
+  }
+
+  /**
+   * Checks whether queries are currently answered from a precomputed table.
+   *
+   * @return true if a distance table for the current graph is in use
+   */
+  public boolean usesDistanceTable() {
+    return currentTable() != null;
+  }
+
+  /**
+   * Waits until the distance table that the last call of updateGraph started
+   * to build is ready, or it turned out that the graph gets none.
+   */
+  public void awaitDistanceTable() {
+    tableBuild.join();
+  }
+
+  /**
+   * Sets how long findTour may spend improving the order of a tour with too
+   * many stops to order exactly.
+   *
+   * @param millis the time budget in milliseconds
+   */
+  public void setTourTimeBudget(long millis) {
+    int exactStopLimit = tourPlanner.getExactStopLimit();
+    tourPlanner = new TourPlanner(millis);
+    tourPlanner.setExactStopLimit(exactStopLimit);
+  }
+
+  // queues a build of the table for the graph as it is when the build
+  // starts, unless one is already waiting to start, which then covers this
+  // change as well
+  private void rebuildTable() {
+    if (tableQueued.compareAndSet(false, true)) {
+      tableBuild = tableBuild.exceptionally(e -> null).thenRunAsync(() -> {
+        tableQueued.set(false);
+        prepareTable();
+      });
+    }
+  }
+
+  // builds the all-pairs table when the graph is a DijkstraGraph within the
+  // configured limits, and drops any table of an earlier graph. Builds run
+  // one at a time, so a build in the background can't replace the table of
+  // a newer version with its own
+  private void prepareTable() {
+    if (!(graph instanceof DijkstraGraph)) {
+      table = null;
+      return;
+    }
+    synchronized (tableLock) {
+      CompactGraph<String> current = snapshot();
+      if (table != null && table.isFor(current)) return;
+      int nodeCount = current.getNodeCount();
+      if (nodeCount > tableNodeLimit || DistanceTable.bytesFor(nodeCount) > tableByteLimit) {
+        table = null;
+        return;
+      }
+      // queries keep ignoring the stale table while the next one is built
+      DistanceTable<String> next = new DistanceTable<>(current, tableOffHeap);
+      table = next;
+    }
+  }
+
+  // returns the distance table, or null when there is none or the graph has
+  // changed since it was built
+  private DistanceTable<String> currentTable() {
+    DistanceTable<String> current = table;
+    return current != null && current.isFor(snapshot()) ? current : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private CompactGraph<String> snapshot() {
+    return ((DijkstraGraph<String, Double>) graph).getSnapshot();
+  }
+
+  // finds the route between two locations from the table when possible, or
+  // with a single search, and returns an empty route when there is none
+  private RouteResult route(String startLocation, String endLocation) {
+    try {
+      DistanceTable<String> current = currentTable();
+      GraphPath<String> path = current != null ? current.shortestPath(startLocation, endLocation)
+          : graph.shortestPath(startLocation, endLocation);
+      return new RouteResult(path);
+    } catch (NoSuchElementException e) {
+      return RouteResult.EMPTY;
+    }
+  }
+
+  // the cost between every ordered pair of points, read from the table when
+  // possible, and otherwise found with one search per point
+  private double[] stopCosts(List<String> points) {
+    DistanceTable<String> current = currentTable();
+    if (current == null) return graph.shortestPathCosts(points, points);
+    int count = points.size();
+    double[] costs = new double[count * count];
+    for (int a = 0; a < count; a++) {
+      for (int b = 0; b < count; b++) {
+        try {
+          costs[a * count + b] = current.shortestPathCost(points.get(a), points.get(b));
+        } catch (NoSuchElementException e) {
+          costs[a * count + b] = Double.POSITIVE_INFINITY;
+        }
+      }
+    }
+    return costs;
   }
 
   /**
@@ -68,6 +366,265 @@ public class Backend implements BackendInterface {
     return locations;
   }
 
+  /**
+   * Finds the shortest route between two locations, with the travel time of
+   * each leg, using one search.
+   *
+   * @param startLocation the start location of the route
+   * @param endLocation   the end location of the route
+   * @return the route between the start and end locations, or an empty route
+   *         if either location is unknown or no route exists
+   */
+  public RouteResult findRoute(String startLocation, String endLocation) {
+    if (!locationIndex.contains(startLocation) || !locationIndex.contains(endLocation)) {
+      return RouteResult.EMPTY;
+    }
+    return route(startLocation, endLocation);
+  }
+
+  /**
+   * Finds the shortest route between two locations that passes through a
+   * third location, with the travel time of each leg, using one search for
+   * each half of the route.
+   *
+   * @param startLocation the start location of the route
+   * @param via           a location that the route should lead through
+   * @param endLocation   the end location of the route
+   * @return the route through via, or an empty route if any location is
+   *         unknown or no route exists
+   */
+  public RouteResult findRouteVia(String startLocation, String via, String endLocation) {
+    if (!locationIndex.contains(startLocation) || !locationIndex.contains(via) || !locationIndex.contains(endLocation)) {
+      return RouteResult.EMPTY;
+    }
+    RouteResult first = route(startLocation, via);
+    // the second half is only needed when the first one exists
+    return first.isEmpty() ? first : first.then(route(via, endLocation));
+  }
+
+  /**
+   * Finds the shortest route that visits a list of stops in the given order,
+   * using one search between each two consecutive stops.
+   *
+   * @param stops the locations to visit, starting with the start of the route
+   * @return the route through every stop, or an empty route if there are no
+   *         stops, a stop is unknown, or no route exists
+   */
+  public RouteResult findRouteThrough(List<String> stops) {
+    if (stops.isEmpty() || !locationIndex.containsAll(stops)) return RouteResult.EMPTY;
+    RouteResult result = new RouteResult(List.of(stops.get(0)), List.of());
+    for (int i = 1; i < stops.size() && !result.isEmpty(); i++) {
+      result = result.then(route(stops.get(i - 1), stops.get(i)));
+    }
+    return result;
+  }
+
+  /**
+   * Finds the shortest route that starts at a location and visits every stop
+   * in whatever order is cheapest, optionally ending at a fixed location. The
+   * costs between all stops are found first, with one search per stop, then
+   * the best order is chosen by a TourPlanner.
+   *
+   * @param startLocation the start location of the tour
+   * @param stops         the locations to visit in any order
+   * @param endLocation   the location to end the tour at, or null to end it
+   *                      at the last stop visited
+   * @return the cheapest tour found, or an empty route if a location is
+   *         unknown or some stop can't be reached
+   */
+  public RouteResult findTour(String startLocation, List<String> stops, String endLocation) {
+    List<String> points = new ArrayList<>();
+    points.add(startLocation);
+    points.addAll(stops);
+    if (endLocation != null) points.add(endLocation);
+    if (!locationIndex.containsAll(points)) return RouteResult.EMPTY;
+    int[] order;
+    try {
+      order = tourPlanner.order(stopCosts(points), points.size(), endLocation != null);
+    } catch (NoSuchElementException e) {
+      return RouteResult.EMPTY;
+    }
+    List<String> ordered = new ArrayList<>(points.size());
+    for (int stop : order) ordered.add(points.get(stop));
+    return findRouteThrough(ordered);
+  }
+
+  /**
+   * Finds up to k loopless routes between two locations, fastest first, with
+   * Yen's algorithm. Only DijkstraGraph supports this; with other graphs the
+   * list holds just the shortest route.
+   *
+   * @param startLocation the start location of the routes
+   * @param endLocation   the end location of the routes
+   * @param k             the largest number of routes to return
+   * @param timeoutMillis how long to keep looking for more routes
+   * @return the routes found by increasing total time, or an empty list if a
+   *         location is unknown or no route exists
+   * @throws IllegalArgumentException if k is not positive
+   */
+  @SuppressWarnings("unchecked")
+  public List<RouteResult> findShortestRoutes(String startLocation, String endLocation, int k,
+      long timeoutMillis) {
+    List<RouteResult> routes = new ArrayList<>();
+    if (!locationIndex.contains(startLocation) || !locationIndex.contains(endLocation)) return routes;
+    if (!(graph instanceof DijkstraGraph)) {
+      RouteResult route = route(startLocation, endLocation);
+      if (!route.isEmpty()) routes.add(route);
+      return routes;
+    }
+    try {
+      for (GraphPath<String> path : ((DijkstraGraph<String, Double>) graph).kShortestPaths(startLocation, endLocation, k, timeoutMillis)) {
+        routes.add(new RouteResult(path));
+      }
+    } catch (NoSuchElementException e) {
+      // no route exists, so there are no alternatives either
+    }
+    return routes;
+  }
+
+  /**
+   * Finds the fastest route between two locations followed by a few
+   * alternatives that differ enough from it and from each other and don't
+   * make pointless detours. With a DijkstraGraph they are found with the
+   * via-node method, which costs about two searches; other graphs only return
+   * the fastest route.
+   *
+   * @param startLocation the start location of the routes
+   * @param endLocation   the end location of the routes
+   * @param maxRoutes     the largest number of routes to return
+   * @return the fastest route and its alternatives by increasing total time,
+   *         or an empty list if a location is unknown or no route exists
+   */
+  @SuppressWarnings("unchecked")
+  public List<RouteResult> findAlternativeRoutes(String startLocation, String endLocation,
+      int maxRoutes) {
+    List<RouteResult> routes = new ArrayList<>();
+    if (maxRoutes < 1 || !locationIndex.contains(startLocation) || !locationIndex.contains(endLocation)) {
+      return routes;
+    }
+    if (!(graph instanceof DijkstraGraph)) {
+      RouteResult route = route(startLocation, endLocation);
+      if (!route.isEmpty()) routes.add(route);
+      return routes;
+    }
+    try {
+      for (GraphPath<String> path : ((DijkstraGraph<String, Double>) graph).alternativePaths(startLocation, endLocation, maxRoutes)) {
+        routes.add(new RouteResult(path));
+      }
+    } catch (NoSuchElementException e) {
+      // no route exists, so there are no alternatives either
+    }
+    return routes;
+  }
+
+  /**
+   * Finds the shortest route from a start location to whichever of several
+   * candidate locations is closest. With a DijkstraGraph this is a single
+   * search that stops at the first candidate it settles.
+   *
+   * @param startLocation the start location of the route
+   * @param candidates    the locations to choose the destination from
+   * @return the route to the closest candidate, or an empty route if a
+   *         location is unknown or no candidate can be reached
+   */
+  @SuppressWarnings("unchecked")
+  public RouteResult findNearest(String startLocation, List<String> candidates) {
+    if (!locationIndex.contains(startLocation) || !locationIndex.containsAll(candidates)) {
+      return RouteResult.EMPTY;
+    }
+    try {
+      if (graph instanceof DijkstraGraph) {
+        return new RouteResult(((DijkstraGraph<String, Double>) graph).nearestTarget(startLocation, candidates));
+      }
+      double[] costs = graph.shortestPathCosts(List.of(startLocation), candidates);
+      return route(startLocation, candidates.get(cheapest(costs)));
+    } catch (NoSuchElementException e) {
+      return RouteResult.EMPTY;
+    }
+  }
+
+  /**
+   * Finds the shortest route to an end location from whichever of several
+   * candidate locations is closest. With a DijkstraGraph this is a single
+   * search backward from the end location.
+   *
+   * @param candidates  the locations to choose the start from
+   * @param endLocation the end location of the route
+   * @return the route from the closest candidate, or an empty route if a
+   *         location is unknown or no candidate reaches endLocation
+   */
+  @SuppressWarnings("unchecked")
+  public RouteResult findNearestTo(List<String> candidates, String endLocation) {
+    if (!locationIndex.contains(endLocation) || !locationIndex.containsAll(candidates)) {
+      return RouteResult.EMPTY;
+    }
+    try {
+      if (graph instanceof DijkstraGraph) {
+        return new RouteResult(((DijkstraGraph<String, Double>) graph).nearestSource(candidates, endLocation));
+      }
+      double[] costs = graph.shortestPathCosts(candidates, List.of(endLocation));
+      return route(candidates.get(cheapest(costs)), endLocation);
+    } catch (NoSuchElementException e) {
+      return RouteResult.EMPTY;
+    }
+  }
+
+  // the index of the lowest cost, which has to be finite
+  private int cheapest(double[] costs) {
+    int best = -1;
+    for (int i = 0; i < costs.length; i++) {
+      if (costs[i] < Double.POSITIVE_INFINITY && (best == -1 || costs[i] < costs[best])) best = i;
+    }
+    if (best == -1) throw new NoSuchElementException("No path found");
+    return best;
+  }
+
+  /**
+   * Finds every location that can be reached from a start location within a
+   * time limit, with the walking time to reach it.
+   *
+   * @param startLocation the location to start walking from
+   * @param maxSeconds    the longest walking time to include a location for
+   * @return the walking time to each location within maxSeconds, iterated in
+   *         increasing order of time, or an empty map if startLocation is
+   *         unknown
+   */
+  public Map<String, Double> findLocationsWithin(String startLocation, double maxSeconds) {
+    Map<String, Double> reachable = new LinkedHashMap<>();
+    streamLocationsWithin(startLocation, maxSeconds, reachable::put);
+    return reachable;
+  }
+
+  /**
+   * Passes every location that can be reached from a start location within
+   * a time limit to a consumer, nearest first, as soon as it is found. With
+   * a DijkstraGraph this is a single search that stops at the time limit.
+   *
+   * @param startLocation the location to start walking from
+   * @param maxSeconds    the longest walking time to include a location for
+   * @param consumer      called with each location within maxSeconds and its
+   *                      walking time
+   */
+  @SuppressWarnings("unchecked")
+  public void streamLocationsWithin(String startLocation, double maxSeconds,
+      BiConsumer<String, Double> consumer) {
+    if (!locationIndex.contains(startLocation)) return;
+    if (graph instanceof DijkstraGraph) {
+      ((DijkstraGraph<String, Double>) graph).reachableWithin(startLocation, maxSeconds, consumer);
+      return;
+    }
+    // other graphs only offer point to point costs, so all of them are
+    // found first and then sorted
+    List<String> all = locations;
+    double[] costs = graph.shortestPathCosts(List.of(startLocation), all);
+    List<Integer> within = new ArrayList<>();
+    for (int i = 0; i < costs.length; i++) {
+      if (costs[i] <= maxSeconds) within.add(i);
+    }
+    within.sort(Comparator.comparingDouble(i -> costs[i]));
+    for (int i : within) consumer.accept(all.get(i), costs[i]);
+  }
+
   /**
    * Finds the shortest path between two locations.
    *
@@ -76,11 +633,7 @@ public class Backend implements BackendInterface {
    * @return a list of locations representing the shortest path between the start and end locations
    */
   public List<String> findShortestPath(String startLocation, String endLocation) {
-    // if either location is not in the list of locations, return an empty list
-    if (!locations.contains(startLocation) || !locations.contains(endLocation)) {
-      return Arrays.asList();
-    }
-    return graph.shortestPathData(startLocation, endLocation);
+    return new ArrayList<>(findRoute(startLocation, endLocation).getLocations());
   }
 
   /**
@@ -91,20 +644,7 @@ public class Backend implements BackendInterface {
    * @return a list of travel times between locations on the path
    */
   public List<Double> getTravelTimesOnPath(String startLocation, String endLocation) {
-    if (!locations.contains(startLocation) || !locations.contains(endLocation)) {
-      return Arrays.asList();
-    }
-    List<String> path = findShortestPath(startLocation, endLocation);
-    List<Double> travelTimes = new ArrayList<>();
-    // for each edge in the path, get the weight of the edge
-    for (int i = 0; i < path.size() - 1; i++) {
-      try {
-        travelTimes.add(graph.getEdge(path.get(i), path.get(i + 1)));
-      } catch (Exception e) {
-        System.out.println("Error getting edge weight:\n" + e);
-      }
-    }
-    return travelTimes;
+    return new ArrayList<>(findRoute(startLocation, endLocation).getLegSeconds());
   }
 
   /**
@@ -116,17 +656,7 @@ public class Backend implements BackendInterface {
    * @return a list of locations representing the shortest path between the start and end locations
    */
   public List<String> findShortestPathVia(String startLocation, String via, String endLocation) {
-    if (!locations.contains(startLocation) || !locations.contains(via) || !locations.contains(endLocation)) {
-      return Arrays.asList();
-    }
-    List<String> path1 = graph.shortestPathData(startLocation, via);
-    List<String> path2 = graph.shortestPathData(via, endLocation);
-    System.out.println("path1: " + path1);
-    System.out.println("path2: " + path2);
-    // put them together into one path
-    // make sure to NOT add first location in path2 because that would be a duplicate
-    path1.addAll(path2.subList(1, path2.size()));
-    return path1;
+    return new ArrayList<>(findRouteVia(startLocation, via, endLocation).getLocations());
   }
 
   /**
@@ -138,19 +668,7 @@ public class Backend implements BackendInterface {
    * @return a list of travel times between locations on the path
    */
   public List<Double> getTravelTimesOnPathVia(String startLocation, String via, String endLocation) {
-    if (!locations.contains(startLocation) || !locations.contains(via) || !locations.contains(endLocation)) {
-      return Arrays.asList();
-    }
-    List<String> path = findShortestPathVia(startLocation, via, endLocation);
-    List<Double> travelTimes = new ArrayList<>();
-    for (int i = 0; i < path.size() - 1; i++) {
-      try {
-        travelTimes.add(graph.getEdge(path.get(i), path.get(i + 1)));
-      } catch (Exception e) {
-        System.out.println("Error getting edge weight:\n" + e);
-      }
-    }
-    return travelTimes;
+    return new ArrayList<>(findRouteVia(startLocation, via, endLocation).getLegSeconds());
   }
 
 }
@@ -4,10 +4,42 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.testfx.framework.junit5.ApplicationTest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Testers for the Backend class. These tests are designed to test the Backend class and its methods.
@@ -42,6 +74,132 @@ public class BackendDeveloperTests extends ApplicationTest {
     }
   }
 
+  /**
+   * Tests that DotReader finds the same locations and edges no matter how the file is cut into
+   * pieces, and that a malformed edge line fails with its line number.
+   */
+  @Test
+  public void testDotReader() throws IOException {
+    DotReader whole = DotReader.read("campus.dot");
+    DotReader pieces = DotReader.read("campus.dot", 100, ForkJoinPool.commonPool());
+    Assertions.assertEquals(whole.getLocations(), pieces.getLocations());
+    Assertions.assertEquals(whole.getEdgeCount(), pieces.getEdgeCount());
+    for (int i = 0; i < whole.getEdgeCount(); i++) {
+      Assertions.assertEquals(whole.getSource(i), pieces.getSource(i));
+      Assertions.assertEquals(whole.getTarget(i), pieces.getTarget(i));
+      Assertions.assertEquals(whole.getSeconds(i), pieces.getSeconds(i));
+    }
+    // the first edge of campus.dot, with a time that needs more digits than the fast path takes
+    Assertions.assertEquals(List.of("Memorial Union", "Science Hall", "Brat Stand"),
+        whole.getLocations().subList(0, 3));
+    Assertions.assertEquals(105.8, whole.getSeconds(0));
+    Assertions.assertEquals(156.49999999999997, whole.getSeconds(1));
+
+    File file = File.createTempFile("malformed", ".dot");
+    file.deleteOnExit();
+    try (FileWriter writer = new FileWriter(file)) {
+      writer.write("digraph G {\n  \"A\" -> \"B\" [seconds=1.0];\n  \"B\" -> \"C\" [seconds=x];\n}\n");
+    }
+    IOException e = Assertions.assertThrows(IOException.class,
+        () -> new Backend(new DijkstraGraph<>()).loadGraphData(file.getPath()));
+    Assertions.assertTrue(e.getMessage().contains(":3: "), e.getMessage());
+  }
+
+  /**
+   * Tests that a graph saved to a binary graph file loads back with the same locations, edges and
+   * routes, and that a corrupted file is rejected.
+   */
+  @Test
+  public void testGraphFile() throws IOException {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    Backend backend = new Backend(graph);
+    backend.loadGraphData("campus.dot");
+    File file = File.createTempFile("campus", ".graph");
+    file.deleteOnExit();
+    backend.saveGraphData(file.getPath());
+    Assertions.assertTrue(GraphFile.isGraphFile(file.getPath()));
+    Assertions.assertFalse(GraphFile.isGraphFile("campus.dot"));
+
+    DijkstraGraph<String, Double> loadedGraph = new DijkstraGraph<>();
+    Backend loaded = new Backend(loadedGraph);
+    loaded.loadGraphData(file.getPath());
+    Assertions.assertEquals(graph.getSnapshot().fingerprint(),
+        loadedGraph.getSnapshot().fingerprint());
+    Assertions.assertEquals(new HashSet<>(backend.getListOfAllLocations()),
+        new HashSet<>(loaded.getListOfAllLocations()));
+    List<String> locations = backend.getListOfAllLocations();
+    for (int i = 0; i < locations.size(); i += 7) {
+      String end = locations.get((3 * i + 5) % locations.size());
+      Assertions.assertEquals(backend.findRoute(locations.get(i), end).getTotalSeconds(),
+          loaded.findRoute(locations.get(i), end).getTotalSeconds());
+    }
+
+    // flip one bit of the last location name, which the checksum has to notice
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      long position = raf.length() - 1;
+      raf.seek(position);
+      int last = raf.read();
+      raf.seek(position);
+      raf.write(last ^ 1);
+    }
+    Assertions.assertThrows(IOException.class,
+        () -> new Backend(new DijkstraGraph<>()).loadGraphData(file.getPath()));
+
+    // one more node and three fewer index slots keep the size of the file, but the checksum
+    // doesn't cover the header, so the header itself has to be rejected
+    backend.saveGraphData(file.getPath());
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      ByteBuffer header =
+          ByteBuffer.allocate(GraphFile.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      raf.readFully(header.array());
+      header.putInt(8, header.getInt(8) + 1).putInt(20, header.getInt(20) - 3);
+      raf.seek(0);
+      raf.write(header.array());
+    }
+    Assertions.assertThrows(IOException.class,
+        () -> new Backend(new DijkstraGraph<>()).loadGraphData(file.getPath()));
+    Assertions.assertThrows(IOException.class, () -> new MappedGraph().map(file.getPath()));
+  }
+
+  /**
+   * Tests that a MappedGraph answers route queries on a mapped graph file like the DijkstraGraph
+   * the file was written from, and that it can't be changed or filled from a dot file.
+   */
+  @Test
+  public void testMappedGraph() throws IOException {
+    DijkstraGraph<String, Double> original = new DijkstraGraph<>();
+    Backend backend = new Backend(original);
+    backend.loadGraphData("campus.dot");
+    File file = File.createTempFile("campus", ".graph");
+    file.deleteOnExit();
+    backend.saveGraphData(file.getPath());
+
+    MappedGraph graph = new MappedGraph();
+    Backend mapped = new Backend(graph);
+    mapped.loadGraphData(file.getPath());
+    List<String> locations = backend.getListOfAllLocations();
+    Assertions.assertEquals(new HashSet<>(locations),
+        new HashSet<>(mapped.getListOfAllLocations()));
+    for (int i = 0; i < locations.size(); i += 3) {
+      String start = locations.get(i);
+      String end = locations.get((7 * i + 11) % locations.size());
+      RouteResult expected = backend.findRoute(start, end);
+      RouteResult actual = mapped.findRoute(start, end);
+      Assertions.assertEquals(expected.isEmpty(), actual.isEmpty());
+      Assertions.assertEquals(expected.getTotalSeconds(), actual.getTotalSeconds(), 1e-9);
+    }
+    Assertions.assertTrue(mapped.findRoute("Memorial Union", "Nowhere").isEmpty());
+    Assertions.assertEquals(105.8, (double) graph.getEdge("Memorial Union", "Science Hall"));
+    // the matrix searches stop once every target is settled, with the same costs
+    List<String> targets = List.of("Science Hall", locations.get(5), locations.get(50),
+        "Science Hall");
+    Assertions.assertArrayEquals(original.shortestPathCosts(locations.subList(0, 20), targets),
+        graph.shortestPathCosts(locations.subList(0, 20), targets));
+    Assertions.assertThrows(UnsupportedOperationException.class,
+        () -> graph.insertNode("Nowhere"));
+    Assertions.assertThrows(IOException.class, () -> mapped.loadGraphData("campus.dot"));
+  }
+
   /**
    * Test method for getListOfAllLocations method in the BackendInterface.
    */
@@ -138,6 +296,658 @@ public class BackendDeveloperTests extends ApplicationTest {
     Assertions.assertEquals(Arrays.asList(), backend2.getTravelTimesOnPathVia("G", "B", "P"));
   }
 
+  /**
+   * Tests that a backend answering from a precomputed distance table returns the same paths
+   * and travel times as one that searches, that a change through updateGraph builds a new
+   * table in the background, and that it stops using the table once the graph changes.
+   */
+  @Test
+  public void testDistanceTable() {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    Backend table = new Backend(graph);
+    Backend search = new Backend(new DijkstraGraph<>());
+    // a limit of zero nodes keeps the second backend from building a table
+    search.setDistanceTableLimits(0, 0);
+    try {
+      table.loadGraphData("campus.dot");
+      search.loadGraphData("campus.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    Assertions.assertTrue(table.usesDistanceTable());
+    Assertions.assertFalse(search.usesDistanceTable());
+    List<String> locations = search.getListOfAllLocations();
+    for (int i = 0; i < locations.size(); i += 7) {
+      String start = locations.get(i);
+      String end = locations.get((i * 31 + 5) % locations.size());
+      String via = locations.get((i * 17 + 3) % locations.size());
+      Assertions.assertEquals(search.findShortestPath(start, end), table.findShortestPath(start, end));
+      Assertions.assertEquals(search.getTravelTimesOnPath(start, end), table.getTravelTimesOnPath(start, end));
+      Assertions.assertEquals(search.findShortestPathVia(start, via, end), table.findShortestPathVia(start, via, end));
+      Assertions.assertEquals(search.findRouteVia(start, via, end), table.findRouteVia(start, via, end));
+    }
+    // a change through the backend builds the table again in the background
+    String from = locations.get(0);
+    String to = locations.get(1);
+    table.updateGraph(changes -> changes.insertEdge(from, to, 0.5));
+    table.awaitDistanceTable();
+    Assertions.assertTrue(table.usesDistanceTable());
+    Assertions.assertEquals(List.of(from, to), table.findShortestPath(from, to));
+    graph.insertNode("New Building");
+    Assertions.assertFalse(table.usesDistanceTable());
+  }
+
+  /**
+   * Tests that a CachingBackend answers repeated queries without asking the backend again, and
+   * that it stops using cached answers when the graph changes or their time to live runs out.
+   */
+  @Test
+  public void testCachingBackend() throws InterruptedException {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    CachingBackend backend = new CachingBackend(new Backend(graph), graph, 100, 0);
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    // finding a path and then its travel times only computes the route once
+    Assertions.assertEquals(Arrays.asList("A", "D", "B", "E"), backend.findShortestPath("A", "E"));
+    Assertions.assertEquals(Arrays.asList(4.0, 2.0, 1.0), backend.getTravelTimesOnPath("A", "E"));
+    Assertions.assertEquals(Arrays.asList(4.0, 2.0, 1.0), backend.getTravelTimesOnPath("A", "E"));
+    Assertions.assertEquals(1, backend.getMisses());
+    Assertions.assertEquals(2, backend.getHits());
+    // a cheaper edge changes the graph, so the cached path is not used anymore
+    graph.insertEdge("A", "E", 1.0);
+    Assertions.assertEquals(Arrays.asList("A", "E"), backend.findShortestPath("A", "E"));
+    Assertions.assertEquals(Arrays.asList(1.0), backend.getTravelTimesOnPath("A", "E"));
+    // answers expire after their time to live
+    CachingBackend shortLived = new CachingBackend(new Backend(graph), graph, 100, 1);
+    shortLived.findShortestPath("A", "E");
+    Thread.sleep(5);
+    shortLived.findShortestPath("A", "E");
+    Assertions.assertEquals(2, shortLived.getMisses());
+    Assertions.assertEquals(0, shortLived.getHits());
+  }
+
+  /**
+   * Tests that findRoute returns the locations, leg times and total time of the shortest path
+   * together, that findRouteVia joins both halves, and that unknown locations give an empty
+   * route.
+   */
+  @Test
+  public void testFindRoute() {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    RouteResult route = backend.findRoute("A", "E");
+    Assertions.assertEquals(Arrays.asList("A", "D", "B", "E"), route.getLocations());
+    Assertions.assertEquals(Arrays.asList(4.0, 2.0, 1.0), route.getLegSeconds());
+    Assertions.assertEquals(Arrays.asList(0.0, 4.0, 6.0, 7.0), route.getCumulativeSeconds());
+    Assertions.assertEquals(7.0, route.getTotalSeconds());
+    // the older methods answer from the same route
+    Assertions.assertEquals(route.getLocations(), backend.findShortestPath("A", "E"));
+    Assertions.assertEquals(route.getLegSeconds(), backend.getTravelTimesOnPath("A", "E"));
+    RouteResult via = backend.findRouteVia("A", "B", "E");
+    Assertions.assertEquals(via.getLocations(), backend.findShortestPathVia("A", "B", "E"));
+    Assertions.assertEquals(via.getLegSeconds(), backend.getTravelTimesOnPathVia("A", "B", "E"));
+    Assertions.assertEquals(7.0, via.getTotalSeconds());
+    // Z is not a location, so there is no route to or through it
+    Assertions.assertTrue(backend.findRoute("A", "Z").isEmpty());
+    Assertions.assertTrue(backend.findRouteVia("A", "Z", "E").isEmpty());
+    Assertions.assertEquals(List.of(), backend.getTravelTimesOnPath("A", "Z"));
+  }
+
+
+  /**
+   * Tests that findTour visits the stops in the cheapest order, with and
+   * without a fixed end, that findRouteThrough keeps the given order, and
+   * that the heuristic used for long tours returns a valid order that is close
+   * to the exact one.
+   */
+  @Test
+  public void testFindTour() {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    // visiting C before E takes 1 + 8 seconds, the other way around 7 + 8
+    RouteResult tour = backend.findTour("A", Arrays.asList("E", "C"), null);
+    Assertions.assertEquals(Arrays.asList("A", "C", "A", "D", "B", "E"), tour.getLocations());
+    Assertions.assertEquals(9.0, tour.getTotalSeconds());
+    Assertions.assertEquals(tour, backend.findRouteThrough(Arrays.asList("A", "C", "E")));
+    Assertions.assertEquals(15.0, backend.findRouteThrough(Arrays.asList("A", "E", "C")).getTotalSeconds());
+    // a fixed end is always visited last
+    RouteResult toC = backend.findTour("A", Arrays.asList("E", "B"), "C");
+    Assertions.assertEquals("C", toC.getLocations().get(toC.getLocations().size() - 1));
+    Assertions.assertEquals(15.0, toC.getTotalSeconds());
+    Assertions.assertTrue(backend.findTour("A", Arrays.asList("Z"), null).isEmpty());
+
+    // random costs between 14 stops, ordered exactly and by the heuristic
+    Random random = new Random(400);
+    int count = 14;
+    double[] costs = new double[count * count];
+    for (int i = 0; i < costs.length; i++) costs[i] = 1 + random.nextInt(100);
+    TourPlanner exact = new TourPlanner(100);
+    exact.setExactStopLimit(count - 2);
+    TourPlanner heuristic = new TourPlanner(100);
+    heuristic.setExactStopLimit(0);
+    int[] best = exact.order(costs, count, true);
+    int[] found = heuristic.order(costs, count, true);
+    Assertions.assertEquals(0, found[0]);
+    Assertions.assertEquals(count - 1, found[count - 1]);
+    int[] sorted = found.clone();
+    Arrays.sort(sorted);
+    for (int i = 0; i < count; i++) Assertions.assertEquals(i, sorted[i]);
+    double bestCost = TourPlanner.tourCost(best, costs, count);
+    double foundCost = TourPlanner.tourCost(found, costs, count);
+    Assertions.assertTrue(foundCost >= bestCost && foundCost <= 1.5 * bestCost);
+  }
+
+  /**
+   * Tests that findLocationsWithin returns the locations within a walking
+   * time, nearest first, and that streamLocationsWithin passes on the same
+   * locations in the same order.
+   */
+  @Test
+  public void testLocationsWithin() {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    Map<String, Double> within = backend.findLocationsWithin("A", 6.0);
+    Assertions.assertEquals(Arrays.asList("A", "C", "D", "B"), new ArrayList<>(within.keySet()));
+    Assertions.assertEquals(Arrays.asList(0.0, 1.0, 4.0, 6.0), new ArrayList<>(within.values()));
+    List<String> streamed = new ArrayList<>();
+    backend.streamLocationsWithin("A", 6.0, (location, seconds) -> streamed.add(location));
+    Assertions.assertEquals(new ArrayList<>(within.keySet()), streamed);
+    Assertions.assertEquals(Map.of("E", 0.0), backend.findLocationsWithin("E", 0.5));
+    Assertions.assertTrue(backend.findLocationsWithin("Z", 100.0).isEmpty());
+  }
+
+  /**
+   * Tests that findNearest and findNearestTo choose the closest candidate,
+   * and return an empty route when there is none.
+   */
+  @Test
+  public void testFindNearest() {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    // from A, B takes 6 seconds and E takes 7
+    RouteResult nearest = backend.findNearest("A", Arrays.asList("E", "B"));
+    Assertions.assertEquals(Arrays.asList("A", "D", "B"), nearest.getLocations());
+    Assertions.assertEquals(6.0, nearest.getTotalSeconds());
+    // to C, A takes 1 second and D takes 5
+    RouteResult nearestTo = backend.findNearestTo(Arrays.asList("D", "A"), "C");
+    Assertions.assertEquals(Arrays.asList("A", "C"), nearestTo.getLocations());
+    Assertions.assertEquals(1.0, nearestTo.getTotalSeconds());
+    Assertions.assertEquals(Arrays.asList("B"), backend.findNearest("B", Arrays.asList("E", "B")).getLocations());
+    Assertions.assertTrue(backend.findNearest("A", Arrays.asList()).isEmpty());
+    Assertions.assertTrue(backend.findNearestTo(Arrays.asList("Z"), "C").isEmpty());
+  }
+
+  /**
+   * Tests that findShortestRoutes returns distinct routes by increasing time,
+   * starting with the route that findRoute returns.
+   */
+  @Test
+  public void testFindShortestRoutes() {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    List<RouteResult> routes = backend.findShortestRoutes("A", "E", 3, 1000);
+    Assertions.assertEquals(3, routes.size());
+    Assertions.assertEquals(backend.findRoute("A", "E"), routes.get(0));
+    // A-C-E and A-D-E take 11 and 14 seconds, A-B-E takes 16
+    Assertions.assertEquals(Arrays.asList("A", "C", "E"), routes.get(1).getLocations());
+    Assertions.assertEquals(11.0, routes.get(1).getTotalSeconds());
+    Assertions.assertEquals(14.0, routes.get(2).getTotalSeconds());
+    Assertions.assertEquals(1, backend.findShortestRoutes("A", "A", 3, 1000).size());
+    Assertions.assertTrue(backend.findShortestRoutes("A", "Z", 3, 1000).isEmpty());
+  }
+
+  /**
+   * Tests that alternative routes start with the fastest route and are different from each other
+   * and not much slower, and that the detours of graph2 are not offered as alternatives.
+   */
+  @Test
+  public void testFindAlternativeRoutes() {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    // A-C-E and A-D-E both walk a longer way than needed between their last two locations
+    List<RouteResult> routes = backend.findAlternativeRoutes("A", "E", 3);
+    Assertions.assertEquals(List.of(backend.findRoute("A", "E")), routes);
+    Assertions.assertTrue(backend.findAlternativeRoutes("A", "E", 0).isEmpty());
+    Assertions.assertTrue(backend.findAlternativeRoutes("A", "Z", 3).isEmpty());
+
+    backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("campus.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    List<String> locations = backend.getListOfAllLocations();
+    Random random = new Random(17);
+    for (int i = 0; i < 20; i++) {
+      String start = locations.get(random.nextInt(locations.size()));
+      String end = locations.get(random.nextInt(locations.size()));
+      routes = backend.findAlternativeRoutes(start, end, 3);
+      RouteResult fastest = backend.findRoute(start, end);
+      if (fastest.isEmpty()) {
+        Assertions.assertTrue(routes.isEmpty());
+        continue;
+      }
+      Assertions.assertEquals(fastest, routes.get(0));
+      Assertions.assertTrue(routes.size() <= 3);
+      for (RouteResult route : routes) {
+        Assertions.assertEquals(route.getLocations().size(),
+            new HashSet<>(route.getLocations()).size());
+        Assertions.assertTrue(route.getTotalSeconds() <= 1.25 * fastest.getTotalSeconds() + 1e-9);
+      }
+      Assertions.assertEquals(routes.size(), new HashSet<>(routes).size());
+    }
+  }
+
+  /**
+   * Tests that route queries on several threads only see complete updates of the graph. Each
+   * update of graph2 moves walking time between D -> B and B -> E, so that the fastest route from
+   * A to E always takes 7 seconds, and adds or removes location F.
+   */
+  @Test
+  public void testConcurrentUpdates() throws InterruptedException {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    AtomicBoolean done = new AtomicBoolean(false);
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 3; t++) {
+      Thread reader = new Thread(() -> {
+        try {
+          while (!done.get()) {
+            RouteResult route = backend.findRoute("A", "E");
+            Assertions.assertEquals(List.of("A", "D", "B", "E"), route.getLocations());
+            Assertions.assertEquals(7.0, route.getTotalSeconds());
+            Assertions.assertEquals(3.0,
+                route.getLegSeconds().get(1) + route.getLegSeconds().get(2));
+            int count = backend.getListOfAllLocations().size();
+            Assertions.assertTrue(count == 5 || count == 6);
+          }
+        } catch (Throwable e) {
+          failures.add(e);
+        }
+      });
+      readers.add(reader);
+      reader.start();
+    }
+    for (int round = 0; round < 200; round++) {
+      double seconds = 0.5 * (1 + round % 5);
+      boolean withF = round % 2 == 0;
+      backend.updateGraph(graph -> {
+        graph.insertEdge("D", "B", seconds);
+        // give the readers every chance to run between two changes
+        Thread.yield();
+        if (withF) {
+          graph.insertNode("F");
+          graph.insertEdge("E", "F", 1.0);
+        } else {
+          graph.removeNode("F");
+        }
+        graph.insertEdge("B", "E", 3.0 - seconds);
+      });
+    }
+    done.set(true);
+    for (Thread reader : readers) reader.join();
+    Assertions.assertTrue(failures.isEmpty(), failures.toString());
+    Assertions.assertEquals(List.of("A", "C", "B", "E", "D"), backend.getListOfAllLocations());
+    backend.awaitDistanceTable();
+    Assertions.assertTrue(backend.usesDistanceTable());
+    Assertions.assertEquals(List.of(2.5, 0.5), backend.getTravelTimesOnPath("D", "E"));
+  }
+
+  /**
+   * Tests that the asynchronous queries of AsyncBackend answer like the blocking ones, that
+   * queries beyond the concurrency limit wait and can be cancelled before they start, that a
+   * waiting query fails with a TimeoutException at its deadline, and that queries are refused
+   * once the queue is full.
+   */
+  @Test
+  public void testAsyncBackend() throws Exception {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    try (AsyncBackend async = new AsyncBackend(backend, null, 1, 2, 0)) {
+      Assertions.assertEquals(backend.findShortestPath("A", "E"),
+          async.findShortestPathAsync("A", "E").get());
+      Assertions.assertEquals(backend.getTravelTimesOnPath("A", "E"),
+          async.getTravelTimesOnPathAsync("A", "E").get());
+      Assertions.assertEquals(backend.findShortestPathVia("A", "C", "E"),
+          async.findShortestPathViaAsync("A", "C", "E").get());
+      Assertions.assertEquals(backend.getTravelTimesOnPathVia("A", "C", "E"),
+          async.getTravelTimesOnPathViaAsync("A", "C", "E", 1000).get());
+      Assertions.assertTrue(async.findShortestPathAsync("A", "Z").get().isEmpty());
+
+      // the only place for a running query is taken until the latch opens
+      CountDownLatch latch = new CountDownLatch(1);
+      CompletableFuture<Boolean> blocker = async.supplyAsync(() -> {
+        try {
+          return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          return false;
+        }
+      }, 0);
+      CompletableFuture<List<String>> cancelled = async.findShortestPathAsync("A", "E");
+      CompletableFuture<List<String>> late = async.findShortestPathAsync("A", "E", 50);
+      Assertions.assertEquals(2, async.getQueuedCount());
+      ExecutionException refused = Assertions.assertThrows(ExecutionException.class,
+          () -> async.findShortestPathAsync("A", "E").get());
+      Assertions.assertTrue(refused.getCause() instanceof RejectedExecutionException);
+      Assertions.assertTrue(cancelled.cancel(true));
+      ExecutionException timedOut = Assertions.assertThrows(ExecutionException.class,
+          () -> late.get());
+      Assertions.assertTrue(timedOut.getCause() instanceof TimeoutException);
+      latch.countDown();
+      Assertions.assertTrue(blocker.get());
+      Assertions.assertTrue(cancelled.isCancelled());
+      Assertions.assertEquals(List.of("A", "D", "B", "E"),
+          async.findShortestPathAsync("A", "E").get());
+      Assertions.assertEquals(0, async.getQueuedCount());
+    }
+  }
+
+  /**
+   * Tests that identical route queries on several threads share one computation of the wrapped
+   * backend and all receive its answer, that via queries are coalesced by all three locations,
+   * and that a CachingBackend in front of the coalescing layer caches the shared answer.
+   */
+  @Test
+  public void testCoalescingBackend() throws Exception {
+    AtomicReference<CountDownLatch> release = new AtomicReference<>(new CountDownLatch(1));
+    AtomicInteger searches = new AtomicInteger();
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    Backend slow = new Backend(graph) {
+      @Override
+      public RouteResult findRoute(String startLocation, String endLocation) {
+        searches.incrementAndGet();
+        try {
+          release.get().await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.findRoute(startLocation, endLocation);
+      }
+    };
+    try {
+      slow.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    CoalescingBackend backend = new CoalescingBackend(slow);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<List<String>>> paths = new ArrayList<>();
+    for (int i = 0; i < 8; i++) paths.add(pool.submit(() -> backend.findShortestPath("A", "E")));
+    // wait until every query but the first is waiting for the first one's search
+    long waited = System.nanoTime();
+    while (backend.getCoalesced() < 7 && System.nanoTime() - waited < 5_000_000_000L) {
+      Thread.sleep(1);
+    }
+    release.get().countDown();
+    for (Future<List<String>> path : paths) {
+      Assertions.assertEquals(List.of("A", "D", "B", "E"), path.get());
+    }
+    pool.shutdown();
+    Assertions.assertEquals(1, searches.get());
+    Assertions.assertEquals(1, backend.getComputations());
+    Assertions.assertEquals(7, backend.getCoalesced());
+    Assertions.assertEquals(0, backend.getInFlightCount());
+
+    // nothing is kept after the computation ends, and a via query has a key of its own
+    Assertions.assertEquals(List.of(1.0, 1.0, 4.0, 2.0, 1.0),
+        backend.getTravelTimesOnPathVia("A", "C", "E"));
+    backend.findShortestPath("A", "E");
+    Assertions.assertEquals(2, searches.get());
+    Assertions.assertEquals(3, backend.getComputations());
+
+    CachingBackend cached = new CachingBackend(backend, graph, 10, 0);
+    cached.findRoute("A", "E");
+    cached.findRoute("A", "E");
+    Assertions.assertEquals(3, searches.get());
+    Assertions.assertEquals(1, cached.getHits());
+
+    // a query waiting for a shared search gives its thread back when its deadline passes
+    release.set(new CountDownLatch(1));
+    try (AsyncBackend async = new AsyncBackend(backend, null, 2, 10, 0)) {
+      CompletableFuture<List<String>> leader = async.findShortestPathAsync("A", "B");
+      waited = System.nanoTime();
+      while (backend.getInFlightCount() == 0 && System.nanoTime() - waited < 5_000_000_000L) {
+        Thread.sleep(1);
+      }
+      CompletableFuture<List<String>> late = async.findShortestPathAsync("A", "B", 50);
+      ExecutionException timedOut = Assertions.assertThrows(ExecutionException.class,
+          () -> late.get());
+      Assertions.assertTrue(timedOut.getCause() instanceof TimeoutException);
+      waited = System.nanoTime();
+      while (async.getRunningCount() > 1 && System.nanoTime() - waited < 5_000_000_000L) {
+        Thread.sleep(1);
+      }
+      Assertions.assertEquals(1, async.getRunningCount());
+      Assertions.assertEquals(7, backend.getCoalesced());
+      release.get().countDown();
+      Assertions.assertEquals(backend.findShortestPath("A", "B"), leader.get());
+    }
+  }
+
+  /**
+   * Tests that Json writes values that it reads back unchanged, escaping strings and writing
+   * numbers that aren't finite as null, and that it rejects malformed documents.
+   */
+  @Test
+  public void testJson() {
+    Map<String, Object> value = new LinkedHashMap<>();
+    value.put("name", "Memorial \"Union\"\n\\ \u0001");
+    value.put("seconds", List.of(1.0, 2.5, -3.0));
+    value.put("found", true);
+    value.put("nothing", null);
+    value.put("nested", Map.of("empty", List.of()));
+    String text = Json.toString(value);
+    Assertions.assertTrue(text.startsWith("{\"name\":\"Memorial \\\"Union\\\"\\n\\\\ \\u0001\","));
+    Assertions.assertTrue(text.contains("\"seconds\":[1,2.5,-3]"));
+    Assertions.assertEquals(value, Json.parse(text));
+    Assertions.assertEquals("[1,null,null]",
+        Json.toString(new double[] {1, Double.POSITIVE_INFINITY, Double.NaN}));
+    Assertions.assertEquals(List.of("\u00e9", 0.5),
+        Json.parse(" [ \"\\u00e9\" , 5e-1 ] "));
+    for (String malformed : new String[] {"", "[1,]", "{\"a\" 1}", "\"open", "[1] 2", "tru"}) {
+      Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parse(malformed));
+    }
+    // deep nesting is refused instead of overflowing the stack
+    Assertions.assertEquals(1, ((List<?>) Json.parse("[".repeat(200) + "]".repeat(200))).size());
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> Json.parse("[".repeat(100_000)));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> Json.parse("{\"a\":".repeat(100_000)));
+  }
+
+  /**
+   * Tests the endpoints of RoutingServer against the answers of its backend: the locations,
+   * single and batched route and via queries, a matrix, an isochrone, and the statuses of bad
+   * requests.
+   */
+  @Test
+  public void testRoutingServer() throws Exception {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    Backend backend = new Backend(graph);
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    try (RoutingServer server = new RoutingServer(backend, graph,
+        new InetSocketAddress("localhost", 0))) {
+      server.start();
+      String url = "http://localhost:" + server.getPort();
+      HttpClient client = HttpClient.newHttpClient();
+      Map<String, HttpResponse<String>> responses = new LinkedHashMap<>();
+      for (String path : new String[] {"/locations", "/route?from=A&to=E", "/route?from=A&to=Z",
+          "/via?from=A&via=C&to=E", "/isochrone?from=A&seconds=3", "/route?from=A",
+          "/isochrone?from=A&seconds=x", "/nowhere"}) {
+        responses.put(path, client.send(HttpRequest.newBuilder(URI.create(url + path)).build(),
+            HttpResponse.BodyHandlers.ofString()));
+      }
+      Assertions.assertEquals(backend.getListOfAllLocations(),
+          Json.parse(responses.get("/locations").body()));
+      Map<?, ?> route = (Map<?, ?>) Json.parse(responses.get("/route?from=A&to=E").body());
+      Assertions.assertEquals(true, route.get("found"));
+      Assertions.assertEquals(backend.findShortestPath("A", "E"), route.get("locations"));
+      Assertions.assertEquals(backend.getTravelTimesOnPath("A", "E"), route.get("legSeconds"));
+      Assertions.assertEquals(backend.findRoute("A", "E").getTotalSeconds(),
+          route.get("totalSeconds"));
+      Map<?, ?> missing = (Map<?, ?>) Json.parse(responses.get("/route?from=A&to=Z").body());
+      Assertions.assertEquals(false, missing.get("found"));
+      Assertions.assertNull(missing.get("totalSeconds"));
+      Map<?, ?> via = (Map<?, ?>) Json.parse(responses.get("/via?from=A&via=C&to=E").body());
+      Assertions.assertEquals(backend.findShortestPathVia("A", "C", "E"), via.get("locations"));
+      Map<?, ?> isochrone =
+          (Map<?, ?>) Json.parse(responses.get("/isochrone?from=A&seconds=3").body());
+      List<String> within = new ArrayList<>();
+      for (Object location : (List<?>) isochrone.get("locations")) {
+        within.add((String) ((Map<?, ?>) location).get("location"));
+      }
+      Assertions.assertTrue(within.size() > 1);
+      Assertions.assertEquals(new ArrayList<>(backend.findLocationsWithin("A", 3).keySet()),
+          within);
+      Assertions.assertEquals(400, responses.get("/route?from=A").statusCode());
+      Assertions.assertTrue(responses.get("/route?from=A").body().contains("missing parameter"));
+      Assertions.assertEquals(400, responses.get("/isochrone?from=A&seconds=x").statusCode());
+      Assertions.assertEquals(404, responses.get("/nowhere").statusCode());
+
+      // batches are answered in order, and the matrix matches the graph
+      HttpResponse<String> batch = client.send(HttpRequest.newBuilder(URI.create(url + "/route"))
+          .POST(HttpRequest.BodyPublishers.ofString(
+              "[{\"from\": \"A\", \"to\": \"E\"}, {\"from\": \"E\", \"to\": \"A\"}]")).build(),
+          HttpResponse.BodyHandlers.ofString());
+      List<?> routes = (List<?>) Json.parse(batch.body());
+      Assertions.assertEquals(2, routes.size());
+      Assertions.assertEquals(route, routes.get(0));
+      Assertions.assertEquals(backend.findShortestPath("E", "A"),
+          ((Map<?, ?>) routes.get(1)).get("locations"));
+      HttpResponse<String> matrix = client.send(HttpRequest.newBuilder(URI.create(url + "/matrix"))
+          .POST(HttpRequest.BodyPublishers.ofString(
+              "{\"sources\": [\"A\", \"E\"], \"targets\": [\"E\", \"C\"]}")).build(),
+          HttpResponse.BodyHandlers.ofString());
+      List<?> seconds = (List<?>) ((Map<?, ?>) Json.parse(matrix.body())).get("seconds");
+      Assertions.assertEquals(List.of(graph.shortestPathCost("A", "E"),
+          graph.shortestPathCost("A", "C")), seconds.get(0));
+      Assertions.assertEquals(List.of(0.0, graph.shortestPathCost("E", "C")), seconds.get(1));
+      HttpResponse<String> unknown = client.send(
+          HttpRequest.newBuilder(URI.create(url + "/matrix?source=A&target=Z")).build(),
+          HttpResponse.BodyHandlers.ofString());
+      Assertions.assertEquals(400, unknown.statusCode());
+      // matrices larger than the limit and bodies nested too deeply are refused
+      server.setMaxMatrixCells(3);
+      HttpResponse<String> large = client.send(
+          HttpRequest.newBuilder(URI.create(url + "/matrix?source=A&source=E&target=E&target=C"))
+              .build(), HttpResponse.BodyHandlers.ofString());
+      Assertions.assertEquals(413, large.statusCode());
+      HttpResponse<String> deep = client.send(HttpRequest.newBuilder(URI.create(url + "/route"))
+          .POST(HttpRequest.BodyPublishers.ofString("[".repeat(100_000))).build(),
+          HttpResponse.BodyHandlers.ofString());
+      Assertions.assertEquals(400, deep.statusCode());
+      HttpResponse<String> deleted = client.send(HttpRequest.newBuilder(URI.create(url + "/route"))
+          .DELETE().build(), HttpResponse.BodyHandlers.ofString());
+      Assertions.assertEquals(405, deleted.statusCode());
+      Assertions.assertEquals(14, server.getRequestCount());
+    }
+  }
+
+  /**
+   * Tests that BatchRunner answers CSV and JSON queries across several chunks in the order of
+   * the input, like the backend it runs them through, that malformed lines get an error instead
+   * of stopping the run, and that the binary format holds the same routes.
+   */
+  @Test
+  public void testBatchRunner() throws Exception {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      backend.loadGraphData("graph2.dot");
+    } catch (IOException e) {
+      Assertions.fail("Error while loading graph data");
+    }
+    String input = "A,E\n# a comment\n\n{\"from\": \"E\", \"to\": \"A\"}\nA,E,C\n"
+        + "\"A\",\"Z\"\nA\n{\"from\": \"A\"}\nE,B\nA,C\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BatchRunner.Report report = new BatchRunner(backend, 3, 2, BatchRunner.Format.NDJSON)
+        .run(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+    Assertions.assertEquals(8, report.getQueries());
+    Assertions.assertEquals(5, report.getRoutes());
+    Assertions.assertEquals(2, report.getErrors());
+    String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    Assertions.assertEquals(8, lines.length);
+    List<Object> numbers = new ArrayList<>();
+    for (String line : lines) numbers.add(((Map<?, ?>) Json.parse(line)).get("line"));
+    Assertions.assertEquals(List.of(1.0, 4.0, 5.0, 6.0, 7.0, 8.0, 9.0, 10.0), numbers);
+    Map<?, ?> first = (Map<?, ?>) Json.parse(lines[0]);
+    Assertions.assertEquals(backend.findShortestPath("A", "E"), first.get("locations"));
+    Assertions.assertEquals(backend.getTravelTimesOnPath("A", "E"), first.get("legSeconds"));
+    Assertions.assertEquals(backend.findShortestPath("E", "A"),
+        ((Map<?, ?>) Json.parse(lines[1])).get("locations"));
+    Map<?, ?> via = (Map<?, ?>) Json.parse(lines[2]);
+    Assertions.assertEquals("C", via.get("via"));
+    Assertions.assertEquals(backend.findShortestPathVia("A", "C", "E"), via.get("locations"));
+    Assertions.assertEquals(false, ((Map<?, ?>) Json.parse(lines[3])).get("found"));
+    Assertions.assertTrue(((Map<?, ?>) Json.parse(lines[4])).containsKey("error"));
+    Assertions.assertTrue(((Map<?, ?>) Json.parse(lines[5])).containsKey("error"));
+    Assertions.assertEquals(backend.findShortestPath("A", "C"),
+        ((Map<?, ?>) Json.parse(lines[7])).get("locations"));
+
+    // the binary stream names each location once and refers to it by index, and every record
+    // starts with the line of its query, which skipped lines leave gaps in
+    out.reset();
+    new BatchRunner(backend, 1, 100, BatchRunner.Format.BINARY)
+        .run(new ByteArrayInputStream("A,E\n# a comment\nA,Z\n\nA\n".getBytes(StandardCharsets.UTF_8)), out);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    Assertions.assertEquals(BatchRunner.MAGIC, in.readInt());
+    Assertions.assertEquals(BatchRunner.VERSION, in.readInt());
+    List<String> names = new ArrayList<>();
+    for (int i = in.readInt(); i > 0; i--) names.add(in.readUTF());
+    Assertions.assertEquals(backend.getListOfAllLocations(), names);
+    Assertions.assertEquals(1, in.readLong());
+    Assertions.assertEquals(0, in.readByte());
+    List<String> path = new ArrayList<>();
+    for (int i = in.readInt(); i > 0; i--) path.add(names.get(in.readInt()));
+    Assertions.assertEquals(backend.findShortestPath("A", "E"), path);
+    List<Double> legs = new ArrayList<>();
+    for (int i = 1; i < path.size(); i++) legs.add(in.readDouble());
+    Assertions.assertEquals(backend.getTravelTimesOnPath("A", "E"), legs);
+    Assertions.assertEquals(3, in.readLong());
+    Assertions.assertEquals(1, in.readByte());
+    Assertions.assertEquals(5, in.readLong());
+    Assertions.assertEquals(2, in.readByte());
+    Assertions.assertEquals(-1, in.read());
+  }
 
   /**
    * Test method for the integration of the Backend and Frontend classes. Ensures that
@@ -1,5 +1,7 @@
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 public interface BackendInterface {
 
@@ -65,4 +67,115 @@ public interface BackendInterface {
    */
   public List<Double> getTravelTimesOnPathVia(String startLocation, String viaLocation, String endLocation);
 
+  /**
+   * Returns the shortest route from startLocation to endLocation: the locations along it, the
+   * walking time in seconds of each leg, and the total time, all found with a single search.
+   * @param startLocation the start location of the route
+   * @param endLocation the end location of the route
+   * @return the route from startLocation to endLocation, or an empty route if no such route exists
+   */
+  public RouteResult findRoute(String startLocation, String endLocation);
+
+  /**
+   * Returns the shortest route from startLocation to endLocation through viaLocation, found with
+   * a single search for each half of the route.
+   * @param startLocation the start location of the route
+   * @param viaLocation a location that the route should lead through
+   * @param endLocation the end location of the route
+   * @return the route from startLocation to endLocation through viaLocation, or an empty route if
+   *         no such route exists
+   */
+  public RouteResult findRouteVia(String startLocation, String viaLocation, String endLocation);
+
+  /**
+   * Returns the shortest route that visits the given stops in the given order, found with a single
+   * search between each two consecutive stops.
+   * @param stops the locations to visit, starting with the start location of the route
+   * @return the route through all stops in order, or an empty route if no such route exists
+   */
+  public RouteResult findRouteThrough(List<String> stops);
+
+  /**
+   * Returns the cheapest route from startLocation that visits every stop in any order, and then
+   * ends at endLocation if one is given.
+   * @param startLocation the start location of the route
+   * @param stops the locations to visit, in any order
+   * @param endLocation the end location of the route, or null to end at whichever stop is
+   *        visited last
+   * @return the cheapest route found, or an empty route if no route visits every stop
+   */
+  public RouteResult findTour(String startLocation, List<String> stops, String endLocation);
+
+  /**
+   * Returns every location that can be reached from startLocation within a time limit, with the
+   * walking time in seconds to reach it.
+   * @param startLocation the location to start walking from
+   * @param maxSeconds the longest walking time to include a location for
+   * @return a map from each location within maxSeconds to its walking time, iterated in
+   *         increasing order of time and starting with startLocation, or an empty map if
+   *         startLocation is unknown
+   */
+  public Map<String, Double> findLocationsWithin(String startLocation, double maxSeconds);
+
+  /**
+   * Passes every location that can be reached from startLocation within a time limit to a
+   * consumer, with the walking time in seconds to reach it, in increasing order of time. Each
+   * location is passed on as soon as it is found, so callers can show the nearest ones while
+   * the farther ones are still being searched.
+   * @param startLocation the location to start walking from
+   * @param maxSeconds the longest walking time to include a location for
+   * @param consumer called with each location within maxSeconds and its walking time, starting
+   *        with startLocation; never called if startLocation is unknown
+   */
+  public void streamLocationsWithin(String startLocation, double maxSeconds,
+      BiConsumer<String, Double> consumer);
+
+  /**
+   * Returns the shortest route from startLocation to whichever of several candidate locations is
+   * closest to it, found with a single search.
+   * @param startLocation the start location of the route
+   * @param candidates the locations to choose the destination from
+   * @return the route to the closest candidate, which is its last location, or an empty route if
+   *         no candidate can be reached
+   */
+  public RouteResult findNearest(String startLocation, List<String> candidates);
+
+  /**
+   * Returns the shortest route to endLocation from whichever of several candidate locations is
+   * closest to it, found with a single search backward from endLocation.
+   * @param candidates the locations to choose the start from
+   * @param endLocation the end location of the route
+   * @return the route from the closest candidate, which is its first location, or an empty route
+   *         if endLocation can't be reached from any candidate
+   */
+  public RouteResult findNearestTo(List<String> candidates, String endLocation);
+
+  /**
+   * Returns up to k different routes from startLocation to endLocation that don't visit any
+   * location twice, fastest first, so that users can choose between alternatives.
+   * @param startLocation the start location of the routes
+   * @param endLocation the end location of the routes
+   * @param k the largest number of routes to return
+   * @param timeoutMillis how long to keep looking for more routes; the routes found by then are
+   *        returned
+   * @return the routes found by increasing total time, starting with the shortest route, or an
+   *         empty list if no route exists
+   */
+  public List<RouteResult> findShortestRoutes(String startLocation, String endLocation, int k,
+      long timeoutMillis);
+
+  /**
+   * Returns the fastest route from startLocation to endLocation followed by up to maxRoutes - 1
+   * alternatives that are not much slower, share little with the routes before them and make no
+   * pointless detours. There may be fewer alternatives than findShortestRoutes returns, but each
+   * one is a sensible choice on its own.
+   * @param startLocation the start location of the routes
+   * @param endLocation the end location of the routes
+   * @param maxRoutes the largest number of routes to return
+   * @return the fastest route and its alternatives by increasing total time, or an empty list if
+   *         no route exists
+   */
+  public List<RouteResult> findAlternativeRoutes(String startLocation, String endLocation,
+      int maxRoutes);
+
 }
@@ -1,6 +1,9 @@
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class BackendPlaceholder implements BackendInterface {
 
@@ -29,4 +32,51 @@ public class BackendPlaceholder implements BackendInterface {
     return Arrays.asList(146.0, 30.0);
   }
 
+  public RouteResult findRoute(String startLocation, String endLocation) {
+    List<String> path = findShortestPath(startLocation, endLocation);
+    if (path.isEmpty()) return RouteResult.EMPTY;
+    return new RouteResult(path, getTravelTimesOnPath(startLocation, endLocation));
+  }
+
+  public RouteResult findRouteVia(String startLocation, String via, String endLocation) {
+    return new RouteResult(findShortestPathVia(startLocation, via, endLocation),
+        getTravelTimesOnPathVia(startLocation, via, endLocation));
+  }
+
+  public RouteResult findRouteThrough(List<String> stops) {
+    if (stops.size() != 2) return RouteResult.EMPTY;
+    return findRoute(stops.get(0), stops.get(1));
+  }
+
+  public RouteResult findTour(String startLocation, List<String> stops, String endLocation) {
+    return RouteResult.EMPTY;
+  }
+
+  public Map<String, Double> findLocationsWithin(String startLocation, double maxSeconds) {
+    return new LinkedHashMap<>();
+  }
+
+  public void streamLocationsWithin(String startLocation, double maxSeconds,
+      BiConsumer<String, Double> consumer) {}
+
+  public RouteResult findNearest(String startLocation, List<String> candidates) {
+    return RouteResult.EMPTY;
+  }
+
+  public RouteResult findNearestTo(List<String> candidates, String endLocation) {
+    return RouteResult.EMPTY;
+  }
+
+  public List<RouteResult> findShortestRoutes(String startLocation, String endLocation, int k,
+      long timeoutMillis) {
+    RouteResult route = findRoute(startLocation, endLocation);
+    return route.isEmpty() ? Arrays.asList() : Arrays.asList(route);
+  }
+
+  public List<RouteResult> findAlternativeRoutes(String startLocation, String endLocation,
+      int maxRoutes) {
+    RouteResult route = findRoute(startLocation, endLocation);
+    return route.isEmpty() || maxRoutes < 1 ? Arrays.asList() : Arrays.asList(route);
+  }
+
 }
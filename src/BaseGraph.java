@@ -1,3 +1,4 @@
+import java.util.ArrayList;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
@@ -36,6 +37,9 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
     }
 
     protected int edgeCount = 0;
+    // Number of successful changes to the nodes or edges of this graph, read
+    // by other threads to find out whether their results are still current
+    protected volatile long modificationCount = 0;
     // Edges can be retrieved through the edge lists in either connected node
 
     /**
@@ -60,6 +64,7 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         if (nodes.containsKey(data))
             return false; // throws NPE when data's null
         nodes.put(data, new Node(data));
+        modificationCount++;
         return true;
     }
 
@@ -83,9 +88,22 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         // remove all edges leaving neighboring nodes toward this one
         for (Edge edge : oldNode.edgesEntering)
             edge.predecessor.edgesLeaving.remove(edge);
+        modificationCount++;
         return true;
     }
 
+    /**
+     * Return the number of times that the nodes or edges of this graph have
+     * been changed. Every insertNode, removeNode, insertEdge and removeEdge
+     * call that returns true increments it, so anything computed from the
+     * graph is still valid while this count stays the same.
+     * 
+     * @return the number of successful changes made to this graph
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * Check whether the graph contains a node with the provided data.
      * 
@@ -135,9 +153,55 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
             predNode.edgesLeaving.add(newEdge);
             succNode.edgesEntering.add(newEdge);
         }
+        modificationCount++;
         return true;
     }
 
+    /**
+     * Insert many nodes and the directed edges between them at once, with the
+     * same result as inserting every node and then every edge in order. Each
+     * node is looked up in the map only once, and new edges are found without
+     * the exception that insertEdge relies on.
+     * 
+     * @param data    the data items of the nodes to insert
+     * @param preds   the index in data of the predecessor of each edge
+     * @param succs   the index in data of the successor of each edge
+     * @param weights the non-negative weight of each edge
+     * @throws IllegalArgumentException if preds, succs and weights have
+     *                                  different lengths
+     * @throws NullPointerException     if a node data item is null
+     */
+    public void insertEdges(List<NodeType> data, int[] preds, int[] succs,
+            List<EdgeType> weights) {
+        if (preds.length != succs.length || preds.length != weights.size())
+            throw new IllegalArgumentException(
+                    "every edge needs a predecessor, successor and weight");
+        List<Node> batch = new ArrayList<>(data.size());
+        for (NodeType item : data) {
+            insertNode(item);
+            batch.add(nodes.get(item));
+        }
+        for (int i = 0; i < preds.length; i++) {
+            Node predNode = batch.get(preds[i]);
+            Node succNode = batch.get(succs[i]);
+            Edge existingEdge = null;
+            for (Edge edge : predNode.edgesLeaving)
+                if (edge.successor == succNode) {
+                    existingEdge = edge;
+                    break;
+                }
+            if (existingEdge != null) {
+                existingEdge.data = weights.get(i);
+            } else {
+                Edge newEdge = new Edge(weights.get(i), predNode, succNode);
+                this.edgeCount++;
+                predNode.edgesLeaving.add(newEdge);
+                succNode.edgesEntering.add(newEdge);
+            }
+        }
+        modificationCount++;
+    }
+
     /**
      * Remove an edge from the graph.
      * 
@@ -155,6 +219,7 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
             oldEdge.successor.edgesEntering.remove(oldEdge);
             // and decrement the edge count before removing
             this.edgeCount--;
+            modificationCount++;
             return true;
         } catch (NoSuchElementException e) {
             // when no such edge exists, return false instead
@@ -0,0 +1,416 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs route queries from a file or standard input through a backend without the GUI, for
+ * offline jobs. Run it with
+ * java BatchRunner [--threads N] [--chunk N] [--format ndjson|binary] graphfile [input] [output]
+ * where input and output default to standard input and output, which "-" also stands for. Status
+ * messages and the final throughput are printed to standard error.
+ * <p>
+ * Each line of the input is one query, either as CSV, start,end or start,end,via, with double
+ * quotes around names that contain commas, or as a JSON object like
+ * {"from": "A", "to": "B", "via": "C"}. Empty lines and lines starting with # are skipped and
+ * get no answer. The answers are written in the order of the queries, either as one JSON object
+ * per line with the line number of the query and its route (or an "error" for a malformed
+ * line), or in the binary format described at writeBinaryHeader, whose records start with the
+ * line number too, so either output can be matched to the input lines.
+ * <p>
+ * The input is read in chunks of a fixed number of queries, and a chunk is answered and written
+ * before the next one is read, so memory use doesn't depend on the length of the input. The
+ * queries of a chunk are grouped by their start location and the groups are answered in
+ * parallel, so that with a tree cache on the graph each start location is searched once per
+ * chunk and the other queries from it are read from its shortest path tree.
+ */
+public class BatchRunner {
+
+  /** The first int of a binary result stream, "SWRS" in ASCII. */
+  public static final int MAGIC = 0x53575253;
+  /** The version of the binary result stream that this class writes. */
+  public static final int VERSION = 1;
+
+  /** The formats that answers can be written in. */
+  public enum Format { NDJSON, BINARY }
+
+  // one line of the input, with the error that made it unreadable or the locations it asks for
+  private static class Query {
+    final long line;
+    final String error;
+    final String from;
+    final String to;
+    final String via;
+
+    Query(long line, String error, String from, String to, String via) {
+      this.line = line;
+      this.error = error;
+      this.from = from;
+      this.to = to;
+      this.via = via;
+    }
+  }
+
+  /**
+   * What a run of the batch runner did.
+   */
+  public static class Report {
+    private final long queries;
+    private final long routes;
+    private final long errors;
+    private final long millis;
+
+    Report(long queries, long routes, long errors, long millis) {
+      this.queries = queries;
+      this.routes = routes;
+      this.errors = errors;
+      this.millis = millis;
+    }
+
+    /**
+     * Returns the number of queries read, including malformed ones.
+     *
+     * @return the number of queries
+     */
+    public long getQueries() {
+      return queries;
+    }
+
+    /**
+     * Returns the number of queries for which a route was found.
+     *
+     * @return the number of routes
+     */
+    public long getRoutes() {
+      return routes;
+    }
+
+    /**
+     * Returns the number of lines that weren't a valid query.
+     *
+     * @return the number of malformed queries
+     */
+    public long getErrors() {
+      return errors;
+    }
+
+    /**
+     * Returns how long the run took.
+     *
+     * @return the run time in milliseconds
+     */
+    public long getMillis() {
+      return millis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d queries (%d routes, %d errors) in %d ms, %.0f queries per second",
+          queries, routes, errors, millis, queries * 1000.0 / Math.max(1, millis));
+    }
+  }
+
+  private final BackendInterface backend;
+  private final int threads;
+  private final int chunkSize;
+  private final Format format;
+
+  /**
+   * Creates a batch runner for a backend.
+   *
+   * @param backend   the backend that answers the queries, which is loaded already
+   * @param threads   the number of threads that answer the queries of a chunk
+   * @param chunkSize the number of queries read, answered and written at a time
+   * @param format    the format to write the answers in
+   * @throws IllegalArgumentException if threads or chunkSize is not positive
+   */
+  public BatchRunner(BackendInterface backend, int threads, int chunkSize, Format format) {
+    if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+    if (chunkSize < 1) throw new IllegalArgumentException("chunk must be positive: " + chunkSize);
+    this.backend = backend;
+    this.threads = threads;
+    this.chunkSize = chunkSize;
+    this.format = format;
+  }
+
+  /**
+   * Loads a graph and answers the queries of a file or standard input, as described in the
+   * class comment.
+   *
+   * @param args the options, the graph file, and optionally the input and output files
+   * @throws IOException if a file can't be read or written
+   */
+  public static void main(String[] args) throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    int chunkSize = 10_000;
+    Format format = Format.NDJSON;
+    List<String> files = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--threads") && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--chunk") && i + 1 < args.length) {
+        chunkSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--format") && i + 1 < args.length) {
+        format = Format.valueOf(args[++i].toUpperCase());
+      } else {
+        files.add(args[i]);
+      }
+    }
+    if (files.isEmpty() || files.size() > 3) {
+      System.err.println("usage: java BatchRunner [--threads N] [--chunk N] "
+          + "[--format ndjson|binary] graphfile [input] [output]");
+      System.exit(2);
+    }
+    // standard output may carry the answers, so the messages of the backend go to standard error
+    PrintStream stdout = System.out;
+    System.setOut(System.err);
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    // every thread keeps the tree of the start location it is answering queries from
+    graph.enableTreeCache(Math.max(32, 2 * threads), 256L << 20);
+    Backend backend = new Backend(graph);
+    backend.loadGraphData(files.get(0));
+    String input = files.size() > 1 ? files.get(1) : "-";
+    String output = files.size() > 2 ? files.get(2) : "-";
+    try (InputStream in = input.equals("-") ? System.in : new FileInputStream(input);
+        OutputStream out = output.equals("-") ? stdout : new FileOutputStream(output)) {
+      Report report = new BatchRunner(backend, threads, chunkSize, format).run(in, out);
+      System.err.println(report);
+    }
+  }
+
+  /**
+   * Answers every query of an input and writes the answers to an output, in the same order.
+   * The output is flushed but not closed.
+   *
+   * @param in  the queries, one per line, in UTF-8
+   * @param out where to write the answers
+   * @return what the run did
+   * @throws IOException if reading or writing fails
+   */
+  public Report run(InputStream in, OutputStream out) throws IOException {
+    long start = System.nanoTime();
+    long queries = 0;
+    long routes = 0;
+    long errors = 0;
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    BufferedOutputStream buffered = new BufferedOutputStream(out, 1 << 16);
+    Writer text = new BufferedWriter(new OutputStreamWriter(buffered, StandardCharsets.UTF_8));
+    DataOutputStream binary = new DataOutputStream(buffered);
+    // the index of each location in the binary header
+    Map<String, Integer> index = new HashMap<>();
+    if (format == Format.BINARY) writeBinaryHeader(binary, index);
+    ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+      Thread thread = new Thread(task, "batch-runner");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Query> chunk = new ArrayList<>(chunkSize);
+      long line = 0;
+      boolean more = true;
+      while (more) {
+        chunk.clear();
+        String next;
+        while (chunk.size() < chunkSize && (next = reader.readLine()) != null) {
+          line++;
+          String trimmed = next.trim();
+          if (!trimmed.isEmpty() && !trimmed.startsWith("#")) chunk.add(parse(line, trimmed));
+        }
+        more = chunk.size() == chunkSize;
+        RouteResult[] answers = answer(chunk, pool);
+        for (int i = 0; i < chunk.size(); i++) {
+          Query query = chunk.get(i);
+          if (query.error != null) errors++;
+          else if (!answers[i].isEmpty()) routes++;
+          if (format == Format.BINARY) writeBinary(query, answers[i], index, binary);
+          else writeJson(query, answers[i], text);
+        }
+        queries += chunk.size();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    text.flush();
+    binary.flush();
+    return new Report(queries, routes, errors, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  // the answers to the queries of a chunk, in their order, found by one task per start location
+  private RouteResult[] answer(List<Query> chunk, ExecutorService pool) throws IOException {
+    RouteResult[] answers = new RouteResult[chunk.size()];
+    Map<String, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < chunk.size(); i++) {
+      Query query = chunk.get(i);
+      if (query.error != null) continue;
+      groups.computeIfAbsent(query.from, from -> new ArrayList<>()).add(i);
+    }
+    List<Callable<Void>> tasks = new ArrayList<>(groups.size());
+    for (List<Integer> group : groups.values()) {
+      tasks.add(() -> {
+        for (int i : group) {
+          Query query = chunk.get(i);
+          answers[i] = query.via == null ? backend.findRoute(query.from, query.to)
+              : backend.findRouteVia(query.from, query.via, query.to);
+        }
+        return null;
+      });
+    }
+    try {
+      for (Future<Void> done : pool.invokeAll(tasks)) done.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while answering queries", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+    return answers;
+  }
+
+  // reads one line of the input as a JSON object or as CSV
+  private static Query parse(long line, String text) {
+    List<String> fields = new ArrayList<>(3);
+    if (text.startsWith("{")) {
+      Object value;
+      try {
+        value = Json.parse(text);
+      } catch (IllegalArgumentException e) {
+        return new Query(line, e.getMessage(), null, null, null);
+      }
+      if (!(value instanceof Map)) return new Query(line, "expected an object", null, null, null);
+      for (String name : new String[] {"from", "to", "via"}) {
+        Object field = ((Map<?, ?>) value).get(name);
+        if (field != null && !(field instanceof String)) {
+          return new Query(line, name + " must be a string", null, null, null);
+        }
+        fields.add((String) field);
+      }
+      if (fields.get(0) == null || fields.get(1) == null) {
+        return new Query(line, "from and to are required", null, null, null);
+      }
+      return new Query(line, null, fields.get(0), fields.get(1), fields.get(2));
+    }
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+          // a doubled quote stands for one quote inside a quoted field
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString().trim());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    if (quoted) return new Query(line, "unterminated quote", null, null, null);
+    fields.add(field.toString().trim());
+    if (fields.size() < 2 || fields.size() > 3) {
+      return new Query(line, "expected start,end or start,end,via", null, null, null);
+    }
+    return new Query(line, null, fields.get(0), fields.get(1),
+        fields.size() == 3 ? fields.get(2) : null);
+  }
+
+  // one JSON object per answer: the query and its route, or the error of a malformed line
+  private static void writeJson(Query query, RouteResult route, Writer out) throws IOException {
+    out.write("{\"line\":");
+    out.write(Long.toString(query.line));
+    if (query.error != null) {
+      out.write(",\"error\":");
+      Json.writeString(query.error, out);
+      out.write("}\n");
+      return;
+    }
+    out.write(",\"from\":");
+    Json.writeString(query.from, out);
+    out.write(",\"to\":");
+    Json.writeString(query.to, out);
+    if (query.via != null) {
+      out.write(",\"via\":");
+      Json.writeString(query.via, out);
+    }
+    out.write(",\"found\":");
+    out.write(Boolean.toString(!route.isEmpty()));
+    out.write(",\"locations\":");
+    Json.write(route.getLocations(), out);
+    out.write(",\"legSeconds\":");
+    Json.write(route.getLegSeconds(), out);
+    out.write(",\"totalSeconds\":");
+    if (route.isEmpty()) out.write("null");
+    else Json.writeNumber(route.getTotalSeconds(), out);
+    out.write("}\n");
+  }
+
+  /**
+   * Writes the header of a binary result stream: MAGIC, VERSION, the number of locations and
+   * the name of each location in modified UTF-8, as DataOutputStream.writeUTF writes them. The
+   * header is followed by one record per query: the number of the input line the query was
+   * read from as a long, counting from 1, so that records can be matched to their lines even
+   * though skipped lines have none, then a status byte that is 0 for a route, 1 when there is
+   * no route and 2 for a malformed query, and for a route the number of locations on it as an
+   * int, the index of each location in the header as an int, and the travel time of each leg as
+   * a double. Longs, ints and doubles are big-endian.
+   *
+   * @param out   where to write the header
+   * @param index filled with the index of each location
+   * @throws IOException if writing fails
+   */
+  private void writeBinaryHeader(DataOutputStream out, Map<String, Integer> index)
+      throws IOException {
+    List<String> locations = backend.getListOfAllLocations();
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(locations.size());
+    for (String location : locations) {
+      index.put(location, index.size());
+      out.writeUTF(location);
+    }
+  }
+
+  private static void writeBinary(Query query, RouteResult route, Map<String, Integer> index,
+      DataOutputStream out) throws IOException {
+    out.writeLong(query.line);
+    if (query.error != null || route.isEmpty()) {
+      out.writeByte(query.error != null ? 2 : 1);
+      return;
+    }
+    out.writeByte(0);
+    List<String> locations = route.getLocations();
+    out.writeInt(locations.size());
+    for (String location : locations) out.writeInt(index.get(location));
+    for (double seconds : route.getLegSeconds()) out.writeDouble(seconds);
+  }
+
+}
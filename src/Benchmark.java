@@ -0,0 +1,796 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Command line benchmarks for the data structures behind the campus map. Pass the names of the
+ * benchmarks to run (or nothing to run all of them), for example: java Benchmark map
+ */
+public class Benchmark {
+
+  /**
+   * Runs the benchmarks named in args, or every benchmark when args is empty.
+   *
+   * @param args names of the benchmarks to run
+   */
+  public static void main(String[] args) {
+    List<String> names = List.of(args);
+    if (names.isEmpty() || names.contains("map")) benchmarkMaps();
+    if (names.isEmpty() || names.contains("heap")) benchmarkHeaps();
+    if (names.isEmpty() || names.contains("alloc")) benchmarkAllocation();
+    if (names.isEmpty() || names.contains("modes")) benchmarkSearchModes();
+    if (names.isEmpty() || names.contains("ch")) benchmarkHierarchy();
+    if (names.isEmpty() || names.contains("table")) benchmarkDistanceTable();
+    if (names.isEmpty() || names.contains("trees")) benchmarkTreeCache();
+    if (names.isEmpty() || names.contains("tours")) benchmarkTours();
+    if (names.isEmpty() || names.contains("matrix")) benchmarkCostMatrix();
+    if (names.isEmpty() || names.contains("within")) benchmarkLocationsWithin();
+    if (names.isEmpty() || names.contains("load")) benchmarkLoading();
+    if (names.isEmpty() || names.contains("mapped")) benchmarkMappedGraph();
+    if (names.isEmpty() || names.contains("concurrent")) benchmarkConcurrentQueries();
+  }
+
+  /**
+   * Compares the throughput of PlaceholderMap and HashtableMap for the put, get, containsKey and
+   * remove calls that BaseGraph makes with location names as keys, along with the slowest single
+   * put, which shows how long a resize can stall a caller.
+   */
+  public static void benchmarkMaps() {
+    System.out.println("== MapADT throughput (million operations per second) ==");
+    System.out.printf("%-14s %8s %8s %8s %8s %8s %14s%n", "map", "keys", "put", "get",
+        "contains", "remove", "worst put (us)");
+    for (int keyCount : new int[] {160, 100_000, 1_000_000}) {
+      List<String> keys = new ArrayList<>(keyCount);
+      for (int i = 0; i < keyCount; i++) keys.add("Location " + i);
+      // insert keys in random order, and look them up in a different random order, since real
+      // lookups don't arrive in insertion order; looking keys up in the order they were put lets
+      // java.util.HashMap read its entries, which are allocated in that order, almost
+      // sequentially, which flatters it on maps too large for the cache
+      Collections.shuffle(keys, new Random(keyCount));
+      List<String> lookups = new ArrayList<>(keys);
+      Collections.shuffle(lookups, new Random(keyCount + 1));
+      // run every map a few times first so that both are measured after JIT compilation
+      for (int warmup = 0; warmup < 3; warmup++) {
+        runMapRound(PlaceholderMap::new, keys, lookups);
+        runMapRound(HashtableMap::new, keys, lookups);
+      }
+      printMapRound("PlaceholderMap", keyCount, runMapRound(PlaceholderMap::new, keys, lookups));
+      printMapRound("HashtableMap", keyCount, runMapRound(HashtableMap::new, keys, lookups));
+    }
+  }
+
+  // fills a new map with keys, then looks up and removes each of them in the order of lookups,
+  // timing every phase
+  private static double[] runMapRound(Supplier<MapADT<String, Integer>> factory,
+      List<String> keys, List<String> lookups) {
+    int repeats = Math.max(1, 2_000_000 / keys.size());
+    double[] seconds = new double[5];
+    long worstPut = 0;
+    int checksum = 0;
+    for (int r = 0; r < repeats; r++) {
+      MapADT<String, Integer> map = factory.get();
+      long start = System.nanoTime();
+      for (int i = 0; i < keys.size(); i++) {
+        long before = System.nanoTime();
+        map.put(keys.get(i), i);
+        worstPut = Math.max(worstPut, System.nanoTime() - before);
+      }
+      long afterPut = System.nanoTime();
+      for (String key : lookups) checksum += map.get(key);
+      long afterGet = System.nanoTime();
+      for (String key : lookups) if (map.containsKey(key)) checksum++;
+      long afterContains = System.nanoTime();
+      for (String key : lookups) checksum += map.remove(key);
+      long afterRemove = System.nanoTime();
+      seconds[0] += (afterPut - start) / 1e9;
+      seconds[1] += (afterGet - afterPut) / 1e9;
+      seconds[2] += (afterContains - afterGet) / 1e9;
+      seconds[3] += (afterRemove - afterContains) / 1e9;
+    }
+    if (checksum == 42) System.out.print(""); // keeps the lookups from being optimized away
+    double operations = (double) keys.size() * repeats;
+    double[] result = new double[5];
+    for (int phase = 0; phase < 4; phase++) result[phase] = operations / seconds[phase] / 1e6;
+    result[4] = worstPut / 1e3;
+    return result;
+  }
+
+  /**
+   * Compares Dijkstra's algorithm on CompactGraph with 2, 4 and 8-ary IndexedMinHeaps, on the
+   * campus map and on larger synthetic grid and random graphs.
+   */
+  public static void benchmarkHeaps() {
+    CompactGraph<String> campus = loadCampus().getSnapshot();
+    CompactGraph<String> grid = gridGraph(300, new Random(1)).getSnapshot();
+    CompactGraph<String> random = randomGraph(200_000, 4, new Random(2)).getSnapshot();
+    System.out.println("== Dijkstra query time by heap arity (microseconds per query) ==");
+    System.out.printf("%-22s %8s %8s %10s %10s %10s%n", "graph", "nodes", "edges", "2-ary",
+        "4-ary", "8-ary");
+    heapRound("campus.dot", campus);
+    heapRound("grid 300x300", grid);
+    heapRound("random 200k, degree 4", random);
+  }
+
+  private static void heapRound(String name, CompactGraph<String> graph) {
+    int n = graph.getNodeCount();
+    Random random = new Random(n);
+    int queries = Math.max(20, 2_000_000 / n);
+    int[] sources = new int[queries];
+    int[] targets = new int[queries];
+    for (int q = 0; q < queries; q++) {
+      sources[q] = random.nextInt(n);
+      targets[q] = random.nextInt(n);
+    }
+    double[] micros = new double[3];
+    int[] arities = {2, 4, 8};
+    double checksum = 0;
+    // alternate the arities over several rounds so that JIT warmup and noise affect all of them
+    for (int round = 0; round < 4; round++) {
+      for (int a = 0; a < arities.length; a++) {
+        SearchWorkspace workspace = new SearchWorkspace(n, arities[a]);
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+          checksum += graph.dijkstra(sources[q], targets[q], workspace);
+        }
+        if (round > 0) micros[a] += (System.nanoTime() - start) / 1e3 / queries / 3;
+      }
+    }
+    if (checksum == 42) System.out.print(""); // keeps the searches from being optimized away
+    System.out.printf("%-22s %8d %8d %10.1f %10.1f %10.1f%n", name, n, graph.getEdgeCount(),
+        micros[0], micros[1], micros[2]);
+  }
+
+  /**
+   * Compares the search modes of DijkstraGraph by the average number of nodes they settle and
+   * their average time per point-to-point query.
+   */
+  public static void benchmarkSearchModes() {
+    List<DijkstraGraph<String, Double>> graphs = List.of(loadCampus(),
+        gridGraph(300, new Random(1)), randomGraph(200_000, 4, new Random(2)));
+    List<String> names = List.of("campus.dot", "grid 300x300", "random 200k, degree 4");
+    System.out.println("== Search modes (settled nodes and microseconds per query) ==");
+    System.out.printf("%-22s %-14s %12s %12s%n", "graph", "mode", "settled", "time (us)");
+    for (int g = 0; g < graphs.size(); g++) {
+      DijkstraGraph<String, Double> graph = graphs.get(g);
+      CompactGraph<String> snapshot = graph.getSnapshot();
+      int n = snapshot.getNodeCount();
+      Random random = new Random(n);
+      int queries = Math.max(20, 2_000_000 / n);
+      String[][] pairs = new String[queries][];
+      for (int q = 0; q < queries; q++) {
+        pairs[q] = new String[] {snapshot.nodeAt(random.nextInt(n)),
+            snapshot.nodeAt(random.nextInt(n))};
+      }
+      long preprocessing = System.nanoTime();
+      graph.getLandmarks();
+      preprocessing = System.nanoTime() - preprocessing;
+      System.out.printf("%-22s %d landmarks computed in %.1f ms%n", names.get(g),
+          graph.getLandmarks().getLandmarkCount(), preprocessing / 1e6);
+      for (DijkstraGraph.SearchMode mode : DijkstraGraph.SearchMode.values()) {
+        // contracting the large grid and random graphs takes minutes, see Benchmark ch
+        if (mode == DijkstraGraph.SearchMode.CONTRACTION_HIERARCHY && n > 10_000) continue;
+        graph.setSearchMode(mode);
+        long settled = 0;
+        long time = 0;
+        for (int round = 0; round < 3; round++) {
+          settled = 0;
+          long start = System.nanoTime();
+          for (String[] pair : pairs) {
+            try {
+              graph.shortestPathCost(pair[0], pair[1]);
+            } catch (NoSuchElementException e) {
+              // unreachable pairs still count, since the search had to prove it
+            }
+            settled += settledBy(graph.getWorkspace(snapshot), mode);
+          }
+          time = System.nanoTime() - start;
+        }
+        System.out.printf("%-22s %-14s %12.0f %12.1f%n", names.get(g), mode,
+            settled / (double) queries, time / 1e3 / queries);
+      }
+    }
+  }
+
+  // number of nodes settled by the last search in a workspace, including its reverse half
+  private static int settledBy(SearchWorkspace workspace, DijkstraGraph.SearchMode mode) {
+    int settled = workspace.getSettledCount();
+    if (mode == DijkstraGraph.SearchMode.BIDIRECTIONAL
+        || mode == DijkstraGraph.SearchMode.CONTRACTION_HIERARCHY) {
+      settled += workspace.getReverseWorkspace().getSettledCount();
+    }
+    return settled;
+  }
+
+  /**
+   * Reports how long building a contraction hierarchy takes and how many shortcuts it adds, and
+   * compares its query time to Dijkstra's algorithm on the same random pairs.
+   */
+  public static void benchmarkHierarchy() {
+    List<DijkstraGraph<String, Double>> graphs =
+        List.of(loadCampus(), gridGraph(100, new Random(1)));
+    List<String> names = List.of("campus.dot", "grid 100x100");
+    System.out.println("== Contraction hierarchy (preprocessing and microseconds per query) ==");
+    for (int g = 0; g < graphs.size(); g++) {
+      DijkstraGraph<String, Double> graph = graphs.get(g);
+      System.out.println(names.get(g) + ": " + graph.getHierarchy().report());
+      CompactGraph<String> snapshot = graph.getSnapshot();
+      int n = snapshot.getNodeCount();
+      Random random = new Random(n);
+      String[][] pairs = new String[2000][];
+      for (int q = 0; q < pairs.length; q++) {
+        pairs[q] = new String[] {snapshot.nodeAt(random.nextInt(n)),
+            snapshot.nodeAt(random.nextInt(n))};
+      }
+      double[] micros = new double[2];
+      DijkstraGraph.SearchMode[] modes = {DijkstraGraph.SearchMode.DIJKSTRA,
+          DijkstraGraph.SearchMode.CONTRACTION_HIERARCHY};
+      for (int round = 0; round < 3; round++) {
+        for (int m = 0; m < modes.length; m++) {
+          graph.setSearchMode(modes[m]);
+          long start = System.nanoTime();
+          for (String[] pair : pairs) {
+            try {
+              graph.shortestPathData(pair[0], pair[1]);
+            } catch (NoSuchElementException e) {
+              // unreachable pairs still count, since the search had to prove it
+            }
+          }
+          micros[m] = (System.nanoTime() - start) / 1e3 / pairs.length;
+        }
+      }
+      System.out.printf("%s: dijkstra %.1f us, hierarchy %.1f us, speedup %.1fx%n", names.get(g),
+          micros[0], micros[1], micros[0] / micros[1]);
+    }
+  }
+
+  /**
+   * Compares campus map queries through Backend with and without the precomputed all-pairs
+   * distance table, on and off the heap.
+   */
+  public static void benchmarkDistanceTable() {
+    System.out.println("== Distance table (microseconds per findShortestPath on campus.dot) ==");
+    String[] labels = {"search", "table", "table, off-heap"};
+    for (int b = 0; b < labels.length; b++) {
+      Backend backend = new Backend(new DijkstraGraph<>());
+      if (b == 0) backend.setDistanceTableLimits(0, 0);
+      backend.setDistanceTableOffHeap(b == 2);
+      try {
+        backend.loadGraphData("campus.dot");
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      List<String> locations = backend.getListOfAllLocations();
+      Random random = new Random(160);
+      double micros = 0;
+      for (int round = 0; round < 3; round++) {
+        long start = System.nanoTime();
+        for (int q = 0; q < 20_000; q++) {
+          try {
+            backend.findShortestPath(locations.get(random.nextInt(locations.size())),
+                locations.get(random.nextInt(locations.size())));
+          } catch (NoSuchElementException e) {
+            // unreachable pairs cost a full search without the table
+          }
+        }
+        micros = (System.nanoTime() - start) / 1e3 / 20_000;
+      }
+      System.out.printf("%-16s %8.2f%n", labels[b], micros);
+    }
+  }
+
+  /**
+   * Compares skewed query traffic on a grid with and without the shortest path tree cache: four
+   * out of five queries start at one of five popular nodes, the rest anywhere.
+   */
+  public static void benchmarkTreeCache() {
+    DijkstraGraph<String, Double> graph = gridGraph(300, new Random(1));
+    CompactGraph<String> snapshot = graph.getSnapshot();
+    int n = snapshot.getNodeCount();
+    Random random = new Random(5);
+    String[][] pairs = new String[1000][];
+    for (int q = 0; q < pairs.length; q++) {
+      int source = random.nextInt(5) < 4 ? random.nextInt(5) * (n / 5) : random.nextInt(n);
+      pairs[q] = new String[] {snapshot.nodeAt(source), snapshot.nodeAt(random.nextInt(n))};
+    }
+    System.out.println("== Tree cache (microseconds per query, grid 300x300, skewed) ==");
+    for (int c = 0; c < 2; c++) {
+      double micros = 0;
+      for (int round = 0; round < 3; round++) {
+        if (c == 0) graph.disableTreeCache();
+        else graph.enableTreeCache(16, 64L << 20);
+        long start = System.nanoTime();
+        for (String[] pair : pairs) graph.shortestPathData(pair[0], pair[1]);
+        micros = (System.nanoTime() - start) / 1e3 / pairs.length;
+      }
+      TreeCache<String> cache = graph.getTreeCache();
+      System.out.printf("%-10s %10.1f%s%n", c == 0 ? "no cache" : "cache", micros,
+          cache == null ? "" : String.format("   hits %d, misses %d, evictions %d",
+              cache.getHits(), cache.getMisses(), cache.getEvictions()));
+    }
+  }
+
+  /**
+   * Plans tours through random stops of a grid, timing the stop cost matrix and the ordering, and
+   * compares the cost of the planned order with visiting the stops as given and with the nearest
+   * neighbour order the heuristic starts from.
+   */
+  public static void benchmarkTours() {
+    DijkstraGraph<String, Double> graph = gridGraph(100, new Random(1));
+    CompactGraph<String> snapshot = graph.getSnapshot();
+    int n = snapshot.getNodeCount();
+    Random random = new Random(12);
+    System.out.println("== Tours (grid 100x100, open end, 200 ms budget) ==");
+    System.out.printf("%6s %12s %12s %12s %12s %12s%n", "stops", "matrix (ms)", "order (ms)",
+        "as given", "nearest", "planned");
+    for (int stops : new int[] {6, 12, 13, 50, 200}) {
+      List<String> points = new ArrayList<>();
+      for (int i = 0; i < stops; i++) points.add(snapshot.nodeAt(random.nextInt(n)));
+      long start = System.nanoTime();
+      double[] costs = graph.shortestPathCosts(points, points);
+      long afterMatrix = System.nanoTime();
+      int[] planned = new TourPlanner(200).order(costs, stops, false);
+      long afterOrder = System.nanoTime();
+      TourPlanner nearest = new TourPlanner(0);
+      nearest.setExactStopLimit(0);
+      int[] given = new int[stops];
+      for (int i = 0; i < stops; i++) given[i] = i;
+      System.out.printf("%6d %12.1f %12.1f %12.0f %12.0f %12.0f%n", stops,
+          (afterMatrix - start) / 1e6, (afterOrder - afterMatrix) / 1e6,
+          TourPlanner.tourCost(given, costs, stops),
+          TourPlanner.tourCost(nearest.order(costs, stops, false), costs, stops),
+          TourPlanner.tourCost(planned, costs, stops));
+    }
+  }
+
+  /**
+   * Compares computing a sources x targets cost matrix on a grid one shortestPathCost call at a
+   * time with a single shortestPathCosts call, for targets spread over the whole grid and for
+   * targets clustered near the sources.
+   */
+  public static void benchmarkCostMatrix() {
+    DijkstraGraph<String, Double> graph = gridGraph(200, new Random(1));
+    System.out.println("== Cost matrix (ms, grid 200x200, 20 sources x 200 targets) ==");
+    System.out.printf("%-10s %12s %12s%n", "targets", "pairwise", "batch");
+    Random random = new Random(13);
+    for (String layout : new String[] {"spread", "clustered"}) {
+      List<String> sources = new ArrayList<>();
+      List<String> targets = new ArrayList<>();
+      for (int i = 0; i < 20; i++) sources.add(random.nextInt(20) + "," + random.nextInt(20));
+      int range = layout.equals("spread") ? 200 : 30;
+      for (int i = 0; i < 200; i++) targets.add(random.nextInt(range) + "," + random.nextInt(range));
+      double pairwise = 0;
+      double batch = 0;
+      for (int round = 0; round < 3; round++) {
+        long start = System.nanoTime();
+        double[] expected = new double[sources.size() * targets.size()];
+        for (int s = 0; s < sources.size(); s++)
+          for (int t = 0; t < targets.size(); t++)
+            expected[s * targets.size() + t] = graph.shortestPathCost(sources.get(s), targets.get(t));
+        long afterPairwise = System.nanoTime();
+        double[] costs = graph.shortestPathCosts(sources, targets);
+        long afterBatch = System.nanoTime();
+        if (!Arrays.equals(expected, costs))
+          throw new IllegalStateException("batch costs differ from pairwise costs");
+        pairwise = (afterPairwise - start) / 1e6;
+        batch = (afterBatch - afterPairwise) / 1e6;
+      }
+      System.out.printf("%-10s %12.1f %12.1f%n", layout, pairwise, batch);
+    }
+  }
+
+  /**
+   * Compares finding every campus location within a walking time from a start with one
+   * shortestPathCost call per location against a single search bounded by the time limit.
+   */
+  public static void benchmarkLocationsWithin() {
+    DijkstraGraph<String, Double> graph = loadCampus();
+    CompactGraph<String> snapshot = graph.getSnapshot();
+    System.out.println("== Locations within a walk (microseconds per query, campus.dot) ==");
+    System.out.printf("%-8s %10s %12s %12s%n", "seconds", "found", "per location", "bounded");
+    Random random = new Random(14);
+    for (double limit : new double[] {120, 300, 900}) {
+      double perLocation = 0;
+      double bounded = 0;
+      int found = 0;
+      for (int round = 0; round < 3; round++) {
+        String[] starts = new String[200];
+        for (int q = 0; q < starts.length; q++)
+          starts[q] = snapshot.nodeAt(random.nextInt(snapshot.getNodeCount()));
+        long start = System.nanoTime();
+        found = 0;
+        for (String from : starts) {
+          for (int v = 0; v < snapshot.getNodeCount(); v++) {
+            try {
+              if (graph.shortestPathCost(from, snapshot.nodeAt(v)) <= limit) found++;
+            } catch (NoSuchElementException e) {
+              // unreachable locations are not within any limit
+            }
+          }
+        }
+        long afterPerLocation = System.nanoTime();
+        int reported = 0;
+        for (String from : starts) reported += graph.reachableWithin(from, limit).size();
+        long afterBounded = System.nanoTime();
+        if (reported != found)
+          throw new IllegalStateException("bounded search found " + reported + " of " + found);
+        perLocation = (afterPerLocation - start) / 1e3 / starts.length;
+        bounded = (afterBounded - afterPerLocation) / 1e3 / starts.length;
+      }
+      System.out.printf("%-8.0f %10.1f %12.1f %12.1f%n", limit, found / 200.0, perLocation,
+          bounded);
+    }
+  }
+
+  /**
+   * Compares loading grid maps written as DOT files with the former line by line regex loader,
+   * which checked for known locations in a list, against Backend.loadGraphData, and against
+   * loading the same maps from binary graph files. The last column only reads the graph file
+   * into a snapshot, without inserting it into a DijkstraGraph.
+   */
+  public static void benchmarkLoading() {
+    System.out.println("== Loading graph files (milliseconds) ==");
+    System.out.printf("%-10s %10s %12s %12s %12s %12s%n", "grid", "edges", "regex", "DotReader",
+        "GraphFile", "read only");
+    Random random = new Random(18);
+    for (int width : new int[] {100, 300, 700}) {
+      Path file = null;
+      Path binary = null;
+      try {
+        file = Files.createTempFile("grid" + width, ".dot");
+        binary = Files.createTempFile("grid" + width, ".graph");
+        writeGridDot(file, width, random);
+        String regex = "-";
+        // the list lookups of the former loader make larger files take far too long
+        if (width <= 100) {
+          long start = System.nanoTime();
+          regexLoad(file.toString());
+          regex = String.format("%.1f", (System.nanoTime() - start) / 1e6);
+        }
+        double[] best = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.POSITIVE_INFINITY};
+        int edges = 0;
+        for (int round = 0; round < 3; round++) {
+          Backend text = new Backend(new DijkstraGraph<>());
+          long start = System.nanoTime();
+          text.loadGraphData(file.toString());
+          best[0] = Math.min(best[0], (System.nanoTime() - start) / 1e6);
+          if (round == 0) text.saveGraphData(binary.toString());
+          text = null;
+          DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+          start = System.nanoTime();
+          new Backend(graph).loadGraphData(binary.toString());
+          best[1] = Math.min(best[1], (System.nanoTime() - start) / 1e6);
+          edges = graph.getEdgeCount();
+          graph = null;
+          start = System.nanoTime();
+          GraphFile.read(binary.toString());
+          best[2] = Math.min(best[2], (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("%-10s %10d %12s %12.1f %12.1f %12.1f%n", width + "x" + width, edges,
+            regex, best[0], best[1], best[2]);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        try {
+          if (file != null) Files.deleteIfExists(file);
+          if (binary != null) Files.deleteIfExists(binary);
+        } catch (IOException e) {
+          // only temporary files are left behind
+        }
+      }
+    }
+  }
+
+  /**
+   * Compares a DijkstraGraph loaded from a graph file with a MappedGraph that searches the same
+   * file in place, by load time, by the heap that stays in use after loading, and by the time of
+   * a shortestPathCost query between random locations.
+   */
+  public static void benchmarkMappedGraph() {
+    System.out.println("== Heap and mapped graphs (700x700 grid) ==");
+    System.out.printf("%-12s %12s %12s %14s%n", "graph", "load (ms)", "heap (MB)", "query (ms)");
+    Path dot = null;
+    Path binary = null;
+    try {
+      dot = Files.createTempFile("grid", ".dot");
+      binary = Files.createTempFile("grid", ".graph");
+      writeGridDot(dot, 700, new Random(20));
+      String[][] pairs = convertToGraphFile(dot, binary, 50);
+      for (int kind = 0; kind < 2; kind++) {
+        long before = usedHeap();
+        GraphADT<String, Double> graph = kind == 0 ? new MappedGraph() : new DijkstraGraph<>();
+        Backend backend = new Backend(graph);
+        long start = System.nanoTime();
+        backend.loadGraphData(binary.toString());
+        double load = (System.nanoTime() - start) / 1e6;
+        double query = 0;
+        for (int round = 0; round < 2; round++) {
+          start = System.nanoTime();
+          for (String[] pair : pairs) graph.shortestPathCost(pair[0], pair[1]);
+          query = (System.nanoTime() - start) / 1e6 / pairs.length;
+        }
+        long heap = usedHeap() - before;
+        System.out.printf("%-12s %12.1f %12.1f %14.2f%n", graph.getClass().getSimpleName(), load,
+            heap / 1e6, query);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      try {
+        if (dot != null) Files.deleteIfExists(dot);
+        if (binary != null) Files.deleteIfExists(binary);
+      } catch (IOException e) {
+        // only temporary files are left behind
+      }
+    }
+  }
+
+  /**
+   * Measures route queries per second on a grid with a growing number of query threads, while one
+   * more thread changes the weights of ten random edges with updateGraph every 50 ms. Queries don't
+   * lock, so the throughput should grow with the threads up to the number of cores.
+   */
+  public static void benchmarkConcurrentQueries() {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    try {
+      Path dot = Files.createTempFile("grid", ".dot");
+      try {
+        writeGridDot(dot, 200, new Random(1));
+        backend.loadGraphData(dot.toString());
+      } finally {
+        Files.deleteIfExists(dot);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    List<String> nodes = backend.getListOfAllLocations();
+    int cores = Runtime.getRuntime().availableProcessors();
+    System.out.println("== Concurrent queries (grid 200x200, " + cores + " cores, update every 50 ms) ==");
+    System.out.printf("%-8s %14s %10s %10s%n", "threads", "queries/s", "speedup", "updates");
+    double single = 0;
+    for (int threads = 1; threads <= Math.max(8, cores); threads *= 2) {
+      AtomicBoolean done = new AtomicBoolean(false);
+      AtomicLong queries = new AtomicLong();
+      List<Thread> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        Random random = new Random(t);
+        Thread worker = new Thread(() -> {
+          while (!done.get()) {
+            backend.findRoute(nodes.get(random.nextInt(nodes.size())),
+                nodes.get(random.nextInt(nodes.size())));
+            queries.incrementAndGet();
+          }
+        });
+        workers.add(worker);
+      }
+      Random random = new Random(threads);
+      int updates = 0;
+      long start = System.nanoTime();
+      for (Thread worker : workers) worker.start();
+      while (System.nanoTime() - start < 2_000_000_000L) {
+        backend.updateGraph(changes -> {
+          for (int e = 0; e < 10; e++) {
+            int r = random.nextInt(200);
+            int c = random.nextInt(199);
+            changes.insertEdge(r + "," + c, r + "," + (c + 1), 1.0 + random.nextInt(100));
+          }
+        });
+        updates++;
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      done.set(true);
+      for (Thread worker : workers) {
+        try {
+          worker.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      double perSecond = queries.get() / ((System.nanoTime() - start) / 1e9);
+      if (threads == 1) single = perSecond;
+      System.out.printf("%-8d %14.0f %10.2f %10d%n", threads, perSecond, perSecond / single,
+          updates);
+    }
+  }
+
+  // writes a DOT file to a graph file and picks random pairs of its locations, in a method of its
+  // own so that nothing it loads stays reachable
+  private static String[][] convertToGraphFile(Path dot, Path binary, int count)
+      throws IOException {
+    Backend backend = new Backend(new DijkstraGraph<>());
+    backend.loadGraphData(dot.toString());
+    backend.saveGraphData(binary.toString());
+    List<String> locations = backend.getListOfAllLocations();
+    Random random = new Random(20);
+    String[][] pairs = new String[count][];
+    for (int q = 0; q < count; q++) {
+      pairs[q] = new String[] {locations.get(random.nextInt(locations.size())),
+          locations.get(random.nextInt(locations.size()))};
+    }
+    return pairs;
+  }
+
+  // the heap in use once garbage has been collected
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  // writes the edges of a grid like gridGraph, with fractional weights, as a DOT file
+  private static void writeGridDot(Path file, int width, Random random) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+      writer.write("digraph grid {\n");
+      for (int r = 0; r < width; r++) {
+        for (int c = 0; c < width; c++) {
+          int[][] neighbours = {{r, c + 1}, {r, c - 1}, {r + 1, c}, {r - 1, c}};
+          for (int[] to : neighbours) {
+            if (to[0] < 0 || to[1] < 0 || to[0] >= width || to[1] >= width) continue;
+            writer.write("\t\"" + r + "," + c + "\" -> \"" + to[0] + "," + to[1] + "\" [seconds="
+                + (1 + random.nextInt(100_000)) / 10.0 + "];\n");
+          }
+        }
+      }
+      writer.write("}\n");
+    }
+  }
+
+  // the loader that Backend used before DotReader
+  private static void regexLoad(String filename) throws IOException {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    List<String> locations = new ArrayList<>();
+    Pattern pattern =
+        Pattern.compile("\"([^\"]+)\"\\s*->\\s*\"([^\"]+)\"\\s*\\[seconds=([0-9.]+)\\];");
+    try (BufferedReader reader = Files.newBufferedReader(Path.of(filename))) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        Matcher matcher = pattern.matcher(line);
+        if (matcher.find()) {
+          String from = matcher.group(1);
+          String to = matcher.group(2);
+          graph.insertNode(from);
+          graph.insertNode(to);
+          graph.insertEdge(from, to, Double.parseDouble(matcher.group(3)));
+          if (!locations.contains(from)) locations.add(from);
+          if (!locations.contains(to)) locations.add(to);
+        }
+      }
+    }
+  }
+
+  /**
+   * Measures how many bytes the calling thread allocates per campus map query once the JIT has
+   * warmed up. shortestPathCost should allocate nothing, and findShortestPath only its result.
+   */
+  public static void benchmarkAllocation() {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    Backend backend = new Backend(graph);
+    try {
+      backend.loadGraphData("campus.dot");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    // pick pairs of locations that are connected, since the campus map has one-way edges
+    List<String> locations = backend.getListOfAllLocations();
+    List<String[]> pairs = new ArrayList<>();
+    Random random = new Random(3);
+    while (pairs.size() < 1000) {
+      String start = locations.get(random.nextInt(locations.size()));
+      String end = locations.get(random.nextInt(locations.size()));
+      try {
+        graph.shortestPathCost(start, end);
+        pairs.add(new String[] {start, end});
+      } catch (NoSuchElementException e) {
+        // no path between these two, try another pair
+      }
+    }
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    System.out.println("== Steady state allocation per campus query (bytes) ==");
+    for (int round = 0; round < 3; round++) {
+      int queries = 200_000;
+      double checksum = 0;
+      long before = threads.getThreadAllocatedBytes(thread);
+      for (int q = 0; q < queries; q++) {
+        String[] pair = pairs.get(q % pairs.size());
+        checksum += graph.shortestPathCost(pair[0], pair[1]);
+      }
+      long afterCost = threads.getThreadAllocatedBytes(thread);
+      for (int q = 0; q < queries; q++) {
+        String[] pair = pairs.get(q % pairs.size());
+        checksum += backend.findShortestPath(pair[0], pair[1]).size();
+      }
+      long afterPath = threads.getThreadAllocatedBytes(thread);
+      if (checksum == 42) System.out.print(""); // keeps the searches from being optimized away
+      System.out.printf("round %d: shortestPathCost %.1f, findShortestPath %.1f%n", round,
+          (afterCost - before) / (double) queries, (afterPath - afterCost) / (double) queries);
+    }
+  }
+
+  /**
+   * Loads the campus map into a new DijkstraGraph.
+   *
+   * @return the graph read from campus.dot
+   */
+  public static DijkstraGraph<String, Double> loadCampus() {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    try {
+      new Backend(graph).loadGraphData("campus.dot");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return graph;
+  }
+
+  /**
+   * Builds a square grid of width * width nodes in which every node is connected to each of its
+   * horizontal and vertical neighbours in both directions, with random weights from 1 to 100.
+   *
+   * @param width  the number of nodes along each side of the grid
+   * @param random the source of edge weights
+   * @return the grid graph, with nodes named "row,column"
+   */
+  public static DijkstraGraph<String, Double> gridGraph(int width, Random random) {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    for (int r = 0; r < width; r++)
+      for (int c = 0; c < width; c++) graph.insertNode(r + "," + c);
+    for (int r = 0; r < width; r++) {
+      for (int c = 0; c < width; c++) {
+        if (c + 1 < width) {
+          graph.insertEdge(r + "," + c, r + "," + (c + 1), 1.0 + random.nextInt(100));
+          graph.insertEdge(r + "," + (c + 1), r + "," + c, 1.0 + random.nextInt(100));
+        }
+        if (r + 1 < width) {
+          graph.insertEdge(r + "," + c, (r + 1) + "," + c, 1.0 + random.nextInt(100));
+          graph.insertEdge((r + 1) + "," + c, r + "," + c, 1.0 + random.nextInt(100));
+        }
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * Builds a graph in which every node has edges to degree randomly chosen other nodes, with random
+   * weights from 1 to 100. Such graphs have a small diameter, so searches reach most nodes quickly.
+   *
+   * @param nodeCount the number of nodes in the graph
+   * @param degree    the number of edges leaving each node
+   * @param random    the source of edge endpoints and weights
+   * @return the random graph, with nodes named by their number
+   */
+  public static DijkstraGraph<String, Double> randomGraph(int nodeCount, int degree,
+      Random random) {
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    for (int i = 0; i < nodeCount; i++) graph.insertNode("" + i);
+    for (int i = 0; i < nodeCount; i++)
+      for (int d = 0; d < degree; d++)
+        graph.insertEdge("" + i, "" + random.nextInt(nodeCount), 1.0 + random.nextInt(100));
+    return graph;
+  }
+
+  private static void printMapRound(String name, int keyCount, double[] result) {
+    System.out.printf("%-14s %8d %8.1f %8.1f %8.1f %8.1f %14.1f%n", name, keyCount, result[0],
+        result[1], result[2], result[3], result[4]);
+  }
+
+}
@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A BackendInterface that remembers the answers of another backend. One RouteResult is cached
+ * for each route query, keyed by its stops, and for each tour query, and paths and travel times
+ * are read from it, so repeating a query, or asking for the travel times of a path that was just
+ * found, does not search the graph again. Reachability, nearest location and alternative route
+ * queries are passed on uncached.
+ * <p>
+ * The cache remembers the modification count of the graph its answers were computed for, and
+ * is emptied as soon as that count changes. Answers are also evicted when they are older than the
+ * time to live, and least recently used answers are evicted when the cache is full.
+ */
+public class CachingBackend extends ForwardingBackend {
+
+  // a cached answer and when it expires
+  private static class Entry {
+    final RouteResult value;
+    final long expires;
+
+    Entry(RouteResult value, long expires) {
+      this.value = value;
+      this.expires = expires;
+    }
+  }
+
+  private final BaseGraph<String, Double> graph;
+  private final int maxEntries;
+  private final long ttlNanos;
+  // keyed by the locations of the query, least recently used first
+  private final LinkedHashMap<List<String>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // graph version that the cached answers belong to, see BaseGraph.getModificationCount
+  private long version;
+  private long hits = 0;
+  private long misses = 0;
+
+  /**
+   * Creates a cache in front of a backend.
+   *
+   * @param backend    the backend that computes answers that are not cached
+   * @param graph      the graph that backend answers from, whose changes invalidate the cache
+   * @param maxEntries the largest number of answers to keep
+   * @param ttlMillis  how long an answer may be used after it was computed, or 0 to keep
+   *                   answers until they are evicted or the graph changes
+   * @throws IllegalArgumentException if maxEntries is not positive or ttlMillis is negative
+   */
+  public CachingBackend(BackendInterface backend, BaseGraph<String, Double> graph, int maxEntries,
+      long ttlMillis) {
+    super(backend);
+    if (maxEntries < 1)
+      throw new IllegalArgumentException("cache size must be positive: " + maxEntries);
+    if (ttlMillis < 0)
+      throw new IllegalArgumentException("time to live must not be negative: " + ttlMillis);
+    this.graph = graph;
+    this.maxEntries = maxEntries;
+    this.ttlNanos = ttlMillis * 1_000_000;
+    this.version = graph.getModificationCount();
+  }
+
+  @Override
+  public void loadGraphData(String filename) throws IOException {
+    backend.loadGraphData(filename);
+    synchronized (this) {
+      entries.clear();
+    }
+  }
+
+  @Override
+  public List<String> findShortestPath(String startLocation, String endLocation) {
+    return new ArrayList<>(findRoute(startLocation, endLocation).getLocations());
+  }
+
+  @Override
+  public List<Double> getTravelTimesOnPath(String startLocation, String endLocation) {
+    return new ArrayList<>(findRoute(startLocation, endLocation).getLegSeconds());
+  }
+
+  @Override
+  public List<String> findShortestPathVia(String startLocation, String viaLocation,
+      String endLocation) {
+    return new ArrayList<>(findRouteVia(startLocation, viaLocation, endLocation).getLocations());
+  }
+
+  @Override
+  public List<Double> getTravelTimesOnPathVia(String startLocation, String viaLocation,
+      String endLocation) {
+    return new ArrayList<>(findRouteVia(startLocation, viaLocation, endLocation).getLegSeconds());
+  }
+
+  @Override
+  public RouteResult findRoute(String startLocation, String endLocation) {
+    return cached(List.of(startLocation, endLocation),
+        () -> backend.findRoute(startLocation, endLocation));
+  }
+
+  @Override
+  public RouteResult findRouteVia(String startLocation, String viaLocation, String endLocation) {
+    return cached(List.of(startLocation, viaLocation, endLocation),
+        () -> backend.findRouteVia(startLocation, viaLocation, endLocation));
+  }
+
+  @Override
+  public RouteResult findRouteThrough(List<String> stops) {
+    // a route through two or three stops is the same answer as findRoute or findRouteVia
+    return cached(List.copyOf(stops), () -> backend.findRouteThrough(stops));
+  }
+
+  @Override
+  public RouteResult findTour(String startLocation, List<String> stops, String endLocation) {
+    // the leading null keeps tours apart from routes, since no location is null
+    List<String> key = new ArrayList<>();
+    key.add(null);
+    key.add(startLocation);
+    key.add(endLocation);
+    key.addAll(stops);
+    return cached(key, () -> backend.findTour(startLocation, stops, endLocation));
+  }
+
+  /**
+   * Returns the number of queries answered from the cache.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of queries passed on to the wrapped backend.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of answers currently cached.
+   *
+   * @return the number of cached answers
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  // returns the cached route for key, computing and caching it first when there is no valid
+  // one; exceptions of the computation are passed on and nothing is cached
+  private RouteResult cached(List<String> key, Supplier<RouteResult> compute) {
+    synchronized (this) {
+      if (graph.getModificationCount() != version) {
+        entries.clear();
+        version = graph.getModificationCount();
+      }
+      Entry entry = entries.get(key);
+      if (entry != null && (ttlNanos == 0 || System.nanoTime() - entry.expires < 0)) {
+        hits++;
+        return entry.value;
+      }
+      if (entry != null) entries.remove(key);
+      misses++;
+    }
+    long computedFor = graph.getModificationCount();
+    RouteResult value = compute.get();
+    synchronized (this) {
+      // an answer computed while the graph changed may already be stale
+      if (computedFor == version && graph.getModificationCount() == version) {
+        entries.put(key, new Entry(value, System.nanoTime() + ttlNanos));
+        Iterator<Map.Entry<List<String>, Entry>> oldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries) {
+          oldest.next();
+          oldest.remove();
+        }
+      }
+    }
+    return value;
+  }
+
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A BackendInterface that lets identical route queries which arrive while the same query is
+ * still being answered share that answer instead of searching again. The first thread to ask
+ * for a route, keyed by its stops like CachingBackend, computes it with the wrapped backend;
+ * threads that ask for the same route before it is done wait for that computation and receive
+ * the same RouteResult, or the same exception. Nothing is kept once the computation ends, so
+ * this never returns an answer computed before the query was asked.
+ * <p>
+ * Route, via, through and tour queries and the path and travel time methods built on them are
+ * coalesced; the other queries are passed on. A CachingBackend in front of a CoalescingBackend
+ * caches the shared answers, so that concurrent misses of the cache run a single search.
+ * <p>
+ * A computation that is cancelled through SearchCancellation doesn't cancel the queries waiting
+ * for it: they compute the route again, one of them for all the others. A waiting query that is
+ * cancelled itself, for example when its deadline in an AsyncBackend passes, stops waiting
+ * within a few milliseconds and leaves the computation to the others.
+ */
+public class CoalescingBackend extends ForwardingBackend {
+
+  // how often a query that waits for another one's computation checks whether it was cancelled
+  private static final long WAIT_CHECK_MILLIS = 5;
+
+  // the computations that are running, keyed by the locations of their query
+  private final ConcurrentHashMap<List<String>, CompletableFuture<RouteResult>> inFlight =
+      new ConcurrentHashMap<>();
+  private final AtomicLong computations = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * Creates a coalescing layer in front of a backend.
+   *
+   * @param backend the backend that computes the answers
+   */
+  public CoalescingBackend(BackendInterface backend) {
+    super(backend);
+  }
+
+  @Override
+  public List<String> findShortestPath(String startLocation, String endLocation) {
+    return new ArrayList<>(findRoute(startLocation, endLocation).getLocations());
+  }
+
+  @Override
+  public List<Double> getTravelTimesOnPath(String startLocation, String endLocation) {
+    return new ArrayList<>(findRoute(startLocation, endLocation).getLegSeconds());
+  }
+
+  @Override
+  public List<String> findShortestPathVia(String startLocation, String viaLocation,
+      String endLocation) {
+    return new ArrayList<>(findRouteVia(startLocation, viaLocation, endLocation).getLocations());
+  }
+
+  @Override
+  public List<Double> getTravelTimesOnPathVia(String startLocation, String viaLocation,
+      String endLocation) {
+    return new ArrayList<>(findRouteVia(startLocation, viaLocation, endLocation).getLegSeconds());
+  }
+
+  @Override
+  public RouteResult findRoute(String startLocation, String endLocation) {
+    return shared(List.of(startLocation, endLocation),
+        () -> backend.findRoute(startLocation, endLocation));
+  }
+
+  @Override
+  public RouteResult findRouteVia(String startLocation, String viaLocation, String endLocation) {
+    return shared(List.of(startLocation, viaLocation, endLocation),
+        () -> backend.findRouteVia(startLocation, viaLocation, endLocation));
+  }
+
+  @Override
+  public RouteResult findRouteThrough(List<String> stops) {
+    return shared(List.copyOf(stops), () -> backend.findRouteThrough(stops));
+  }
+
+  @Override
+  public RouteResult findTour(String startLocation, List<String> stops, String endLocation) {
+    // the leading null keeps tours apart from routes, as in CachingBackend
+    List<String> key = new ArrayList<>();
+    key.add(null);
+    key.add(startLocation);
+    key.add(endLocation);
+    key.addAll(stops);
+    return shared(key, () -> backend.findTour(startLocation, stops, endLocation));
+  }
+
+  /**
+   * Returns the number of queries that the wrapped backend computed.
+   *
+   * @return the number of computations
+   */
+  public long getComputations() {
+    return computations.get();
+  }
+
+  /**
+   * Returns the number of queries that received the answer of a computation that was already
+   * running, which is the number of computations saved, plus the queries waiting for one now.
+   *
+   * @return the number of coalesced queries
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  /**
+   * Returns the number of computations running right now.
+   *
+   * @return the number of distinct queries in flight
+   */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  // returns the answer of the running computation for key, or computes it on the calling thread
+  // when there is none, letting the queries for the same key that arrive meanwhile wait for it
+  private RouteResult shared(List<String> key, Supplier<RouteResult> compute) {
+    while (true) {
+      CompletableFuture<RouteResult> mine = new CompletableFuture<>();
+      CompletableFuture<RouteResult> running = inFlight.putIfAbsent(key, mine);
+      if (running == null) {
+        computations.incrementAndGet();
+        try {
+          RouteResult value = compute.get();
+          mine.complete(value);
+          return value;
+        } catch (RuntimeException | Error e) {
+          mine.completeExceptionally(e);
+          throw e;
+        } finally {
+          inFlight.remove(key, mine);
+        }
+      }
+      coalesced.incrementAndGet();
+      RouteResult value = null;
+      try {
+        value = await(running);
+      } finally {
+        // a query that gets no answer saved no computation
+        if (value == null) coalesced.decrementAndGet();
+      }
+      if (value != null) return value;
+      // the computation was cancelled on behalf of another query, so unless this query was
+      // cancelled as well, it runs again
+      SearchCancellation.check();
+    }
+  }
+
+  // waits for the answer of another query's computation, checking every WAIT_CHECK_MILLIS
+  // whether this query was cancelled meanwhile, so that a waiting query whose deadline passes
+  // gives up its thread instead of waiting for the computation to end; returns null when the
+  // computation was cancelled
+  private static RouteResult await(CompletableFuture<RouteResult> running) {
+    while (true) {
+      SearchCancellation.check();
+      try {
+        return running.get(WAIT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        // still running
+      } catch (CancellationException e) {
+        return null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("interrupted while waiting for a shared route");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        if (e.getCause() instanceof Error) throw (Error) e.getCause();
+        throw new CompletionException(e.getCause());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,682 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, read-optimized snapshot of a BaseGraph. Every node is given a dense integer id
+ * and the edges are stored in compressed sparse row (CSR) form: the edges leaving node v are
+ * found at positions offsets[v] up to (but not including) offsets[v + 1] of the targets and
+ * weights arrays. Searching this layout walks a few flat primitive arrays instead of following
+ * LinkedList nodes and unboxing every edge weight, which keeps shortest path queries cache
+ * friendly on large graphs.
+ * <p>
+ * A snapshot does not change when the graph it was built from is modified afterwards, so a new
+ * snapshot has to be built to observe those changes.
+ *
+ * @param <NodeType> the data type stored at each graph node
+ */
+public class CompactGraph<NodeType> {
+
+  // number of children per heap node used by searches, see Benchmark heap
+  public static final int DEFAULT_HEAP_ARITY = 4;
+
+  // node data by dense id, and the reverse lookup from node data to id
+  private final Object[] nodeData;
+  private final HashtableMap<NodeType, Integer> ids;
+
+  // CSR adjacency: edges leaving v are [offsets[v], offsets[v + 1]) of targets and weights
+  private final int[] offsets;
+  private final int[] targets;
+  private final double[] weights;
+  // reverse CSR: edges entering v are [inOffsets[v], inOffsets[v + 1]) of sources and inWeights
+  private final int[] inOffsets;
+  private final int[] sources;
+  private final double[] inWeights;
+
+  /**
+   * Builds a snapshot of the nodes and edges currently stored in a graph.
+   *
+   * @param graph the graph to copy into compact form
+   */
+  public <EdgeType extends Number> CompactGraph(BaseGraph<NodeType, EdgeType> graph) {
+    List<NodeType> keys = graph.nodes.getKeys();
+    int nodeCount = keys.size();
+    this.nodeData = new Object[nodeCount];
+    this.ids = new HashtableMap<>(nodeCount);
+    this.offsets = new int[nodeCount + 1];
+    // first pass: assign ids and count the edges leaving each node
+    List<BaseGraph<NodeType, EdgeType>.Node> nodes = new ArrayList<>(nodeCount);
+    for (int id = 0; id < nodeCount; id++) {
+      BaseGraph<NodeType, EdgeType>.Node node = graph.nodes.get(keys.get(id));
+      nodes.add(node);
+      nodeData[id] = node.data;
+      ids.put(node.data, id);
+      offsets[id + 1] = offsets[id] + node.edgesLeaving.size();
+    }
+    // second pass: copy every edge into the flat target and weight arrays
+    this.targets = new int[offsets[nodeCount]];
+    this.weights = new double[offsets[nodeCount]];
+    for (int id = 0; id < nodeCount; id++) {
+      int edge = offsets[id];
+      for (BaseGraph<NodeType, EdgeType>.Edge e : nodes.get(id).edgesLeaving) {
+        targets[edge] = ids.get(e.successor.data);
+        weights[edge] = e.data.doubleValue();
+        edge++;
+      }
+    }
+    // group the same edges by the node they enter, for searches that run backward
+    this.inOffsets = new int[nodeCount + 1];
+    for (int target : targets) inOffsets[target + 1]++;
+    for (int id = 0; id < nodeCount; id++) inOffsets[id + 1] += inOffsets[id];
+    this.sources = new int[targets.length];
+    this.inWeights = new double[targets.length];
+    int[] next = Arrays.copyOf(inOffsets, nodeCount);
+    for (int id = 0; id < nodeCount; id++) {
+      for (int edge = offsets[id]; edge < offsets[id + 1]; edge++) {
+        int slot = next[targets[edge]]++;
+        sources[slot] = id;
+        inWeights[slot] = weights[edge];
+      }
+    }
+  }
+
+  /**
+   * Creates a snapshot from arrays in the layout described above, such as the ones stored in a
+   * GraphFile. The arrays are used as they are, without being copied or checked.
+   *
+   * @param nodes     the data of each node, by id
+   * @param offsets   the edges leaving node v are [offsets[v], offsets[v + 1]) of targets
+   * @param targets   the node each edge enters
+   * @param weights   the weight of each edge
+   * @param inOffsets the edges entering node v are [inOffsets[v], inOffsets[v + 1]) of sources
+   * @param sources   the node each entering edge leaves
+   * @param inWeights the weight of each entering edge
+   */
+  protected CompactGraph(List<NodeType> nodes, int[] offsets, int[] targets, double[] weights,
+      int[] inOffsets, int[] sources, double[] inWeights) {
+    this.nodeData = nodes.toArray();
+    this.ids = new HashtableMap<>(nodeData.length);
+    for (int id = 0; id < nodeData.length; id++) ids.put(nodes.get(id), id);
+    this.offsets = offsets;
+    this.targets = targets;
+    this.weights = weights;
+    this.inOffsets = inOffsets;
+    this.sources = sources;
+    this.inWeights = inWeights;
+  }
+
+  // a snapshot with the nodes and edges of another one and different weights
+  private CompactGraph(CompactGraph<NodeType> graph, double[] weights, double[] inWeights) {
+    this.nodeData = graph.nodeData;
+    this.ids = graph.ids;
+    this.offsets = graph.offsets;
+    this.targets = graph.targets;
+    this.weights = weights;
+    this.inOffsets = graph.inOffsets;
+    this.sources = graph.sources;
+    this.inWeights = inWeights;
+  }
+
+  /**
+   * Returns a snapshot with the same nodes and edges as this one, in which some edges have new
+   * weights. Only the weights are copied; the ids and adjacency arrays are shared with this
+   * snapshot, which is left unchanged, so this is much faster than building a snapshot of the
+   * changed graph.
+   *
+   * @param preds   the id of the node that each changed edge leaves
+   * @param succs   the id of the node that each changed edge enters
+   * @param weights the new weight of each changed edge, which every edge from preds[i] to
+   *                succs[i] is given
+   * @return the snapshot with the new weights
+   * @throws IllegalArgumentException if there is no edge from preds[i] to succs[i]
+   */
+  public CompactGraph<NodeType> withWeights(int[] preds, int[] succs, double[] weights) {
+    double[] outCopy = this.weights.clone();
+    double[] inCopy = this.inWeights.clone();
+    for (int i = 0; i < preds.length; i++) {
+      boolean found = false;
+      for (int edge = offsets[preds[i]]; edge < offsets[preds[i] + 1]; edge++) {
+        if (targets[edge] == succs[i]) {
+          outCopy[edge] = weights[i];
+          found = true;
+        }
+      }
+      for (int edge = inOffsets[succs[i]]; edge < inOffsets[succs[i] + 1]; edge++) {
+        if (sources[edge] == preds[i]) inCopy[edge] = weights[i];
+      }
+      if (!found) {
+        throw new IllegalArgumentException("no edge from " + nodeAt(preds[i]) + " to "
+            + nodeAt(succs[i]));
+      }
+    }
+    return new CompactGraph<>(this, outCopy, inCopy);
+  }
+
+  /**
+   * Checks cheaply whether another snapshot has the same nodes with the same ids as this one,
+   * which is known when one of them was made from the other by withWeights.
+   *
+   * @param other another snapshot
+   * @return true if other shares the nodes of this snapshot, or false if it doesn't or that isn't
+   *         known
+   */
+  public boolean hasSameNodes(CompactGraph<?> other) {
+    return nodeData == other.nodeData;
+  }
+
+  /**
+   * Returns the dense id of the node containing the provided data.
+   *
+   * @param data the node contents to look up
+   * @return the id of that node, or -1 when no such node is in this snapshot
+   * @throws NullPointerException if data is null
+   */
+  public int indexOf(NodeType data) {
+    return ids.getOrDefault(data, -1);
+  }
+
+  /**
+   * Returns the data stored in the node with the provided id.
+   *
+   * @param id the dense id of a node in this snapshot
+   * @return the data stored in that node
+   */
+  @SuppressWarnings("unchecked")
+  public NodeType nodeAt(int id) {
+    return (NodeType) nodeData[id];
+  }
+
+  /**
+   * Return the number of nodes in this snapshot.
+   *
+   * @return the number of nodes in this snapshot
+   */
+  public int getNodeCount() {
+    return nodeData.length;
+  }
+
+  /**
+   * Return the number of edges in this snapshot.
+   *
+   * @return the number of edges in this snapshot
+   */
+  public int getEdgeCount() {
+    return targets.length;
+  }
+
+  /**
+   * Returns the position of the first edge leaving a node. The edges leaving node are the
+   * positions from getEdgeStart(node) up to (but not including) getEdgeEnd(node).
+   *
+   * @param node the id of the node
+   * @return the position of its first leaving edge
+   */
+  public int getEdgeStart(int node) {
+    return offsets[node];
+  }
+
+  /**
+   * Returns the position just past the last edge leaving a node.
+   *
+   * @param node the id of the node
+   * @return the position after its last leaving edge
+   */
+  public int getEdgeEnd(int node) {
+    return offsets[node + 1];
+  }
+
+  /**
+   * Returns the node that an edge leads to.
+   *
+   * @param edge the position of the edge
+   * @return the id of the node the edge enters
+   */
+  public int getEdgeTarget(int edge) {
+    return targets[edge];
+  }
+
+  /**
+   * Returns the weight of an edge.
+   *
+   * @param edge the position of the edge
+   * @return the weight of that edge
+   */
+  public double getEdgeWeight(int edge) {
+    return weights[edge];
+  }
+
+  /**
+   * Returns the position of the first edge entering a node. The edges entering node are the
+   * positions from getInEdgeStart(node) up to (but not including) getInEdgeEnd(node), which
+   * are numbered separately from the positions of the edges leaving nodes.
+   *
+   * @param node the id of the node
+   * @return the position of its first entering edge
+   */
+  public int getInEdgeStart(int node) {
+    return inOffsets[node];
+  }
+
+  /**
+   * Returns the position just past the last edge entering a node.
+   *
+   * @param node the id of the node
+   * @return the position after its last entering edge
+   */
+  public int getInEdgeEnd(int node) {
+    return inOffsets[node + 1];
+  }
+
+  /**
+   * Returns the node that an entering edge comes from.
+   *
+   * @param edge the position of the entering edge
+   * @return the id of the node the edge leaves
+   */
+  public int getInEdgeSource(int edge) {
+    return sources[edge];
+  }
+
+  /**
+   * Returns the weight of an entering edge.
+   *
+   * @param edge the position of the entering edge
+   * @return the weight of that edge
+   */
+  public double getInEdgeWeight(int edge) {
+    return inWeights[edge];
+  }
+
+  /**
+   * Returns the weight of every edge along a path of node data, such as the ones returned by
+   * pathTo. When there are several edges between two nodes, the lightest one is used.
+   *
+   * @param path the data of consecutive nodes along a path in this snapshot
+   * @return the weight of the edge from path.get(i) to path.get(i + 1) at index i
+   * @throws IllegalArgumentException if two consecutive nodes are not connected
+   */
+  public double[] weightsAlong(List<NodeType> path) {
+    double[] result = new double[Math.max(0, path.size() - 1)];
+    int u = path.isEmpty() ? -1 : indexOf(path.get(0));
+    for (int i = 0; i < result.length; i++) {
+      int v = indexOf(path.get(i + 1));
+      double weight = Double.POSITIVE_INFINITY;
+      if (u != -1 && v != -1) {
+        for (int edge = offsets[u]; edge < offsets[u + 1]; edge++) {
+          if (targets[edge] == v) weight = Math.min(weight, weights[edge]);
+        }
+      }
+      if (weight == Double.POSITIVE_INFINITY)
+        throw new IllegalArgumentException(
+            "no edge from " + path.get(i) + " to " + path.get(i + 1));
+      result[i] = weight;
+      u = v;
+    }
+    return result;
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from source until target is settled. Afterwards the workspace holds
+   * the distance and predecessor of every node reached by the search.
+   *
+   * @param source    the id of the starting node
+   * @param target    the id of the destination node
+   * @param workspace the workspace to run the search in, with a capacity of at least
+   *                  getNodeCount()
+   * @return the cost of the shortest path to target, or infinity when target can't be reached
+   */
+  protected double dijkstra(int source, int target, SearchWorkspace workspace) {
+    int found = search(source, false, null, Double.POSITIVE_INFINITY, target, null, 0, null,
+        workspace);
+    return found == -1 ? Double.POSITIVE_INFINITY : workspace.getDistance(found);
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from source until target is settled, without using the nodes and
+   * edges blocked by a mask, as if they had been removed from the graph. Afterwards the workspace
+   * holds the distance and predecessor of every node reached by the search.
+   *
+   * @param source    the id of the starting node, which is used even when it is blocked
+   * @param target    the id of the destination node
+   * @param mask      the nodes and edges to avoid
+   * @param workspace the workspace to run the search in
+   * @return the cost of the shortest path to target that avoids the mask, or infinity when there
+   *         is none
+   */
+  protected double dijkstra(int source, int target, SearchMask mask, SearchWorkspace workspace) {
+    int found = search(source, false, mask, Double.POSITIVE_INFINITY, target, null, 0, null,
+        workspace);
+    return found == -1 ? Double.POSITIVE_INFINITY : workspace.getDistance(found);
+  }
+
+  /**
+   * Runs a bidirectional version of Dijkstra's algorithm: one search leaves source along the
+   * edges leaving each node while a second search leaves target along the edges entering each
+   * node, and the side with fewer queued nodes is expanded next. Every time an edge leads one
+   * search to a node already reached by the other, the path through that node becomes a
+   * candidate. Once the two lowest queued distances add up to at least the best candidate, no
+   * shorter path can exist and the search stops, usually after settling far fewer nodes than a
+   * one-sided search.
+   *
+   * @param source    the id of the starting node
+   * @param target    the id of the destination node
+   * @param workspace the workspace for the forward half; its reverse workspace holds the
+   *                  backward half
+   * @return the cost of the shortest path to target, or infinity when target can't be reached
+   */
+  protected double bidirectionalDijkstra(int source, int target, SearchWorkspace workspace) {
+    SearchWorkspace forward = workspace;
+    SearchWorkspace backward = workspace.getReverseWorkspace();
+    forward.begin();
+    backward.begin();
+    forward.reach(source, 0, -1);
+    forward.getHeap().insert(source, 0);
+    backward.reach(target, 0, -1);
+    backward.getHeap().insert(target, 0);
+    int meeting = source == target ? source : -1;
+    while (!forward.getHeap().isEmpty() && !backward.getHeap().isEmpty()) {
+      double best = meeting == -1 ? Double.POSITIVE_INFINITY
+          : forward.getDistance(meeting) + backward.getDistance(meeting);
+      if (forward.getHeap().peekPriority() + backward.getHeap().peekPriority() >= best) break;
+      if (forward.getHeap().size() <= backward.getHeap().size()) {
+        meeting = expand(forward, backward, offsets, targets, weights, meeting);
+      } else {
+        meeting = expand(backward, forward, inOffsets, sources, inWeights, meeting);
+      }
+    }
+    if (meeting == -1) return Double.POSITIVE_INFINITY;
+    forward.setMeetingNode(meeting, true);
+    return forward.getDistance(meeting) + backward.getDistance(meeting);
+  }
+
+  // settles the closest queued node of one half of a bidirectional search and relaxes its edges
+  // in that direction, returning the meeting node of the best path found so far
+  private static int expand(SearchWorkspace search, SearchWorkspace other, int[] edgeOffsets,
+      int[] heads, double[] edgeWeights, int meeting) {
+    int u = search.getHeap().poll();
+    search.settle(u);
+    double distance = search.getDistance(u);
+    double best = meeting == -1 ? Double.POSITIVE_INFINITY
+        : search.getDistance(meeting) + other.getDistance(meeting);
+    for (int edge = edgeOffsets[u]; edge < edgeOffsets[u + 1]; edge++) {
+      int v = heads[edge];
+      double cost = distance + edgeWeights[edge];
+      if (cost < search.getDistance(v)) {
+        search.reach(v, cost, u);
+        search.getHeap().insertOrDecrease(v, cost);
+      }
+      // a node that the other half already reached joins the two halves into a full path
+      if (other.isReached(v) && cost + other.getDistance(v) < best) {
+        best = cost + other.getDistance(v);
+        meeting = v;
+      }
+    }
+    return meeting;
+  }
+
+  /**
+   * Runs A* from source until target is settled, using the lower bounds of a landmark table to
+   * settle nodes in order of the distance already travelled plus the least distance that can
+   * still remain. Nodes that the table proves can't reach target are never queued. Because the
+   * bounds never overestimate, the path found is as short as the one Dijkstra's algorithm finds,
+   * while the search is pulled towards target and settles fewer nodes on the way.
+   *
+   * @param source    the id of the starting node
+   * @param target    the id of the destination node
+   * @param landmarks a landmark table computed for this snapshot
+   * @param workspace the workspace to run the search in
+   * @return the cost of the shortest path to target, or infinity when target can't be reached
+   */
+  protected double astar(int source, int target, LandmarkTable landmarks,
+      SearchWorkspace workspace) {
+    workspace.begin();
+    IndexedMinHeap heap = workspace.getHeap();
+    workspace.reach(source, 0, -1);
+    double bound = landmarks.lowerBound(source, target);
+    if (bound == Double.POSITIVE_INFINITY) return bound;
+    heap.insert(source, bound);
+    while (!heap.isEmpty()) {
+      int u = heap.poll();
+      workspace.settle(u);
+      if (u == target) {
+        workspace.setMeetingNode(u, false);
+        return workspace.getDistance(u);
+      }
+      double distance = workspace.getDistance(u);
+      for (int edge = offsets[u]; edge < offsets[u + 1]; edge++) {
+        int v = targets[edge];
+        double cost = distance + weights[edge];
+        if (cost < workspace.getDistance(v)) {
+          bound = landmarks.lowerBound(v, target);
+          if (bound == Double.POSITIVE_INFINITY) continue;
+          workspace.reach(v, cost, u);
+          // rounding can make the bounds very slightly inconsistent, in which case a settled node
+          // is queued again rather than keeping a distance that is not quite the shortest
+          heap.insertOrDecrease(v, cost + bound);
+        }
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from root until every node it can reach is settled, leaving the
+   * distance of every node in the workspace. A backward search follows the edges entering each
+   * node, so it finds the distance from every node to root instead.
+   *
+   * @param root      the id of the node to start from
+   * @param backward  true to search along the edges entering each node
+   * @param workspace the workspace to run the search in
+   */
+  protected void searchAll(int root, boolean backward, SearchWorkspace workspace) {
+    search(root, backward, null, Double.POSITIVE_INFINITY, -1, null, 0, null, workspace);
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from root until the first of a set of targets is settled, which is
+   * the target closest to root. A backward search follows the edges entering each node, so it
+   * finds the target from which root is closest instead, and the predecessor of each node then
+   * leads towards root.
+   *
+   * @param root      the id of the node to start from
+   * @param isTarget  marks the ids of the targets
+   * @param backward  true to search along the edges entering each node
+   * @param workspace the workspace to run the search in
+   * @return the id of the closest target, or -1 when no target can be reached
+   */
+  protected int searchNearest(int root, boolean[] isTarget, boolean backward,
+      SearchWorkspace workspace) {
+    return search(root, backward, null, Double.POSITIVE_INFINITY, -1, isTarget, 1, null,
+        workspace);
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from source but only settles nodes within a cost limit, calling
+   * back for each of them in the order they are settled, which is by increasing distance. Edges
+   * that lead past the limit are not followed, so the search explores no more of the graph than
+   * it reports.
+   *
+   * @param source    the id of the node to start from
+   * @param limit     the largest distance from source to report
+   * @param workspace the workspace to run the search in, which holds the distance of each
+   *                  reported node while it is reported
+   * @param onSettle  called with the id of every node within limit, source first
+   */
+  protected void searchWithin(int source, double limit, SearchWorkspace workspace,
+      IntConsumer onSettle) {
+    search(source, false, null, limit, -1, null, 0, onSettle, workspace);
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from source until every target it can reach is settled, leaving
+   * the distance of every settled node in the workspace. This stops as soon as the last target is
+   * settled, so close targets are found without exploring the rest of the graph.
+   *
+   * @param source      the id of the node to start from
+   * @param isTarget    marks the ids of the targets
+   * @param targetCount the number of marked ids in isTarget
+   * @param workspace   the workspace to run the search in
+   */
+  protected void searchTargets(int source, boolean[] isTarget, int targetCount,
+      SearchWorkspace workspace) {
+    if (targetCount == 0) {
+      workspace.begin();
+      return;
+    }
+    search(source, false, null, Double.POSITIVE_INFINITY, -1, isTarget, targetCount, null,
+        workspace);
+  }
+
+  /**
+   * The settle and relax loop of Dijkstra's algorithm that the searches above share. It reads the
+   * CSR arrays of one direction directly, so the hot loop stays on flat primitive arrays. Nodes
+   * and edges blocked by a mask are skipped, as are edges that lead past a cost limit. The search
+   * stops once target is settled, or once targetCount of the nodes marked in isTarget are, and
+   * otherwise runs until no node is left. Afterwards the workspace holds the distance and
+   * predecessor of every node reached, and the node the search stopped at as its meeting node.
+   *
+   * @param root        the id of the node to start from, which is used even when it is blocked
+   * @param backward    true to search along the edges entering each node
+   * @param mask        the nodes and edges to avoid, or null; edges are blocked by their position
+   *                    in the arrays of the edges leaving each node, so only forward searches
+   *                    can be masked
+   * @param limit       the largest distance to reach a node with, or infinity; a limit below 0
+   *                    reaches nothing
+   * @param target      the id of the node to stop at, or -1
+   * @param isTarget    marks the ids of a set of nodes to stop at, or null
+   * @param targetCount how many of the nodes marked in isTarget to settle before stopping
+   * @param onSettle    called with each node as it is settled, or null
+   * @param workspace   the workspace to run the search in
+   * @return the node the search stopped at, or -1 when it ran out of nodes first
+   */
+  private int search(int root, boolean backward, SearchMask mask, double limit, int target,
+      boolean[] isTarget, int targetCount, IntConsumer onSettle, SearchWorkspace workspace) {
+    int[] edgeOffsets = backward ? inOffsets : offsets;
+    int[] heads = backward ? sources : targets;
+    double[] edgeWeights = backward ? inWeights : weights;
+    workspace.begin();
+    if (!(limit >= 0)) return -1;
+    IndexedMinHeap heap = workspace.getHeap();
+    workspace.reach(root, 0, -1);
+    heap.insert(root, 0);
+    int remaining = targetCount;
+    while (!heap.isEmpty()) {
+      int u = heap.poll();
+      workspace.settle(u);
+      if (onSettle != null) onSettle.accept(u);
+      if (u == target || (isTarget != null && isTarget[u] && --remaining == 0)) {
+        workspace.setMeetingNode(u, false);
+        return u;
+      }
+      double distance = workspace.getDistance(u);
+      // with non-negative weights a settled node never improves, so it is never queued again
+      for (int edge = edgeOffsets[u]; edge < edgeOffsets[u + 1]; edge++) {
+        int v = heads[edge];
+        if (mask != null && (mask.isEdgeBlocked(edge) || mask.isNodeBlocked(v))) continue;
+        double cost = distance + edgeWeights[edge];
+        if (cost <= limit && cost < workspace.getDistance(v)) {
+          workspace.reach(v, cost, u);
+          heap.insertOrDecrease(v, cost);
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Computes the cost of the shortest path from every source to every target, with one search
+   * per source that stops once all targets are settled. The searches run in parallel on a pool,
+   * each in the workspace that the thread running it gets from workspaces.
+   *
+   * @param sources    the ids of the sources
+   * @param targets    the ids of the targets, which may repeat
+   * @param pool       the pool that runs the searches
+   * @param workspaces returns a workspace that only the calling thread uses, with a capacity of
+   *                   at least getNodeCount()
+   * @return the flat cost matrix, with the cost from sources[s] to targets[t] at index
+   *         s * targets.length + t, or infinity when there is no path
+   * @throws IllegalArgumentException if the matrix has more cells than an array can hold
+   */
+  public double[] costMatrix(int[] sources, int[] targets, ForkJoinPool pool,
+      Supplier<SearchWorkspace> workspaces) {
+    int width = targets.length;
+    boolean[] isTarget = new boolean[getNodeCount()];
+    int targetCount = 0;
+    for (int target : targets) {
+      if (!isTarget[target]) targetCount++;
+      isTarget[target] = true;
+    }
+    int distinctTargets = targetCount;
+    double[] costs;
+    try {
+      costs = new double[Math.multiplyExact(sources.length, width)];
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException(
+          "cost matrix too large: " + sources.length + " x " + width);
+    }
+    // each source fills its own row, and only reads the shared target marks
+    pool.submit(() -> IntStream.range(0, sources.length).parallel().forEach(s -> {
+      SearchWorkspace workspace = workspaces.get();
+      searchTargets(sources[s], isTarget, distinctTargets, workspace);
+      for (int t = 0; t < width; t++) costs[s * width + t] = workspace.getDistance(targets[t]);
+    })).join();
+    return costs;
+  }
+
+  /**
+   * Returns a checksum of the nodes and weighted edges of this snapshot that does not depend on
+   * the order in which ids were assigned, so two snapshots of the same graph have the same
+   * fingerprint even in different runs, as long as the hashCode of the node data is stable (as
+   * it is for Strings).
+   *
+   * @return a fingerprint of the contents of this snapshot
+   */
+  public long fingerprint() {
+    long sum = getNodeCount() * 0x9E3779B97F4A7C15L;
+    for (int u = 0; u < getNodeCount(); u++) {
+      long from = nodeAt(u).hashCode();
+      sum += mix(from);
+      for (int edge = offsets[u]; edge < offsets[u + 1]; edge++) {
+        long to = nodeAt(targets[edge]).hashCode();
+        // edges are summed, so their order doesn't matter
+        sum += mix(from * 31 + to + mix(Double.doubleToLongBits(weights[edge])));
+      }
+    }
+    return sum;
+  }
+
+  // the finalizer of splitmix64, so that similar inputs give unrelated outputs
+  private static long mix(long x) {
+    x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+    x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+    return x ^ (x >>> 31);
+  }
+
+  /**
+   * Returns the node data along the path found by the last search in a workspace. This follows
+   * the predecessors back from its meeting node to the start of the search, and after a
+   * bidirectional search continues from the meeting node along the backward half to the target.
+   *
+   * @param workspace the workspace that ran the search
+   * @return list of data items from the start of the search through its target
+   */
+  protected List<NodeType> pathTo(SearchWorkspace workspace) {
+    int meeting = workspace.getMeetingNode();
+    List<NodeType> path = new ArrayList<>();
+    for (int v = meeting; v != -1; v = workspace.getPredecessor(v)) path.add(nodeAt(v));
+    Collections.reverse(path);
+    if (workspace.joinsReverse()) {
+      SearchWorkspace backward = workspace.getReverseWorkspace();
+      for (int v = backward.getPredecessor(meeting); v != -1; v = backward.getPredecessor(v)) {
+        path.add(nodeAt(v));
+      }
+    }
+    return path;
+  }
+
+}
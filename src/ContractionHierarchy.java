@@ -0,0 +1,499 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A contraction hierarchy over a CompactGraph, which answers shortest path queries by searching
+ * only a small part of the graph.
+ * <p>
+ * Preprocessing removes ("contracts") the nodes one at a time, from least to most important.
+ * Whenever the shortest path between two neighbors of a contracted node ran through it, a
+ * shortcut edge with the combined weight is added between them, unless a witness search finds a
+ * path that is no longer. The importance of a node is its edge difference: the number of
+ * shortcuts its contraction would add minus the number of edges it removes, plus the number of
+ * neighbors contracted before it so that contraction spreads evenly. Each round contracts a set
+ * of nodes that are less important than every node within two edges of them. No two nodes of
+ * such a set are adjacent, so their shortcuts can be computed in parallel, with witness searches
+ * that avoid the whole set.
+ * <p>
+ * A query then runs a bidirectional search that only follows edges towards nodes contracted
+ * later: forward from the start and backward from the end. Both halves climb towards the few
+ * most important nodes, where they meet. Every shortcut remembers the node it bypasses, so the
+ * path found is unpacked back into the original nodes and edges of the graph.
+ *
+ * @param <NodeType> the data type stored at each graph node
+ */
+public class ContractionHierarchy<NodeType> {
+
+  // most nodes settled by a single witness search; giving up early only adds a shortcut that a
+  // longer search might have proven unnecessary
+  private static final int WITNESS_SETTLE_LIMIT = 500;
+  // the same limit for the searches that only estimate the importance of a node
+  private static final int ESTIMATE_SETTLE_LIMIT = 50;
+
+  private final CompactGraph<NodeType> graph;
+  // order in which each node was contracted
+  private final int[] rank;
+  // upward edges: edges leaving v towards later contracted nodes, stored like CompactGraph's CSR,
+  // with the bypassed node of each shortcut in upMiddles (-1 for an edge of the graph)
+  private final int[] upOffsets;
+  private final int[] upTargets;
+  private final double[] upWeights;
+  private final int[] upMiddles;
+  // downward edges, grouped by the node they enter: edges entering v from later contracted nodes
+  private final int[] downOffsets;
+  private final int[] downSources;
+  private final double[] downWeights;
+  private final int[] downMiddles;
+
+  private final int shortcutCount;
+  private final int rounds;
+  private final double preprocessingMillis;
+
+  /**
+   * Contracts every node of a snapshot and builds the hierarchy used for queries.
+   *
+   * @param graph the snapshot to build a hierarchy for
+   */
+  public ContractionHierarchy(CompactGraph<NodeType> graph) {
+    long start = System.nanoTime();
+    this.graph = graph;
+    int n = graph.getNodeCount();
+    Builder builder = new Builder(graph);
+    builder.contractAll();
+    this.rank = builder.rank;
+    this.shortcutCount = builder.shortcutCount;
+    this.rounds = builder.rounds;
+    // flatten the edges recorded at contraction time into the two CSR layouts
+    this.upOffsets = new int[n + 1];
+    this.downOffsets = new int[n + 1];
+    for (int v = 0; v < n; v++) {
+      upOffsets[v + 1] = upOffsets[v] + builder.upward[v].size;
+      downOffsets[v + 1] = downOffsets[v] + builder.downward[v].size;
+    }
+    this.upTargets = new int[upOffsets[n]];
+    this.upWeights = new double[upOffsets[n]];
+    this.upMiddles = new int[upOffsets[n]];
+    this.downSources = new int[downOffsets[n]];
+    this.downWeights = new double[downOffsets[n]];
+    this.downMiddles = new int[downOffsets[n]];
+    for (int v = 0; v < n; v++) {
+      builder.upward[v].copyTo(upTargets, upWeights, upMiddles, upOffsets[v]);
+      builder.downward[v].copyTo(downSources, downWeights, downMiddles, downOffsets[v]);
+    }
+    this.preprocessingMillis = (System.nanoTime() - start) / 1e6;
+  }
+
+  /**
+   * Checks whether this hierarchy was built from a snapshot.
+   *
+   * @param snapshot the snapshot to check
+   * @return true if this hierarchy answers queries for snapshot, or false otherwise
+   */
+  public boolean isFor(CompactGraph<?> snapshot) {
+    return graph == snapshot;
+  }
+
+  /**
+   * Returns the number of shortcut edges added while contracting the graph.
+   *
+   * @return the number of shortcuts in this hierarchy
+   */
+  public int getShortcutCount() {
+    return shortcutCount;
+  }
+
+  /**
+   * Returns the number of rounds of parallel contraction that preprocessing took.
+   *
+   * @return the number of rounds
+   */
+  public int getRounds() {
+    return rounds;
+  }
+
+  /**
+   * Returns how long it took to build this hierarchy.
+   *
+   * @return the preprocessing time in milliseconds
+   */
+  public double getPreprocessingMillis() {
+    return preprocessingMillis;
+  }
+
+  /**
+   * Returns a one line summary of the preprocessing, for logs and benchmarks.
+   *
+   * @return a description of the size of this hierarchy and how long it took to build
+   */
+  public String report() {
+    return String.format("contracted %d nodes in %d rounds and %.1f ms, adding %d shortcuts to "
+        + "%d edges", graph.getNodeCount(), rounds, preprocessingMillis, shortcutCount,
+        graph.getEdgeCount());
+  }
+
+  /**
+   * Runs the upward bidirectional search from source to target. The forward half only follows
+   * upward edges and the backward half only downward edges, so each stops once its lowest queued
+   * distance is no less than the best path through a node both halves reached.
+   *
+   * @param source    the id of the starting node
+   * @param target    the id of the destination node
+   * @param workspace the workspace for the forward half; its reverse workspace holds the
+   *                  backward half
+   * @return the cost of the shortest path to target, or infinity when target can't be reached
+   */
+  protected double query(int source, int target, SearchWorkspace workspace) {
+    SearchWorkspace forward = workspace;
+    SearchWorkspace backward = workspace.getReverseWorkspace();
+    forward.begin();
+    backward.begin();
+    forward.reach(source, 0, -1);
+    forward.getHeap().insert(source, 0);
+    backward.reach(target, 0, -1);
+    backward.getHeap().insert(target, 0);
+    int meeting = source == target ? source : -1;
+    double best = source == target ? 0 : Double.POSITIVE_INFINITY;
+    boolean forwardTurn = true;
+    while (true) {
+      // unlike plain bidirectional Dijkstra, the halves don't settle nodes in a common order, so
+      // each one runs until its own queue can't improve on the best path
+      boolean forwardOpen = !forward.getHeap().isEmpty()
+          && forward.getHeap().peekPriority() < best;
+      boolean backwardOpen = !backward.getHeap().isEmpty()
+          && backward.getHeap().peekPriority() < best;
+      if (!forwardOpen && !backwardOpen) break;
+      boolean expandForward = forwardOpen && (forwardTurn || !backwardOpen);
+      forwardTurn = !forwardTurn;
+      SearchWorkspace search = expandForward ? forward : backward;
+      SearchWorkspace other = expandForward ? backward : forward;
+      int[] edgeOffsets = expandForward ? upOffsets : downOffsets;
+      int[] heads = expandForward ? upTargets : downSources;
+      double[] edgeWeights = expandForward ? upWeights : downWeights;
+      int u = search.getHeap().poll();
+      search.settle(u);
+      double distance = search.getDistance(u);
+      if (other.isReached(u) && distance + other.getDistance(u) < best) {
+        best = distance + other.getDistance(u);
+        meeting = u;
+      }
+      for (int edge = edgeOffsets[u]; edge < edgeOffsets[u + 1]; edge++) {
+        int v = heads[edge];
+        double cost = distance + edgeWeights[edge];
+        if (cost < search.getDistance(v)) {
+          search.reach(v, cost, u);
+          search.getHeap().insertOrDecrease(v, cost);
+        }
+      }
+    }
+    if (meeting == -1) return Double.POSITIVE_INFINITY;
+    forward.setMeetingNode(meeting, true);
+    return best;
+  }
+
+  /**
+   * Returns the node data along the path found by the last query in a workspace, with every
+   * shortcut replaced by the original edges it stands for.
+   *
+   * @param workspace the workspace that ran the query
+   * @return list of data items from the start of the query through its target
+   */
+  protected List<NodeType> pathTo(SearchWorkspace workspace) {
+    int meeting = workspace.getMeetingNode();
+    // hierarchy nodes along the path: up from the source to the meeting node, then down
+    List<Integer> hops = new ArrayList<>();
+    for (int v = meeting; v != -1; v = workspace.getPredecessor(v)) hops.add(v);
+    Collections.reverse(hops);
+    SearchWorkspace backward = workspace.getReverseWorkspace();
+    for (int v = backward.getPredecessor(meeting); v != -1; v = backward.getPredecessor(v)) {
+      hops.add(v);
+    }
+    List<NodeType> path = new ArrayList<>();
+    path.add(graph.nodeAt(hops.get(0)));
+    for (int i = 0; i + 1 < hops.size(); i++) unpack(hops.get(i), hops.get(i + 1), path);
+    return path;
+  }
+
+  // appends the original nodes after from along the hierarchy edge from -> to, ending with to
+  private void unpack(int from, int to, List<NodeType> path) {
+    int middle = middleOf(from, to);
+    if (middle == -1) {
+      path.add(graph.nodeAt(to));
+    } else {
+      unpack(from, middle, path);
+      unpack(middle, to, path);
+    }
+  }
+
+  // returns the node bypassed by the cheapest hierarchy edge from -> to, or -1 for an edge of
+  // the graph; the edge is stored with whichever endpoint was contracted first
+  private int middleOf(int from, int to) {
+    int found = -1;
+    double weight = Double.POSITIVE_INFINITY;
+    if (rank[from] < rank[to]) {
+      for (int edge = upOffsets[from]; edge < upOffsets[from + 1]; edge++) {
+        if (upTargets[edge] == to && upWeights[edge] < weight) {
+          weight = upWeights[edge];
+          found = upMiddles[edge];
+        }
+      }
+    } else {
+      for (int edge = downOffsets[to]; edge < downOffsets[to + 1]; edge++) {
+        if (downSources[edge] == from && downWeights[edge] < weight) {
+          weight = downWeights[edge];
+          found = downMiddles[edge];
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * A growable list of weighted edges to or from one node, each with the node that it bypasses.
+   * At most one edge is kept per neighbor, the cheapest.
+   */
+  private static class EdgeList {
+    int[] nodes = new int[4];
+    double[] weights = new double[4];
+    int[] middles = new int[4];
+    int size = 0;
+
+    // adds an edge to node, or lowers the weight of the existing one; returns true if either
+    // happened
+    boolean put(int node, double weight, int middle) {
+      for (int i = 0; i < size; i++) {
+        if (nodes[i] == node) {
+          if (weight >= weights[i]) return false;
+          weights[i] = weight;
+          middles[i] = middle;
+          return true;
+        }
+      }
+      if (size == nodes.length) {
+        nodes = Arrays.copyOf(nodes, 2 * size);
+        weights = Arrays.copyOf(weights, 2 * size);
+        middles = Arrays.copyOf(middles, 2 * size);
+      }
+      nodes[size] = node;
+      weights[size] = weight;
+      middles[size] = middle;
+      size++;
+      return true;
+    }
+
+    // removes the edge to node, if there is one, by moving the last edge into its place
+    void remove(int node) {
+      for (int i = 0; i < size; i++) {
+        if (nodes[i] == node) {
+          size--;
+          nodes[i] = nodes[size];
+          weights[i] = weights[size];
+          middles[i] = middles[size];
+          return;
+        }
+      }
+    }
+
+    void copyTo(int[] toNodes, double[] toWeights, int[] toMiddles, int offset) {
+      System.arraycopy(nodes, 0, toNodes, offset, size);
+      System.arraycopy(weights, 0, toWeights, offset, size);
+      System.arraycopy(middles, 0, toMiddles, offset, size);
+    }
+  }
+
+  /**
+   * The mutable state of preprocessing: the edges among nodes that are not contracted yet, and
+   * the edges recorded for the final hierarchy.
+   */
+  private static class Builder {
+    final int n;
+    // edges between nodes that are still in the graph, including shortcuts
+    final EdgeList[] out;
+    final EdgeList[] in;
+    // edges of the hierarchy, recorded as each node is contracted
+    final EdgeList[] upward;
+    final EdgeList[] downward;
+    final int[] rank;
+    final double[] priority;
+    final int[] contractedNeighbors;
+    // nodes contracted in the current round, which witness searches must avoid
+    final boolean[] inRound;
+    final ThreadLocal<SearchWorkspace> workspaces;
+    int shortcutCount = 0;
+    int rounds = 0;
+
+    Builder(CompactGraph<?> graph) {
+      n = graph.getNodeCount();
+      out = new EdgeList[n];
+      in = new EdgeList[n];
+      upward = new EdgeList[n];
+      downward = new EdgeList[n];
+      for (int v = 0; v < n; v++) {
+        out[v] = new EdgeList();
+        in[v] = new EdgeList();
+      }
+      for (int u = 0; u < n; u++) {
+        for (int edge = graph.getEdgeStart(u); edge < graph.getEdgeEnd(u); edge++) {
+          int v = graph.getEdgeTarget(edge);
+          // loops never lie on a shortest path
+          if (v == u) continue;
+          out[u].put(v, graph.getEdgeWeight(edge), -1);
+          in[v].put(u, graph.getEdgeWeight(edge), -1);
+        }
+      }
+      rank = new int[n];
+      Arrays.fill(rank, -1);
+      priority = new double[n];
+      contractedNeighbors = new int[n];
+      inRound = new boolean[n];
+      workspaces = ThreadLocal.withInitial(
+          () -> new SearchWorkspace(n, CompactGraph.DEFAULT_HEAP_ARITY));
+    }
+
+    void contractAll() {
+      IntStream.range(0, n).parallel().forEach(v -> priority[v] = priorityOf(v));
+      int contracted = 0;
+      int[] remaining = IntStream.range(0, n).toArray();
+      int remainingCount = n;
+      while (contracted < n) {
+        rounds++;
+        // pick the nodes that are less important than every neighbor still in the graph
+        int[] round = IntStream.range(0, remainingCount).map(i -> remaining[i])
+            .filter(this::isLocalMinimum).toArray();
+        for (int v : round) inRound[v] = true;
+        // witness searches only read the graph, so the shortcuts can be found in parallel
+        double[][] shortcuts = new double[round.length][];
+        IntStream.range(0, round.length).parallel()
+            .forEach(i -> shortcuts[i] = shortcutsOf(round[i], true, WITNESS_SETTLE_LIMIT));
+        for (int i = 0; i < round.length; i++) {
+          contract(round[i], shortcuts[i], contracted++);
+        }
+        // only the neighbors of contracted nodes changed importance
+        int[] affected = IntStream.of(round).flatMap(v -> IntStream.concat(
+            IntStream.of(upward[v].nodes).limit(upward[v].size),
+            IntStream.of(downward[v].nodes).limit(downward[v].size))).distinct().toArray();
+        IntStream.of(affected).parallel().forEach(v -> priority[v] = priorityOf(v));
+        for (int v : round) inRound[v] = false;
+        // drop contracted nodes from the list of remaining ones
+        int kept = 0;
+        for (int i = 0; i < remainingCount; i++) {
+          if (rank[remaining[i]] == -1) remaining[kept++] = remaining[i];
+        }
+        remainingCount = kept;
+      }
+    }
+
+    // compares by priority, then id, so that of two nearby nodes exactly one is less important;
+    // nodes within two hops are compared, so that nodes contracted in the same round are far
+    // enough apart to rarely block each other's witness paths
+    boolean isLocalMinimum(int v) {
+      for (EdgeList list : new EdgeList[] {out[v], in[v]}) {
+        for (int i = 0; i < list.size; i++) {
+          int u = list.nodes[i];
+          if (lessImportant(u, v)) return false;
+          for (EdgeList next : new EdgeList[] {out[u], in[u]}) {
+            for (int j = 0; j < next.size; j++) {
+              if (next.nodes[j] != v && lessImportant(next.nodes[j], v)) return false;
+            }
+          }
+        }
+      }
+      return true;
+    }
+
+    boolean lessImportant(int u, int v) {
+      return priority[u] < priority[v] || (priority[u] == priority[v] && u < v);
+    }
+
+    double priorityOf(int v) {
+      int added = shortcutsOf(v, false, ESTIMATE_SETTLE_LIMIT).length / 3;
+      return added - out[v].size - in[v].size + contractedNeighbors[v];
+    }
+
+    // finds the shortcuts that contracting v needs, as (from, to, weight) triples; witness
+    // searches avoid v, and all nodes of the current round when avoidRound is set
+    double[] shortcutsOf(int v, boolean avoidRound, int settleLimit) {
+      SearchWorkspace workspace = workspaces.get();
+      double[] found = new double[0];
+      int count = 0;
+      double longestOut = 0;
+      for (int j = 0; j < out[v].size; j++) longestOut = Math.max(longestOut, out[v].weights[j]);
+      for (int i = 0; i < in[v].size; i++) {
+        int u = in[v].nodes[i];
+        double limit = in[v].weights[i] + longestOut;
+        witnessSearch(u, v, limit, avoidRound, settleLimit, workspace);
+        for (int j = 0; j < out[v].size; j++) {
+          int w = out[v].nodes[j];
+          if (w == u) continue;
+          double via = in[v].weights[i] + out[v].weights[j];
+          if (workspace.getDistance(w) > via) {
+            if (3 * count + 3 > found.length) found = Arrays.copyOf(found, 6 * count + 6);
+            found[3 * count] = u;
+            found[3 * count + 1] = w;
+            found[3 * count + 2] = via;
+            count++;
+          }
+        }
+      }
+      return Arrays.copyOf(found, 3 * count);
+    }
+
+    // Dijkstra from u among the remaining nodes other than v, up to distance limit
+    void witnessSearch(int u, int v, double limit, boolean avoidRound, int settleLimit,
+        SearchWorkspace workspace) {
+      workspace.begin();
+      IndexedMinHeap heap = workspace.getHeap();
+      workspace.reach(u, 0, -1);
+      heap.insert(u, 0);
+      // the search can stop as soon as the distance to every successor of v is final
+      int targetsLeft = out[v].size;
+      for (int i = 0; i < out[v].size; i++) if (out[v].nodes[i] == u) targetsLeft--;
+      while (!heap.isEmpty() && workspace.getSettledCount() < settleLimit && targetsLeft > 0) {
+        if (heap.peekPriority() > limit) break;
+        int x = heap.poll();
+        workspace.settle(x);
+        for (int i = 0; i < out[v].size; i++) if (out[v].nodes[i] == x && x != u) targetsLeft--;
+        double distance = workspace.getDistance(x);
+        EdgeList edges = out[x];
+        for (int i = 0; i < edges.size; i++) {
+          int y = edges.nodes[i];
+          if (y == v || (avoidRound && inRound[y])) continue;
+          double cost = distance + edges.weights[i];
+          if (cost < workspace.getDistance(y)) {
+            workspace.reach(y, cost, x);
+            heap.insertOrDecrease(y, cost);
+          }
+        }
+      }
+    }
+
+    // removes v from the graph, recording its remaining edges in the hierarchy and adding the
+    // shortcuts that replace it
+    void contract(int v, double[] shortcuts, int order) {
+      rank[v] = order;
+      upward[v] = out[v];
+      downward[v] = in[v];
+      for (int i = 0; i < out[v].size; i++) {
+        in[out[v].nodes[i]].remove(v);
+        contractedNeighbors[out[v].nodes[i]]++;
+      }
+      for (int i = 0; i < in[v].size; i++) {
+        out[in[v].nodes[i]].remove(v);
+        contractedNeighbors[in[v].nodes[i]]++;
+      }
+      for (int i = 0; i < shortcuts.length; i += 3) {
+        int from = (int) shortcuts[i];
+        int to = (int) shortcuts[i + 1];
+        if (out[from].put(to, shortcuts[i + 2], v)) {
+          in[to].put(from, shortcuts[i + 2], v);
+          shortcutCount++;
+        }
+      }
+      out[v] = null;
+      in[v] = null;
+    }
+  }
+
+}
@@ -11,13 +11,34 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * This class extends the BaseGraph data structure with additional methods for
  * computing the total cost and list of node data along the shortest path
  * connecting a provided starting to ending nodes. This class makes use of
  * Dijkstra's shortest path algorithm.
+ * <p>
+ * Shortest path queries are answered from a CompactGraph snapshot of this
+ * graph, which is built on the first query and rebuilt lazily after any
+ * change to the nodes or edges of this graph.
+ * <p>
+ * Queries may run on many threads while another thread changes the graph.
+ * Snapshots are immutable and published through a volatile field, so each
+ * query reads one snapshot from start to end without taking a lock, while
+ * the methods that change the graph are synchronized. A single change is
+ * seen by queries all at once; to change several edges together, such as
+ * the weights along a road, pass the changes to update, which builds the
+ * next snapshot before any query can see them.
  */
 public class DijkstraGraph<NodeType, EdgeType extends Number> extends BaseGraph<NodeType, EdgeType> implements GraphADT<NodeType, EdgeType> {
 
@@ -51,11 +72,445 @@ public class DijkstraGraph<NodeType, EdgeType extends Number> extends BaseGraph<
     }
   }
 
+  /**
+   * The algorithms that shortestPathData and shortestPathCost can use. They
+   * find paths of the same cost, but settle different numbers of nodes.
+   */
+  public static enum SearchMode {
+    // Dijkstra's algorithm from the start node until the end node is settled
+    DIJKSTRA,
+    // Dijkstra's algorithm from both the start node forward and the end node
+    // backward, until the two searches meet
+    BIDIRECTIONAL,
+    // A* guided by the lower bounds of a LandmarkTable, see getLandmarks
+    LANDMARKS,
+    // upward bidirectional search of a ContractionHierarchy, see getHierarchy
+    CONTRACTION_HIERARCHY
+  }
+
+  // read-optimized copy of this graph used to answer queries, null when stale;
+  // only replaced while holding the lock of this graph
+  protected volatile CompactGraph<NodeType> snapshot = null;
+  // true while update applies changes, which mustn't drop the snapshot that
+  // queries are still using
+  private boolean updating = false;
+  // whether the running update changed more than the weights of existing
+  // edges, and otherwise the ends of the edges it gave new weights
+  private boolean structuralUpdate = false;
+  private final List<NodeType> reweightedPreds = new ArrayList<>();
+  private final List<NodeType> reweightedSuccs = new ArrayList<>();
+
+  // one reusable search workspace per thread, so that queries don't allocate
+  private final ThreadLocal<SearchWorkspace> workspaces = new ThreadLocal<>();
+  private int heapArity = CompactGraph.DEFAULT_HEAP_ARITY;
+  private SearchMode searchMode = SearchMode.DIJKSTRA;
+
+  // landmark distances for the LANDMARKS search mode, recomputed when they
+  // don't belong to the current snapshot
+  private volatile LandmarkTable landmarks = null;
+  private int landmarkCount = 8;
+  // held while a landmark table is computed, which doesn't block updates
+  private final Object landmarkLock = new Object();
+  // contraction hierarchy for the CONTRACTION_HIERARCHY search mode, rebuilt
+  // when it doesn't belong to the current snapshot
+  private volatile ContractionHierarchy<NodeType> hierarchy = null;
+  private final Object hierarchyLock = new Object();
+  // shortest path trees of recently used start nodes, null when disabled
+  private volatile TreeCache<NodeType> treeCache = null;
+  // filters that alternative paths have to pass
+  private AlternativeRoutes alternatives = new AlternativeRoutes(0.25, 0.8, 0.25);
+
   /**
    * Constructor that sets the map that the graph uses.
    */
   public DijkstraGraph() {
-    super(new PlaceholderMap<>());
+    super(new HashtableMap<>());
+  }
+
+  /**
+   * Returns a CompactGraph snapshot of the current contents of this graph.
+   * The same snapshot is returned until this graph is modified. Only the
+   * first query after a change waits for the lock to build it.
+   *
+   * @return a snapshot of the nodes and edges currently in this graph
+   */
+  public CompactGraph<NodeType> getSnapshot() {
+    CompactGraph<NodeType> current = snapshot;
+    if (current != null) {
+      return current;
+    }
+    synchronized (this) {
+      if (snapshot == null) {
+        snapshot = new CompactGraph<>(this);
+      }
+      return snapshot;
+    }
+  }
+
+  /**
+   * Applies several changes to this graph as one: queries keep answering
+   * from the previous snapshot while the changes are made, and the snapshot
+   * that holds all of them is published in a single step afterwards, so no
+   * query ever sees only some of them. Other threads that change the graph
+   * wait until the update is finished. When the changes only give existing
+   * edges new weights, the next snapshot is a copy of the previous one with
+   * those weights changed, rather than being built from the whole graph.
+   * <p>
+   * If changes throws an exception, the changes it made before are kept
+   * and published like the others.
+   *
+   * @param changes inserts and removes nodes and edges of the graph it is
+   *                passed, which is this graph
+   */
+  public synchronized void update(Consumer<? super DijkstraGraph<NodeType, EdgeType>> changes) {
+    if (updating) {
+      // an update within an update is part of the outer one
+      changes.accept(this);
+      return;
+    }
+    long before = getModificationCount();
+    updating = true;
+    try {
+      changes.accept(this);
+    } finally {
+      updating = false;
+      if (getModificationCount() != before) {
+        // build the next snapshot while the previous one is still published
+        CompactGraph<NodeType> previous = snapshot;
+        CompactGraph<NodeType> next = structuralUpdate || previous == null
+            ? new CompactGraph<>(this) : reweighted(previous);
+        snapshot = next;
+        TreeCache<NodeType> cache = treeCache;
+        if (cache != null) cache.clear();
+        // counted once more now that queries see the changes, see graphChanged
+        modificationCount++;
+      }
+      structuralUpdate = false;
+      reweightedPreds.clear();
+      reweightedSuccs.clear();
+    }
+  }
+
+  // the previous snapshot with the current weights of the edges that the
+  // running update gave new weights
+  private CompactGraph<NodeType> reweighted(CompactGraph<NodeType> previous) {
+    int count = reweightedPreds.size();
+    int[] preds = new int[count];
+    int[] succs = new int[count];
+    double[] weights = new double[count];
+    for (int i = 0; i < count; i++) {
+      preds[i] = previous.indexOf(reweightedPreds.get(i));
+      succs[i] = previous.indexOf(reweightedSuccs.get(i));
+      weights[i] = getEdge(reweightedPreds.get(i), reweightedSuccs.get(i)).doubleValue();
+    }
+    return previous.withWeights(preds, succs, weights);
+  }
+
+  /**
+   * Uses a snapshot built elsewhere, such as one read from a GraphFile, until
+   * this graph is modified, instead of building one from the nodes and edges
+   * of this graph. The snapshot has to describe the same nodes and edges,
+   * which is only checked by their number.
+   *
+   * @param graph a snapshot of the current contents of this graph
+   * @throws IllegalArgumentException if graph has a different number of nodes
+   *                                  or edges than this graph
+   */
+  public synchronized void adoptSnapshot(CompactGraph<NodeType> graph) {
+    if (graph.getNodeCount() != getNodeCount() || graph.getEdgeCount() != getEdgeCount()) {
+      throw new IllegalArgumentException("snapshot doesn't match the contents of this graph");
+    }
+    graphChanged();
+    snapshot = graph;
+  }
+
+  /**
+   * Returns the search workspace of the calling thread, replacing it first
+   * when it is too small for the provided snapshot.
+   *
+   * @param graph the snapshot that the workspace will be used to search
+   * @return a workspace that only the calling thread uses
+   */
+  protected SearchWorkspace getWorkspace(CompactGraph<NodeType> graph) {
+    SearchWorkspace workspace = workspaces.get();
+    if (workspace == null || workspace.getCapacity() < graph.getNodeCount()
+        || workspace.getHeapArity() != heapArity) {
+      workspace = new SearchWorkspace(graph.getNodeCount(), heapArity);
+      workspaces.set(workspace);
+    }
+    return workspace;
+  }
+
+  /**
+   * Sets the number of children of each node in the heap that searches use.
+   * Wider heaps make relaxing edges cheaper and settling nodes more expensive.
+   *
+   * @param arity the heap arity for later searches, at least 2
+   * @throws IllegalArgumentException if arity is less than 2
+   */
+  public void setHeapArity(int arity) {
+    if (arity < 2) {
+      throw new IllegalArgumentException("arity must be at least 2: " + arity);
+    }
+    this.heapArity = arity;
+  }
+
+  /**
+   * Selects the algorithm that later shortest path queries use.
+   *
+   * @param mode the search algorithm to use
+   * @throws NullPointerException if mode is null
+   */
+  public void setSearchMode(SearchMode mode) {
+    if (mode == null) {
+      throw new NullPointerException("search mode must not be null");
+    }
+    this.searchMode = mode;
+  }
+
+  /**
+   * Returns the algorithm that shortest path queries use.
+   *
+   * @return the current search mode
+   */
+  public SearchMode getSearchMode() {
+    return searchMode;
+  }
+
+  /**
+   * Returns the landmark table that LANDMARKS searches use, computing it
+   * first when there is none yet for the current snapshot. Computing a table
+   * runs a full search from every landmark in both directions, so after the
+   * graph is loaded it is worth computing once and saving with
+   * saveLandmarks.
+   *
+   * @return the landmark table for the current contents of this graph
+   */
+  public LandmarkTable getLandmarks() {
+    return landmarksFor(getSnapshot());
+  }
+
+  // the landmark table of a snapshot, which a query that already holds the
+  // snapshot uses instead of getLandmarks, since the graph may have changed.
+  // Only one thread computes the table of a snapshot, and queries that need
+  // it meanwhile wait for that table instead of computing their own
+  private LandmarkTable landmarksFor(CompactGraph<NodeType> graph) {
+    LandmarkTable table = landmarks;
+    if (table != null && table.isFor(graph)) return table;
+    synchronized (landmarkLock) {
+      table = landmarks;
+      if (table == null || !table.isFor(graph)) {
+        table = LandmarkTable.compute(graph, landmarkCount);
+        // a query that still searches a replaced snapshot doesn't replace
+        // the table of the current one
+        if (graph == snapshot) landmarks = table;
+      }
+      return table;
+    }
+  }
+
+  /**
+   * Sets the number of landmarks picked by later landmark computations. More
+   * landmarks give tighter bounds but take longer to compute and compare.
+   *
+   * @param count the number of landmarks, at least 1
+   * @throws IllegalArgumentException if count is less than 1
+   */
+  public void setLandmarkCount(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("landmark count must be at least 1: " + count);
+    }
+    this.landmarkCount = count;
+  }
+
+  /**
+   * Saves the landmark table of the current contents of this graph to a
+   * file, computing it first if needed.
+   *
+   * @param filename the path of the file to write
+   * @throws IOException if the file can't be written
+   */
+  public void saveLandmarks(String filename) throws IOException {
+    getLandmarks().save(filename);
+  }
+
+  /**
+   * Loads a landmark table saved by saveLandmarks, so that LANDMARKS searches
+   * don't have to compute it again. The table is used until this graph is
+   * modified.
+   *
+   * @param filename the path of the file to read
+   * @throws IOException if the file can't be read or was saved for a graph
+   *                     with different nodes or edges
+   */
+  public void loadLandmarks(String filename) throws IOException {
+    landmarks = LandmarkTable.load(filename, getSnapshot());
+  }
+
+  /**
+   * Returns the contraction hierarchy that CONTRACTION_HIERARCHY searches
+   * use, building it first when there is none yet for the current snapshot.
+   * Building a hierarchy contracts every node of the graph, which takes far
+   * longer than a single query, so it pays off when the graph changes rarely
+   * compared to how often it is queried.
+   *
+   * @return the contraction hierarchy for the current contents of this graph
+   */
+  public ContractionHierarchy<NodeType> getHierarchy() {
+    return hierarchyFor(getSnapshot());
+  }
+
+  // the contraction hierarchy of a snapshot, built once like the landmark
+  // table in landmarksFor
+  private ContractionHierarchy<NodeType> hierarchyFor(CompactGraph<NodeType> graph) {
+    ContractionHierarchy<NodeType> current = hierarchy;
+    if (current != null && current.isFor(graph)) return current;
+    synchronized (hierarchyLock) {
+      current = hierarchy;
+      if (current == null || !current.isFor(graph)) {
+        current = new ContractionHierarchy<>(graph);
+        if (graph == snapshot) hierarchy = current;
+      }
+      return current;
+    }
+  }
+
+  /**
+   * Runs the search selected by the current search mode from source to
+   * target. Afterwards the workspace describes the path that was found, which
+   * CompactGraph.pathTo can read.
+   *
+   * @param graph     the snapshot to search
+   * @param source    the id of the starting node
+   * @param target    the id of the destination node
+   * @param workspace the workspace to run the search in
+   * @return the cost of the shortest path, or infinity when there is none
+   */
+  protected double search(CompactGraph<NodeType> graph, int source, int target,
+      SearchWorkspace workspace) {
+    switch (searchMode) {
+      case BIDIRECTIONAL:
+        return graph.bidirectionalDijkstra(source, target, workspace);
+      case LANDMARKS:
+        return graph.astar(source, target, landmarksFor(graph), workspace);
+      case CONTRACTION_HIERARCHY:
+        return hierarchyFor(graph).query(source, target, workspace);
+      default:
+        return graph.dijkstra(source, target, workspace);
+    }
+  }
+
+  /**
+   * Starts caching the complete shortest path tree of each start node that
+   * is queried, so that later queries from the same start node are answered
+   * without a search. While enabled, a query whose start node is not cached
+   * searches the whole graph instead of stopping at its end node. Any
+   * change to the nodes or edges of this graph empties the cache.
+   *
+   * @param maxTrees the largest number of trees to keep
+   * @param maxBytes the most memory the cached trees may take
+   * @throws IllegalArgumentException if either limit is not positive
+   */
+  public void enableTreeCache(int maxTrees, long maxBytes) {
+    treeCache = new TreeCache<>(maxTrees, maxBytes);
+  }
+
+  /**
+   * Stops caching shortest path trees and drops the cached ones.
+   */
+  public void disableTreeCache() {
+    treeCache = null;
+  }
+
+  /**
+   * Returns the cache of shortest path trees, for example to read its hit
+   * and miss counters.
+   *
+   * @return the tree cache, or null when it is disabled
+   */
+  public TreeCache<NodeType> getTreeCache() {
+    return treeCache;
+  }
+
+  /**
+   * Returns the shortest path tree of a start node from the tree cache,
+   * computing and caching it first if needed.
+   *
+   * @param graph  the current snapshot
+   * @param source the id of the start node
+   * @return the tree of source, or null when the tree cache is disabled
+   */
+  protected ShortestPathTree<NodeType> cachedTree(CompactGraph<NodeType> graph, int source) {
+    TreeCache<NodeType> cache = treeCache;
+    if (cache == null) return null;
+    ShortestPathTree<NodeType> tree = cache.get(source);
+    // a tree that a query on an earlier snapshot cached after the graph
+    // changed is replaced
+    if (tree == null || !tree.isFor(graph)) {
+      SearchWorkspace workspace = getWorkspace(graph);
+      graph.searchAll(source, false, workspace);
+      tree = new ShortestPathTree<>(graph, source, workspace);
+      cache.put(tree);
+    }
+    return tree;
+  }
+
+  // drops everything computed from the previous contents of this graph,
+  // unless update publishes the next snapshot itself
+  private void graphChanged() {
+    if (updating) {
+      structuralUpdate = true;
+      return;
+    }
+    snapshot = null;
+    TreeCache<NodeType> cache = treeCache;
+    if (cache != null) cache.clear();
+    // the count went up before the old snapshot was dropped, so a query may
+    // have read the new count and still answered from the old snapshot;
+    // counting again marks that answer as stale for callers like
+    // CachingBackend
+    modificationCount++;
+  }
+
+  @Override
+  public synchronized boolean insertNode(NodeType data) {
+    boolean changed = super.insertNode(data);
+    if (changed) graphChanged();
+    return changed;
+  }
+
+  @Override
+  public synchronized boolean removeNode(NodeType data) {
+    boolean changed = super.removeNode(data);
+    if (changed) graphChanged();
+    return changed;
+  }
+
+  @Override
+  public synchronized boolean insertEdge(NodeType pred, NodeType succ, EdgeType weight) {
+    if (updating && !structuralUpdate && containsEdge(pred, succ)) {
+      // a new weight for an existing edge, which update can patch into the
+      // previous snapshot
+      reweightedPreds.add(pred);
+      reweightedSuccs.add(succ);
+      return super.insertEdge(pred, succ, weight);
+    }
+    boolean changed = super.insertEdge(pred, succ, weight);
+    if (changed) graphChanged();
+    return changed;
+  }
+
+  @Override
+  public synchronized void insertEdges(List<NodeType> data, int[] preds, int[] succs, List<EdgeType> weights) {
+    super.insertEdges(data, preds, succs, weights);
+    graphChanged();
+  }
+
+  @Override
+  public synchronized boolean removeEdge(NodeType pred, NodeType succ) {
+    boolean changed = super.removeEdge(pred, succ);
+    if (changed) graphChanged();
+    return changed;
   }
 
   /**
@@ -81,7 +536,7 @@ public class DijkstraGraph<NodeType, EdgeType extends Number> extends BaseGraph<
     // 1. mark all nodes as unvisited
     // the node data is the key, the SearchNode is the value, so when we want to check
     // if it is visited, we can do containsKey
-    MapADT<NodeType, SearchNode> visited = new PlaceholderMap<>();
+    MapADT<NodeType, SearchNode> visited = new HashtableMap<>();
     PriorityQueue<SearchNode> pq = new PriorityQueue<>();
     // 2. assign to all nodes a tentative cost value
     // set the cost of the start node to 0, and all other nodes to infinity ??
@@ -92,8 +547,11 @@ public class DijkstraGraph<NodeType, EdgeType extends Number> extends BaseGraph<
     // 3. for the current node, calculate distance to all unvisited neighbors
     // if new distance is less than that node's shortest distance so far, update it
     // also set the neighbor node's previous node to current node
+    int polled = 0;
     while (!pq.isEmpty()) {
       SearchNode current = pq.poll(); // node with the cheapest cost
+      // stop here when the query this search belongs to was cancelled
+      if (++polled % SearchCancellation.CHECK_INTERVAL == 0) SearchCancellation.check();
       if (current.node.data.equals(end)) {
         System.out.println("We are done\n");
         return current;
@@ -152,26 +610,32 @@ public class DijkstraGraph<NodeType, EdgeType extends Number> extends BaseGraph<
    * @return list of data item from node along this shortest path
    */
   public List<NodeType> shortestPathData(NodeType start, NodeType end) {
-    // implement in step 5.4
-    if (!nodes.containsKey(start) || !nodes.containsKey(end)) {
+    return pathData(getSnapshot(), start, end);
+  }
+
+  // the nodes of the shortest path from start to end in one snapshot
+  private List<NodeType> pathData(CompactGraph<NodeType> graph, NodeType start, NodeType end) {
+    int source = graph.indexOf(start);
+    int target = graph.indexOf(end);
+    if (source == -1 || target == -1) {
       throw new NoSuchElementException("Start or end node does not exist");
     }
-
-    List<NodeType> path = new LinkedList<>();
-
-    SearchNode current;
-    try {
-      current = computeShortestPath(start, end);
-    } catch (NoSuchElementException e) {
+    ShortestPathTree<NodeType> tree = cachedTree(graph, source);
+    if (tree != null) {
+      if (tree.getDistance(target) == Double.POSITIVE_INFINITY) {
+        throw new NoSuchElementException("No path found");
+      }
+      return tree.pathTo(target);
+    }
+    SearchWorkspace workspace = getWorkspace(graph);
+    if (search(graph, source, target, workspace) == Double.POSITIVE_INFINITY) {
       throw new NoSuchElementException("No path found");
     }
-
-    while (current != null) {
-      path.add(0, current.node.data);
-      current = current.predecessor;
+    if (searchMode == SearchMode.CONTRACTION_HIERARCHY) {
+      // the hierarchy's path may contain shortcuts that have to be unpacked
+      return hierarchyFor(graph).pathTo(workspace);
     }
-
-    return path;
+    return graph.pathTo(workspace);
   }
 
   /**
@@ -185,18 +649,362 @@ public class DijkstraGraph<NodeType, EdgeType extends Number> extends BaseGraph<
    * @return the cost of the shortest path between these nodes
    */
   public double shortestPathCost(NodeType start, NodeType end) {
-    if (!nodes.containsKey(start) || !nodes.containsKey(end)) {
+    CompactGraph<NodeType> graph = getSnapshot();
+    int source = graph.indexOf(start);
+    int target = graph.indexOf(end);
+    if (source == -1 || target == -1) {
       throw new NoSuchElementException("Start or end node does not exist");
     }
+    ShortestPathTree<NodeType> tree = cachedTree(graph, source);
+    double cost = tree != null ? tree.getDistance(target)
+        : search(graph, source, target, getWorkspace(graph));
+    if (cost == Double.POSITIVE_INFINITY) {
+      throw new NoSuchElementException("No path found");
+    }
+    return cost;
+  }
 
-    SearchNode endNode;
-    try {
-      endNode = computeShortestPath(start, end);
-    } catch (NoSuchElementException e) {
+  /**
+   * Returns the shortest path from the node containing the start data to
+   * the node containing the end data with the weight of each edge on it,
+   * using a single search. The weights are read from the same snapshot that
+   * the search ran on.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end   the data item in the destination node for the path
+   * @return the shortest path between these nodes
+   * @throws NoSuchElementException if either node is not in the graph or no
+   *                                path exists
+   */
+  @Override
+  public GraphPath<NodeType> shortestPath(NodeType start, NodeType end) {
+    CompactGraph<NodeType> graph = getSnapshot();
+    List<NodeType> nodes = pathData(graph, start, end);
+    return new GraphPath<>(nodes, graph.weightsAlong(nodes));
+  }
+
+  /**
+   * Returns up to k shortest paths from start to end that don't visit any
+   * node twice, cheapest first, using Yen's algorithm. Each path after the
+   * first leaves an earlier path at one of its nodes, the spur node, and
+   * follows the shortest detour to end that avoids the nodes before the spur
+   * node and the edges that earlier paths with the same beginning took from
+   * it. The detours from every node of the last path found are searched in
+   * parallel on the common fork/join pool, and the removed nodes and edges
+   * are only hidden from those searches by a SearchMask, so the graph itself
+   * is never changed. The detour searches check the time left and the
+   * cancellation of the calling thread, see SearchCancellation, before they
+   * start, and a round that runs out of time adds no path, since a path
+   * chosen from only some of its detours might not be the next shortest.
+   *
+   * @param start         the data item in the starting node
+   * @param end           the data item in the destination node
+   * @param k             the largest number of paths to return
+   * @param timeoutMillis how long to keep looking for more paths, where
+   *                      Long.MAX_VALUE means no limit; the paths found by
+   *                      then are returned
+   * @return the paths found, by increasing cost, starting with the shortest
+   *         path; fewer than k when no more loopless paths exist
+   * @throws IllegalArgumentException if k is not positive
+   * @throws NoSuchElementException   if start or end is not in the graph, or
+   *                                  there is no path between them
+   */
+  public List<GraphPath<NodeType>> kShortestPaths(NodeType start, NodeType end, int k,
+      long timeoutMillis) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k must be positive: " + k);
+    }
+    // the time is compared as elapsed nanoseconds, which doesn't overflow
+    // for large timeouts the way a deadline would
+    long started = System.nanoTime();
+    long budget = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    SearchCancellation cancellation = SearchCancellation.current();
+    CompactGraph<NodeType> graph = getSnapshot();
+    int[] ends = idsOf(graph, List.of(start, end));
+    SearchWorkspace workspace = getWorkspace(graph);
+    if (graph.dijkstra(ends[0], ends[1], workspace) == Double.POSITIVE_INFINITY) {
       throw new NoSuchElementException("No path found");
     }
+    List<int[]> found = new ArrayList<>();
+    found.add(pathIds(workspace, ends[0], ends[1], new int[0]));
+    Set<List<Integer>> seen = new HashSet<>();
+    seen.add(asList(found.get(0)));
+    // detours found so far, by index, ordered by cost and then by index
+    List<int[]> candidatePaths = new ArrayList<>();
+    List<Double> candidateCosts = new ArrayList<>();
+    PriorityQueue<Integer> candidates = new PriorityQueue<>(
+        Comparator.comparingDouble((Integer c) -> candidateCosts.get(c)).thenComparingInt(c -> c));
+    while (found.size() < k && System.nanoTime() - started < budget) {
+      int[] previous = found.get(found.size() - 1);
+      int[][] spurs = new int[previous.length - 1][];
+      ForkJoinPool.commonPool().submit(() -> IntStream.range(0, spurs.length).parallel()
+          .forEach(i -> spurs[i] = spurPath(graph, found, previous, i, ends[1], started, budget,
+              cancellation))).join();
+      if (System.nanoTime() - started >= budget) break;
+      for (int[] spur : spurs) {
+        if (spur != null && seen.add(asList(spur))) {
+          candidatePaths.add(spur);
+          candidateCosts.add(pathCost(graph, spur));
+          candidates.add(candidatePaths.size() - 1);
+        }
+      }
+      if (candidates.isEmpty()) break;
+      found.add(candidatePaths.get(candidates.poll()));
+    }
+    List<GraphPath<NodeType>> paths = new ArrayList<>();
+    for (int[] ids : found) {
+      List<NodeType> nodes = new ArrayList<>();
+      for (int id : ids) nodes.add(graph.nodeAt(id));
+      paths.add(new GraphPath<>(nodes, graph.weightsAlong(nodes)));
+    }
+    return paths;
+  }
 
-    return endNode.cost;
+  // finds the shortest path that follows previous up to its i-th node, and
+  // from there takes a detour to target that avoids the earlier nodes of
+  // previous and the next edge of every found path with the same beginning;
+  // returns null when there is no such detour or the time is up, and runs
+  // the search under the cancellation of the query, if it has one
+  private int[] spurPath(CompactGraph<NodeType> graph, List<int[]> found, int[] previous, int i,
+      int target, long started, long budget, SearchCancellation cancellation) {
+    if (System.nanoTime() - started >= budget) return null;
+    if (cancellation != null) {
+      return cancellation.call(() -> spurPath(graph, found, previous, i, target));
+    }
+    return spurPath(graph, found, previous, i, target);
+  }
+
+  private int[] spurPath(CompactGraph<NodeType> graph, List<int[]> found, int[] previous, int i,
+      int target) {
+    SearchWorkspace workspace = getWorkspace(graph);
+    SearchMask mask = workspace.getMask(graph.getNodeCount(), graph.getEdgeCount());
+    for (int j = 0; j < i; j++) mask.blockNode(previous[j]);
+    for (int[] path : found) {
+      if (path.length > i + 1 && Arrays.equals(path, 0, i + 1, previous, 0, i + 1)) {
+        for (int edge = graph.getEdgeStart(path[i]); edge < graph.getEdgeEnd(path[i]); edge++) {
+          if (graph.getEdgeTarget(edge) == path[i + 1]) mask.blockEdge(edge);
+        }
+      }
+    }
+    if (graph.dijkstra(previous[i], target, mask, workspace) == Double.POSITIVE_INFINITY) {
+      return null;
+    }
+    return pathIds(workspace, previous[i], target, Arrays.copyOf(previous, i));
+  }
+
+  // the ids along root followed by the path that the search in workspace
+  // found from source to target
+  private static int[] pathIds(SearchWorkspace workspace, int source, int target, int[] root) {
+    int length = root.length + 1;
+    for (int v = target; v != source; v = workspace.getPredecessor(v)) length++;
+    int[] ids = Arrays.copyOf(root, length);
+    for (int v = target, i = length - 1; i >= root.length; v = workspace.getPredecessor(v), i--) {
+      ids[i] = v;
+    }
+    return ids;
+  }
+
+  // the cost of a path of ids, taking the lightest edge between each two
+  // consecutive nodes like the searches do
+  private static double pathCost(CompactGraph<?> graph, int[] ids) {
+    double cost = 0;
+    for (int i = 0; i + 1 < ids.length; i++) {
+      double lightest = Double.POSITIVE_INFINITY;
+      for (int edge = graph.getEdgeStart(ids[i]); edge < graph.getEdgeEnd(ids[i]); edge++) {
+        if (graph.getEdgeTarget(edge) == ids[i + 1]) {
+          lightest = Math.min(lightest, graph.getEdgeWeight(edge));
+        }
+      }
+      cost += lightest;
+    }
+    return cost;
+  }
+
+  private static List<Integer> asList(int[] ids) {
+    List<Integer> list = new ArrayList<>(ids.length);
+    for (int id : ids) list.add(id);
+    return list;
+  }
+
+  /**
+   * Sets the filters that alternatives found by alternativePaths have to
+   * pass, see AlternativeRoutes.
+   *
+   * @param maxStretch      how much more than the shortest path an
+   *                        alternative may cost, as a fraction of its cost
+   * @param maxSharing      the largest fraction of the cost of the shortest
+   *                        path that an alternative may share with the paths
+   *                        found before it
+   * @param localOptimality the fraction of the cost of the shortest path
+   *                        around each via node that has to be a shortest path
+   * @throws IllegalArgumentException if a limit is out of range
+   */
+  public void setAlternativeLimits(double maxStretch, double maxSharing, double localOptimality) {
+    alternatives = new AlternativeRoutes(maxStretch, maxSharing, localOptimality);
+  }
+
+  /**
+   * Returns the shortest path between two nodes followed by up to
+   * maxPaths - 1 meaningfully different alternatives to it, found with the
+   * via-node method from one forward and one backward search. Unlike
+   * kShortestPaths, alternatives have to differ enough from each other and
+   * avoid detours, and there may be fewer of them even when more loopless
+   * paths exist.
+   *
+   * @param start    the data item in the starting node
+   * @param end      the data item in the destination node
+   * @param maxPaths the largest number of paths to return
+   * @return the shortest path and the alternatives by increasing cost
+   * @throws NoSuchElementException if start or end is not in the graph, or
+   *                                there is no path between them
+   */
+  public List<GraphPath<NodeType>> alternativePaths(NodeType start, NodeType end, int maxPaths) {
+    CompactGraph<NodeType> graph = getSnapshot();
+    int[] ends = idsOf(graph, List.of(start, end));
+    List<int[]> found = alternatives.find(graph, ends[0], ends[1], maxPaths, getWorkspace(graph));
+    if (found.isEmpty() && maxPaths > 0) {
+      throw new NoSuchElementException("No path found");
+    }
+    List<GraphPath<NodeType>> paths = new ArrayList<>();
+    for (int[] ids : found) {
+      List<NodeType> nodes = new ArrayList<>();
+      for (int id : ids) nodes.add(graph.nodeAt(id));
+      paths.add(new GraphPath<>(nodes, graph.weightsAlong(nodes)));
+    }
+    return paths;
+  }
+
+  /**
+   * Returns the shortest path from start to whichever of a set of targets is
+   * closest to it, using a single search that stops as soon as the first
+   * target is settled.
+   *
+   * @param start   the data item in the starting node
+   * @param targets the data items of the candidate destinations
+   * @return the shortest path to the closest target, which is its last node
+   * @throws NoSuchElementException if start or a target is not in the graph,
+   *                                or no target can be reached
+   */
+  public GraphPath<NodeType> nearestTarget(NodeType start, Collection<NodeType> targets) {
+    CompactGraph<NodeType> graph = getSnapshot();
+    int source = idsOf(graph, List.of(start))[0];
+    SearchWorkspace workspace = getWorkspace(graph);
+    if (graph.searchNearest(source, marks(graph, targets), false, workspace) == -1) {
+      throw new NoSuchElementException("No path found");
+    }
+    List<NodeType> nodes = graph.pathTo(workspace);
+    return new GraphPath<>(nodes, graph.weightsAlong(nodes));
+  }
+
+  /**
+   * Returns the shortest path to end from whichever of a set of sources is
+   * closest to it, using a single search backward from end along the edges
+   * entering each node, which stops as soon as the first source is settled.
+   *
+   * @param sources the data items of the candidate starting nodes
+   * @param end     the data item in the destination node
+   * @return the shortest path from the closest source, which is its first
+   *         node, to end
+   * @throws NoSuchElementException if end or a source is not in the graph, or
+   *                                end can't be reached from any source
+   */
+  public GraphPath<NodeType> nearestSource(Collection<NodeType> sources, NodeType end) {
+    CompactGraph<NodeType> graph = getSnapshot();
+    int target = idsOf(graph, List.of(end))[0];
+    SearchWorkspace workspace = getWorkspace(graph);
+    int source = graph.searchNearest(target, marks(graph, sources), true, workspace);
+    if (source == -1) {
+      throw new NoSuchElementException("No path found");
+    }
+    // the predecessors of a backward search already lead from source to end
+    List<NodeType> nodes = new ArrayList<>();
+    for (int v = source; v != -1; v = workspace.getPredecessor(v)) nodes.add(graph.nodeAt(v));
+    return new GraphPath<>(nodes, graph.weightsAlong(nodes));
+  }
+
+  // marks the snapshot ids of a collection of node data
+  private boolean[] marks(CompactGraph<NodeType> graph, Collection<NodeType> data) {
+    boolean[] marked = new boolean[graph.getNodeCount()];
+    for (int id : idsOf(graph, new ArrayList<>(data))) marked[id] = true;
+    return marked;
+  }
+
+  /**
+   * Finds every node that can be reached from start within a cost limit, and
+   * passes each of them to a consumer together with the cost of reaching it,
+   * in increasing order of cost, as soon as the search settles it. The search
+   * stops at the limit instead of exploring the whole graph.
+   *
+   * @param start    the data item in the starting node
+   * @param limit    the largest cost to reach a node with
+   * @param consumer called with the data and cost of every node within limit,
+   *                 start first
+   * @throws NoSuchElementException if start is not in the graph
+   */
+  public void reachableWithin(NodeType start, double limit, BiConsumer<NodeType, Double> consumer) {
+    CompactGraph<NodeType> graph = getSnapshot();
+    int source = graph.indexOf(start);
+    if (source == -1) {
+      throw new NoSuchElementException("Start node does not exist");
+    }
+    // the consumer may run queries of its own on this thread, so those get a
+    // workspace of their own until this search is done with this one
+    SearchWorkspace workspace = getWorkspace(graph);
+    workspaces.remove();
+    try {
+      graph.searchWithin(source, limit, workspace,
+          node -> consumer.accept(graph.nodeAt(node), workspace.getDistance(node)));
+    } finally {
+      workspaces.set(workspace);
+    }
+  }
+
+  /**
+   * Returns every node that can be reached from start within a cost limit,
+   * with the cost of reaching it.
+   *
+   * @param start the data item in the starting node
+   * @param limit the largest cost to reach a node with
+   * @return the cost of reaching each node within limit, iterated in
+   *         increasing order of cost, starting with start itself
+   * @throws NoSuchElementException if start is not in the graph
+   */
+  public LinkedHashMap<NodeType, Double> reachableWithin(NodeType start, double limit) {
+    LinkedHashMap<NodeType, Double> reachable = new LinkedHashMap<>();
+    reachableWithin(start, limit, reachable::put);
+    return reachable;
+  }
+
+  /**
+   * Returns the cost of the shortest path from every source to every target
+   * as a flat matrix, running one search per source that stops once every
+   * target is settled. Sources are searched in parallel on the common
+   * fork/join pool, each in the workspace of the pool thread searching it.
+   *
+   * @param sources the data items in the starting nodes
+   * @param targets the data items in the destination nodes
+   * @return the matrix with the cost from sources.get(s) to targets.get(t) at
+   *         index s * targets.size() + t, or infinity when there is no path
+   * @throws NoSuchElementException if any source or target is not in the
+   *                                graph
+   */
+  @Override
+  public double[] shortestPathCosts(List<NodeType> sources, List<NodeType> targets) {
+    CompactGraph<NodeType> graph = getSnapshot();
+    return graph.costMatrix(idsOf(graph, sources), idsOf(graph, targets),
+        ForkJoinPool.commonPool(), () -> getWorkspace(graph));
+  }
+
+  // the snapshot ids of a list of node data
+  private int[] idsOf(CompactGraph<NodeType> graph, List<NodeType> data) {
+    int[] ids = new int[data.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = graph.indexOf(data.get(i));
+      if (ids[i] == -1) {
+        throw new NoSuchElementException("Node does not exist: " + data.get(i));
+      }
+    }
+    return ids;
   }
 
   /**
@@ -260,6 +1068,192 @@ public class DijkstraGraph<NodeType, EdgeType extends Number> extends BaseGraph<
     }
   }
 
+  /**
+   * Tests that queries see changes made to the graph after an earlier query
+   * already built a snapshot.
+   */
+  @Test
+  public void testSnapshotRebuiltAfterChange() {
+    DijkstraGraph<String, Integer> graph = createGraph();
+    Assertions.assertEquals(7, graph.shortestPathCost("A", "E"));
+    // a new direct edge makes A -> E the shortest path
+    graph.insertEdge("A", "E", 3);
+    Assertions.assertEquals("[A, E]", graph.shortestPathData("A", "E").toString());
+    // and updating its weight makes the old path shortest again
+    graph.insertEdge("A", "E", 9);
+    Assertions.assertEquals("[A, D, B, E]", graph.shortestPathData("A", "E").toString());
+    // removing a node on that path forces a detour through C
+    graph.removeNode("D");
+    Assertions.assertEquals(9, graph.shortestPathCost("A", "E"));
+    Assertions.assertThrows(NoSuchElementException.class, () -> graph.shortestPathCost("A", "D"));
+  }
+
+  /**
+   * Tests a graph with enough nodes that its node map has to grow several
+   * times, removing nodes while those resizes are still in progress.
+   */
+  @Test
+  public void testManyNodes() {
+    DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
+    // a chain of nodes 0 -> 1 -> ... -> 999 with every edge costing 1
+    for (int i = 0; i < 1000; i++) {
+      graph.insertNode("" + i);
+      if (graph.containsNode("" + (i - 1))) graph.insertEdge("" + (i - 1), "" + i, 1);
+      // remove every tenth node right after it was added, along with its edge
+      if (i % 10 == 5) Assertions.assertTrue(graph.removeNode("" + i));
+    }
+    Assertions.assertEquals(900, graph.getNodeCount());
+    Assertions.assertFalse(graph.containsNode("995"));
+    Assertions.assertEquals(3, graph.shortestPathCost("996", "999"));
+    Assertions.assertThrows(NoSuchElementException.class, () -> graph.shortestPathCost("0", "999"));
+  }
+
+  /**
+   * Tests that bidirectional searches find paths of the same cost as
+   * Dijkstra's algorithm, between every pair of nodes of a random graph.
+   */
+  @Test
+  public void testBidirectionalMatchesDijkstra() {
+    assertModeMatchesDijkstra(randomGraph(400, 60, 150), SearchMode.BIDIRECTIONAL, 1);
+  }
+
+  /**
+   * Tests that A* with landmark bounds finds paths of the same cost as
+   * Dijkstra's algorithm, and that a saved landmark table gives the same
+   * results after loading it into a new graph with the same contents.
+   */
+  @Test
+  public void testLandmarksMatchDijkstra() throws IOException {
+    DijkstraGraph<String, Integer> graph = randomGraph(400, 60, 150);
+    DijkstraGraph<String, Integer> copy = new DijkstraGraph<>();
+    // insert the copy's nodes in reverse, so that its snapshot ids differ
+    for (int i = 59; i >= 0; i--) copy.insertNode("" + i);
+    for (int i = 0; i < 60; i++) {
+      for (int j = 0; j < 60; j++) {
+        if (graph.containsEdge("" + i, "" + j)) {
+          copy.insertEdge("" + i, "" + j, graph.getEdge("" + i, "" + j));
+        }
+      }
+    }
+    graph.setLandmarkCount(4);
+    java.io.File file = java.io.File.createTempFile("landmarks", ".alt");
+    try {
+      graph.saveLandmarks(file.getPath());
+      copy.loadLandmarks(file.getPath());
+      // a landmark id outside the graph is reported as a corrupt file
+      try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw")) {
+        long names = 0;
+        for (int v = 0; v < 60; v++) names += 2 + graph.getSnapshot().nodeAt(v).length();
+        raf.seek(20 + names);
+        raf.writeInt(1000);
+      }
+      Assertions.assertThrows(IOException.class, () -> copy.loadLandmarks(file.getPath()));
+      // a table saved for another graph is rejected
+      graph.insertEdge("0", "1", 1);
+      Assertions.assertThrows(IOException.class, () -> graph.loadLandmarks(file.getPath()));
+      graph.removeEdge("0", "1");
+    } finally {
+      file.delete();
+    }
+    assertModeMatchesDijkstra(graph, SearchMode.LANDMARKS, 1);
+    assertModeMatchesDijkstra(copy, SearchMode.LANDMARKS, 1);
+  }
+
+  /**
+   * Tests that contraction hierarchy queries find paths of the same cost as
+   * Dijkstra's algorithm, and that their shortcuts are unpacked into paths
+   * along edges of the graph.
+   */
+  @Test
+  public void testHierarchyMatchesDijkstra() {
+    DijkstraGraph<String, Integer> graph = randomGraph(400, 200, 600);
+    Assertions.assertTrue(graph.getHierarchy().getRounds() > 0);
+    assertModeMatchesDijkstra(graph, SearchMode.CONTRACTION_HIERARCHY, 3);
+  }
+
+  /**
+   * Tests that cached shortest path trees answer repeated queries from the
+   * same start node, are evicted least recently used first, and are dropped
+   * when the graph changes.
+   */
+  @Test
+  public void testTreeCache() {
+    DijkstraGraph<String, Integer> graph = createGraph();
+    graph.enableTreeCache(2, 1 << 20);
+    TreeCache<String> cache = graph.getTreeCache();
+    Assertions.assertEquals("[A, D, B, E]", graph.shortestPathData("A", "E").toString());
+    Assertions.assertEquals(6, graph.shortestPathCost("A", "B"));
+    Assertions.assertEquals(1, cache.getMisses());
+    Assertions.assertEquals(1, cache.getHits());
+    // a third start node evicts the least recently used tree, which is A's
+    graph.shortestPathCost("C", "D");
+    graph.shortestPathCost("D", "C");
+    graph.shortestPathCost("A", "C");
+    Assertions.assertEquals(4, cache.getMisses());
+    Assertions.assertEquals(2, cache.getEvictions());
+    // changing an edge empties the cache, and the new weight is seen
+    graph.insertEdge("A", "E", 3);
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertEquals("[A, E]", graph.shortestPathData("A", "E").toString());
+    // a failed change keeps the cached trees
+    Assertions.assertFalse(graph.insertNode("A"));
+    Assertions.assertEquals(1, cache.size());
+    // trees that don't fit into the memory limit are not cached
+    graph.enableTreeCache(2, 10);
+    graph.shortestPathCost("A", "E");
+    Assertions.assertEquals(0, graph.getTreeCache().size());
+    graph.removeNode("D");
+    Assertions.assertThrows(NoSuchElementException.class, () -> graph.shortestPathData("A", "D"));
+  }
+
+  // a graph with the nodes "0" to (nodes - 1) and edges between random nodes
+  // with weights from 0 to 9
+  private static DijkstraGraph<String, Integer> randomGraph(long seed, int nodes, int edges) {
+    DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
+    Random random = new Random(seed);
+    for (int i = 0; i < nodes; i++) graph.insertNode("" + i);
+    for (int i = 0; i < edges; i++) {
+      graph.insertEdge("" + random.nextInt(nodes), "" + random.nextInt(nodes), random.nextInt(10));
+    }
+    return graph;
+  }
+
+  // checks that a search mode finds a path of the same cost as DIJKSTRA from
+  // every step-th node to every node of a graph, or none when DIJKSTRA finds
+  // none, and that the path starts and ends at the right nodes and follows
+  // edges of the graph that add up to its cost
+  private static void assertModeMatchesDijkstra(DijkstraGraph<String, Integer> graph,
+      SearchMode mode, int step) {
+    int nodes = graph.getNodeCount();
+    for (int i = 0; i < nodes; i += step) {
+      for (int j = 0; j < nodes; j++) {
+        String start = "" + i;
+        String end = "" + j;
+        graph.setSearchMode(SearchMode.DIJKSTRA);
+        double expected;
+        try {
+          expected = graph.shortestPathCost(start, end);
+        } catch (NoSuchElementException e) {
+          expected = -1;
+        }
+        graph.setSearchMode(mode);
+        try {
+          List<String> path = graph.shortestPathData(start, end);
+          Assertions.assertEquals(expected, graph.shortestPathCost(start, end), start + "->" + end);
+          Assertions.assertEquals(start, path.get(0));
+          Assertions.assertEquals(end, path.get(path.size() - 1));
+          double sum = 0;
+          for (int k = 0; k + 1 < path.size(); k++) {
+            sum += graph.getEdge(path.get(k), path.get(k + 1));
+          }
+          Assertions.assertEquals(expected, sum, start + "->" + end);
+        } catch (NoSuchElementException e) {
+          Assertions.assertEquals(-1, expected, start + "->" + end);
+        }
+      }
+    }
+  }
+
   private DijkstraGraph<String, Integer> createGraph() {
     DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
     graph.insertNode("A");
@@ -293,4 +1287,387 @@ public class DijkstraGraph<NodeType, EdgeType extends Number> extends BaseGraph<
     return graph;
   }
 
+  /**
+   * Tests that the batch cost matrix matches one shortestPathCost call per
+   * pair, including unreachable and repeated targets, and rejects unknown
+   * nodes.
+   */
+  @Test
+  public void testCostMatrix() {
+    DijkstraGraph<String, Integer> graph = randomGraph(13, 80, 160);
+    Random random = new Random(13);
+    List<String> sources = new ArrayList<>();
+    List<String> targets = new ArrayList<>();
+    for (int i = 0; i < 10; i++) sources.add("" + random.nextInt(80));
+    for (int i = 0; i < 25; i++) targets.add("" + random.nextInt(80));
+    targets.add(targets.get(0));
+    double[] costs = graph.shortestPathCosts(sources, targets);
+    Assertions.assertEquals(sources.size() * targets.size(), costs.length);
+    for (int s = 0; s < sources.size(); s++) {
+      for (int t = 0; t < targets.size(); t++) {
+        double expected;
+        try {
+          expected = graph.shortestPathCost(sources.get(s), targets.get(t));
+        } catch (NoSuchElementException e) {
+          expected = Double.POSITIVE_INFINITY;
+        }
+        Assertions.assertEquals(expected, costs[s * targets.size() + t],
+            sources.get(s) + "->" + targets.get(t));
+      }
+    }
+    Assertions.assertThrows(NoSuchElementException.class,
+        () -> graph.shortestPathCosts(sources, List.of("missing")));
+  }
+
+  /**
+   * Tests that the nodes reachable within a limit are exactly those whose
+   * shortest path cost is at most the limit, reported in increasing order of
+   * cost, and that the consumer may run queries of its own.
+   */
+  @Test
+  public void testReachableWithin() {
+    DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
+    Random random = new Random(14);
+    for (int i = 0; i < 80; i++) graph.insertNode("" + i);
+    for (int i = 0; i < 240; i++) {
+      graph.insertEdge("" + random.nextInt(80), "" + random.nextInt(80), 1 + random.nextInt(10));
+    }
+    LinkedHashMap<String, Double> reachable = graph.reachableWithin("0", 12);
+    Assertions.assertEquals(0.0, (double) reachable.get("0"));
+    for (int i = 0; i < 80; i++) {
+      double cost;
+      try {
+        cost = graph.shortestPathCost("0", "" + i);
+      } catch (NoSuchElementException e) {
+        cost = Double.POSITIVE_INFINITY;
+      }
+      Assertions.assertEquals(cost <= 12 ? cost : null, reachable.get("" + i), "0->" + i);
+    }
+    List<Double> costs = new ArrayList<>(reachable.values());
+    for (int i = 1; i < costs.size(); i++) Assertions.assertTrue(costs.get(i - 1) <= costs.get(i));
+    // a query from inside the consumer must not disturb the running search
+    List<String> streamed = new ArrayList<>();
+    graph.reachableWithin("0", 12, (node, cost) -> {
+      Assertions.assertEquals((double) cost, graph.shortestPathCost("0", node));
+      streamed.add(node);
+    });
+    Assertions.assertEquals(new ArrayList<>(reachable.keySet()), streamed);
+    Assertions.assertEquals(Map.of("0", 0.0), graph.reachableWithin("0", 0.5));
+  }
+
+  /**
+   * Tests that the nearest target and nearest source are the candidates with
+   * the lowest shortest path cost, with paths that start and end at the right
+   * nodes, and that no reachable candidate is reported as missing.
+   */
+  @Test
+  public void testNearest() {
+    DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
+    Random random = new Random(15);
+    for (int i = 0; i < 80; i++) graph.insertNode("" + i);
+    for (int i = 0; i < 240; i++) {
+      graph.insertEdge("" + random.nextInt(80), "" + random.nextInt(80), 1 + random.nextInt(10));
+    }
+    for (int round = 0; round < 20; round++) {
+      String root = "" + random.nextInt(80);
+      List<String> candidates = new ArrayList<>();
+      for (int i = 0; i < 5; i++) candidates.add("" + random.nextInt(80));
+      double toTarget = Double.POSITIVE_INFINITY;
+      double fromSource = Double.POSITIVE_INFINITY;
+      for (String candidate : candidates) {
+        try {
+          toTarget = Math.min(toTarget, graph.shortestPathCost(root, candidate));
+        } catch (NoSuchElementException e) {
+          // unreachable candidates can't be the nearest
+        }
+        try {
+          fromSource = Math.min(fromSource, graph.shortestPathCost(candidate, root));
+        } catch (NoSuchElementException e) {
+          // unreachable candidates can't be the nearest
+        }
+      }
+      if (toTarget == Double.POSITIVE_INFINITY) {
+        Assertions.assertThrows(NoSuchElementException.class,
+            () -> graph.nearestTarget(root, candidates));
+      } else {
+        GraphPath<String> path = graph.nearestTarget(root, candidates);
+        Assertions.assertEquals(root, path.getNodes().get(0));
+        Assertions.assertTrue(candidates.contains(path.getNodes().get(path.getEdgeCount())));
+        Assertions.assertEquals(toTarget, path.getCost());
+      }
+      if (fromSource == Double.POSITIVE_INFINITY) {
+        Assertions.assertThrows(NoSuchElementException.class,
+            () -> graph.nearestSource(candidates, root));
+      } else {
+        GraphPath<String> path = graph.nearestSource(candidates, root);
+        Assertions.assertTrue(candidates.contains(path.getNodes().get(0)));
+        Assertions.assertEquals(root, path.getNodes().get(path.getEdgeCount()));
+        Assertions.assertEquals(fromSource, path.getCost());
+      }
+    }
+  }
+
+  /**
+   * Tests that the k shortest paths have the same costs as the k cheapest
+   * loopless paths found by trying every loopless path of a small random
+   * graph, and that they are distinct and visit no node twice.
+   */
+  @Test
+  public void testKShortestPaths() {
+    DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
+    Random random = new Random(16);
+    for (int i = 0; i < 12; i++) graph.insertNode("" + i);
+    for (int i = 0; i < 40; i++) {
+      graph.insertEdge("" + random.nextInt(12), "" + random.nextInt(12), 1 + random.nextInt(10));
+    }
+    for (int round = 0; round < 10; round++) {
+      String start = "" + random.nextInt(12);
+      String end = "" + random.nextInt(12);
+      List<Double> expected = new ArrayList<>();
+      List<String> visited = new ArrayList<>(List.of(start));
+      allPathCosts(graph, visited, 0, end, expected);
+      Collections.sort(expected);
+      if (expected.isEmpty()) {
+        Assertions.assertThrows(NoSuchElementException.class,
+            () -> graph.kShortestPaths(start, end, 5, 1000));
+        continue;
+      }
+      // no limit must not overflow into a deadline in the past, and no time
+      // at all still returns the shortest path
+      List<GraphPath<String>> paths = graph.kShortestPaths(start, end, 5, Long.MAX_VALUE);
+      Assertions.assertEquals(Math.min(5, expected.size()), paths.size(), start + "->" + end);
+      Assertions.assertEquals(1, graph.kShortestPaths(start, end, 5, 0).size());
+      Set<List<String>> distinct = new HashSet<>();
+      for (int i = 0; i < paths.size(); i++) {
+        List<String> nodes = paths.get(i).getNodes();
+        Assertions.assertEquals((double) expected.get(i), paths.get(i).getCost(),
+            start + "->" + end);
+        Assertions.assertEquals(nodes.size(), new HashSet<>(nodes).size());
+        Assertions.assertTrue(distinct.add(nodes));
+      }
+      if (paths.size() > 1) {
+        // the detours run on pool threads, which see the cancellation of the
+        // query as well
+        SearchCancellation cancellation = new SearchCancellation();
+        Assertions.assertThrows(CancellationException.class, () -> cancellation.call(() -> {
+          cancellation.cancel();
+          return graph.kShortestPaths(start, end, 5, Long.MAX_VALUE);
+        }));
+      }
+    }
+  }
+
+  // adds the cost of every loopless path from the last visited node to end
+  private static void allPathCosts(DijkstraGraph<String, Integer> graph, List<String> visited,
+      double cost, String end, List<Double> costs) {
+    String last = visited.get(visited.size() - 1);
+    if (last.equals(end)) {
+      costs.add(cost);
+      return;
+    }
+    for (int i = 0; i < graph.getNodeCount(); i++) {
+      String next = "" + i;
+      if (visited.contains(next) || !graph.containsEdge(last, next)) continue;
+      visited.add(next);
+      allPathCosts(graph, visited, cost + graph.getEdge(last, next), end, costs);
+      visited.remove(visited.size() - 1);
+    }
+  }
+
+  /**
+   * Tests that alternative paths on a grid start with the shortest path, and
+   * that every alternative is loopless, within the stretch limit, shares
+   * little enough with the paths before it, and is found for most queries.
+   */
+  @Test
+  public void testAlternativePaths() {
+    DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
+    Random random = new Random(17);
+    for (int r = 0; r < 20; r++) {
+      for (int c = 0; c < 20; c++) graph.insertNode(r + "," + c);
+    }
+    for (int r = 0; r < 20; r++) {
+      for (int c = 0; c < 20; c++) {
+        if (c + 1 < 20) graph.insertEdge(r + "," + c, r + "," + (c + 1), 1 + random.nextInt(10));
+        if (c + 1 < 20) graph.insertEdge(r + "," + (c + 1), r + "," + c, 1 + random.nextInt(10));
+        if (r + 1 < 20) graph.insertEdge(r + "," + c, (r + 1) + "," + c, 1 + random.nextInt(10));
+        if (r + 1 < 20) graph.insertEdge((r + 1) + "," + c, r + "," + c, 1 + random.nextInt(10));
+      }
+    }
+    int withAlternatives = 0;
+    for (int round = 0; round < 20; round++) {
+      String start = random.nextInt(20) + "," + random.nextInt(20);
+      String end = random.nextInt(20) + "," + random.nextInt(20);
+      List<GraphPath<String>> paths = graph.alternativePaths(start, end, 3);
+      double shortest = graph.shortestPathCost(start, end);
+      Assertions.assertEquals(shortest, paths.get(0).getCost());
+      Set<String> usedEdges = new HashSet<>();
+      for (GraphPath<String> path : paths) {
+        List<String> nodes = path.getNodes();
+        Assertions.assertEquals(start, nodes.get(0));
+        Assertions.assertEquals(end, nodes.get(nodes.size() - 1));
+        Assertions.assertEquals(nodes.size(), new HashSet<>(nodes).size());
+        Assertions.assertTrue(path.getCost() <= 1.25 * shortest);
+        double shared = 0;
+        for (int i = 0; i < path.getEdgeCount(); i++) {
+          if (usedEdges.contains(nodes.get(i) + ">" + nodes.get(i + 1))) {
+            shared += path.getEdgeWeight(i);
+          }
+        }
+        Assertions.assertTrue(shared <= 0.8 * shortest);
+        for (int i = 0; i < path.getEdgeCount(); i++) {
+          usedEdges.add(nodes.get(i) + ">" + nodes.get(i + 1));
+        }
+      }
+      if (paths.size() > 1) withAlternatives++;
+    }
+    Assertions.assertTrue(withAlternatives >= 10, withAlternatives + " of 20 with alternatives");
+  }
+
+  /**
+   * Tests that queries running on several threads while another thread
+   * updates the graph only ever see complete updates. Every update moves
+   * weight between two edges of a chain, so that the chain always costs
+   * 100, and every other update also swaps a node hanging off the chain, so
+   * that node ids change between snapshots. A query that saw part of an update would find a
+   * different cost or legs that don't add up.
+   */
+  @Test
+  public void testConcurrentUpdates() throws InterruptedException {
+    DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
+    for (int i = 0; i < 10; i++) graph.insertNode("" + i);
+    for (int i = 0; i < 9; i++) graph.insertEdge("" + i, "" + (i + 1), i < 8 ? 11 : 12);
+    // a bypass that is never shorter than the chain
+    graph.insertEdge("0", "9", 150);
+    graph.insertNode("spare0");
+    graph.insertEdge("0", "spare0", 1);
+    int[] weights = {11, 11, 11, 11, 11, 11, 11, 11, 12};
+
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicLong queries = new AtomicLong();
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 3; t++) {
+      Thread reader = new Thread(() -> {
+        try {
+          while (!done.get()) {
+            GraphPath<String> path = graph.shortestPath("0", "9");
+            double legs = 0;
+            for (int i = 0; i < path.getEdgeCount(); i++) legs += path.getEdgeWeight(i);
+            Assertions.assertEquals(10, path.getNodes().size());
+            Assertions.assertEquals(100.0, legs);
+            Assertions.assertEquals(100.0, graph.shortestPathCost("0", "9"));
+            queries.incrementAndGet();
+          }
+        } catch (Throwable e) {
+          failures.add(e);
+        }
+      });
+      readers.add(reader);
+      reader.start();
+    }
+    Random random = new Random(21);
+    for (int round = 1; round <= 500; round++) {
+      int from = random.nextInt(9);
+      int to = random.nextInt(9);
+      int amount = Math.min(weights[from] - 1, random.nextInt(5));
+      weights[from] -= amount;
+      weights[to] += amount;
+      int spare = round;
+      graph.update(changed -> {
+        changed.insertEdge("" + from, "" + (from + 1), weights[from]);
+        // give the readers every chance to run between two changes
+        Thread.yield();
+        if (spare % 2 == 0) {
+          changed.removeNode("spare" + (spare - 2));
+          changed.insertNode("spare" + spare);
+          changed.insertEdge("" + spare % 10, "spare" + spare, 1);
+        }
+        changed.insertEdge("" + to, "" + (to + 1), weights[to]);
+      });
+    }
+    done.set(true);
+    for (Thread reader : readers) reader.join();
+    Assertions.assertTrue(failures.isEmpty(), failures.toString());
+    Assertions.assertTrue(queries.get() > 0);
+    Assertions.assertEquals(11, graph.getNodeCount());
+    Assertions.assertEquals(100.0, graph.shortestPathCost("0", "9"));
+  }
+
+  /**
+   * Tests that queries that start at the same time after an update share one
+   * landmark table and one contraction hierarchy for the new snapshot,
+   * instead of each query building its own.
+   */
+  @Test
+  public void testSearchDataBuiltOnce() throws InterruptedException {
+    DijkstraGraph<String, Integer> graph = randomGraph(400, 200, 600);
+    graph.getLandmarks();
+    graph.getHierarchy();
+    graph.update(changed -> changed.insertEdge("0", "1", 5));
+    Set<Object> built = Collections.synchronizedSet(new HashSet<>());
+    AtomicLong started = new AtomicLong();
+    Thread[] readers = new Thread[4];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Thread(() -> {
+        started.incrementAndGet();
+        // wait until every reader is running, so that they all find no table
+        while (started.get() < readers.length) Thread.yield();
+        built.add(graph.getLandmarks());
+        built.add(graph.getHierarchy());
+      });
+      readers[i].setDaemon(true);
+      readers[i].start();
+    }
+    for (Thread reader : readers) reader.join();
+    Assertions.assertEquals(2, built.size());
+    Assertions.assertTrue(built.contains(graph.getLandmarks()));
+    Assertions.assertTrue(built.contains(graph.getHierarchy()));
+  }
+
+  /**
+   * Tests that a cancelled query stops its search: the plain and the
+   * bidirectional search, the search of reachableWithin and the original
+   * computeShortestPath all throw once the query is cancelled, and the
+   * search of reachableWithin settles at most CHECK_INTERVAL more nodes.
+   */
+  @Test
+  public void testCancelledSearchStops() {
+    DijkstraGraph<String, Integer> graph = new DijkstraGraph<>();
+    for (int r = 0; r < 40; r++) {
+      for (int c = 0; c < 40; c++) graph.insertNode(r + "," + c);
+    }
+    for (int r = 0; r < 40; r++) {
+      for (int c = 0; c < 40; c++) {
+        if (c + 1 < 40) graph.insertEdge(r + "," + c, r + "," + (c + 1), 1);
+        if (r + 1 < 40) graph.insertEdge(r + "," + c, (r + 1) + "," + c, 1);
+      }
+    }
+    Assertions.assertEquals(78.0, (double) new SearchCancellation().call(
+        () -> graph.shortestPathCost("0,0", "39,39")));
+    for (SearchMode mode : new SearchMode[] {SearchMode.DIJKSTRA, SearchMode.BIDIRECTIONAL}) {
+      graph.setSearchMode(mode);
+      SearchCancellation cancellation = new SearchCancellation();
+      Assertions.assertThrows(CancellationException.class, () -> cancellation.call(() -> {
+        cancellation.cancel();
+        return graph.shortestPathCost("0,0", "39,39");
+      }));
+    }
+    SearchCancellation cancellation = new SearchCancellation();
+    int[] reached = new int[1];
+    Assertions.assertThrows(CancellationException.class, () -> cancellation.call(() -> {
+      graph.reachableWithin("0,0", 100, (node, cost) -> {
+        reached[0]++;
+        cancellation.cancel();
+      });
+      return null;
+    }));
+    Assertions.assertTrue(reached[0] <= SearchCancellation.CHECK_INTERVAL, reached[0] + " nodes");
+    SearchCancellation legacy = new SearchCancellation();
+    Assertions.assertThrows(CancellationException.class, () -> legacy.call(() -> {
+      legacy.cancel();
+      return graph.computeShortestPath("0,0", "39,39");
+    }));
+  }
+
 }
@@ -0,0 +1,180 @@
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The shortest path distance between every ordered pair of nodes of a CompactGraph, along with
+ * the shortest path tree of every node, so that any query is answered by a table lookup and a
+ * short walk instead of a search. The table is filled by running Dijkstra's algorithm from every
+ * node in parallel.
+ * <p>
+ * Both tables are flat, with the entry for source s and target t at index s * n + t, where n is
+ * the node count. Instead of the next hop from s, the tree stores the hop before t on the path
+ * from s, so that walking it back from t yields exactly the path that a search from s would
+ * find, even where several paths are equally short. The tables take 12 bytes per pair and can be
+ * kept off the Java heap, where they don't add to garbage collection work.
+ *
+ * @param <NodeType> the data type stored at each graph node
+ */
+public class DistanceTable<NodeType> {
+
+  private final CompactGraph<NodeType> graph;
+  private final int n;
+  // distance from s to t at s * n + t, infinity when t can't be reached from s
+  private final DoubleBuffer distances;
+  // node before t on the shortest path from s at s * n + t, or -1 for t == s and unreachable t
+  private final IntBuffer predecessors;
+  private final boolean offHeap;
+  private final double buildMillis;
+
+  /**
+   * Returns the number of bytes that a table for a graph of the given size takes.
+   *
+   * @param nodeCount the number of nodes in the graph
+   * @return the size of the distance and predecessor tables in bytes
+   */
+  public static long bytesFor(int nodeCount) {
+    return 12L * nodeCount * nodeCount;
+  }
+
+  /**
+   * Computes the table for a snapshot on the common fork/join pool.
+   *
+   * @param graph   the snapshot to compute all distances of
+   * @param offHeap true to store the tables in direct buffers outside the Java heap
+   * @throws IllegalArgumentException if the graph is too large for a single table
+   */
+  public DistanceTable(CompactGraph<NodeType> graph, boolean offHeap) {
+    this(graph, offHeap, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Computes the table for a snapshot, running one search per source node on the provided pool.
+   *
+   * @param graph   the snapshot to compute all distances of
+   * @param offHeap true to store the tables in direct buffers outside the Java heap
+   * @param pool    the pool that runs the searches
+   * @throws IllegalArgumentException if the graph is too large for a single table
+   */
+  public DistanceTable(CompactGraph<NodeType> graph, boolean offHeap, ForkJoinPool pool) {
+    long start = System.nanoTime();
+    this.graph = graph;
+    this.n = graph.getNodeCount();
+    this.offHeap = offHeap;
+    long pairs = (long) n * n;
+    // a direct buffer holds at most 2^31 - 1 bytes, and an array that many elements
+    if (pairs * (offHeap ? Double.BYTES : 1) > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("too many nodes for a distance table: " + n);
+    if (offHeap) {
+      this.distances = ByteBuffer.allocateDirect((int) pairs * Double.BYTES).asDoubleBuffer();
+      this.predecessors = ByteBuffer.allocateDirect((int) pairs * Integer.BYTES).asIntBuffer();
+    } else {
+      this.distances = DoubleBuffer.wrap(new double[(int) pairs]);
+      this.predecessors = IntBuffer.wrap(new int[(int) pairs]);
+    }
+    ThreadLocal<SearchWorkspace> workspaces = ThreadLocal.withInitial(
+        () -> new SearchWorkspace(n, CompactGraph.DEFAULT_HEAP_ARITY));
+    // each source fills its own row, and absolute puts don't touch the buffers' shared position
+    pool.submit(() -> IntStream.range(0, n).parallel().forEach(source -> {
+      SearchWorkspace workspace = workspaces.get();
+      graph.searchAll(source, false, workspace);
+      int row = source * n;
+      for (int target = 0; target < n; target++) {
+        distances.put(row + target, workspace.getDistance(target));
+        predecessors.put(row + target, workspace.getPredecessor(target));
+      }
+    })).join();
+    this.buildMillis = (System.nanoTime() - start) / 1e6;
+  }
+
+  /**
+   * Checks whether this table was computed for a snapshot.
+   *
+   * @param snapshot the snapshot to check
+   * @return true if this table describes snapshot, or false otherwise
+   */
+  public boolean isFor(CompactGraph<?> snapshot) {
+    return graph == snapshot;
+  }
+
+  /**
+   * Checks whether the tables are stored outside the Java heap.
+   *
+   * @return true if the tables are in direct buffers, or false otherwise
+   */
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /**
+   * Returns how long it took to compute this table.
+   *
+   * @return the build time in milliseconds
+   */
+  public double getBuildMillis() {
+    return buildMillis;
+  }
+
+  /**
+   * Returns the cost of the shortest path between two nodes.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end   the data item in the destination node for the path
+   * @return the cost of the shortest path between these nodes
+   * @throws NoSuchElementException when either node is not in the graph or there is no path
+   */
+  public double shortestPathCost(NodeType start, NodeType end) {
+    double cost = distances.get(indexOf(start) * n + indexOf(end));
+    if (cost == Double.POSITIVE_INFINITY)
+      throw new NoSuchElementException("No path found");
+    return cost;
+  }
+
+  /**
+   * Returns the data of the nodes along the shortest path between two nodes, by walking the
+   * shortest path tree of start back from end.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end   the data item in the destination node for the path
+   * @return list of data items from start through end
+   * @throws NoSuchElementException when either node is not in the graph or there is no path
+   */
+  public List<NodeType> shortestPathData(NodeType start, NodeType end) {
+    int source = indexOf(start);
+    int target = indexOf(end);
+    int row = source * n;
+    if (distances.get(row + target) == Double.POSITIVE_INFINITY)
+      throw new NoSuchElementException("No path found");
+    List<NodeType> path = new ArrayList<>();
+    for (int v = target; v != -1; v = predecessors.get(row + v)) path.add(graph.nodeAt(v));
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * Returns the shortest path between two nodes with the weight of every edge on it.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end   the data item in the destination node for the path
+   * @return the shortest path between these nodes
+   * @throws NoSuchElementException when either node is not in the graph or there is no path
+   */
+  public GraphPath<NodeType> shortestPath(NodeType start, NodeType end) {
+    List<NodeType> nodes = shortestPathData(start, end);
+    return new GraphPath<>(nodes, graph.weightsAlong(nodes));
+  }
+
+  private int indexOf(NodeType data) {
+    int id = graph.indexOf(data);
+    if (id == -1)
+      throw new NoSuchElementException("Start or end node does not exist");
+    return id;
+  }
+
+}
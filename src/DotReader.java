@@ -0,0 +1,451 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Reads the edges of a DOT file like campus.dot, where each edge is a line of the form
+ * <pre>
+ *   "from" -> "to" [seconds=12.5];
+ * </pre>
+ * Lines that don't start with a quote, such as the digraph header, braces and comments, are
+ * skipped. Any other line that doesn't have this form makes the whole file fail with an
+ * IOException that names its line number.
+ * <p>
+ * The file is memory-mapped and cut into pieces that end at a line break. The pieces are
+ * parsed in parallel, each one from an array its bytes are copied into in one bulk read of the
+ * mapping, without regular expressions and without creating a string for every location on
+ * every line: each piece keeps a hash table of the location names it has seen, keyed by their
+ * bytes, and only decodes a name the first time it appears. Numbers with at most 2^53 as their
+ * digits and at most 22 decimal places are converted with a single exact division, which rounds
+ * correctly; longer ones go through Double.parseDouble. Once every piece is parsed, their
+ * locations are merged in order of first appearance in the file and their edges renumbered.
+ */
+public class DotReader {
+
+  /**
+   * The size of the pieces of a file that are parsed in parallel, unless read is given another.
+   */
+  public static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+
+  // powers of ten that are exact doubles
+  private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+      1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+  private static final byte[] ARROW = "->".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] SECONDS = "[seconds=".getBytes(StandardCharsets.US_ASCII);
+
+  private final List<String> locations;
+  private final int[] sources;
+  private final int[] targets;
+  private final double[] seconds;
+
+  private DotReader(List<String> locations, int[] sources, int[] targets, double[] seconds) {
+    this.locations = locations;
+    this.sources = sources;
+    this.targets = targets;
+    this.seconds = seconds;
+  }
+
+  /**
+   * Reads a DOT file in pieces of DEFAULT_CHUNK_BYTES on the common fork/join pool.
+   *
+   * @param filename the path of the file to read
+   * @return the locations and edges of the file
+   * @throws IOException if the file can't be read or has a malformed edge line
+   */
+  public static DotReader read(String filename) throws IOException {
+    return read(filename, DEFAULT_CHUNK_BYTES, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Reads a DOT file, parsing pieces of about chunkBytes each in parallel on the provided pool.
+   *
+   * @param filename   the path of the file to read
+   * @param chunkBytes the size of the pieces to parse in parallel; a piece is extended to the end
+   *                   of the line it stops in
+   * @param pool       the pool that parses the pieces
+   * @return the locations and edges of the file
+   * @throws IllegalArgumentException if chunkBytes is not positive
+   * @throws IOException              if the file can't be read or has a malformed edge line
+   */
+  public static DotReader read(String filename, int chunkBytes, ForkJoinPool pool)
+      throws IOException {
+    if (chunkBytes < 1)
+      throw new IllegalArgumentException("chunk size must be positive: " + chunkBytes);
+    try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+      long[] bounds = chunkBounds(channel, chunkBytes);
+      Chunk[] chunks = new Chunk[bounds.length - 1];
+      for (int i = 0; i < chunks.length; i++) {
+        chunks[i] = new Chunk(
+            channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]));
+      }
+      if (chunks.length == 1) {
+        chunks[0].parse();
+      } else {
+        pool.submit(() -> IntStream.range(0, chunks.length).parallel()
+            .forEach(i -> chunks[i].parse())).join();
+      }
+      // report the first malformed line of the file, whose number only depends on the pieces
+      // before it, which were parsed completely
+      long line = 1;
+      for (Chunk chunk : chunks) {
+        if (chunk.error != null)
+          throw new IOException(filename + ":" + (line + chunk.lines) + ": " + chunk.error);
+        line += chunk.lines;
+      }
+      return merge(chunks);
+    }
+  }
+
+  /**
+   * Returns the locations of the file in the order they first appear in it.
+   *
+   * @return an unmodifiable list of location names
+   */
+  public List<String> getLocations() {
+    return locations;
+  }
+
+  /**
+   * Returns the number of edge lines in the file.
+   *
+   * @return the number of edges
+   */
+  public int getEdgeCount() {
+    return seconds.length;
+  }
+
+  /**
+   * Returns the location an edge leaves.
+   *
+   * @param edge the index of the edge, in the order of the lines of the file
+   * @return the index of its location in getLocations()
+   */
+  public int getSource(int edge) {
+    return sources[edge];
+  }
+
+  /**
+   * Returns the location an edge enters.
+   *
+   * @param edge the index of the edge, in the order of the lines of the file
+   * @return the index of its location in getLocations()
+   */
+  public int getTarget(int edge) {
+    return targets[edge];
+  }
+
+  /**
+   * Returns the walking time along an edge.
+   *
+   * @param edge the index of the edge, in the order of the lines of the file
+   * @return the seconds of the edge
+   */
+  public double getSeconds(int edge) {
+    return seconds[edge];
+  }
+
+  /**
+   * Inserts every location and edge of the file into a graph with one call to
+   * GraphADT.insertEdges. Like inserting the edges one at a time, a later line for the same pair
+   * of locations replaces the time of an earlier one.
+   *
+   * @param graph the graph to insert into
+   */
+  public void insertInto(GraphADT<String, Double> graph) {
+    graph.insertEdges(locations, sources, targets, new AbstractList<Double>() {
+      @Override
+      public Double get(int index) {
+        return seconds[index];
+      }
+
+      @Override
+      public int size() {
+        return seconds.length;
+      }
+    });
+  }
+
+  // the offsets at which the pieces of the file start, and the file size as the last entry; each
+  // piece but the last ends right after a line break
+  private static long[] chunkBounds(FileChannel channel, int chunkBytes) throws IOException {
+    long size = channel.size();
+    List<Long> bounds = new ArrayList<>();
+    bounds.add(0L);
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long position = chunkBytes;
+    while (position < size) {
+      // move on to just after the next line break
+      long lineEnd = -1;
+      while (lineEnd == -1 && position < size) {
+        buffer.clear();
+        int read = channel.read(buffer, position);
+        if (read <= 0) break;
+        for (int i = 0; i < read; i++) {
+          if (buffer.get(i) == '\n') {
+            lineEnd = position + i;
+            break;
+          }
+        }
+        if (lineEnd == -1) position += read;
+      }
+      if (lineEnd == -1 || lineEnd + 1 >= size) break;
+      bounds.add(lineEnd + 1);
+      position = lineEnd + 1 + chunkBytes;
+    }
+    bounds.add(size);
+    long[] result = new long[bounds.size()];
+    for (int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+    return result;
+  }
+
+  // combines the pieces, giving each location the index of its first appearance in the file
+  private static DotReader merge(Chunk[] chunks) {
+    Map<String, Integer> ids = new HashMap<>();
+    List<String> locations = new ArrayList<>();
+    int edgeCount = 0;
+    for (Chunk chunk : chunks) edgeCount += chunk.edgeCount;
+    int[] sources = new int[edgeCount];
+    int[] targets = new int[edgeCount];
+    double[] seconds = new double[edgeCount];
+    int edge = 0;
+    for (Chunk chunk : chunks) {
+      int[] global = new int[chunk.nameCount];
+      for (int local = 0; local < chunk.nameCount; local++) {
+        String name = chunk.names[local];
+        Integer id = ids.get(name);
+        if (id == null) {
+          id = locations.size();
+          ids.put(name, id);
+          locations.add(name);
+        }
+        global[local] = id;
+      }
+      for (int i = 0; i < chunk.edgeCount; i++, edge++) {
+        sources[edge] = global[chunk.sources[i]];
+        targets[edge] = global[chunk.targets[i]];
+      }
+      System.arraycopy(chunk.seconds, 0, seconds, edge - chunk.edgeCount, chunk.edgeCount);
+    }
+    return new DotReader(List.copyOf(locations), sources, targets, seconds);
+  }
+
+  /**
+   * One piece of the file and the locations and edges parsed from it, with locations numbered in
+   * the order they first appear in the piece.
+   */
+  private static class Chunk {
+
+    private final MappedByteBuffer mapped;
+    // the bytes of the piece, copied out of the mapping while it is parsed, since array reads
+    // are cheaper than buffer reads
+    private byte[] bytes;
+    private int end;
+    // position of the parser within the current line
+    private int at;
+
+    // number of complete lines parsed, which is the index of the malformed line within the piece
+    // when error is set
+    private int lines;
+    private String error;
+
+    // open addressing table of location names: slot i holds the local id + 1 of a name, or 0
+    private int[] slots = new int[1024];
+    private int[] nameHashes = new int[64];
+    private int[] nameStarts = new int[64];
+    private int[] nameLengths = new int[64];
+    private String[] names = new String[64];
+    private int nameCount;
+
+    private int[] sources = new int[1024];
+    private int[] targets = new int[1024];
+    private double[] seconds = new double[1024];
+    private int edgeCount;
+
+    Chunk(MappedByteBuffer mapped) {
+      this.mapped = mapped;
+    }
+
+    // parses every line of the piece, stopping at the first malformed one
+    void parse() {
+      end = mapped.limit();
+      bytes = new byte[end];
+      mapped.get(0, bytes);
+      try {
+        parseLines();
+      } finally {
+        bytes = null;
+        slots = null;
+      }
+    }
+
+    private void parseLines() {
+      int start = 0;
+      while (start < end) {
+        int lineEnd = start;
+        while (lineEnd < end && bytes[lineEnd] != '\n') lineEnd++;
+        int next = lineEnd + 1;
+        if (lineEnd > start && bytes[lineEnd - 1] == '\r') lineEnd--;
+        error = parseLine(start, lineEnd);
+        if (error != null) return;
+        lines++;
+        start = next;
+      }
+    }
+
+    // parses one line, returning a description of what is wrong with it or null when it is an
+    // edge or a line to skip
+    private String parseLine(int start, int lineEnd) {
+      at = start;
+      skipBlanks(lineEnd);
+      if (at == lineEnd || bytes[at] != '"') return null;
+      int from = name(lineEnd);
+      if (from < 0) return "expected a location name in quotes at the start of the line";
+      skipBlanks(lineEnd);
+      if (!expect(ARROW, lineEnd)) return "expected -> after \"" + names[from] + "\"";
+      skipBlanks(lineEnd);
+      int to = name(lineEnd);
+      if (to < 0) return "expected a location name in quotes after ->";
+      skipBlanks(lineEnd);
+      if (!expect(SECONDS, lineEnd)) return "expected [seconds= after \"" + names[to] + "\"";
+      double time = number(lineEnd);
+      if (Double.isNaN(time)) return "expected a number of seconds after [seconds=";
+      if (at == lineEnd || bytes[at++] != ']') return "expected ] after the number of seconds";
+      skipBlanks(lineEnd);
+      if (at == lineEnd || bytes[at] != ';') return "expected ; at the end of the edge";
+      addEdge(from, to, time);
+      return null;
+    }
+
+    private void skipBlanks(int lineEnd) {
+      while (at < lineEnd && (bytes[at] == ' ' || bytes[at] == '\t')) at++;
+    }
+
+    private boolean expect(byte[] token, int lineEnd) {
+      if (lineEnd - at < token.length) return false;
+      for (int i = 0; i < token.length; i++) {
+        if (bytes[at + i] != token[i]) return false;
+      }
+      at += token.length;
+      return true;
+    }
+
+    // reads a non-empty name in quotes and returns its local id, or -1 when there is none
+    private int name(int lineEnd) {
+      if (at == lineEnd || bytes[at] != '"') return -1;
+      int start = at + 1;
+      int hash = 0;
+      int i = start;
+      for (; i < lineEnd; i++) {
+        byte b = bytes[i];
+        if (b == '"') break;
+        hash = 31 * hash + b;
+      }
+      if (i == lineEnd || i == start) return -1;
+      at = i + 1;
+      return intern(start, i - start, hash);
+    }
+
+    // looks a name up by its bytes, and decodes and numbers it when it is new
+    private int intern(int start, int length, int hash) {
+      int mask = slots.length - 1;
+      int slot = (hash ^ hash >>> 16) & mask;
+      for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+        int id = slots[slot] - 1;
+        if (nameHashes[id] == hash && nameLengths[id] == length
+            && sameBytes(nameStarts[id], start, length))
+          return id;
+      }
+      if (nameCount == names.length) {
+        nameHashes = Arrays.copyOf(nameHashes, 2 * nameCount);
+        nameStarts = Arrays.copyOf(nameStarts, 2 * nameCount);
+        nameLengths = Arrays.copyOf(nameLengths, 2 * nameCount);
+        names = Arrays.copyOf(names, 2 * nameCount);
+      }
+      int id = nameCount++;
+      byte[] utf8 = new byte[length];
+      System.arraycopy(bytes, start, utf8, 0, length);
+      nameHashes[id] = hash;
+      nameStarts[id] = start;
+      nameLengths[id] = length;
+      names[id] = new String(utf8, StandardCharsets.UTF_8);
+      slots[slot] = id + 1;
+      // keep the table at most half full
+      if (2 * nameCount > slots.length) rehash();
+      return id;
+    }
+
+    private boolean sameBytes(int a, int b, int length) {
+      for (int i = 0; i < length; i++) {
+        if (bytes[a + i] != bytes[b + i]) return false;
+      }
+      return true;
+    }
+
+    private void rehash() {
+      slots = new int[2 * slots.length];
+      int mask = slots.length - 1;
+      for (int id = 0; id < nameCount; id++) {
+        int slot = (nameHashes[id] ^ nameHashes[id] >>> 16) & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = id + 1;
+      }
+    }
+
+    // reads digits with at most one decimal point, or returns NaN when there are none
+    private double number(int lineEnd) {
+      int start = at;
+      long digits = 0;
+      int decimals = 0;
+      boolean point = false;
+      boolean exact = true;
+      boolean any = false;
+      for (; at < lineEnd; at++) {
+        byte b = bytes[at];
+        if (b == '.') {
+          if (point) return Double.NaN;
+          point = true;
+        } else if (b >= '0' && b <= '9') {
+          any = true;
+          if (point) decimals++;
+          if (digits > (1L << 53) / 10) exact = false;
+          else digits = 10 * digits + (b - '0');
+        } else {
+          break;
+        }
+      }
+      if (!any) return Double.NaN;
+      // both operands are exact doubles, so the quotient is rounded correctly
+      if (exact && digits <= 1L << 53 && decimals < POWERS_OF_TEN.length) {
+        return digits / POWERS_OF_TEN[decimals];
+      }
+      byte[] text = new byte[at - start];
+      System.arraycopy(bytes, start, text, 0, text.length);
+      return Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+    }
+
+    private void addEdge(int from, int to, double time) {
+      if (edgeCount == seconds.length) {
+        sources = Arrays.copyOf(sources, 2 * edgeCount);
+        targets = Arrays.copyOf(targets, 2 * edgeCount);
+        seconds = Arrays.copyOf(seconds, 2 * edgeCount);
+      }
+      sources[edgeCount] = from;
+      targets[edgeCount] = to;
+      seconds[edgeCount] = time;
+      edgeCount++;
+    }
+  }
+
+}
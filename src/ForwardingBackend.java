@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A BackendInterface that passes every call on to another backend. The layers that wrap a
+ * backend, like CachingBackend, CoalescingBackend and AsyncBackend, extend it and override only
+ * the queries they answer differently, so a method added to BackendInterface is forwarded here
+ * once instead of in every layer.
+ */
+public abstract class ForwardingBackend implements BackendInterface {
+
+  // the backend that calls are passed on to
+  protected final BackendInterface backend;
+
+  /**
+   * Creates a layer in front of a backend.
+   *
+   * @param backend the backend to pass calls on to
+   */
+  protected ForwardingBackend(BackendInterface backend) {
+    this.backend = backend;
+  }
+
+  @Override
+  public void loadGraphData(String filename) throws IOException {
+    backend.loadGraphData(filename);
+  }
+
+  @Override
+  public List<String> getListOfAllLocations() {
+    return backend.getListOfAllLocations();
+  }
+
+  @Override
+  public List<String> findShortestPath(String startLocation, String endLocation) {
+    return backend.findShortestPath(startLocation, endLocation);
+  }
+
+  @Override
+  public List<Double> getTravelTimesOnPath(String startLocation, String endLocation) {
+    return backend.getTravelTimesOnPath(startLocation, endLocation);
+  }
+
+  @Override
+  public List<String> findShortestPathVia(String startLocation, String viaLocation,
+      String endLocation) {
+    return backend.findShortestPathVia(startLocation, viaLocation, endLocation);
+  }
+
+  @Override
+  public List<Double> getTravelTimesOnPathVia(String startLocation, String viaLocation,
+      String endLocation) {
+    return backend.getTravelTimesOnPathVia(startLocation, viaLocation, endLocation);
+  }
+
+  @Override
+  public RouteResult findRoute(String startLocation, String endLocation) {
+    return backend.findRoute(startLocation, endLocation);
+  }
+
+  @Override
+  public RouteResult findRouteVia(String startLocation, String viaLocation, String endLocation) {
+    return backend.findRouteVia(startLocation, viaLocation, endLocation);
+  }
+
+  @Override
+  public RouteResult findRouteThrough(List<String> stops) {
+    return backend.findRouteThrough(stops);
+  }
+
+  @Override
+  public RouteResult findTour(String startLocation, List<String> stops, String endLocation) {
+    return backend.findTour(startLocation, stops, endLocation);
+  }
+
+  @Override
+  public Map<String, Double> findLocationsWithin(String startLocation, double maxSeconds) {
+    return backend.findLocationsWithin(startLocation, maxSeconds);
+  }
+
+  @Override
+  public void streamLocationsWithin(String startLocation, double maxSeconds,
+      BiConsumer<String, Double> consumer) {
+    backend.streamLocationsWithin(startLocation, maxSeconds, consumer);
+  }
+
+  @Override
+  public RouteResult findNearest(String startLocation, List<String> candidates) {
+    return backend.findNearest(startLocation, candidates);
+  }
+
+  @Override
+  public RouteResult findNearestTo(List<String> candidates, String endLocation) {
+    return backend.findNearestTo(candidates, endLocation);
+  }
+
+  @Override
+  public List<RouteResult> findShortestRoutes(String startLocation, String endLocation, int k,
+      long timeoutMillis) {
+    return backend.findShortestRoutes(startLocation, endLocation, k, timeoutMillis);
+  }
+
+  @Override
+  public List<RouteResult> findAlternativeRoutes(String startLocation, String endLocation,
+      int maxRoutes) {
+    return backend.findAlternativeRoutes(startLocation, endLocation, maxRoutes);
+  }
+
+}
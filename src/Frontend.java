@@ -146,15 +146,12 @@ public class Frontend extends Application implements FrontendInterface {
     GridPane.setConstraints(find, 0, 2);
     find.setId("find");
     find.setOnAction(e -> {
-      // find paths depending on if via location and times are selected
-      if (!showThirdLocation) {
-        this.path = backend.findShortestPath(startEnter.getText(), endEnter.getText());
-        if (showTimes) this.timesPath = backend.getTravelTimesOnPath(startEnter.getText(), endEnter.getText());
-      } else {
-        this.path = backend.findShortestPathVia(startEnter.getText(), this.viaLocation, endEnter.getText());
-        if (showTimes)
-          this.timesPath = backend.getTravelTimesOnPathVia(startEnter.getText(), this.viaLocation, endEnter.getText());
-      }
+      // find the route depending on if via location is selected, with one search per leg
+      RouteResult route = !showThirdLocation
+          ? backend.findRoute(startEnter.getText(), endEnter.getText())
+          : backend.findRouteVia(startEnter.getText(), this.viaLocation, endEnter.getText());
+      this.path = route.getLocations();
+      if (showTimes) this.timesPath = route.getLegSeconds();
 
       // set findPath to true since we are currently find the shorest path
       this.findPath = true;
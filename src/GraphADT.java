@@ -58,6 +58,30 @@ public interface GraphADT<NodeType, EdgeType extends Number> {
    */
   public boolean insertEdge(NodeType pred, NodeType succ, EdgeType weight);
 
+  /**
+   * Insert many nodes and the directed edges between them at once, with the same result as
+   * inserting every node and then every edge in order, so a later edge between the same nodes
+   * replaces the weight of an earlier one. Nodes that are already in the graph are kept. This
+   * default implementation calls insertNode and insertEdge; implementations should override it to
+   * look each node up only once.
+   *
+   * @param nodes the data items of the nodes to insert
+   * @param preds the index in nodes of the predecessor of each edge
+   * @param succs the index in nodes of the successor of each edge
+   * @param weights the non-negative weight of each edge
+   * @throws IllegalArgumentException if preds, succs and weights have different lengths
+   * @throws NullPointerException if a node data item is null
+   */
+  public default void insertEdges(List<NodeType> nodes, int[] preds, int[] succs,
+      List<EdgeType> weights) {
+    if (preds.length != succs.length || preds.length != weights.size())
+      throw new IllegalArgumentException("every edge needs a predecessor, successor and weight");
+    for (NodeType node : nodes) insertNode(node);
+    for (int i = 0; i < preds.length; i++) {
+      insertEdge(nodes.get(preds[i]), nodes.get(succs[i]), weights.get(i));
+    }
+  }
+
   /**
    * Remove an edge from the graph.
    *
@@ -117,4 +141,56 @@ public interface GraphADT<NodeType, EdgeType extends Number> {
    * @return the cost of the shortest path between these nodes
    */
   public double shortestPathCost(NodeType start, NodeType end);
+
+  /**
+   * Returns the shortest path from the node containing the start data to the node containing the
+   * end data, along with the weight of every edge on it. This default implementation looks up each
+   * edge weight after finding the path; implementations should override it to read the weights
+   * from the same search that finds the path.
+   *
+   * @param start the data item in the starting node for the path
+   * @param end the data item in the destination node for the path
+   * @return the shortest path between these nodes
+   * @throws NoSuchElementException if either node is not in the graph or no path exists
+   */
+  public default GraphPath<NodeType> shortestPath(NodeType start, NodeType end) {
+    List<NodeType> nodes = shortestPathData(start, end);
+    double[] weights = new double[nodes.size() - 1];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = getEdge(nodes.get(i), nodes.get(i + 1)).doubleValue();
+    }
+    return new GraphPath<>(nodes, weights);
+  }
+
+  /**
+   * Returns the cost of the shortest path from every source to every target as a flat matrix, in
+   * which the cost from sources.get(s) to targets.get(t) is at index s * targets.size() + t. Pairs
+   * without a path have a cost of infinity. This default implementation calls shortestPathCost
+   * for every pair; implementations should override it to share one search between all targets
+   * of a source.
+   *
+   * @param sources the data items in the starting nodes
+   * @param targets the data items in the destination nodes
+   * @return the flat matrix of shortest path costs
+   * @throws NoSuchElementException if any source or target is not in the graph
+   */
+  public default double[] shortestPathCosts(List<NodeType> sources, List<NodeType> targets) {
+    for (NodeType node : sources) {
+      if (!containsNode(node)) throw new NoSuchElementException("Node does not exist: " + node);
+    }
+    for (NodeType node : targets) {
+      if (!containsNode(node)) throw new NoSuchElementException("Node does not exist: " + node);
+    }
+    double[] costs = new double[sources.size() * targets.size()];
+    for (int s = 0; s < sources.size(); s++) {
+      for (int t = 0; t < targets.size(); t++) {
+        try {
+          costs[s * targets.size() + t] = shortestPathCost(sources.get(s), targets.get(t));
+        } catch (NoSuchElementException e) {
+          costs[s * targets.size() + t] = Double.POSITIVE_INFINITY;
+        }
+      }
+    }
+    return costs;
+  }
 }
@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes a CompactGraph of locations in a binary file. The adjacency arrays are stored
+ * exactly as CompactGraph holds them and are copied out of a memory mapping in bulk instead of
+ * being parsed, so read returns a snapshot far faster than a DOT file is parsed, and MappedGraph
+ * can search the file without reading it at all. Filling a DijkstraGraph from the snapshot still
+ * builds every node and edge, which costs about as much as loading the DOT file.
+ * <p>
+ * All values are little-endian. The file starts with a header of HEADER_BYTES:
+ * <pre>
+ *   int  magic, the bytes "SWGF"
+ *   int  format version, currently 1
+ *   int  node count n
+ *   int  edge count m
+ *   int  number of bytes of location names
+ *   int  number of slots s of the name index
+ *   long CRC32 of everything after the header
+ * </pre>
+ * followed by these sections, in order:
+ * <pre>
+ *   int[n + 1]  start of the name of node v in the name bytes at index v
+ *   int[s]      name index: open addressing table of node id + 1 (0 for an empty slot), placed
+ *               at the spread hashCode of the name and probed linearly
+ *   int[n + 1]  offsets, int[m] targets: the edges leaving each node
+ *   int[n + 1]  inOffsets, int[m] sources: the same edges grouped by the node they enter
+ *   (padding to a multiple of 8 bytes)
+ *   double[m]   weights, double[m] inWeights
+ *   byte[]      the UTF-8 names of all nodes, one after another
+ * </pre>
+ * The name index isn't needed to read a file into a CompactGraph, but lets a reader that works
+ * on the mapped file look locations up without decoding every name.
+ * <p>
+ * Files are mapped and addressed as a single buffer, so a graph file can't be larger than
+ * Integer.MAX_VALUE bytes; write refuses larger graphs and map rejects larger files.
+ */
+public class GraphFile {
+
+  /**
+   * The first four bytes of every graph file, "SWGF" read as a little-endian int.
+   */
+  public static final int MAGIC = 0x46475753;
+
+  /**
+   * The version of the format that this class reads and writes.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * The size of the header in bytes.
+   */
+  public static final int HEADER_BYTES = 32;
+
+  private GraphFile() {
+  }
+
+  /**
+   * Checks whether a file starts like a graph file, without reading the rest of it.
+   *
+   * @param filename the path of the file
+   * @return true if the file starts with MAGIC, or false if it doesn't or is too short
+   * @throws IOException if the file can't be read
+   */
+  public static boolean isGraphFile(String filename) throws IOException {
+    try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+      ByteBuffer start = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      while (start.hasRemaining() && channel.read(start) > 0) {
+        // read until the magic number is complete or the file ends
+      }
+      return !start.hasRemaining() && start.getInt(0) == MAGIC;
+    }
+  }
+
+  /**
+   * Writes a snapshot to a graph file, replacing the file if it exists.
+   *
+   * @param graph    the snapshot to write
+   * @param filename the path of the file to write
+   * @throws IOException              if the file can't be written
+   * @throws IllegalArgumentException if the graph is too large for a single file of this format
+   */
+  public static void write(CompactGraph<String> graph, String filename) throws IOException {
+    int n = graph.getNodeCount();
+    int m = graph.getEdgeCount();
+    List<byte[]> names = new ArrayList<>(n);
+    long nameBytes = 0;
+    for (int v = 0; v < n; v++) {
+      byte[] name = graph.nodeAt(v).getBytes(StandardCharsets.UTF_8);
+      names.add(name);
+      nameBytes += name.length;
+    }
+    int slots = indexSlots(n);
+    Layout layout = new Layout(n, m, slots, nameBytes);
+    if (layout.size > Integer.MAX_VALUE || nameBytes > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("graph is too large for a graph file: " + layout.size);
+    try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, n).putInt(12, m)
+          .putInt(16, (int) nameBytes).putInt(20, slots);
+      int start = 0;
+      int[] index = new int[slots];
+      for (int v = 0; v < n; v++) {
+        buffer.putInt(layout.nameStarts + 4 * v, start);
+        buffer.put(layout.names + start, names.get(v));
+        start += names.get(v).length;
+        int slot = slotOf(graph.nodeAt(v), slots);
+        while (index[slot] != 0) slot = (slot + 1) & (slots - 1);
+        index[slot] = v + 1;
+      }
+      buffer.putInt(layout.nameStarts + 4 * n, start);
+      buffer.position(layout.index);
+      buffer.asIntBuffer().put(index);
+      for (int v = 0; v <= n; v++) {
+        buffer.putInt(layout.offsets + 4 * v, v < n ? graph.getEdgeStart(v) : m);
+        buffer.putInt(layout.inOffsets + 4 * v, v < n ? graph.getInEdgeStart(v) : m);
+      }
+      for (int edge = 0; edge < m; edge++) {
+        buffer.putInt(layout.targets + 4 * edge, graph.getEdgeTarget(edge));
+        buffer.putInt(layout.sources + 4 * edge, graph.getInEdgeSource(edge));
+        buffer.putDouble(layout.weights + 8 * edge, graph.getEdgeWeight(edge));
+        buffer.putDouble(layout.inWeights + 8 * edge, graph.getInEdgeWeight(edge));
+      }
+      buffer.putLong(24, checksum(buffer, (int) layout.size));
+      buffer.force();
+    }
+  }
+
+  /**
+   * Reads a graph file into a snapshot that is ready to be searched.
+   *
+   * @param filename the path of the file to read
+   * @return the snapshot stored in the file
+   * @throws IOException if the file can't be read, isn't a graph file of this version, or its
+   *                     checksum doesn't match its contents
+   */
+  public static CompactGraph<String> read(String filename) throws IOException {
+    try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = map(channel, filename);
+      int n = buffer.getInt(8);
+      int m = buffer.getInt(12);
+      Layout layout = new Layout(n, m, buffer.getInt(20), buffer.getInt(16));
+      int[] nameStarts = ints(buffer, layout.nameStarts, n + 1);
+      List<String> nodes = new ArrayList<>(n);
+      byte[] names = new byte[buffer.getInt(16)];
+      buffer.get(layout.names, names);
+      for (int v = 0; v < n; v++) {
+        nodes.add(new String(names, nameStarts[v], nameStarts[v + 1] - nameStarts[v],
+            StandardCharsets.UTF_8));
+      }
+      return new CompactGraph<>(nodes, ints(buffer, layout.offsets, n + 1),
+          ints(buffer, layout.targets, m), doubles(buffer, layout.weights, m),
+          ints(buffer, layout.inOffsets, n + 1), ints(buffer, layout.sources, m),
+          doubles(buffer, layout.inWeights, m));
+    }
+  }
+
+  /**
+   * Maps a whole graph file and checks its header and checksum. The checksum doesn't cover the
+   * header, so the header is checked on its own: the name index has to be a power of two at least
+   * twice the node count, as write makes it, and the name starts have to climb from 0 to the
+   * number of name bytes.
+   *
+   * @param channel  the open file
+   * @param filename the path of the file, for error messages
+   * @return the little-endian mapping of the file
+   * @throws IOException if the file isn't a graph file of this version, is cut short, has an
+   *                     invalid header or its checksum doesn't match its contents
+   */
+  static MappedByteBuffer map(FileChannel channel, String filename) throws IOException {
+    long size = channel.size();
+    if (size < HEADER_BYTES || size > Integer.MAX_VALUE)
+      throw new IOException(filename + " is not a graph file");
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt(0) != MAGIC) throw new IOException(filename + " is not a graph file");
+    if (buffer.getInt(4) != VERSION)
+      throw new IOException(filename + " has graph file version " + buffer.getInt(4)
+          + " instead of " + VERSION);
+    int n = buffer.getInt(8);
+    int m = buffer.getInt(12);
+    int nameBytes = buffer.getInt(16);
+    int slots = buffer.getInt(20);
+    if (n < 0 || m < 0 || nameBytes < 0 || slots < 2 || (slots & (slots - 1)) != 0
+        || slots < 2L * n)
+      throw new IOException(filename + " has an invalid header");
+    Layout layout = new Layout(n, m, slots, nameBytes);
+    if (layout.size != size)
+      throw new IOException(filename + " is cut short or has an invalid header");
+    if (checksum(buffer, (int) size) != buffer.getLong(24))
+      throw new IOException(filename + " is corrupt: its checksum doesn't match");
+    int previous = 0;
+    for (int v = 0; v <= n; v++) {
+      int start = buffer.getInt(layout.nameStarts + 4 * v);
+      if (start < previous || (v == 0 && start != 0) || (v == n && start != nameBytes))
+        throw new IOException(filename + " has name starts that don't match its header");
+      previous = start;
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns the slot of the name index at which the search for a location starts.
+   *
+   * @param name  the location name
+   * @param slots the number of slots of the index, a power of two
+   * @return the first slot to probe
+   */
+  static int slotOf(String name, int slots) {
+    int hash = name.hashCode();
+    return (hash ^ hash >>> 16) & (slots - 1);
+  }
+
+  // the number of slots of the name index: a power of two that keeps it at most half full
+  private static int indexSlots(int nodeCount) {
+    int slots = 2;
+    while (slots < 2L * nodeCount) slots *= 2;
+    return slots;
+  }
+
+  private static long checksum(ByteBuffer buffer, int size) {
+    CRC32 crc = new CRC32();
+    crc.update(buffer.duplicate().position(HEADER_BYTES).limit(size));
+    return crc.getValue();
+  }
+
+  private static int[] ints(ByteBuffer buffer, int position, int count) {
+    int[] values = new int[count];
+    buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(position).asIntBuffer()
+        .get(values);
+    return values;
+  }
+
+  private static double[] doubles(ByteBuffer buffer, int position, int count) {
+    double[] values = new double[count];
+    buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(position).asDoubleBuffer()
+        .get(values);
+    return values;
+  }
+
+  /**
+   * The byte positions of the sections of a graph file with the given sizes.
+   */
+  static class Layout {
+
+    final int nameStarts;
+    final int index;
+    final int offsets;
+    final int targets;
+    final int inOffsets;
+    final int sources;
+    final int weights;
+    final int inWeights;
+    final int names;
+    // the whole file, which the positions above only describe when it fits in an int
+    final long size;
+
+    Layout(int nodeCount, int edgeCount, int slots, long nameBytes) {
+      long index = HEADER_BYTES + 4L * (nodeCount + 1);
+      long offsets = index + 4L * slots;
+      long targets = offsets + 4L * (nodeCount + 1);
+      long inOffsets = targets + 4L * edgeCount;
+      long sources = inOffsets + 4L * (nodeCount + 1);
+      long weights = (sources + 4L * edgeCount + 7) / 8 * 8;
+      long inWeights = weights + 8L * edgeCount;
+      long names = inWeights + 8L * edgeCount;
+      this.nameStarts = HEADER_BYTES;
+      this.index = (int) index;
+      this.offsets = (int) offsets;
+      this.targets = (int) targets;
+      this.inOffsets = (int) inOffsets;
+      this.sources = (int) sources;
+      this.weights = (int) weights;
+      this.inWeights = (int) inWeights;
+      this.names = (int) names;
+      this.size = names + nameBytes;
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable path through a graph: the data of the nodes along it, in order, and the weight of
+ * each edge between two consecutive nodes.
+ *
+ * @param <NodeType> the data type stored at each graph node
+ */
+public class GraphPath<NodeType> {
+
+  private final List<NodeType> nodes;
+  private final double[] edgeWeights;
+
+  /**
+   * Creates a path.
+   *
+   * @param nodes       the data of the nodes along the path, from start to end
+   * @param edgeWeights the weight of the edge from nodes.get(i) to nodes.get(i + 1) at index i
+   * @throws IllegalArgumentException if nodes is empty or there isn't one weight per edge
+   */
+  public GraphPath(List<NodeType> nodes, double[] edgeWeights) {
+    if (nodes.isEmpty() || edgeWeights.length != nodes.size() - 1)
+      throw new IllegalArgumentException(
+          nodes.size() + " nodes need " + (nodes.size() - 1) + " edge weights");
+    this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    this.edgeWeights = edgeWeights.clone();
+  }
+
+  /**
+   * Returns the data of the nodes along this path.
+   *
+   * @return an unmodifiable list of node data from start to end
+   */
+  public List<NodeType> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Returns the number of edges along this path.
+   *
+   * @return one less than the number of nodes
+   */
+  public int getEdgeCount() {
+    return edgeWeights.length;
+  }
+
+  /**
+   * Returns the weight of one edge along this path.
+   *
+   * @param index the position of the edge, where edge i leaves the i-th node
+   * @return the weight of that edge
+   */
+  public double getEdgeWeight(int index) {
+    return edgeWeights[index];
+  }
+
+  /**
+   * Returns the total weight of the edges along this path, added up from start to end the same
+   * way a search adds them up.
+   *
+   * @return the cost of this path
+   */
+  public double getCost() {
+    double cost = 0;
+    for (double weight : edgeWeights) cost += weight;
+    return cost;
+  }
+
+}
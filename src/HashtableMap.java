@@ -0,0 +1,311 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Implements MapADT with an open addressing hashtable that uses linear probing. Each operation
+ * hashes its key once and probes a single contiguous run of the table, unlike PlaceholderMap which
+ * looks a key up twice for every get and remove.
+ * <p>
+ * The table grows to twice its capacity whenever the number of keys would exceed the load factor.
+ * Instead of moving every key at once, the previous table is kept alongside the new one and a few
+ * of its slots are migrated during each later put or remove, so no single call pays for rehashing
+ * the whole map. Keys that are still waiting to be migrated are looked up in the previous table.
+ * Lookups never move keys, so like java.util.HashMap any number of threads may read a map at the
+ * same time as long as none of them changes it.
+ */
+public class HashtableMap<KeyType, ValueType> implements MapADT<KeyType, ValueType> {
+
+  // marks a slot of the previous table that was removed or already migrated
+  private static final Object MOVED = new Object();
+  // number of previous table slots migrated during each operation
+  private static final int MIGRATION_STEP = 8;
+
+  private final double loadFactor;
+
+  // the table that new keys are inserted into: the key of slot i is stored in entries[2 * i] with
+  // its value right after it, and the hash of that key in hashes[i] (0 for an empty slot), so that
+  // probing past other keys only reads the dense hashes array
+  private Object[] entries;
+  private int[] hashes;
+  private int tableSize; // number of keys stored in entries
+  private int threshold; // number of keys in both tables that triggers the next resize
+
+  // the table being migrated into entries, null when no resize is in progress
+  private Object[] oldEntries;
+  private int[] oldHashes;
+  private int oldSize; // number of keys still waiting in oldEntries
+  private int migrated; // index of the next slot of oldEntries to migrate
+
+  /**
+   * Creates a map with a capacity of 16 and a load factor of 0.7.
+   */
+  public HashtableMap() {
+    this(16);
+  }
+
+  /**
+   * Creates a map with a load factor of 0.7 that holds at least capacity keys before resizing.
+   *
+   * @param capacity the number of keys to make room for
+   */
+  public HashtableMap(int capacity) {
+    this(capacity, 0.7);
+  }
+
+  /**
+   * Creates a map that holds at least capacity keys before resizing.
+   *
+   * @param capacity   the number of keys to make room for
+   * @param loadFactor the largest fraction of the table that may be filled before it grows
+   * @throws IllegalArgumentException if capacity is negative or loadFactor is not between 0 and 1
+   */
+  public HashtableMap(int capacity, double loadFactor) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+    if (!(loadFactor > 0 && loadFactor < 1))
+      throw new IllegalArgumentException("load factor must be between 0 and 1: " + loadFactor);
+    this.loadFactor = loadFactor;
+    // round the table length up to a power of two so that slots can be found with a mask
+    int length = 2;
+    while (length * loadFactor < capacity) length *= 2;
+    allocate(length);
+  }
+
+  @Override
+  public void put(KeyType key, ValueType value) throws IllegalArgumentException {
+    if (key == null)
+      throw new NullPointerException("null keys not allowed");
+    migrate();
+    int hash = hash(key);
+    int slot = find(entries, hashes, hash, key);
+    if (hashes[slot] != 0 || findOld(hash, key) != -1)
+      throw new IllegalArgumentException("key " + key.toString() + " already present in map");
+    if (getSize() + 1 > threshold) {
+      grow();
+      slot = find(entries, hashes, hash, key);
+    }
+    entries[2 * slot] = key;
+    entries[2 * slot + 1] = value;
+    hashes[slot] = hash;
+    tableSize++;
+  }
+
+  @Override
+  public boolean containsKey(KeyType key) {
+    if (key == null)
+      throw new NullPointerException("null keys not allowed");
+    int hash = hash(key);
+    return hashes[find(entries, hashes, hash, key)] != 0 || findOld(hash, key) != -1;
+  }
+
+  @Override
+  public ValueType get(KeyType key) throws NoSuchElementException {
+    if (key == null)
+      throw new NullPointerException("null keys not allowed");
+    return lookup(key, true, null);
+  }
+
+  /**
+   * Retrieves the value that a key maps to, or a default value when the key is not stored in this
+   * collection. Unlike get this does not throw for missing keys, so it is the cheaper way to look
+   * up keys that are often absent.
+   *
+   * @param key          the key to look up
+   * @param defaultValue the value to return when key is not in this collection
+   * @return the value that key maps to, or defaultValue
+   * @throws NullPointerException if key is null
+   */
+  public ValueType getOrDefault(KeyType key, ValueType defaultValue) {
+    if (key == null)
+      throw new NullPointerException("null keys not allowed");
+    return lookup(key, false, defaultValue);
+  }
+
+  @Override
+  public ValueType remove(KeyType key) throws NoSuchElementException {
+    if (key == null)
+      throw new NullPointerException("null keys not allowed");
+    migrate();
+    int hash = hash(key);
+    int slot = find(entries, hashes, hash, key);
+    if (hashes[slot] != 0) {
+      ValueType value = valueAt(entries, slot);
+      deleteSlot(slot);
+      return value;
+    }
+    int oldSlot = findOld(hash, key);
+    if (oldSlot != -1) {
+      // mark the slot instead of emptying it, so probes for other old keys keep going past it
+      ValueType value = valueAt(oldEntries, oldSlot);
+      oldEntries[2 * oldSlot] = MOVED;
+      oldEntries[2 * oldSlot + 1] = null;
+      oldSize--;
+      return value;
+    }
+    throw new NoSuchElementException("key " + key.toString() + " not in map");
+  }
+
+  @Override
+  public void clear() {
+    allocate(hashes.length);
+  }
+
+  @Override
+  public int getSize() {
+    return tableSize + oldSize;
+  }
+
+  @Override
+  public int getCapacity() {
+    return hashes.length;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<KeyType> getKeys() {
+    List<KeyType> list = new ArrayList<>(getSize());
+    for (int slot = 0; slot < hashes.length; slot++)
+      if (hashes[slot] != 0) list.add((KeyType) entries[2 * slot]);
+    if (oldEntries != null)
+      for (int slot = 0; slot < oldHashes.length; slot++)
+        if (isLive(oldEntries, slot)) list.add((KeyType) oldEntries[2 * slot]);
+    return list;
+  }
+
+  /**
+   * Returns the load factor that this map was created with.
+   *
+   * @return the largest fraction of the table that is filled before it grows
+   */
+  public double getLoadFactor() {
+    return loadFactor;
+  }
+
+  // shared implementation of get and getOrDefault
+  private ValueType lookup(KeyType key, boolean required, ValueType defaultValue) {
+    int hash = hash(key);
+    int slot = find(entries, hashes, hash, key);
+    if (hashes[slot] != 0)
+      return valueAt(entries, slot);
+    slot = findOld(hash, key);
+    if (slot != -1)
+      return valueAt(oldEntries, slot);
+    if (required)
+      throw new NoSuchElementException("key " + key.toString() + " not in map");
+    return defaultValue;
+  }
+
+  // replaces both tables with a single empty table of the given length
+  private void allocate(int length) {
+    entries = new Object[2 * length];
+    hashes = new int[length];
+    tableSize = 0;
+    threshold = (int) (length * loadFactor);
+    oldEntries = null;
+    oldHashes = null;
+    oldSize = 0;
+  }
+
+  // starts migrating the current table into a new table of twice its length
+  private void grow() {
+    // a resize that is still in progress must be finished before the next one starts
+    while (oldEntries != null) migrate();
+    oldEntries = entries;
+    oldHashes = hashes;
+    oldSize = tableSize;
+    migrated = 0;
+    entries = new Object[2 * entries.length];
+    hashes = new int[2 * hashes.length];
+    tableSize = 0;
+    threshold = (int) (hashes.length * loadFactor);
+  }
+
+  // moves the next few keys of an in-progress resize into the current table; only the methods
+  // that change the map call this, so that reads stay safe to run in parallel
+  private void migrate() {
+    if (oldEntries == null) return;
+    int end = Math.min(migrated + MIGRATION_STEP, oldHashes.length);
+    for (; migrated < end; migrated++) {
+      if (isLive(oldEntries, migrated)) {
+        Object key = oldEntries[2 * migrated];
+        int hash = oldHashes[migrated];
+        int slot = find(entries, hashes, hash, key);
+        entries[2 * slot] = key;
+        entries[2 * slot + 1] = oldEntries[2 * migrated + 1];
+        hashes[slot] = hash;
+        tableSize++;
+        oldSize--;
+        oldEntries[2 * migrated] = MOVED;
+        oldEntries[2 * migrated + 1] = null;
+      }
+    }
+    if (migrated == oldHashes.length || oldSize == 0) {
+      oldEntries = null;
+      oldHashes = null;
+      oldSize = 0;
+    }
+  }
+
+  // returns the slot of the previous table that holds key, or -1 when it isn't waiting there
+  private int findOld(int hash, Object key) {
+    if (oldEntries == null) return -1;
+    int slot = find(oldEntries, oldHashes, hash, key);
+    return isLive(oldEntries, slot) ? slot : -1;
+  }
+
+  // empties a slot of the current table, shifting back any later keys of the same probe run so
+  // that no lookup stops early at the new gap
+  private void deleteSlot(int slot) {
+    int mask = hashes.length - 1;
+    int gap = slot;
+    for (int next = (gap + 1) & mask; hashes[next] != 0; next = (next + 1) & mask) {
+      int home = hashes[next] & mask;
+      // the key at next may fill the gap unless its home slot lies cyclically in (gap, next]
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        entries[2 * gap] = entries[2 * next];
+        entries[2 * gap + 1] = entries[2 * next + 1];
+        hashes[gap] = hashes[next];
+        gap = next;
+      }
+    }
+    entries[2 * gap] = null;
+    entries[2 * gap + 1] = null;
+    hashes[gap] = 0;
+    tableSize--;
+  }
+
+  // returns the slot holding key, or the empty slot that ends its probe run
+  private static int find(Object[] table, int[] tableHashes, int hash, Object key) {
+    int mask = tableHashes.length - 1;
+    int slot = hash & mask;
+    // only slots with a matching hash need their key compared
+    for (int current = tableHashes[slot]; current != 0; current = tableHashes[slot]) {
+      if (current == hash && key.equals(table[2 * slot])) break;
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  // whether a slot of the previous table holds a key that has not been removed or migrated; those
+  // slots keep their hash so that probes for other old keys continue past them
+  private static boolean isLive(Object[] table, int slot) {
+    Object key = table[2 * slot];
+    return key != null && key != MOVED;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <ValueType> ValueType valueAt(Object[] table, int slot) {
+    return (ValueType) table[2 * slot + 1];
+  }
+
+  // scrambles hashCode so that similar keys (like "Hall 1", "Hall 2") don't fill one long run of
+  // neighbouring slots, and spreads the high bits into the low bits that the table mask keeps;
+  // the result is never 0, which marks an empty slot
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    h ^= h >>> 16;
+    return h == 0 ? 1 : h;
+  }
+
+}
@@ -0,0 +1,227 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A d-ary min heap of int items in the range [0, capacity), each with a double priority. The heap
+ * keeps track of where every item is stored, so the priority of an item that is already queued can
+ * be lowered in place with decreaseKey instead of queueing a duplicate. Dijkstra's algorithm can
+ * therefore hold each node at most once, and nothing is allocated after construction.
+ * <p>
+ * Wider heaps (a larger arity) are shallower, which makes insert and decreaseKey cheaper and
+ * poll more expensive, since poll compares all children of each node it passes.
+ */
+public class IndexedMinHeap {
+
+  private final int arity;
+  private int size = 0;
+  // heap order: the item at position i and its priority, with children at arity * i + 1 and up
+  private final int[] items;
+  private final double[] priorities;
+  // position of each item within items, or -1 when that item is not in the heap
+  private final int[] positions;
+
+  /**
+   * Creates an empty heap for the items 0 up to capacity - 1.
+   *
+   * @param capacity the number of distinct items that can be stored
+   * @param arity    the number of children of each heap node, at least 2
+   * @throws IllegalArgumentException if arity is less than 2
+   */
+  public IndexedMinHeap(int capacity, int arity) {
+    if (arity < 2)
+      throw new IllegalArgumentException("arity must be at least 2: " + arity);
+    this.arity = arity;
+    this.items = new int[capacity];
+    this.priorities = new double[capacity];
+    this.positions = new int[capacity];
+    Arrays.fill(positions, -1);
+  }
+
+  /**
+   * Returns the number of children of each heap node.
+   *
+   * @return the arity of this heap
+   */
+  public int getArity() {
+    return arity;
+  }
+
+  /**
+   * Returns the number of items that this heap can store.
+   *
+   * @return the capacity of this heap
+   */
+  public int getCapacity() {
+    return items.length;
+  }
+
+  /**
+   * Returns the number of items currently in this heap.
+   *
+   * @return the number of items in this heap
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks whether this heap is empty.
+   *
+   * @return true if this heap holds no items, or false otherwise
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Checks whether an item is currently in this heap.
+   *
+   * @param item the item to check for
+   * @return true if the item is in this heap, or false otherwise
+   */
+  public boolean contains(int item) {
+    return positions[item] != -1;
+  }
+
+  /**
+   * Adds an item that is not yet in this heap.
+   *
+   * @param item     the item to add
+   * @param priority the priority of that item, where lower values are polled first
+   * @throws IllegalArgumentException if the item is already in this heap
+   */
+  public void insert(int item, double priority) {
+    if (positions[item] != -1)
+      throw new IllegalArgumentException("item " + item + " is already in the heap");
+    siftUp(size++, item, priority);
+  }
+
+  /**
+   * Lowers the priority of an item that is already in this heap.
+   *
+   * @param item     the item to update
+   * @param priority the new priority, which must not be greater than the current one
+   * @throws NoSuchElementException   if the item is not in this heap
+   * @throws IllegalArgumentException if the new priority is greater than the current one
+   */
+  public void decreaseKey(int item, double priority) {
+    int position = positions[item];
+    if (position == -1)
+      throw new NoSuchElementException("item " + item + " is not in the heap");
+    if (priority > priorities[position])
+      throw new IllegalArgumentException("priority of item " + item + " can only decrease");
+    siftUp(position, item, priority);
+  }
+
+  /**
+   * Adds an item with the provided priority, or lowers its priority when it is already queued.
+   *
+   * @param item     the item to add or update
+   * @param priority the new priority of that item
+   * @return true if the item was added or its priority lowered, or false when it was already
+   *         queued with a priority that is not greater than the provided one
+   */
+  public boolean insertOrDecrease(int item, double priority) {
+    int position = positions[item];
+    if (position == -1) {
+      siftUp(size++, item, priority);
+      return true;
+    }
+    if (priority >= priorities[position]) return false;
+    siftUp(position, item, priority);
+    return true;
+  }
+
+  /**
+   * Returns the priority of an item in this heap.
+   *
+   * @param item the item to look up
+   * @return the current priority of that item
+   * @throws NoSuchElementException if the item is not in this heap
+   */
+  public double getPriority(int item) {
+    int position = positions[item];
+    if (position == -1)
+      throw new NoSuchElementException("item " + item + " is not in the heap");
+    return priorities[position];
+  }
+
+  /**
+   * Returns the lowest priority in this heap without removing its item.
+   *
+   * @return the lowest priority in this heap
+   * @throws NoSuchElementException if this heap is empty
+   */
+  public double peekPriority() {
+    if (size == 0)
+      throw new NoSuchElementException("heap is empty");
+    return priorities[0];
+  }
+
+  /**
+   * Removes and returns the item with the lowest priority.
+   *
+   * @return the item with the lowest priority
+   * @throws NoSuchElementException if this heap is empty
+   */
+  public int poll() {
+    if (size == 0)
+      throw new NoSuchElementException("heap is empty");
+    int top = items[0];
+    positions[top] = -1;
+    size--;
+    if (size > 0) siftDown(0, items[size], priorities[size]);
+    return top;
+  }
+
+  /**
+   * Removes every item from this heap. This only visits the items that are still queued, so it is
+   * cheap after a search that emptied most of the heap.
+   */
+  public void clear() {
+    for (int i = 0; i < size; i++) positions[items[i]] = -1;
+    size = 0;
+  }
+
+  // moves item up from position until its parent has no greater priority, then stores it there
+  private void siftUp(int position, int item, double priority) {
+    while (position > 0) {
+      int parent = (position - 1) / arity;
+      if (priorities[parent] <= priority) break;
+      move(parent, position);
+      position = parent;
+    }
+    store(position, item, priority);
+  }
+
+  // moves item down from position until none of its children has a lower priority
+  private void siftDown(int position, int item, double priority) {
+    while (true) {
+      int first = arity * position + 1;
+      if (first >= size) break;
+      // find the child with the lowest priority
+      int last = Math.min(first + arity, size);
+      int best = first;
+      for (int child = first + 1; child < last; child++) {
+        if (priorities[child] < priorities[best]) best = child;
+      }
+      if (priorities[best] >= priority) break;
+      move(best, position);
+      position = best;
+    }
+    store(position, item, priority);
+  }
+
+  private void move(int from, int to) {
+    items[to] = items[from];
+    priorities[to] = priorities[from];
+    positions[items[to]] = to;
+  }
+
+  private void store(int position, int item, double priority) {
+    items[position] = item;
+    priorities[position] = priority;
+    positions[item] = position;
+  }
+
+}
@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the JSON that RoutingServer and LoadGenerator exchange, without a library.
+ * Objects are read as maps that keep the order of their members, arrays as lists, numbers as
+ * doubles, and true, false and null as Boolean and null. Writing accepts the same types, any
+ * other Number and Iterable, and double arrays; numbers that aren't finite, like the cost of an
+ * unreachable location, are written as null.
+ */
+public class Json {
+
+  // how deeply arrays and objects may be nested, which keeps parsing from running out of stack
+  private static final int MAX_DEPTH = 256;
+
+  private final String text;
+  // the index of the next character of text to read
+  private int position = 0;
+  // the number of arrays and objects that the next value is nested in
+  private int depth = 0;
+
+  private Json(String text) {
+    this.text = text;
+  }
+
+  /**
+   * Parses a JSON document.
+   *
+   * @param text the document
+   * @return the value of the document
+   * @throws IllegalArgumentException if text is not a single JSON value, or nests arrays and
+   *                                  objects more than MAX_DEPTH deep; the message names the
+   *                                  index at which it went wrong
+   */
+  public static Object parse(String text) {
+    Json reader = new Json(text);
+    Object value = reader.readValue();
+    reader.skipWhitespace();
+    if (reader.position < text.length()) throw reader.error("unexpected text after the value");
+    return value;
+  }
+
+  /**
+   * Returns the JSON text of a value.
+   *
+   * @param value a map with string keys, iterable, double array, string, number, boolean or null
+   * @return the JSON text
+   * @throws IllegalArgumentException if value or a value in it has another type
+   */
+  public static String toString(Object value) {
+    StringBuilder out = new StringBuilder();
+    try {
+      write(value, out);
+    } catch (IOException e) {
+      // a StringBuilder doesn't throw
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Writes the JSON text of a value.
+   *
+   * @param value a map with string keys, iterable, double array, string, number, boolean or null
+   * @param out   where to write the text
+   * @throws IOException              if out throws one
+   * @throws IllegalArgumentException if value or a value in it has another type
+   */
+  public static void write(Object value, Appendable out) throws IOException {
+    if (value == null || value instanceof Boolean) {
+      out.append(String.valueOf(value));
+    } else if (value instanceof Number) {
+      writeNumber(((Number) value).doubleValue(), out);
+    } else if (value instanceof CharSequence) {
+      writeString(value.toString(), out);
+    } else if (value instanceof Map) {
+      out.append('{');
+      boolean first = true;
+      for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+        if (!first) out.append(',');
+        first = false;
+        writeString(String.valueOf(member.getKey()), out);
+        out.append(':');
+        write(member.getValue(), out);
+      }
+      out.append('}');
+    } else if (value instanceof Iterable) {
+      out.append('[');
+      boolean first = true;
+      for (Object element : (Iterable<?>) value) {
+        if (!first) out.append(',');
+        first = false;
+        write(element, out);
+      }
+      out.append(']');
+    } else if (value instanceof double[]) {
+      double[] numbers = (double[]) value;
+      out.append('[');
+      for (int i = 0; i < numbers.length; i++) {
+        if (i > 0) out.append(',');
+        writeNumber(numbers[i], out);
+      }
+      out.append(']');
+    } else {
+      throw new IllegalArgumentException("no JSON for " + value.getClass().getName());
+    }
+  }
+
+  /**
+   * Writes a number, as an integer when it has no fraction.
+   *
+   * @param number the number
+   * @param out    where to write the number
+   * @throws IOException if out throws one
+   */
+  public static void writeNumber(double number, Appendable out) throws IOException {
+    if (!Double.isFinite(number)) {
+      out.append("null");
+    } else if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+      out.append(Long.toString((long) number));
+    } else {
+      out.append(Double.toString(number));
+    }
+  }
+
+  /**
+   * Writes a string in quotes, escaping the characters that JSON doesn't allow in strings.
+   *
+   * @param string the string
+   * @param out    where to write the string
+   * @throws IOException if out throws one
+   */
+  public static void writeString(String string, Appendable out) throws IOException {
+    out.append('"');
+    int start = 0;
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') continue;
+      // unescaped runs are appended at once instead of a character at a time
+      out.append(string, start, i);
+      start = i + 1;
+      switch (c) {
+        case '"': out.append("\\\""); break;
+        case '\\': out.append("\\\\"); break;
+        case '\n': out.append("\\n"); break;
+        case '\r': out.append("\\r"); break;
+        case '\t': out.append("\\t"); break;
+        default: out.append(String.format("\\u%04x", (int) c));
+      }
+    }
+    out.append(string, start, string.length()).append('"');
+  }
+
+  private Object readValue() {
+    skipWhitespace();
+    if (position == text.length()) throw error("missing value");
+    char c = text.charAt(position);
+    if ((c == '{' || c == '[') && depth == MAX_DEPTH) {
+      throw error("nested more than " + MAX_DEPTH + " deep");
+    }
+    switch (c) {
+      case '{': return readObject();
+      case '[': return readArray();
+      case '"': return readString();
+      case 't': return readWord("true", Boolean.TRUE);
+      case 'f': return readWord("false", Boolean.FALSE);
+      case 'n': return readWord("null", null);
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) return readNumber();
+        throw error("unexpected character '" + c + "'");
+    }
+  }
+
+  private Map<String, Object> readObject() {
+    Map<String, Object> object = new LinkedHashMap<>();
+    position++;
+    skipWhitespace();
+    if (take('}')) return object;
+    depth++;
+    do {
+      skipWhitespace();
+      if (position == text.length() || text.charAt(position) != '"') throw error("expected a name");
+      String name = readString();
+      skipWhitespace();
+      if (!take(':')) throw error("expected ':'");
+      object.put(name, readValue());
+      skipWhitespace();
+    } while (take(','));
+    if (!take('}')) throw error("expected ',' or '}'");
+    depth--;
+    return object;
+  }
+
+  private List<Object> readArray() {
+    List<Object> array = new ArrayList<>();
+    position++;
+    skipWhitespace();
+    if (take(']')) return array;
+    depth++;
+    do {
+      array.add(readValue());
+      skipWhitespace();
+    } while (take(','));
+    if (!take(']')) throw error("expected ',' or ']'");
+    depth--;
+    return array;
+  }
+
+  private String readString() {
+    StringBuilder string = new StringBuilder();
+    position++;
+    while (true) {
+      if (position == text.length()) throw error("unterminated string");
+      char c = text.charAt(position++);
+      if (c == '"') return string.toString();
+      if (c < 0x20) throw error("control character in string");
+      if (c != '\\') {
+        string.append(c);
+        continue;
+      }
+      if (position == text.length()) throw error("unterminated string");
+      char escaped = text.charAt(position++);
+      switch (escaped) {
+        case '"': case '\\': case '/': string.append(escaped); break;
+        case 'b': string.append('\b'); break;
+        case 'f': string.append('\f'); break;
+        case 'n': string.append('\n'); break;
+        case 'r': string.append('\r'); break;
+        case 't': string.append('\t'); break;
+        case 'u':
+          if (position + 4 > text.length()) throw error("incomplete escape");
+          try {
+            string.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+          } catch (NumberFormatException e) {
+            throw error("invalid escape");
+          }
+          position += 4;
+          break;
+        default: throw error("invalid escape");
+      }
+    }
+  }
+
+  private Double readNumber() {
+    int start = position;
+    while (position < text.length() && "+-.eE0123456789".indexOf(text.charAt(position)) >= 0) {
+      position++;
+    }
+    try {
+      return Double.valueOf(text.substring(start, position));
+    } catch (NumberFormatException e) {
+      position = start;
+      throw error("invalid number");
+    }
+  }
+
+  private Object readWord(String word, Object value) {
+    if (!text.startsWith(word, position)) throw error("unexpected character");
+    position += word.length();
+    return value;
+  }
+
+  // moves past c if it is the next character
+  private boolean take(char c) {
+    if (position < text.length() && text.charAt(position) == c) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  private void skipWhitespace() {
+    while (position < text.length() && " \t\r\n".indexOf(text.charAt(position)) >= 0) position++;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException("invalid JSON at index " + position + ": " + message);
+  }
+
+}
@@ -0,0 +1,244 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Precomputed distances between a few landmark nodes and every other node of a CompactGraph,
+ * used as A* lower bounds (the ALT technique: A*, landmarks and the triangle inequality). For any
+ * landmark L and nodes v and t, the triangle inequality gives
+ * dist(v, t) >= dist(v, L) - dist(t, L) and dist(v, t) >= dist(L, t) - dist(L, v), so the largest
+ * of these differences over all landmarks is a bound that never overestimates the remaining
+ * distance to t.
+ * <p>
+ * Landmarks are picked by farthest selection: each new landmark is the node farthest from the
+ * landmarks picked so far, so they end up spread around the edges of the graph where their bounds
+ * are tightest. The distances are stored in two flat arrays grouped by node, so computing a bound
+ * reads one short contiguous row per node. A table can be saved to a file and loaded again for
+ * the same graph, so that it does not have to be recomputed on every start.
+ */
+public class LandmarkTable {
+
+  // first four bytes of a saved table: "ALT" followed by the format version
+  private static final int MAGIC = 0x414C5401;
+
+  // the snapshot this table was computed for, whose ids index the arrays below
+  private final CompactGraph<?> graph;
+  private final int[] landmarks;
+  // distances by node: fromLandmark[v * k + i] is dist(landmark i, v), and toLandmark[v * k + i]
+  // is dist(v, landmark i), where k is the number of landmarks; unreachable is infinity
+  private final double[] fromLandmark;
+  private final double[] toLandmark;
+
+  private LandmarkTable(CompactGraph<?> graph, int[] landmarks, double[] fromLandmark,
+      double[] toLandmark) {
+    this.graph = graph;
+    this.landmarks = landmarks;
+    this.fromLandmark = fromLandmark;
+    this.toLandmark = toLandmark;
+  }
+
+  /**
+   * Picks landmarks for a snapshot and computes their distances to and from every node. The
+   * forward searches that select each landmark run one after another, since each depends on the
+   * landmarks before it, while the backward search of each landmark is handed to the common
+   * fork/join pool as soon as it is picked, so the searches use every core.
+   *
+   * @param graph the snapshot to compute landmarks for
+   * @param count the number of landmarks to pick, reduced to the node count of small graphs
+   * @return the landmark table for graph
+   * @throws IllegalArgumentException if count is less than 1
+   */
+  public static LandmarkTable compute(CompactGraph<?> graph, int count) {
+    if (count < 1)
+      throw new IllegalArgumentException("landmark count must be at least 1: " + count);
+    int nodeCount = graph.getNodeCount();
+    int k = Math.min(count, nodeCount);
+    int[] landmarks = new int[k];
+    double[] fromLandmark = new double[nodeCount * k];
+    double[] toLandmark = new double[nodeCount * k];
+    SearchWorkspace workspace =
+        new SearchWorkspace(nodeCount, CompactGraph.DEFAULT_HEAP_ARITY);
+    // closest[v] is the distance from the nearest landmark picked so far to v
+    double[] closest = new double[nodeCount];
+    List<CompletableFuture<Void>> backward = new ArrayList<>(k);
+    int next = k == 0 ? -1 : farthestFrom(graph, 0, workspace);
+    for (int i = 0; i < k; i++) {
+      int landmark = next;
+      landmarks[i] = landmark;
+      graph.searchAll(landmark, false, workspace);
+      next = -1;
+      for (int v = 0; v < nodeCount; v++) {
+        double distance = workspace.getDistance(v);
+        fromLandmark[v * k + i] = distance;
+        closest[v] = i == 0 ? distance : Math.min(closest[v], distance);
+        // nodes that no landmark reaches yet count as farthest, so they are covered first
+        if (closest[v] > 0 && (next == -1 || closest[v] > closest[next])) next = v;
+      }
+      int column = i;
+      backward.add(CompletableFuture.runAsync(() -> {
+        SearchWorkspace own = new SearchWorkspace(nodeCount, CompactGraph.DEFAULT_HEAP_ARITY);
+        graph.searchAll(landmark, true, own);
+        for (int v = 0; v < nodeCount; v++) toLandmark[v * k + column] = own.getDistance(v);
+      }));
+      // every remaining node is a landmark already when all distances are 0
+      if (next == -1 && i + 1 < k) next = unusedNode(landmarks, i + 1, nodeCount);
+    }
+    CompletableFuture.allOf(backward.toArray(new CompletableFuture<?>[0])).join();
+    return new LandmarkTable(graph, landmarks, fromLandmark, toLandmark);
+  }
+
+  // returns the node farthest from start, which becomes the first landmark
+  private static int farthestFrom(CompactGraph<?> graph, int start, SearchWorkspace workspace) {
+    graph.searchAll(start, false, workspace);
+    int farthest = start;
+    for (int v = 0; v < graph.getNodeCount(); v++) {
+      double distance = workspace.getDistance(v);
+      if (distance != Double.POSITIVE_INFINITY && distance > workspace.getDistance(farthest))
+        farthest = v;
+    }
+    return farthest;
+  }
+
+  // returns the lowest id that is not among the first count landmarks
+  private static int unusedNode(int[] landmarks, int count, int nodeCount) {
+    for (int v = 0; v < nodeCount; v++) {
+      boolean used = false;
+      for (int i = 0; i < count; i++) used |= landmarks[i] == v;
+      if (!used) return v;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a lower bound on the distance from one node to another. The bound is infinity when
+   * the landmarks prove that target can't be reached from node at all.
+   *
+   * @param node   the id of the node the remaining path starts at
+   * @param target the id of the destination node
+   * @return a distance that is not greater than the shortest path from node to target
+   */
+  public double lowerBound(int node, int target) {
+    int k = landmarks.length;
+    int v = node * k;
+    int t = target * k;
+    double bound = 0;
+    for (int i = 0; i < k; i++) {
+      // differences of two infinite distances are NaN and fail both comparisons, so they are
+      // skipped; an infinite difference means some path would contradict the landmark distances
+      double ahead = toLandmark[v + i] - toLandmark[t + i];
+      if (ahead > bound) bound = ahead;
+      double behind = fromLandmark[t + i] - fromLandmark[v + i];
+      if (behind > bound) bound = behind;
+    }
+    return bound;
+  }
+
+  /**
+   * Checks whether this table was computed for, or loaded against, a snapshot.
+   *
+   * @param snapshot the snapshot to check
+   * @return true if this table's node ids belong to snapshot, or false otherwise
+   */
+  public boolean isFor(CompactGraph<?> snapshot) {
+    return graph == snapshot;
+  }
+
+  /**
+   * Returns the number of landmarks in this table.
+   *
+   * @return the number of landmarks
+   */
+  public int getLandmarkCount() {
+    return landmarks.length;
+  }
+
+  /**
+   * Returns the node id of one of the landmarks.
+   *
+   * @param index the position of the landmark, from 0 to getLandmarkCount() - 1
+   * @return the id of that landmark in the snapshot this table belongs to
+   */
+  public int getLandmark(int index) {
+    return landmarks[index];
+  }
+
+  /**
+   * Writes this table to a file. Nodes are identified by the toString of their data, so that the
+   * file can be loaded against a later snapshot of the same graph whose ids may differ.
+   *
+   * @param filename the path of the file to write
+   * @throws IOException if the file can't be written
+   */
+  public void save(String filename) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(filename)))) {
+      int nodeCount = graph.getNodeCount();
+      out.writeInt(MAGIC);
+      out.writeInt(nodeCount);
+      out.writeInt(landmarks.length);
+      out.writeLong(graph.fingerprint());
+      for (int v = 0; v < nodeCount; v++) out.writeUTF(graph.nodeAt(v).toString());
+      for (int landmark : landmarks) out.writeInt(landmark);
+      for (double distance : fromLandmark) out.writeDouble(distance);
+      for (double distance : toLandmark) out.writeDouble(distance);
+    }
+  }
+
+  /**
+   * Reads a table written by save and maps it onto the ids of a snapshot of the same graph.
+   *
+   * @param filename the path of the file to read
+   * @param snapshot the snapshot to use the table with
+   * @return the loaded landmark table
+   * @throws IOException if the file can't be read, is not a landmark table, or was saved for a
+   *                     graph with different nodes or edges than snapshot
+   */
+  public static LandmarkTable load(String filename, CompactGraph<?> snapshot)
+      throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(filename)))) {
+      if (in.readInt() != MAGIC)
+        throw new IOException(filename + " is not a landmark table");
+      int nodeCount = in.readInt();
+      int k = in.readInt();
+      long fingerprint = in.readLong();
+      if (nodeCount != snapshot.getNodeCount() || fingerprint != snapshot.fingerprint())
+        throw new IOException(filename + " was saved for a different graph");
+      if (k < 0 || k > nodeCount)
+        throw new IOException(filename + " has an invalid landmark count " + k);
+      // ids[i] is the id in snapshot of the node saved at position i
+      HashtableMap<String, Integer> names = new HashtableMap<>(nodeCount);
+      for (int v = 0; v < nodeCount; v++) names.put(snapshot.nodeAt(v).toString(), v);
+      int[] ids = new int[nodeCount];
+      for (int i = 0; i < nodeCount; i++) {
+        String name = in.readUTF();
+        ids[i] = names.getOrDefault(name, -1);
+        if (ids[i] == -1)
+          throw new IOException(filename + " contains unknown node " + name);
+      }
+      int[] landmarks = new int[k];
+      for (int i = 0; i < k; i++) {
+        int landmark = in.readInt();
+        if (landmark < 0 || landmark >= nodeCount)
+          throw new IOException(filename + " contains invalid landmark " + landmark);
+        landmarks[i] = ids[landmark];
+      }
+      double[] fromLandmark = new double[nodeCount * k];
+      double[] toLandmark = new double[nodeCount * k];
+      for (double[] distances : new double[][] {fromLandmark, toLandmark}) {
+        for (int i = 0; i < nodeCount; i++) {
+          for (int j = 0; j < k; j++) distances[ids[i] * k + j] = in.readDouble();
+        }
+      }
+      return new LandmarkTable(snapshot, landmarks, fromLandmark, toLandmark);
+    }
+  }
+
+}
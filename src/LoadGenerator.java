@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Sends route queries to a RoutingServer from several threads at once and reports the
+ * throughput and latency it sees. Run it with
+ * java LoadGenerator [url] [threads] [seconds] [batch size], for example
+ * java LoadGenerator http://localhost:8080 8 10 1. When the url is "local" (the default), a
+ * RoutingServer for campus.dot is started in the same process on a free port first, so the
+ * server can be tried without deploying it.
+ * <p>
+ * Each thread asks for routes between random pairs of locations, one GET /route at a time, or
+ * POST /route batches of queries when the batch size is larger than 1. All threads share one
+ * HttpClient, which keeps its connections alive.
+ */
+public class LoadGenerator {
+
+  /**
+   * Runs the load test described by args.
+   *
+   * @param args the url of the server, the number of threads, the number of seconds to run and
+   *             the number of queries per request, all optional
+   * @throws IOException          if the local server can't be started or the locations can't be
+   *                              read from the server
+   * @throws InterruptedException if interrupted while waiting for the threads
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    String url = args.length > 0 ? args[0] : "local";
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+    RoutingServer local = null;
+    if (url.equals("local")) {
+      DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+      graph.enableTreeCache(32, 64L << 20);
+      Backend backend = new Backend(graph);
+      backend.loadGraphData("campus.dot");
+      local = new RoutingServer(new CoalescingBackend(backend), graph,
+          new InetSocketAddress("localhost", 0));
+      local.start();
+      url = "http://localhost:" + local.getPort();
+    }
+    try {
+      LoadGenerator generator = new LoadGenerator(url);
+      System.out.printf("%d threads, %d seconds, %d queries per request against %s%n", threads,
+          seconds, batchSize, url);
+      generator.run(threads, seconds * 1000L, batchSize).print();
+    } finally {
+      if (local != null) local.close();
+    }
+  }
+
+  /**
+   * What a load test measured.
+   */
+  public static class Report {
+    private final long millis;
+    private final long queries;
+    private final long errors;
+    // the latency of each successful request in nanoseconds, sorted
+    private final long[] latencies;
+
+    Report(long millis, long queries, long errors, long[] latencies) {
+      this.millis = millis;
+      this.queries = queries;
+      this.errors = errors;
+      this.latencies = latencies;
+    }
+
+    /**
+     * Returns the number of requests that were answered with status 200.
+     *
+     * @return the number of successful requests
+     */
+    public int getRequests() {
+      return latencies.length;
+    }
+
+    /**
+     * Returns the number of route queries in the successful requests.
+     *
+     * @return the number of queries answered
+     */
+    public long getQueries() {
+      return queries;
+    }
+
+    /**
+     * Returns the number of requests that failed or got another status than 200.
+     *
+     * @return the number of failed requests
+     */
+    public long getErrors() {
+      return errors;
+    }
+
+    /**
+     * Returns the latency that a fraction of the successful requests didn't exceed.
+     *
+     * @param fraction between 0 and 1, like 0.99 for the 99th percentile
+     * @return the latency in milliseconds, or 0 when no request succeeded
+     */
+    public double getLatencyMillis(double fraction) {
+      if (latencies.length == 0) return 0;
+      int index = (int) Math.ceil(fraction * latencies.length) - 1;
+      return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e6;
+    }
+
+    /**
+     * Prints the throughput and latency percentiles.
+     */
+    public void print() {
+      System.out.printf("%8s %10s %10s %8s %8s %8s %8s%n", "requests", "requests/s", "queries/s",
+          "errors", "p50 ms", "p99 ms", "max ms");
+      System.out.printf("%8d %10.0f %10.0f %8d %8.2f %8.2f %8.2f%n", getRequests(),
+          getRequests() * 1000.0 / millis, queries * 1000.0 / millis, errors,
+          getLatencyMillis(0.5), getLatencyMillis(0.99), getLatencyMillis(1));
+    }
+  }
+
+  private final String url;
+  private final HttpClient client;
+  private final List<String> locations;
+
+  /**
+   * Creates a load generator for a server and reads the locations to query from it.
+   *
+   * @param url the url of the server, without a trailing slash
+   * @throws IOException          if the locations can't be read
+   * @throws InterruptedException if interrupted while reading the locations
+   */
+  public LoadGenerator(String url) throws IOException, InterruptedException {
+    this.url = url;
+    this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(10)).build();
+    HttpResponse<String> response = client.send(
+        HttpRequest.newBuilder(URI.create(url + "/locations")).build(),
+        HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IOException("GET /locations returned status " + response.statusCode());
+    }
+    List<String> locations = new ArrayList<>();
+    for (Object location : (List<?>) Json.parse(response.body())) locations.add((String) location);
+    if (locations.size() < 2) throw new IOException("the server has fewer than 2 locations");
+    this.locations = locations;
+  }
+
+  /**
+   * Sends requests from several threads until the time is up.
+   *
+   * @param threads   the number of threads, each waiting for one request at a time
+   * @param millis    how long to send requests for
+   * @param batchSize the number of route queries per request; 1 sends GET requests
+   * @return what was measured
+   * @throws InterruptedException if interrupted while waiting for the threads
+   */
+  public Report run(int threads, long millis, int batchSize) throws InterruptedException {
+    if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+    if (batchSize < 1) throw new IllegalArgumentException("batch must be positive: " + batchSize);
+    long start = System.nanoTime();
+    long end = start + millis * 1_000_000;
+    long[][] latencies = new long[threads][];
+    long[] queries = new long[threads];
+    long[] errors = new long[threads];
+    Thread[] workers = new Thread[threads];
+    for (int w = 0; w < threads; w++) {
+      int worker = w;
+      workers[w] = new Thread(() -> {
+        Random random = new Random(worker);
+        long[] mine = new long[1024];
+        int count = 0;
+        while (System.nanoTime() < end) {
+          HttpRequest request = request(random, batchSize);
+          long sent = System.nanoTime();
+          try {
+            HttpResponse<String> response =
+                client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+              errors[worker]++;
+              continue;
+            }
+            if (count == mine.length) mine = Arrays.copyOf(mine, count * 2);
+            mine[count++] = System.nanoTime() - sent;
+            queries[worker] += batchSize;
+          } catch (IOException e) {
+            errors[worker]++;
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+        latencies[worker] = Arrays.copyOf(mine, count);
+      }, "load-" + w);
+      workers[w].start();
+    }
+    for (Thread worker : workers) worker.join();
+    long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+    long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+    return new Report(elapsed, Arrays.stream(queries).sum(), Arrays.stream(errors).sum(), all);
+  }
+
+  // a request for routes between random pairs of locations
+  private HttpRequest request(Random random, int batchSize) {
+    if (batchSize == 1) {
+      String query = "/route?from=" + encode(randomLocation(random)) + "&to="
+          + encode(randomLocation(random));
+      return HttpRequest.newBuilder(URI.create(url + query)).build();
+    }
+    List<Map<String, String>> batch = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      batch.add(Map.of("from", randomLocation(random), "to", randomLocation(random)));
+    }
+    return HttpRequest.newBuilder(URI.create(url + "/route"))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(Json.toString(batch))).build();
+  }
+
+  private String randomLocation(Random random) {
+    return locations.get(random.nextInt(locations.size()));
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+}
@@ -1,3 +1,4 @@
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -58,4 +59,10 @@ public interface MapADT<KeyType, ValueType> {
      */
     public int getCapacity();
 
+    /**
+     * Retrieves all keys stored in this collection, in no particular order.
+     * @return a new list containing every key in this collection
+     */
+    public List<KeyType> getKeys();
+
 }
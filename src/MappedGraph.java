@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only graph of locations that is searched directly in a memory-mapped GraphFile. The
+ * adjacency arrays, the edge weights and the location names stay in the mapping, outside the
+ * Java heap, and location names are looked up through the name index of the file, so the heap
+ * holds no Node, Edge or String objects for the graph and its size doesn't depend on the map.
+ * The only per-node heap memory is the SearchWorkspace of each thread that searches, about 30
+ * bytes per node, which is scratch space rather than a copy of the graph.
+ * <p>
+ * The file is mapped read-only, so the operating system keeps a single copy of its pages in the
+ * page cache, which every JVM that maps the same file shares, and loads them on demand when a
+ * search first touches them.
+ * <p>
+ * The whole file is mapped as one buffer, and a buffer holds at most Integer.MAX_VALUE bytes, so
+ * a mapped graph can be larger than the heap but not larger than 2 GB: about 24 bytes per edge
+ * plus about 20 bytes and the name of each location, or somewhat over 80 million edges.
+ * <p>
+ * A mapped graph starts out empty and is filled by map. It can't be changed afterwards: the
+ * methods that insert or remove nodes and edges throw UnsupportedOperationException.
+ */
+public class MappedGraph implements GraphADT<String, Double> {
+
+  // the sections of the mapped file, replaced as a whole by map so that a search always reads a
+  // single file
+  private volatile Mapping mapping = Mapping.EMPTY;
+
+  private final ThreadLocal<SearchWorkspace> workspaces = new ThreadLocal<>();
+
+  /**
+   * Creates an empty graph, to be filled by map.
+   */
+  public MappedGraph() {
+  }
+
+  /**
+   * Maps a graph file and replaces the contents of this graph with it. Searches that are already
+   * running finish on the previous file.
+   *
+   * @param filename the path of a file written by GraphFile
+   * @throws IOException if the file can't be read, isn't a graph file of the supported version,
+   *                     or its checksum doesn't match its contents
+   */
+  public void map(String filename) throws IOException {
+    try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed
+      mapping = new Mapping(GraphFile.map(channel, filename));
+    }
+  }
+
+  /**
+   * Returns the id of a location in the mapped file, found through the name index of the file.
+   *
+   * @param name the location name
+   * @return its id, or -1 when it isn't in this graph
+   * @throws NullPointerException if name is null
+   */
+  public int indexOf(String name) {
+    return mapping.indexOf(name);
+  }
+
+  /**
+   * Returns the name of the location with an id, decoded from the mapped file.
+   *
+   * @param id the id of a location
+   * @return its name
+   */
+  public String nodeAt(int id) {
+    return mapping.nodeAt(id);
+  }
+
+  /**
+   * Returns every location of this graph, by id. The list reads the names from the mapped file
+   * when they are asked for instead of holding them.
+   *
+   * @return an unmodifiable list of the location names
+   */
+  public List<String> getLocations() {
+    Mapping mapping = this.mapping;
+    int size = mapping.nodeCount;
+    return new AbstractList<String>() {
+      @Override
+      public String get(int id) {
+        if (id < 0 || id >= size) throw new IndexOutOfBoundsException(id);
+        return mapping.nodeAt(id);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public boolean contains(Object name) {
+        return name instanceof String && mapping.indexOf((String) name) != -1;
+      }
+    };
+  }
+
+  @Override
+  public boolean insertNode(String data) {
+    throw new UnsupportedOperationException("a mapped graph is read-only");
+  }
+
+  @Override
+  public boolean removeNode(String data) {
+    throw new UnsupportedOperationException("a mapped graph is read-only");
+  }
+
+  @Override
+  public boolean insertEdge(String pred, String succ, Double weight) {
+    throw new UnsupportedOperationException("a mapped graph is read-only");
+  }
+
+  @Override
+  public boolean removeEdge(String pred, String succ) {
+    throw new UnsupportedOperationException("a mapped graph is read-only");
+  }
+
+  @Override
+  public boolean containsNode(String data) {
+    return indexOf(data) != -1;
+  }
+
+  @Override
+  public int getNodeCount() {
+    return mapping.nodeCount;
+  }
+
+  @Override
+  public int getEdgeCount() {
+    return mapping.edgeCount;
+  }
+
+  @Override
+  public boolean containsEdge(String pred, String succ) {
+    Mapping mapping = this.mapping;
+    return mapping.edgeBetween(mapping.indexOf(pred), mapping.indexOf(succ)) != -1;
+  }
+
+  @Override
+  public Double getEdge(String pred, String succ) {
+    Mapping mapping = this.mapping;
+    int edge = mapping.edgeBetween(mapping.indexOf(pred), mapping.indexOf(succ));
+    if (edge == -1) throw new NoSuchElementException("No edge from " + pred + " to " + succ);
+    return mapping.weights.get(edge);
+  }
+
+  @Override
+  public List<String> shortestPathData(String start, String end) {
+    return shortestPath(start, end).getNodes();
+  }
+
+  @Override
+  public double shortestPathCost(String start, String end) {
+    Mapping mapping = this.mapping;
+    double cost = mapping.dijkstra(mapping.id(start), mapping.id(end), getWorkspace(mapping));
+    if (cost == Double.POSITIVE_INFINITY) throw new NoSuchElementException("No path found");
+    return cost;
+  }
+
+  /**
+   * Finds the shortest path between two locations with a search that reads the mapped file
+   * directly.
+   *
+   * @param start the starting location
+   * @param end   the destination location
+   * @return the shortest path with the weight of every edge on it
+   * @throws NoSuchElementException if start or end is not in the graph, or there is no path
+   */
+  @Override
+  public GraphPath<String> shortestPath(String start, String end) {
+    Mapping mapping = this.mapping;
+    int target = mapping.id(end);
+    SearchWorkspace workspace = getWorkspace(mapping);
+    if (mapping.dijkstra(mapping.id(start), target, workspace) == Double.POSITIVE_INFINITY)
+      throw new NoSuchElementException("No path found");
+    List<Integer> ids = new ArrayList<>();
+    for (int v = target; v != -1; v = workspace.getPredecessor(v)) ids.add(v);
+    Collections.reverse(ids);
+    List<String> path = new ArrayList<>(ids.size());
+    double[] legs = new double[ids.size() - 1];
+    for (int i = 0; i < ids.size(); i++) {
+      path.add(mapping.nodeAt(ids.get(i)));
+      if (i > 0) legs[i - 1] = mapping.weights.get(mapping.edgeBetween(ids.get(i - 1), ids.get(i)));
+    }
+    return new GraphPath<>(path, legs);
+  }
+
+  /**
+   * Returns the cost of the shortest path between every source and every target, with one search
+   * per source that stops once every target is settled.
+   *
+   * @param sources the starting locations
+   * @param targets the destination locations
+   * @return the cost from sources.get(i) to targets.get(j) at index i * targets.size() + j, or
+   *         infinity where there is no path
+   * @throws NoSuchElementException   if a source or target is not in the graph
+   * @throws IllegalArgumentException if the matrix has more cells than an array can hold
+   */
+  @Override
+  public double[] shortestPathCosts(List<String> sources, List<String> targets) {
+    Mapping mapping = this.mapping;
+    int[] targetIds = new int[targets.size()];
+    boolean[] isTarget = new boolean[mapping.nodeCount];
+    int targetCount = 0;
+    for (int t = 0; t < targetIds.length; t++) {
+      targetIds[t] = mapping.id(targets.get(t));
+      if (!isTarget[targetIds[t]]) targetCount++;
+      isTarget[targetIds[t]] = true;
+    }
+    double[] costs;
+    try {
+      costs = new double[Math.multiplyExact(sources.size(), targetIds.length)];
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException(
+          "cost matrix too large: " + sources.size() + " x " + targetIds.length);
+    }
+    SearchWorkspace workspace = getWorkspace(mapping);
+    for (int s = 0; s < sources.size(); s++) {
+      int source = mapping.id(sources.get(s));
+      if (targetCount == 0) continue;
+      mapping.search(source, -1, isTarget, targetCount, workspace);
+      for (int t = 0; t < targetIds.length; t++) {
+        costs[s * targetIds.length + t] = workspace.getDistance(targetIds[t]);
+      }
+    }
+    return costs;
+  }
+
+  private SearchWorkspace getWorkspace(Mapping mapping) {
+    SearchWorkspace workspace = workspaces.get();
+    if (workspace == null || workspace.getCapacity() < mapping.nodeCount) {
+      workspace = new SearchWorkspace(mapping.nodeCount, CompactGraph.DEFAULT_HEAP_ARITY);
+      workspaces.set(workspace);
+    }
+    return workspace;
+  }
+
+  /**
+   * Views of the sections of one mapped graph file, see GraphFile.
+   */
+  private static class Mapping {
+
+    static final Mapping EMPTY = new Mapping();
+
+    final int nodeCount;
+    final int edgeCount;
+    final IntBuffer nameStarts;
+    final IntBuffer index;
+    final IntBuffer offsets;
+    final IntBuffer targets;
+    final DoubleBuffer weights;
+    final ByteBuffer names;
+
+    private Mapping() {
+      nodeCount = 0;
+      edgeCount = 0;
+      nameStarts = IntBuffer.wrap(new int[] {0});
+      index = IntBuffer.wrap(new int[2]);
+      offsets = IntBuffer.wrap(new int[] {0});
+      targets = IntBuffer.wrap(new int[0]);
+      weights = DoubleBuffer.wrap(new double[0]);
+      names = ByteBuffer.wrap(new byte[0]);
+    }
+
+    Mapping(ByteBuffer file) {
+      nodeCount = file.getInt(8);
+      edgeCount = file.getInt(12);
+      int slots = file.getInt(20);
+      int nameBytes = file.getInt(16);
+      GraphFile.Layout layout = new GraphFile.Layout(nodeCount, edgeCount, slots, nameBytes);
+      nameStarts = ints(file, layout.nameStarts, nodeCount + 1);
+      index = ints(file, layout.index, slots);
+      offsets = ints(file, layout.offsets, nodeCount + 1);
+      targets = ints(file, layout.targets, edgeCount);
+      weights = file.slice(layout.weights, 8 * edgeCount).order(ByteOrder.LITTLE_ENDIAN)
+          .asDoubleBuffer();
+      names = file.slice(layout.names, nameBytes);
+    }
+
+    private static IntBuffer ints(ByteBuffer file, int position, int count) {
+      return file.slice(position, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    // probes the name index of the file, comparing the encoded name with the stored bytes
+    int indexOf(String name) {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      int slots = index.limit();
+      for (int slot = GraphFile.slotOf(name, slots); ; slot = (slot + 1) & (slots - 1)) {
+        int id = index.get(slot) - 1;
+        if (id == -1) return -1;
+        if (nameEquals(id, bytes)) return id;
+      }
+    }
+
+    private boolean nameEquals(int id, byte[] bytes) {
+      int start = nameStarts.get(id);
+      if (nameStarts.get(id + 1) - start != bytes.length) return false;
+      for (int i = 0; i < bytes.length; i++) {
+        if (names.get(start + i) != bytes[i]) return false;
+      }
+      return true;
+    }
+
+    int id(String name) {
+      int id = indexOf(name);
+      if (id == -1) throw new NoSuchElementException("Node does not exist: " + name);
+      return id;
+    }
+
+    String nodeAt(int id) {
+      int start = nameStarts.get(id);
+      byte[] bytes = new byte[nameStarts.get(id + 1) - start];
+      names.get(start, bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // the position of the lightest edge from u to w, or -1 when there is none
+    int edgeBetween(int u, int w) {
+      if (u == -1 || w == -1) return -1;
+      int lightest = -1;
+      for (int edge = offsets.get(u); edge < offsets.get(u + 1); edge++) {
+        if (targets.get(edge) == w && (lightest == -1 || weights.get(edge) < weights.get(lightest)))
+          lightest = edge;
+      }
+      return lightest;
+    }
+
+    // Dijkstra's algorithm over the mapped arrays, stopping when target is settled, or searching
+    // the whole graph when target is -1
+    double dijkstra(int source, int target, SearchWorkspace workspace) {
+      int found = search(source, target, null, 0, workspace);
+      return found == -1 ? Double.POSITIVE_INFINITY : workspace.getDistance(found);
+    }
+
+    // the loop of dijkstra, which also stops once targetCount of the nodes marked in isTarget
+    // (if not null) are settled, returning the node it stopped at or -1
+    int search(int source, int target, boolean[] isTarget, int targetCount,
+        SearchWorkspace workspace) {
+      workspace.begin();
+      IndexedMinHeap heap = workspace.getHeap();
+      workspace.reach(source, 0, -1);
+      heap.insert(source, 0);
+      int remaining = targetCount;
+      while (!heap.isEmpty()) {
+        int u = heap.poll();
+        workspace.settle(u);
+        if (u == target || (isTarget != null && isTarget[u] && --remaining == 0)) return u;
+        double distance = workspace.getDistance(u);
+        for (int edge = offsets.get(u), last = offsets.get(u + 1); edge < last; edge++) {
+          int v = targets.get(edge);
+          double cost = distance + weights.get(edge);
+          if (cost < workspace.getDistance(v)) {
+            workspace.reach(v, cost, u);
+            heap.insertOrDecrease(v, cost);
+          }
+        }
+      }
+      return -1;
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The answer to a route query: the locations along the route, the walking time in seconds of
+ * each leg between two consecutive locations, the time at which each location is reached, and
+ * the total time. A route with no locations means that no route was found. Route results are
+ * immutable.
+ */
+public class RouteResult {
+
+  /**
+   * The result of a query for which no route exists.
+   */
+  public static final RouteResult EMPTY = new RouteResult(List.of(), List.of());
+
+  private final List<String> locations;
+  private final List<Double> legSeconds;
+  private final List<Double> cumulativeSeconds;
+
+  /**
+   * Creates a route result.
+   *
+   * @param locations  the locations along the route, or an empty list when there is none
+   * @param legSeconds the walking time from locations.get(i) to locations.get(i + 1) at index i
+   * @throws IllegalArgumentException if there isn't one time per leg
+   */
+  public RouteResult(List<String> locations, List<Double> legSeconds) {
+    if (legSeconds.size() != Math.max(0, locations.size() - 1))
+      throw new IllegalArgumentException(
+          locations.size() + " locations don't match " + legSeconds.size() + " legs");
+    this.locations = Collections.unmodifiableList(new ArrayList<>(locations));
+    this.legSeconds = Collections.unmodifiableList(new ArrayList<>(legSeconds));
+    List<Double> cumulative = new ArrayList<>(locations.size());
+    double time = 0;
+    if (!locations.isEmpty()) cumulative.add(time);
+    for (double seconds : legSeconds) {
+      time += seconds;
+      cumulative.add(time);
+    }
+    this.cumulativeSeconds = Collections.unmodifiableList(cumulative);
+  }
+
+  /**
+   * Creates the route result of a path found in a graph of locations.
+   *
+   * @param path the path to describe
+   */
+  public RouteResult(GraphPath<String> path) {
+    this(path.getNodes(), weightsOf(path));
+  }
+
+  private static List<Double> weightsOf(GraphPath<String> path) {
+    List<Double> weights = new ArrayList<>(path.getEdgeCount());
+    for (int i = 0; i < path.getEdgeCount(); i++) weights.add(path.getEdgeWeight(i));
+    return weights;
+  }
+
+  /**
+   * Returns the route that follows this route and then continues along another one, which must
+   * start where this route ends. When either route is empty, so is the result.
+   *
+   * @param next the route to continue along
+   * @return the combined route
+   * @throws IllegalArgumentException if next doesn't start at the end of this route
+   */
+  public RouteResult then(RouteResult next) {
+    if (isEmpty() || next.isEmpty()) return EMPTY;
+    if (!next.locations.get(0).equals(locations.get(locations.size() - 1)))
+      throw new IllegalArgumentException("routes don't connect at " + next.locations.get(0));
+    List<String> joinedLocations = new ArrayList<>(locations);
+    joinedLocations.addAll(next.locations.subList(1, next.locations.size()));
+    List<Double> joinedLegs = new ArrayList<>(legSeconds);
+    joinedLegs.addAll(next.legSeconds);
+    return new RouteResult(joinedLocations, joinedLegs);
+  }
+
+  /**
+   * Checks whether no route was found.
+   *
+   * @return true if this result has no locations, or false otherwise
+   */
+  public boolean isEmpty() {
+    return locations.isEmpty();
+  }
+
+  /**
+   * Returns the locations along this route.
+   *
+   * @return an unmodifiable list of locations from start to end
+   */
+  public List<String> getLocations() {
+    return locations;
+  }
+
+  /**
+   * Returns the walking time of each leg of this route.
+   *
+   * @return an unmodifiable list with one time in seconds per leg
+   */
+  public List<Double> getLegSeconds() {
+    return legSeconds;
+  }
+
+  /**
+   * Returns the walking time from the start of this route to each of its locations.
+   *
+   * @return an unmodifiable list with one time in seconds per location, starting at 0
+   */
+  public List<Double> getCumulativeSeconds() {
+    return cumulativeSeconds;
+  }
+
+  /**
+   * Returns the walking time of this whole route.
+   *
+   * @return the total time in seconds, or 0 for an empty route
+   */
+  public double getTotalSeconds() {
+    return cumulativeSeconds.isEmpty() ? 0 : cumulativeSeconds.get(cumulativeSeconds.size() - 1);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof RouteResult)) return false;
+    RouteResult route = (RouteResult) other;
+    return locations.equals(route.locations) && legSeconds.equals(route.legSeconds);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * locations.hashCode() + legSeconds.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return locations + " in " + getTotalSeconds() + " seconds";
+  }
+
+}
@@ -0,0 +1,458 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the queries of a BackendInterface as JSON over HTTP, using the HTTP server of the JDK,
+ * so that the campus map can run headless behind a load balancer. Run it with
+ * java RoutingServer [port] [graph file], which loads the graph file (campus.dot by default) and
+ * listens on the port (8080 by default). The endpoints are:
+ * <ul>
+ * <li>GET /locations: the array of all locations</li>
+ * <li>GET /route?from=A&amp;to=B: the shortest route from A to B</li>
+ * <li>GET /via?from=A&amp;via=C&amp;to=B: the shortest route from A to B through C</li>
+ * <li>GET /matrix?source=A&amp;source=B&amp;target=C: the walking time from every source to
+ * every target, or POST /matrix with {"sources": [...], "targets": [...]}, for at most
+ * setMaxMatrixCells sources times targets</li>
+ * <li>GET /isochrone?from=A&amp;seconds=300: every location within a walking time of A, nearest
+ * first</li>
+ * </ul>
+ * A route is an object with "found", "locations", "legSeconds" and "totalSeconds". POST /route
+ * and POST /via take an array of queries such as {"from": "A", "to": "B"} and answer them all
+ * with an array of routes, in the same order. Bad queries get status 400 and an object with an
+ * "error" message.
+ * <p>
+ * Each request is handled on a virtual thread when the Java runtime has them, and on a pool of
+ * daemon threads otherwise, so a slow query doesn't hold up the others. Connections are kept
+ * alive between requests. The locations, matrix, isochrone and batch responses are streamed in
+ * chunks as they are written instead of being built in memory first, and the isochrone is sent
+ * while the search is still finding locations.
+ */
+public class RoutingServer implements AutoCloseable {
+
+  // the largest request body accepted, which is plenty for a batch of thousands of queries
+  private static final int MAX_BODY_BYTES = 16 << 20;
+
+  static {
+    // the JDK server writes headers and body separately, which without TCP_NODELAY makes every
+    // response on a kept-alive connection wait for a delayed acknowledgement of about 40 ms
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  private final BackendInterface backend;
+  private final GraphADT<String, Double> graph;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final AtomicLong requests = new AtomicLong();
+  // the most sources times targets that a matrix request may ask for
+  private volatile long maxMatrixCells = 1_000_000;
+
+  /**
+   * Creates a server for a backend, which starts listening when start is called.
+   *
+   * @param backend the backend that answers the queries
+   * @param graph   the graph of the backend, which answers matrix queries
+   * @param address the address to listen on; port 0 picks a free port
+   * @throws IOException if the address can't be bound
+   */
+  public RoutingServer(BackendInterface backend, GraphADT<String, Double> graph,
+      InetSocketAddress address) throws IOException {
+    this.backend = backend;
+    this.graph = graph;
+    this.server = HttpServer.create(address, 0);
+    this.executor = defaultExecutor();
+    server.setExecutor(executor);
+    server.createContext("/locations", endpoint(this::locations));
+    server.createContext("/route", endpoint(this::route));
+    server.createContext("/via", endpoint(this::via));
+    server.createContext("/matrix", endpoint(this::matrix));
+    server.createContext("/isochrone", endpoint(this::isochrone));
+    server.createContext("/", endpoint(exchange -> {
+      throw new RequestException(404, "unknown path " + exchange.getRequestURI().getPath());
+    }));
+  }
+
+  // a virtual thread per request where the runtime has them (Java 21 and later), and otherwise
+  // a pool of daemon threads
+  private static ExecutorService defaultExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "routing-server");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Starts answering requests.
+   */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Returns the port the server listens on, which is useful when it was created with port 0.
+   *
+   * @return the local port
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Sets the largest matrix a request may ask for. Every source of a matrix is a search and
+   * every cell takes memory, so larger matrices are refused with status 413.
+   *
+   * @param maxCells the largest number of sources times targets, 1,000,000 by default
+   * @throws IllegalArgumentException if maxCells is not positive
+   */
+  public void setMaxMatrixCells(long maxCells) {
+    if (maxCells < 1)
+      throw new IllegalArgumentException("matrix limit must be positive: " + maxCells);
+    this.maxMatrixCells = maxCells;
+  }
+
+  /**
+   * Returns the number of requests received since the server was created.
+   *
+   * @return the number of requests
+   */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * Stops listening, and stops the threads that handled the requests.
+   */
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdown();
+  }
+
+  /**
+   * Loads a graph and serves it until the process is stopped.
+   *
+   * @param args the port to listen on and the graph file to load, both optional
+   * @throws IOException if the graph file can't be read or the port can't be bound
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    String file = args.length > 1 ? args[1] : "campus.dot";
+    DijkstraGraph<String, Double> graph = new DijkstraGraph<>();
+    graph.enableTreeCache(32, 64L << 20);
+    Backend backend = new Backend(graph);
+    backend.loadGraphData(file);
+    // concurrent misses of the cache for the same route share one search
+    BackendInterface served =
+        new CachingBackend(new CoalescingBackend(backend), graph, 10_000, 10 * 60 * 1000);
+    RoutingServer server = new RoutingServer(served, graph, new InetSocketAddress(port));
+    Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    server.start();
+    System.out.println("serving " + backend.getListOfAllLocations().size() + " locations on port "
+        + server.getPort());
+  }
+
+  // a request that can't be answered, with the status to send for it
+  private static class RequestException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    final int status;
+
+    RequestException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  }
+
+  // answers one request, which may write the response itself or return a value to send
+  private interface Endpoint {
+    Object answer(HttpExchange exchange) throws IOException;
+  }
+
+  // handles the requests of an endpoint, turning bad requests into error responses and making
+  // sure that every exchange is closed so that its connection can be reused
+  private HttpHandler endpoint(Endpoint endpoint) {
+    return exchange -> {
+      requests.incrementAndGet();
+      try {
+        Object value = endpoint.answer(exchange);
+        if (value != null) send(exchange, 200, value);
+      } catch (RequestException e) {
+        send(exchange, e.status, error(e.getMessage()));
+      } catch (IllegalArgumentException | NoSuchElementException e) {
+        send(exchange, 400, error(e.getMessage()));
+      } catch (UncheckedIOException e) {
+        // the client went away while a response was streamed
+      } catch (RuntimeException e) {
+        // once a response is streaming its status is sent, and closing is all that is left
+        if (exchange.getResponseCode() == -1) send(exchange, 500, error(e.toString()));
+      } finally {
+        exchange.close();
+      }
+    };
+  }
+
+  private Object locations(HttpExchange exchange) throws IOException {
+    allow(exchange, "GET");
+    try (Writer out = stream(exchange)) {
+      Json.write(backend.getListOfAllLocations(), out);
+    }
+    return null;
+  }
+
+  private Object route(HttpExchange exchange) throws IOException {
+    if (allow(exchange, "GET", "POST").equals("GET")) {
+      Map<String, List<String>> query = query(exchange);
+      return routeJson(backend.findRoute(parameter(query, "from"), parameter(query, "to")));
+    }
+    List<Map<?, ?>> batch = batch(exchange);
+    List<String> from = new ArrayList<>(batch.size());
+    List<String> to = new ArrayList<>(batch.size());
+    for (Map<?, ?> single : batch) {
+      from.add(member(single, "from"));
+      to.add(member(single, "to"));
+    }
+    try (Writer out = stream(exchange)) {
+      out.write('[');
+      for (int i = 0; i < batch.size(); i++) {
+        if (i > 0) out.write(',');
+        Json.write(routeJson(backend.findRoute(from.get(i), to.get(i))), out);
+      }
+      out.write(']');
+    }
+    return null;
+  }
+
+  private Object via(HttpExchange exchange) throws IOException {
+    if (allow(exchange, "GET", "POST").equals("GET")) {
+      Map<String, List<String>> query = query(exchange);
+      return routeJson(backend.findRouteVia(parameter(query, "from"), parameter(query, "via"),
+          parameter(query, "to")));
+    }
+    List<Map<?, ?>> batch = batch(exchange);
+    List<String[]> stops = new ArrayList<>(batch.size());
+    for (Map<?, ?> single : batch) {
+      stops.add(new String[] {member(single, "from"), member(single, "via"), member(single, "to")});
+    }
+    try (Writer out = stream(exchange)) {
+      out.write('[');
+      for (int i = 0; i < stops.size(); i++) {
+        if (i > 0) out.write(',');
+        String[] single = stops.get(i);
+        Json.write(routeJson(backend.findRouteVia(single[0], single[1], single[2])), out);
+      }
+      out.write(']');
+    }
+    return null;
+  }
+
+  private Object matrix(HttpExchange exchange) throws IOException {
+    List<String> sources;
+    List<String> targets;
+    if (allow(exchange, "GET", "POST").equals("GET")) {
+      Map<String, List<String>> query = query(exchange);
+      sources = query.getOrDefault("source", List.of());
+      targets = query.getOrDefault("target", List.of());
+    } else {
+      Object body = body(exchange);
+      if (!(body instanceof Map)) throw new RequestException(400, "expected an object");
+      sources = strings((Map<?, ?>) body, "sources");
+      targets = strings((Map<?, ?>) body, "targets");
+    }
+    long cells = Math.multiplyExact((long) sources.size(), (long) targets.size());
+    if (cells > maxMatrixCells) {
+      throw new RequestException(413, "matrix of " + cells + " cells is larger than "
+          + maxMatrixCells);
+    }
+    // unknown locations throw here, before anything is sent
+    double[] seconds = graph.shortestPathCosts(sources, targets);
+    try (Writer out = stream(exchange)) {
+      out.write("{\"sources\":");
+      Json.write(sources, out);
+      out.write(",\"targets\":");
+      Json.write(targets, out);
+      out.write(",\"seconds\":[");
+      for (int s = 0; s < sources.size(); s++) {
+        if (s > 0) out.write(',');
+        out.write('[');
+        for (int t = 0; t < targets.size(); t++) {
+          if (t > 0) out.write(',');
+          Json.writeNumber(seconds[s * targets.size() + t], out);
+        }
+        out.write(']');
+      }
+      out.write("]}");
+    }
+    return null;
+  }
+
+  private Object isochrone(HttpExchange exchange) throws IOException {
+    allow(exchange, "GET");
+    Map<String, List<String>> query = query(exchange);
+    String from = parameter(query, "from");
+    double maxSeconds;
+    try {
+      maxSeconds = Double.parseDouble(parameter(query, "seconds"));
+    } catch (NumberFormatException e) {
+      throw new RequestException(400, "seconds is not a number");
+    }
+    try (Writer out = stream(exchange)) {
+      out.write("{\"from\":");
+      Json.writeString(from, out);
+      out.write(",\"locations\":[");
+      boolean[] first = {true};
+      // each location is written as soon as the search settles it
+      backend.streamLocationsWithin(from, maxSeconds, (location, seconds) -> {
+        try {
+          if (!first[0]) out.write(',');
+          first[0] = false;
+          out.write("{\"location\":");
+          Json.writeString(location, out);
+          out.write(",\"seconds\":");
+          Json.writeNumber(seconds, out);
+          out.write('}');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      out.write("]}");
+    }
+    return null;
+  }
+
+  // the JSON object of a route
+  private static Map<String, Object> routeJson(RouteResult route) {
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("found", !route.isEmpty());
+    json.put("locations", route.getLocations());
+    json.put("legSeconds", route.getLegSeconds());
+    json.put("totalSeconds", route.isEmpty() ? null : route.getTotalSeconds());
+    return json;
+  }
+
+  private static Map<String, Object> error(String message) {
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("error", message);
+    return json;
+  }
+
+  // checks the method of a request against the allowed ones and returns it
+  private static String allow(HttpExchange exchange, String... methods) {
+    String method = exchange.getRequestMethod();
+    for (String allowed : methods) {
+      if (allowed.equals(method)) return method;
+    }
+    exchange.getResponseHeaders().set("Allow", String.join(", ", methods));
+    throw new RequestException(405, method + " is not allowed here");
+  }
+
+  // the parameters of the query string, each with all of its values in order
+  private static Map<String, List<String>> query(HttpExchange exchange) {
+    Map<String, List<String>> parameters = new LinkedHashMap<>();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query == null) return parameters;
+    for (String pair : query.split("&")) {
+      if (pair.isEmpty()) continue;
+      int equals = pair.indexOf('=');
+      String name = equals == -1 ? pair : pair.substring(0, equals);
+      String value = equals == -1 ? "" : pair.substring(equals + 1);
+      parameters.computeIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+          key -> new ArrayList<>()).add(URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return parameters;
+  }
+
+  private static String parameter(Map<String, List<String>> query, String name) {
+    List<String> values = query.get(name);
+    if (values == null) throw new RequestException(400, "missing parameter " + name);
+    return values.get(0);
+  }
+
+  // the parsed request body, which may be at most MAX_BODY_BYTES long
+  private static Object body(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = exchange.getRequestBody()) {
+      byte[] buffer = new byte[8192];
+      for (int read; (read = in.read(buffer)) != -1; ) {
+        if (bytes.size() + read > MAX_BODY_BYTES) {
+          throw new RequestException(413, "request body is larger than " + MAX_BODY_BYTES);
+        }
+        bytes.write(buffer, 0, read);
+      }
+    }
+    return Json.parse(bytes.toString(StandardCharsets.UTF_8));
+  }
+
+  // the queries of a batch request, which is an array of objects
+  private static List<Map<?, ?>> batch(HttpExchange exchange) throws IOException {
+    Object body = body(exchange);
+    if (!(body instanceof List)) throw new RequestException(400, "expected an array of queries");
+    List<Map<?, ?>> queries = new ArrayList<>();
+    for (Object single : (List<?>) body) {
+      if (!(single instanceof Map)) throw new RequestException(400, "expected a query object");
+      queries.add((Map<?, ?>) single);
+    }
+    return queries;
+  }
+
+  private static String member(Map<?, ?> object, String name) {
+    Object value = object.get(name);
+    if (!(value instanceof String)) throw new RequestException(400, name + " must be a string");
+    return (String) value;
+  }
+
+  private static List<String> strings(Map<?, ?> object, String name) {
+    Object value = object.get(name);
+    if (!(value instanceof List)) throw new RequestException(400, name + " must be an array");
+    List<String> strings = new ArrayList<>();
+    for (Object element : (List<?>) value) {
+      if (!(element instanceof String)) {
+        throw new RequestException(400, name + " must hold strings");
+      }
+      strings.add((String) element);
+    }
+    return strings;
+  }
+
+  // sends a whole JSON value with its length
+  private static void send(HttpExchange exchange, int status, Object value) throws IOException {
+    byte[] bytes = Json.toString(value).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    exchange.getResponseBody().write(bytes);
+  }
+
+  // starts a successful response whose JSON is sent in chunks as it is written
+  private static Writer stream(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(200, 0);
+    return new BufferedWriter(
+        new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192);
+  }
+
+}
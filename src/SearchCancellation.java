@@ -0,0 +1,86 @@
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * A flag that stops the shortest path searches of a query once it is set. A query is run with
+ * call, which makes this the cancellation of the calling thread until the query returns, and the
+ * search loops check the cancellation of their thread every CHECK_INTERVAL settled nodes, so a
+ * cancelled query stops within a few microseconds instead of searching the rest of the graph.
+ * <p>
+ * cancel may be called from any thread. The search then throws a CancellationException out of
+ * the query, which leaves nothing behind: the next search of the thread starts over in its
+ * workspace as usual.
+ */
+public class SearchCancellation {
+
+  /**
+   * The number of nodes a search settles between two checks, a power of two.
+   */
+  public static final int CHECK_INTERVAL = 256;
+
+  // the cancellation of the query that each thread is running, if any
+  private static final ThreadLocal<SearchCancellation> current = new ThreadLocal<>();
+
+  private volatile boolean cancelled = false;
+
+  /**
+   * Runs a query on the calling thread, stopping its searches when this is cancelled.
+   *
+   * @param query the query to run
+   * @param <T>   the type of the answer
+   * @return the answer of the query
+   * @throws CancellationException if this is cancelled before or while the query runs
+   */
+  public <T> T call(Supplier<T> query) {
+    SearchCancellation outer = current.get();
+    current.set(this);
+    try {
+      check();
+      return query.get();
+    } finally {
+      if (outer == null) current.remove();
+      else current.set(outer);
+    }
+  }
+
+  /**
+   * Stops the searches of the query, or keeps it from starting when it hasn't yet.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Checks whether cancel was called.
+   *
+   * @return true if the query was cancelled
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Returns the cancellation of the query that the calling thread is running, so that a query
+   * which hands searches to other threads can run them under the same cancellation.
+   *
+   * @return the cancellation of the calling thread, or null when it isn't running a query
+   *         through call
+   */
+  public static SearchCancellation current() {
+    return current.get();
+  }
+
+  /**
+   * Throws if the query that the calling thread is running was cancelled. Searches call this
+   * while they run; it does nothing on threads that don't run a query through call.
+   *
+   * @throws CancellationException if the query of the calling thread was cancelled
+   */
+  public static void check() {
+    SearchCancellation cancellation = current.get();
+    if (cancellation != null && cancellation.cancelled) {
+      throw new CancellationException("search cancelled");
+    }
+  }
+
+}
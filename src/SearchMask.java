@@ -0,0 +1,88 @@
+import java.util.Arrays;
+
+/**
+ * A set of nodes and edges of a CompactGraph that a search must not use, so that a search can
+ * run as if they were removed without changing the graph, which other threads may be searching
+ * at the same time. Like SearchWorkspace, a mask is cleared in constant time by starting a new
+ * epoch rather than by clearing its arrays, so one mask can be reused for many searches.
+ */
+public class SearchMask {
+
+  // epoch in which each node or edge was last blocked
+  private final int[] nodeBlockedIn;
+  private final int[] edgeBlockedIn;
+  private int epoch = 1;
+
+  /**
+   * Creates an empty mask.
+   *
+   * @param nodeCapacity the largest node count of a graph this mask can be used for
+   * @param edgeCapacity the largest edge count of a graph this mask can be used for
+   */
+  public SearchMask(int nodeCapacity, int edgeCapacity) {
+    this.nodeBlockedIn = new int[nodeCapacity];
+    this.edgeBlockedIn = new int[edgeCapacity];
+  }
+
+  /**
+   * Checks whether this mask can be used for a graph.
+   *
+   * @param nodeCount the number of nodes of the graph
+   * @param edgeCount the number of edges of the graph
+   * @return true if this mask has room for every node and edge of the graph
+   */
+  public boolean fits(int nodeCount, int edgeCount) {
+    return nodeBlockedIn.length >= nodeCount && edgeBlockedIn.length >= edgeCount;
+  }
+
+  /**
+   * Unblocks every node and edge.
+   */
+  public void clear() {
+    epoch++;
+    if (epoch == Integer.MAX_VALUE) {
+      Arrays.fill(nodeBlockedIn, 0);
+      Arrays.fill(edgeBlockedIn, 0);
+      epoch = 1;
+    }
+  }
+
+  /**
+   * Blocks a node, so that searches neither settle it nor pass through it.
+   *
+   * @param node the id of the node to block
+   */
+  public void blockNode(int node) {
+    nodeBlockedIn[node] = epoch;
+  }
+
+  /**
+   * Blocks an edge, so that searches don't follow it.
+   *
+   * @param edge the position of the edge in the CSR arrays of the graph
+   */
+  public void blockEdge(int edge) {
+    edgeBlockedIn[edge] = epoch;
+  }
+
+  /**
+   * Checks whether a node is blocked.
+   *
+   * @param node the id of the node to check
+   * @return true if node is blocked, or false otherwise
+   */
+  public boolean isNodeBlocked(int node) {
+    return nodeBlockedIn[node] == epoch;
+  }
+
+  /**
+   * Checks whether an edge is blocked.
+   *
+   * @param edge the position of the edge in the CSR arrays of the graph
+   * @return true if edge is blocked, or false otherwise
+   */
+  public boolean isEdgeBlocked(int edge) {
+    return edgeBlockedIn[edge] == epoch;
+  }
+
+}
@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/**
+ * The per-node state of a shortest path search over a CompactGraph: the distance and predecessor
+ * found for each node, whether it has been settled, and the heap of nodes still to be settled.
+ * <p>
+ * A workspace is meant to be reused for many searches so that a query allocates nothing. Rather
+ * than clearing its arrays, every search starts a new epoch, and the entries of a node are only
+ * valid while its stamp matches the current epoch; every other node reads as unreached. A workspace
+ * must only be used by one search at a time, which is why DijkstraGraph keeps one per thread.
+ */
+public class SearchWorkspace {
+
+  private final double[] dist;
+  private final int[] pred;
+  // epoch in which each node was last reached or settled
+  private final int[] reachedIn;
+  private final int[] settledIn;
+  private int epoch = 0;
+  private int settledCount = 0;
+
+  // nodes that are reached but not yet settled, by distance
+  private final IndexedMinHeap heap;
+
+  // where the path found by the current search ends, see setMeetingNode
+  private int meetingNode = -1;
+  private boolean joinsReverse = false;
+  // second workspace for the backward half of bidirectional searches, created on first use
+  private SearchWorkspace reverse = null;
+  // nodes and edges hidden from masked searches, created on first use
+  private SearchMask mask = null;
+
+  /**
+   * Creates a workspace for searching graphs of up to capacity nodes.
+   *
+   * @param capacity  the largest node count of a graph this workspace can search
+   * @param heapArity the arity of the heap used for the search
+   */
+  public SearchWorkspace(int capacity, int heapArity) {
+    this.dist = new double[capacity];
+    this.pred = new int[capacity];
+    this.reachedIn = new int[capacity];
+    this.settledIn = new int[capacity];
+    this.heap = new IndexedMinHeap(capacity, heapArity);
+  }
+
+  /**
+   * Returns the largest node count of a graph that this workspace can search.
+   *
+   * @return the capacity of this workspace
+   */
+  public int getCapacity() {
+    return dist.length;
+  }
+
+  /**
+   * Returns the arity of the heap used by searches in this workspace.
+   *
+   * @return the number of children of each heap node
+   */
+  public int getHeapArity() {
+    return heap.getArity();
+  }
+
+  /**
+   * Forgets the results of the previous search, so that every node reads as unreached and
+   * unsettled and the heap is empty. This takes constant time apart from emptying the heap.
+   */
+  public void begin() {
+    heap.clear();
+    settledCount = 0;
+    meetingNode = -1;
+    joinsReverse = false;
+    epoch++;
+    if (epoch == Integer.MAX_VALUE) {
+      // after 2^31 searches the stamps have to be reset once, so that old ones can't match again
+      Arrays.fill(reachedIn, 0);
+      Arrays.fill(settledIn, 0);
+      epoch = 1;
+    }
+  }
+
+  /**
+   * Returns a second workspace of the same size that bidirectional searches use for their
+   * backward half. It is created on the first call and reused afterwards.
+   *
+   * @return the reverse workspace paired with this one
+   */
+  public SearchWorkspace getReverseWorkspace() {
+    if (reverse == null) {
+      reverse = new SearchWorkspace(getCapacity(), getHeapArity());
+    }
+    return reverse;
+  }
+
+  /**
+   * Returns an empty mask for a masked search in this workspace, see CompactGraph.dijkstra. The
+   * mask is created on the first call, and reused afterwards as long as it fits the graph.
+   *
+   * @param nodeCount the number of nodes of the graph to search
+   * @param edgeCount the number of edges of the graph to search
+   * @return a cleared mask with room for every node and edge of the graph
+   */
+  public SearchMask getMask(int nodeCount, int edgeCount) {
+    if (mask == null || !mask.fits(nodeCount, edgeCount)) {
+      mask = new SearchMask(nodeCount, edgeCount);
+    } else {
+      mask.clear();
+    }
+    return mask;
+  }
+
+  /**
+   * Records the node at which the path found by the current search ends in this workspace. For a
+   * bidirectional search this is the node where the two halves meet, and the path continues from
+   * there along the predecessors stored in the reverse workspace.
+   *
+   * @param node         the id of the last node of the path within this workspace
+   * @param joinsReverse true if the path continues in the reverse workspace
+   */
+  public void setMeetingNode(int node, boolean joinsReverse) {
+    this.meetingNode = node;
+    this.joinsReverse = joinsReverse;
+  }
+
+  /**
+   * Returns the node at which the path found by the current search ends in this workspace.
+   *
+   * @return the id of that node, or -1 when no path was found
+   */
+  public int getMeetingNode() {
+    return meetingNode;
+  }
+
+  /**
+   * Checks whether the path found by the current search continues in the reverse workspace.
+   *
+   * @return true after a bidirectional search, or false otherwise
+   */
+  public boolean joinsReverse() {
+    return joinsReverse;
+  }
+
+  /**
+   * Returns the heap of reached but unsettled nodes of the current search.
+   *
+   * @return the heap of this workspace
+   */
+  public IndexedMinHeap getHeap() {
+    return heap;
+  }
+
+  /**
+   * Checks whether a node was reached in the current search.
+   *
+   * @param node the id of the node to check
+   * @return true if a path to node has been found, or false otherwise
+   */
+  public boolean isReached(int node) {
+    return reachedIn[node] == epoch;
+  }
+
+  /**
+   * Returns the shortest distance found so far from the start of the current search to a node.
+   *
+   * @param node the id of the node to look up
+   * @return the distance to node, or infinity when it has not been reached
+   */
+  public double getDistance(int node) {
+    return reachedIn[node] == epoch ? dist[node] : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Returns the node before a node along the shortest path found so far.
+   *
+   * @param node the id of the node to look up
+   * @return the id of the previous node, or -1 for the start node and unreached nodes
+   */
+  public int getPredecessor(int node) {
+    return reachedIn[node] == epoch ? pred[node] : -1;
+  }
+
+  /**
+   * Records a new shortest path to a node.
+   *
+   * @param node        the id of the node that was reached
+   * @param distance    the length of the path to that node
+   * @param predecessor the id of the node before it on that path, or -1 for the start node
+   */
+  public void reach(int node, double distance, int predecessor) {
+    reachedIn[node] = epoch;
+    dist[node] = distance;
+    pred[node] = predecessor;
+  }
+
+  /**
+   * Checks whether a node was settled in the current search, meaning its distance is final.
+   *
+   * @param node the id of the node to check
+   * @return true if node has been settled, or false otherwise
+   */
+  public boolean isSettled(int node) {
+    return settledIn[node] == epoch;
+  }
+
+  /**
+   * Marks a node as settled in the current search. Every search settles its nodes here, so this
+   * is also where searches find out that their query was cancelled.
+   *
+   * @param node the id of the node whose distance is final
+   * @throws java.util.concurrent.CancellationException if the query of the calling thread was
+   *                                                    cancelled, see SearchCancellation
+   */
+  public void settle(int node) {
+    settledIn[node] = epoch;
+    settledCount++;
+    if ((settledCount & (SearchCancellation.CHECK_INTERVAL - 1)) == 0) SearchCancellation.check();
+  }
+
+  /**
+   * Returns the number of nodes settled by the current search.
+   *
+   * @return the number of settled nodes
+   */
+  public int getSettledCount() {
+    return settledCount;
+  }
+
+}
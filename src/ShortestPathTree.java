@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The distances from one source node to every node of a CompactGraph, together with the
+ * predecessor of each node on its shortest path from the source. Once a tree has been computed,
+ * the shortest path to any destination is found by walking the predecessors back from it,
+ * without another search.
+ *
+ * @param <NodeType> the data type stored at each graph node
+ */
+public class ShortestPathTree<NodeType> {
+
+  private final CompactGraph<NodeType> graph;
+  private final int source;
+  // distance and predecessor of every node, infinity and -1 when it can't be reached
+  private final double[] dist;
+  private final int[] pred;
+
+  /**
+   * Copies the tree found by a complete search out of a workspace, so that the workspace can be
+   * reused.
+   *
+   * @param graph     the snapshot that was searched
+   * @param source    the id of the node the search started from
+   * @param workspace the workspace of a search that settled every reachable node, such as
+   *                  CompactGraph.searchAll
+   */
+  public ShortestPathTree(CompactGraph<NodeType> graph, int source, SearchWorkspace workspace) {
+    this.graph = graph;
+    this.source = source;
+    int n = graph.getNodeCount();
+    this.dist = new double[n];
+    this.pred = new int[n];
+    for (int v = 0; v < n; v++) {
+      dist[v] = workspace.getDistance(v);
+      pred[v] = workspace.getPredecessor(v);
+    }
+  }
+
+  /**
+   * Returns the id of the node this tree starts from.
+   *
+   * @return the id of the source node
+   */
+  public int getSource() {
+    return source;
+  }
+
+  /**
+   * Checks whether this tree was computed on a snapshot.
+   *
+   * @param snapshot a snapshot of a graph
+   * @return true if this tree was computed on exactly that snapshot
+   */
+  public boolean isFor(CompactGraph<?> snapshot) {
+    return graph == snapshot;
+  }
+
+  /**
+   * Returns the cost of the shortest path from the source to a node.
+   *
+   * @param target the id of the destination node
+   * @return the cost of that path, or infinity when target can't be reached
+   */
+  public double getDistance(int target) {
+    return dist[target];
+  }
+
+  /**
+   * Returns the node data along the shortest path from the source to a node.
+   *
+   * @param target the id of the destination node, which must be reachable
+   * @return list of data items from the source through target
+   */
+  public List<NodeType> pathTo(int target) {
+    List<NodeType> path = new ArrayList<>();
+    for (int v = target; v != -1; v = pred[v]) path.add(graph.nodeAt(v));
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * Returns roughly how much memory this tree takes.
+   *
+   * @return the size of this tree in bytes
+   */
+  public long getBytes() {
+    return 12L * dist.length + 64;
+  }
+
+}
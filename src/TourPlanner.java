@@ -0,0 +1,268 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Chooses the order in which to visit a set of stops so that the total cost of the tour is as
+ * small as possible. The tour always starts at stop 0 and may be required to end at the last
+ * stop; all other stops can be visited in any order. Costs between stops are taken from a flat
+ * matrix, with the cost from stop a to stop b at index a * count + b, so they may differ by
+ * direction. GraphADT.shortestPathCosts returns such a matrix when given the stops as both
+ * sources and targets.
+ * <p>
+ * Up to getExactStopLimit free stops, the best order is found with the Held-Karp dynamic program,
+ * which takes time proportional to 2^k * k^2 for k free stops. Longer tours start from the
+ * nearest neighbour order and are improved with 2-opt moves, which reverse a stretch of the
+ * tour, and Or-opt moves, which move a stretch of up to three stops elsewhere, until no move
+ * helps or the time budget runs out.
+ */
+public class TourPlanner {
+
+  // longest stretch of stops that an Or-opt move relocates
+  private static final int OR_OPT_LENGTH = 3;
+
+  private final long budgetNanos;
+  private int exactStopLimit = 12;
+
+  /**
+   * Creates a planner.
+   *
+   * @param budgetMillis how long the heuristic may keep improving a tour that is too long to
+   *                     solve exactly
+   * @throws IllegalArgumentException if budgetMillis is negative
+   */
+  public TourPlanner(long budgetMillis) {
+    if (budgetMillis < 0)
+      throw new IllegalArgumentException("time budget must not be negative: " + budgetMillis);
+    this.budgetNanos = budgetMillis * 1_000_000;
+  }
+
+  /**
+   * Sets the largest number of free stops, not counting the fixed start and end, for which the
+   * exact order is computed. Each additional stop doubles the time and memory this takes.
+   *
+   * @param maxStops the largest number of free stops to solve exactly, at most 20
+   * @throws IllegalArgumentException if maxStops is negative or larger than 20
+   */
+  public void setExactStopLimit(int maxStops) {
+    if (maxStops < 0 || maxStops > 20)
+      throw new IllegalArgumentException("exact stop limit must be between 0 and 20: " + maxStops);
+    this.exactStopLimit = maxStops;
+  }
+
+  /**
+   * Returns the largest number of free stops for which the exact order is computed.
+   *
+   * @return the exact stop limit
+   */
+  public int getExactStopLimit() {
+    return exactStopLimit;
+  }
+
+  /**
+   * Finds the cheapest order in which to visit count stops.
+   *
+   * @param costs    the flat cost matrix between the stops, see the class comment
+   * @param count    the number of stops, including the start and a fixed end
+   * @param fixedEnd true if the tour has to end at stop count - 1, or false if it may end at
+   *                 any stop
+   * @return the stops in the order to visit them, starting with 0
+   * @throws IllegalArgumentException if costs doesn't have count * count entries, or there is no
+   *                                  stop to end at
+   * @throws NoSuchElementException   if no order visits every stop
+   */
+  public int[] order(double[] costs, int count, boolean fixedEnd) {
+    if (costs.length != count * count)
+      throw new IllegalArgumentException(costs.length + " costs don't match " + count + " stops");
+    if (count < 1 || fixedEnd && count < 2)
+      throw new IllegalArgumentException("not enough stops for a tour: " + count);
+    int free = count - (fixedEnd ? 2 : 1);
+    int[] tour = free <= exactStopLimit ? heldKarp(costs, count, fixedEnd)
+        : improve(nearestNeighbour(costs, count, fixedEnd), costs, count, fixedEnd);
+    if (tourCost(tour, costs, count) == Double.POSITIVE_INFINITY)
+      throw new NoSuchElementException("No tour visits every stop");
+    return tour;
+  }
+
+  /**
+   * Returns the total cost of visiting stops in a given order.
+   *
+   * @param tour  the stops in the order they are visited
+   * @param costs the flat cost matrix between the stops
+   * @param count the number of stops in the matrix
+   * @return the sum of the costs between consecutive stops of the tour
+   */
+  public static double tourCost(int[] tour, double[] costs, int count) {
+    double cost = 0;
+    for (int i = 0; i + 1 < tour.length; i++) cost += costs[tour[i] * count + tour[i + 1]];
+    return cost;
+  }
+
+  // solves the order exactly: best[mask * free + j] is the cheapest path that starts at stop 0,
+  // visits the free stops in mask and ends at free stop j, where free stop j is stop j + 1
+  private static int[] heldKarp(double[] costs, int count, boolean fixedEnd) {
+    int free = count - (fixedEnd ? 2 : 1);
+    int[] tour = new int[count];
+    if (fixedEnd) tour[count - 1] = count - 1;
+    if (free == 0) return tour;
+    int masks = 1 << free;
+    double[] best = new double[masks * free];
+    int[] previous = new int[masks * free];
+    Arrays.fill(best, Double.POSITIVE_INFINITY);
+    for (int j = 0; j < free; j++) {
+      best[(1 << j) * free + j] = costs[j + 1];
+      previous[(1 << j) * free + j] = -1;
+    }
+    for (int mask = 1; mask < masks; mask++) {
+      for (int j = 0; j < free; j++) {
+        double cost = best[mask * free + j];
+        if ((mask & 1 << j) == 0 || cost == Double.POSITIVE_INFINITY) continue;
+        for (int k = 0; k < free; k++) {
+          if ((mask & 1 << k) != 0) continue;
+          int next = (mask | 1 << k) * free + k;
+          double extended = cost + costs[(j + 1) * count + k + 1];
+          if (extended < best[next]) {
+            best[next] = extended;
+            previous[next] = j;
+          }
+        }
+      }
+    }
+    // pick the cheapest last free stop, including the way on to a fixed end
+    int full = masks - 1;
+    int last = 0;
+    double lowest = Double.POSITIVE_INFINITY;
+    for (int j = 0; j < free; j++) {
+      double cost = best[full * free + j] + (fixedEnd ? costs[(j + 1) * count + count - 1] : 0);
+      if (cost < lowest) {
+        lowest = cost;
+        last = j;
+      }
+    }
+    if (lowest == Double.POSITIVE_INFINITY)
+      throw new NoSuchElementException("No tour visits every stop");
+    for (int mask = full, j = last, position = free; j != -1; position--) {
+      tour[position] = j + 1;
+      int before = previous[mask * free + j];
+      mask &= ~(1 << j);
+      j = before;
+    }
+    return tour;
+  }
+
+  // builds a first tour by always going on to the cheapest stop not visited yet
+  private static int[] nearestNeighbour(double[] costs, int count, boolean fixedEnd) {
+    int free = count - (fixedEnd ? 2 : 1);
+    int[] tour = new int[count];
+    boolean[] visited = new boolean[count];
+    visited[0] = true;
+    if (fixedEnd) {
+      tour[count - 1] = count - 1;
+      visited[count - 1] = true;
+    }
+    for (int position = 1; position <= free; position++) {
+      int from = tour[position - 1];
+      int nearest = -1;
+      for (int stop = 1; stop < count; stop++) {
+        if (visited[stop]) continue;
+        if (nearest == -1 || costs[from * count + stop] < costs[from * count + nearest])
+          nearest = stop;
+      }
+      tour[position] = nearest;
+      visited[nearest] = true;
+    }
+    return tour;
+  }
+
+  // applies improving 2-opt and Or-opt moves until neither finds one or the budget runs out
+  private int[] improve(int[] tour, double[] costs, int count, boolean fixedEnd) {
+    long deadline = System.nanoTime() + budgetNanos;
+    // positions first to last of the tour may change, while the start and a fixed end stay
+    int last = fixedEnd ? count - 2 : count - 1;
+    boolean improved = true;
+    while (improved && System.nanoTime() - deadline < 0) {
+      improved = twoOpt(tour, costs, count, last, deadline) | orOpt(tour, costs, count, last, deadline);
+    }
+    return tour;
+  }
+
+  // reverses tour[i..j] wherever that makes the tour cheaper; because costs may differ by
+  // direction, the cost of the reversed stretch is summed up as j grows
+  private static boolean twoOpt(int[] tour, double[] costs, int count, int last, long deadline) {
+    boolean improved = false;
+    for (int i = 1; i < last && System.nanoTime() - deadline < 0; i++) {
+      double forward = 0;
+      double backward = 0;
+      for (int j = i + 1; j <= last; j++) {
+        forward += costs[tour[j - 1] * count + tour[j]];
+        backward += costs[tour[j] * count + tour[j - 1]];
+        int before = tour[i - 1];
+        int after = j + 1 < tour.length ? tour[j + 1] : -1;
+        double current = costs[before * count + tour[i]] + forward + cost(costs, count, tour[j], after);
+        double reversed = costs[before * count + tour[j]] + backward + cost(costs, count, tour[i], after);
+        if (reversed < current) {
+          for (int a = i, b = j; a < b; a++, b--) {
+            int swap = tour[a];
+            tour[a] = tour[b];
+            tour[b] = swap;
+          }
+          improved = true;
+          forward = 0;
+          backward = 0;
+          for (int k = i + 1; k <= j; k++) {
+            forward += costs[tour[k - 1] * count + tour[k]];
+            backward += costs[tour[k] * count + tour[k - 1]];
+          }
+        }
+      }
+    }
+    return improved;
+  }
+
+  // moves a stretch tour[i..i + length - 1] between two other consecutive stops wherever that
+  // makes the tour cheaper
+  private static boolean orOpt(int[] tour, double[] costs, int count, int last, long deadline) {
+    boolean improved = false;
+    for (int length = 1; length <= OR_OPT_LENGTH; length++) {
+      for (int i = 1; i + length - 1 <= last && System.nanoTime() - deadline < 0; i++) {
+        int first = tour[i];
+        int end = tour[i + length - 1];
+        int before = tour[i - 1];
+        int after = i + length < tour.length ? tour[i + length] : -1;
+        // insert between tour[p] and tour[p + 1], for every p outside the stretch
+        for (int p = 0; p <= last; p++) {
+          if (p >= i - 1 && p <= i + length - 1) continue;
+          int next = p + 1 < tour.length ? tour[p + 1] : -1;
+          // compare whole sums instead of a difference, which is undefined for infinite costs
+          double current = costs[before * count + first] + cost(costs, count, end, after)
+              + cost(costs, count, tour[p], next);
+          double moved = cost(costs, count, before, after) + costs[tour[p] * count + first]
+              + cost(costs, count, end, next);
+          if (moved < current) {
+            move(tour, i, length, p);
+            improved = true;
+            break;
+          }
+        }
+      }
+    }
+    return improved;
+  }
+
+  // the cost from stop a to stop b, or 0 when b is -1 because the tour ends at a
+  private static double cost(double[] costs, int count, int a, int b) {
+    return b == -1 ? 0 : costs[a * count + b];
+  }
+
+  // moves tour[i..i + length - 1] so that it follows the stop now at position p
+  private static void move(int[] tour, int i, int length, int p) {
+    int[] stretch = Arrays.copyOfRange(tour, i, i + length);
+    if (p < i) {
+      System.arraycopy(tour, p + 1, tour, p + 1 + length, i - p - 1);
+      System.arraycopy(stretch, 0, tour, p + 1, length);
+    } else {
+      System.arraycopy(tour, i + length, tour, i, p - i - length + 1);
+      System.arraycopy(stretch, 0, tour, p - length + 1, length);
+    }
+  }
+
+}
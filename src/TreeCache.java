@@ -0,0 +1,128 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of shortest path trees keyed by the id of their source node. When the cache
+ * is full, the least recently used trees are evicted until both the number of trees and the
+ * memory they take are within the limits. Hits, misses and evictions are counted so callers can
+ * check whether the cache pays for itself.
+ * <p>
+ * The trees belong to one snapshot of a graph, so the owner of the cache must clear it whenever
+ * the graph changes. All methods are synchronized, so a cache may be shared between threads.
+ *
+ * @param <NodeType> the data type stored at each graph node
+ */
+public class TreeCache<NodeType> {
+
+  private final int maxTrees;
+  private final long maxBytes;
+  // iteration order runs from the least to the most recently used tree
+  private final LinkedHashMap<Integer, ShortestPathTree<NodeType>> trees =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param maxTrees the largest number of trees to keep
+   * @param maxBytes the most memory the cached trees may take, see ShortestPathTree.getBytes
+   * @throws IllegalArgumentException if either limit is not positive
+   */
+  public TreeCache(int maxTrees, long maxBytes) {
+    if (maxTrees < 1 || maxBytes < 1)
+      throw new IllegalArgumentException("cache limits must be positive");
+    this.maxTrees = maxTrees;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Looks up the tree of a source node, counting a hit or a miss.
+   *
+   * @param source the id of the source node
+   * @return the cached tree of source, or null when it is not cached
+   */
+  public synchronized ShortestPathTree<NodeType> get(int source) {
+    ShortestPathTree<NodeType> tree = trees.get(source);
+    if (tree == null) misses++;
+    else hits++;
+    return tree;
+  }
+
+  /**
+   * Adds a tree to this cache, evicting the least recently used trees as needed. A tree that is
+   * larger than the memory limit on its own is not cached.
+   *
+   * @param tree the tree to add
+   */
+  public synchronized void put(ShortestPathTree<NodeType> tree) {
+    if (tree.getBytes() > maxBytes) return;
+    ShortestPathTree<NodeType> old = trees.put(tree.getSource(), tree);
+    if (old != null) bytes -= old.getBytes();
+    bytes += tree.getBytes();
+    Iterator<Map.Entry<Integer, ShortestPathTree<NodeType>>> oldest =
+        trees.entrySet().iterator();
+    while (trees.size() > maxTrees || bytes > maxBytes) {
+      bytes -= oldest.next().getValue().getBytes();
+      oldest.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * Removes every tree from this cache. The counters are kept.
+   */
+  public synchronized void clear() {
+    trees.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Returns the number of trees currently cached.
+   *
+   * @return the number of cached trees
+   */
+  public synchronized int size() {
+    return trees.size();
+  }
+
+  /**
+   * Returns the memory taken by the cached trees.
+   *
+   * @return the size of the cached trees in bytes
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the number of lookups that found a cached tree.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of lookups that found no cached tree.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of trees evicted to stay within the limits.
+   *
+   * @return the number of evictions
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+}